@@ -0,0 +1,62 @@
+#!/usr/bin/env bash
+
+# Compares the startup time and the resident memory (RSS) of the JVM build and the native image.
+#
+# Both builds are started a couple of times against the running infrastructure (Postgres, and
+#  the Fabric network unless MOCK_GATEWAY=true), and the time until the readiness probe reports
+#  UP and the RSS at that moment are printed. Build them first with `./gradlew bootJar` and
+#  `./gradlew nativeCompile -Pnative`.
+#
+# Usage: ./compare-startup.sh [<RUNS>]
+
+set -euo pipefail
+
+SCRIPT_PATH="$(cd -- "$(dirname "$0")" >/dev/null 2>&1 && pwd -P)"
+cd "$SCRIPT_PATH/.."
+
+RUNS="${1:-5}"
+PORT="${SERVER_PORT:-8088}"
+JAR="$(ls build/libs/*.jar | grep -v plain | head -n 1)"
+NATIVE="build/native/nativeCompile/medtechchain-backend"
+# Without the warm-up, ready means started (the warm-up would only add the JIT time of the JVM)
+export WARMUP_ENABLED="${WARMUP_ENABLED:-false}"
+
+# Starts the command, waits until the instance is ready and prints "<milliseconds> <RSS in MB>"
+function measure {
+    local start
+    start=$(date +%s%N)
+    "$@" >/dev/null 2>&1 &
+    local pid=$!
+    until curl -sf "http://localhost:$PORT/actuator/health/readiness" >/dev/null; do
+        if ! kill -0 "$pid" 2>/dev/null; then
+            echo "Error: The backend has exited (run \"$*\" to see why)" >&2
+            exit 1
+        fi
+        sleep 0.05
+    done
+    local end
+    end=$(date +%s%N)
+    local rss
+    rss=$(ps -o rss= -p "$pid")
+    kill "$pid"
+    wait "$pid" 2>/dev/null || true
+    echo "$(( (end - start) / 1000000 )) $(( rss / 1024 ))"
+}
+
+# Runs the measurement RUNS times and prints the averages
+function compare {
+    local name="$1"
+    shift
+    local total_ms=0
+    local total_rss=0
+    for _ in $(seq 1 "$RUNS"); do
+        read -r ms rss < <(measure "$@")
+        total_ms=$(( total_ms + ms ))
+        total_rss=$(( total_rss + rss ))
+    done
+    printf "%-8s %10s ms %10s MB\n" "$name" $(( total_ms / RUNS )) $(( total_rss / RUNS ))
+}
+
+printf "%-8s %13s %13s\n" "Build" "Ready after" "RSS"
+compare "JVM" java -jar "$JAR"
+compare "Native" "$NATIVE" --spring.profiles.active=native
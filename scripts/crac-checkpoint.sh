@@ -0,0 +1,56 @@
+#!/usr/bin/env bash
+
+# Builds the medtechchain/backend:crac image, which contains a CRaC checkpoint of a started and
+#  warmed-up instance of the backend.
+#
+# The `crac` stage of the Dockerfile is built and started, and once the warm-up has finished,
+#  the checkpoint is taken and the stopped container is committed as the new image.
+# The infrastructure (Postgres and the Fabric network) has to be running. Every restored instance
+#  uses the configuration of the checkpoint (the environment is not read again), so pass the
+#  environment of the deployment in an env file.
+#
+# Usage: ./crac-checkpoint.sh [<ENV_FILE>]
+
+set -euo pipefail
+
+SCRIPT_PATH="$(cd -- "$(dirname "$0")" >/dev/null 2>&1 && pwd -P)"
+cd "$SCRIPT_PATH/.."
+
+IMAGE="medtechchain/backend"
+CONTAINER="medtechchain-backend-checkpoint"
+ENV_FILE_ARGS=()
+if [ -n "${1:-}" ]; then
+    ENV_FILE_ARGS=(--env-file "$1")
+fi
+
+docker build --target crac -t "$IMAGE:crac-base" .
+
+docker rm -f "$CONTAINER" >/dev/null 2>&1 || true
+# Taking a checkpoint needs the CHECKPOINT_RESTORE and SYS_PTRACE capabilities
+docker run -d --name "$CONTAINER" \
+    --cap-add CHECKPOINT_RESTORE --cap-add SYS_PTRACE \
+    --network medtechchain "${ENV_FILE_ARGS[@]}" \
+    "$IMAGE:crac-base"
+
+echo "Waiting for the warm-up to finish..."
+for _ in $(seq 1 120); do
+    if docker logs "$CONTAINER" 2>&1 | grep -q "Finished the warm-up"; then
+        break
+    fi
+    sleep 1
+done
+if ! docker logs "$CONTAINER" 2>&1 | grep -q "Finished the warm-up"; then
+    echo "Error: The backend has not warmed up within 120 seconds"
+    docker logs "$CONTAINER"
+    exit 1
+fi
+
+# The JVM stops all Spring lifecycles (web server, connection pools, gateway), writes the
+#  checkpoint to /crac and exits
+docker exec "$CONTAINER" jcmd /app/spring-boot-application.jar JDK.checkpoint
+docker wait "$CONTAINER" >/dev/null
+
+docker commit "$CONTAINER" "$IMAGE:crac"
+docker rm "$CONTAINER" >/dev/null
+
+echo "Created $IMAGE:crac (run it with --cap-add CHECKPOINT_RESTORE)"
@@ -0,0 +1,15 @@
+#!/usr/bin/env bash
+
+# Entrypoint of the `crac` image (see crac-checkpoint.sh).
+# If the image contains a checkpoint, the application is restored from it (which takes
+#  milliseconds instead of seconds). Otherwise, the application is started normally, with
+#  checkpointing enabled, so that a checkpoint can be taken with `jcmd <pid> JDK.checkpoint`.
+
+CRAC_DIR="${CRAC_DIR:-/crac}"
+APP_JAR="/app/spring-boot-application.jar"
+
+if compgen -G "$CRAC_DIR/*.img" >/dev/null; then
+    exec java -XX:CRaCRestoreFrom="$CRAC_DIR"
+fi
+
+exec java -XX:CRaCCheckpointTo="$CRAC_DIR" -jar "$APP_JAR"
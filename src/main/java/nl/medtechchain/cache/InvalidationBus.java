@@ -0,0 +1,110 @@
+package nl.medtechchain.cache;
+
+import java.util.UUID;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+
+/**
+ * A bus that delivers invalidation messages (see InvalidationMessage) to every instance
+ *  of the backend, so that caches can be kept for a long time without getting stale when another
+ *  instance changes the data.
+ * <br>
+ * Messages are delivered locally as Spring application events, and to the other instances with
+ *  Postgres NOTIFY on the `cache_invalidation` channel (see InvalidationListener).
+ * If a message is published within a transaction, the NOTIFY is part of that transaction (Postgres
+ *  only delivers it on commit), and the local event is published after the commit; if the
+ *  transaction rolls back, the message is not delivered at all.
+ */
+@Component
+public class InvalidationBus {
+
+    private static final Logger logger = LoggerFactory.getLogger(InvalidationBus.class);
+
+    public static final String CHANNEL = "cache_invalidation";
+
+    // Distinguishes the messages of this instance from those of other instances
+    @Getter
+    private final String instanceId = UUID.randomUUID().toString();
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${cache.invalidation.postgres.enabled}")
+    private boolean postgresEnabled;
+
+    /**
+     * Creates an InvalidationBus object.
+     *
+     * @param eventPublisher    the publisher of the local application events
+     * @param jdbcTemplate      the JDBC template to send the NOTIFY on the primary database
+     */
+    public InvalidationBus(ApplicationEventPublisher eventPublisher, JdbcTemplate jdbcTemplate) {
+        this.eventPublisher = eventPublisher;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Publishes the invalidation message to all instances (including this one).
+     *
+     * @param message   the invalidation message
+     */
+    public void publish(InvalidationMessage message) {
+        this.notifyOtherInstances(message);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(
+                    new TransactionSynchronization() {
+                        @Override
+                        public void afterCommit() {
+                            eventPublisher.publishEvent(message);
+                        }
+                    });
+        } else {
+            this.eventPublisher.publishEvent(message);
+        }
+    }
+
+    /**
+     * Delivers a message to this instance only, e.g. a message that has been received from
+     *  another instance, or an ALL message when this instance may have missed messages.
+     *
+     * @param message   the invalidation message
+     */
+    public void deliverLocally(InvalidationMessage message) {
+        this.eventPublisher.publishEvent(message);
+    }
+
+    /**
+     * Sends the message to the other instances with NOTIFY (in the current transaction, if any).
+     * Within a transaction, a failure fails the transaction (Postgres aborts it anyway), so that a
+     *  change is never committed without its message. Outside a transaction, a failure is only
+     *  logged: the caches of the other instances expire eventually.
+     *
+     * @param message   the invalidation message
+     */
+    private void notifyOtherInstances(InvalidationMessage message) {
+        if (!this.postgresEnabled) {
+            return;
+        }
+        try {
+            this.jdbcTemplate.query("SELECT pg_notify(?, ?)", (ResultSetExtractor<Void>) rs -> null,
+                    CHANNEL, message.encode(this.instanceId));
+        } catch (DataAccessException e) {
+            if (TransactionSynchronizationManager.isActualTransactionActive()) {
+                throw e;
+            }
+            logger.warn("Could not notify the other instances of {}", message, e);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package nl.medtechchain.cache;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+
+/**
+ * A background thread that receives the invalidation messages of the other instances
+ *  (Postgres LISTEN on the `cache_invalidation` channel) and delivers them to this instance.
+ * <br>
+ * It uses its own connection to the primary database (not one from the pool, since it is held
+ *  forever). If the connection is lost, messages may be missed while reconnecting, so after
+ *  reconnecting an ALL message is delivered, which makes all caches re-sync.
+ */
+@Component
+@ConditionalOnProperty(name = "cache.invalidation.postgres.enabled", havingValue = "true")
+public class InvalidationListener implements SmartLifecycle, Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(InvalidationListener.class);
+
+    // How long to wait for notifications before checking whether the connection is still alive
+    private static final int POLL_TIMEOUT_MS = 10_000;
+
+    private final DataSourceProperties dataSourceProperties;
+
+    private final InvalidationBus invalidationBus;
+
+    @Value("${cache.invalidation.reconnect-delay-ms}")
+    private long reconnectDelayMs;
+
+    private volatile boolean running = false;
+
+    private Thread thread;
+
+    /**
+     * Creates an InvalidationListener object.
+     *
+     * @param dataSourceProperties  the properties of the primary database (`spring.datasource.*`)
+     * @param invalidationBus       the bus that delivers the received messages to this instance
+     */
+    public InvalidationListener(DataSourceProperties dataSourceProperties,
+                                InvalidationBus invalidationBus) {
+        this.dataSourceProperties = dataSourceProperties;
+        this.invalidationBus = invalidationBus;
+    }
+
+    /**
+     * Starts the listening thread.
+     */
+    @Override
+    public void start() {
+        this.running = true;
+        this.thread = Thread.ofPlatform().name("cache-invalidation-listener").daemon()
+                .start(this);
+    }
+
+    /**
+     * Stops the listening thread and closes its connection.
+     */
+    @Override
+    public void stop() {
+        this.running = false;
+        this.thread.interrupt();
+        try {
+            this.thread.join(POLL_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Checks whether the listening thread is running.
+     *
+     * @return true if the listening thread has been started and not stopped, false otherwise
+     */
+    @Override
+    public boolean isRunning() {
+        return this.running;
+    }
+
+    /**
+     * Listens for notifications until the listener is stopped, reconnecting when the connection
+     *  is lost.
+     */
+    @Override
+    public void run() {
+        boolean resync = false;
+        while (this.running) {
+            try (Connection connection = DriverManager.getConnection(
+                    this.dataSourceProperties.determineUrl(),
+                    this.dataSourceProperties.determineUsername(),
+                    this.dataSourceProperties.determinePassword());
+                 Statement statement = connection.createStatement()) {
+                statement.execute("LISTEN " + InvalidationBus.CHANNEL);
+                if (resync) {
+                    logger.info("Reconnected to the invalidation channel, re-syncing all caches");
+                    this.invalidationBus.deliverLocally(
+                            InvalidationMessage.of(InvalidationMessage.Type.ALL));
+                    resync = false;
+                }
+
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (this.running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(POLL_TIMEOUT_MS);
+                    if (notifications == null || notifications.length == 0) {
+                        // Detects a connection that has silently been dropped
+                        statement.execute("SELECT 1");
+                        continue;
+                    }
+                    for (PGNotification notification : notifications) {
+                        this.handle(notification.getParameter());
+                    }
+                }
+            } catch (SQLException e) {
+                if (!this.running) {
+                    break;
+                }
+                resync = true;
+                logger.warn("Lost the connection to the invalidation channel", e);
+                try {
+                    Thread.sleep(this.reconnectDelayMs);
+                } catch (InterruptedException interrupted) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Delivers a received notification to this instance, unless this instance has sent it
+     *  (then it has already been delivered locally).
+     *
+     * @param payload   the payload of the notification
+     */
+    private void handle(String payload) {
+        if (this.invalidationBus.getInstanceId().equals(InvalidationMessage.originOf(payload))) {
+            return;
+        }
+        try {
+            this.invalidationBus.deliverLocally(InvalidationMessage.decode(payload));
+        } catch (RuntimeException e) {
+            logger.warn("Could not handle the invalidation message {}", payload, e);
+        }
+    }
+}
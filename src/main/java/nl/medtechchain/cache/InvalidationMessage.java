@@ -0,0 +1,87 @@
+package nl.medtechchain.cache;
+
+import java.util.Objects;
+
+
+/**
+ * A message that tells every instance of the backend to drop the cached copies of something
+ *  that has been changed (e.g. a user that has been updated by another instance).
+ * The message is delivered as a Spring application event on every instance (see InvalidationBus),
+ *  so caches only have to listen for it with `@EventListener`.
+ *
+ * @param type  the type of the data that has been changed
+ * @param key   the key of the changed data (e.g. the userID), or an empty string for everything
+ */
+public record InvalidationMessage(Type type, String key) {
+
+    /**
+     * The types of the data that can be invalidated.
+     */
+    public enum Type {
+        // A user, by userID
+        USER,
+        // The platform config (stored on the chain)
+        PLATFORM_CONFIG,
+        // The network config (stored on the chain)
+        NETWORK_CONFIG,
+        // All cached data; sent when messages may have been missed (e.g. after a reconnect)
+        ALL
+    }
+
+    /**
+     * Creates an InvalidationMessage object.
+     *
+     * @param type  the type of the data that has been changed
+     * @param key   the key of the changed data (null is stored as an empty string)
+     */
+    public InvalidationMessage {
+        Objects.requireNonNull(type);
+        key = key == null ? "" : key;
+    }
+
+    /**
+     * Creates a message that invalidates all data of the given type.
+     *
+     * @param type  the type of the data that has been changed
+     * @return      the created message
+     */
+    public static InvalidationMessage of(Type type) {
+        return new InvalidationMessage(type, "");
+    }
+
+    /**
+     * Encodes the message for the NOTIFY payload, prefixed with the ID of the sending instance.
+     *
+     * @param origin    the ID of the instance that sends the message
+     * @return          the encoded message (`origin|TYPE|key`)
+     */
+    String encode(String origin) {
+        return origin + "|" + this.type.name() + "|" + this.key;
+    }
+
+    /**
+     * Retrieves the ID of the sending instance from a NOTIFY payload (see `encode`).
+     *
+     * @param payload   the encoded message
+     * @return          the ID of the instance that has sent the message
+     */
+    static String originOf(String payload) {
+        int end = payload.indexOf('|');
+        return end < 0 ? "" : payload.substring(0, end);
+    }
+
+    /**
+     * Decodes a NOTIFY payload (see `encode`).
+     *
+     * @param payload   the encoded message
+     * @return          the decoded message
+     * @throws IllegalArgumentException if the payload is not a valid message
+     */
+    static InvalidationMessage decode(String payload) {
+        String[] parts = payload.split("\\|", 3);
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Invalid invalidation message: " + payload);
+        }
+        return new InvalidationMessage(Type.valueOf(parts[1]), parts[2]);
+    }
+}
@@ -0,0 +1,49 @@
+package nl.medtechchain.cache;
+
+import jakarta.persistence.EntityManagerFactory;
+import java.util.UUID;
+import nl.medtechchain.models.UserData;
+import org.hibernate.Cache;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+
+/**
+ * A class that evicts users from the Hibernate second-level cache when they have been changed
+ *  (possibly by another instance). The query cache (e.g. the list of all researchers) is evicted
+ *  as well, since a change on another instance does not invalidate it.
+ */
+@Component
+public class UserCacheInvalidator {
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    /**
+     * Creates a UserCacheInvalidator object.
+     *
+     * @param entityManagerFactory  the entity manager factory that owns the second-level cache
+     */
+    public UserCacheInvalidator(EntityManagerFactory entityManagerFactory) {
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    /**
+     * Evicts the changed user (or all cached data) from the second-level and query caches.
+     *
+     * @param message   the invalidation message
+     */
+    @EventListener
+    public void onInvalidation(InvalidationMessage message) {
+        Cache cache = this.entityManagerFactory.getCache().unwrap(Cache.class);
+        switch (message.type()) {
+            case USER -> {
+                cache.evictEntityData(UserData.class, UUID.fromString(message.key()));
+                cache.evictDefaultQueryRegion();
+            }
+            case ALL -> cache.evictAllRegions();
+            default -> {
+                // Not cached in the database caches
+            }
+        }
+    }
+}
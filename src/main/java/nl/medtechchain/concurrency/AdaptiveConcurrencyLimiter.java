@@ -0,0 +1,214 @@
+package nl.medtechchain.concurrency;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+
+/**
+ * A component that limits the number of calls to the Fabric Gateway that are in flight at the
+ *  same time. The limit is not fixed: it is adapted to the latency of the calls (gradient
+ *  algorithm, similar to Gradient2 of Netflix concurrency-limits).
+ * <br>
+ * Two moving averages of the latency are kept: a short one (the last ~10 calls) and a long one
+ *  (the last ~500 calls, i.e. the latency of a healthy peer). As long as the short average is
+ *  within `tolerance` times the long one, the limit grows by about its square root per call.
+ *  When the peer slows down (e.g. during block commits or a chaincode restart), calls start to
+ *  queue up, the short average grows and the limit shrinks proportionally. Calls that time out
+ *  shrink the limit directly. The limit only grows while it is actually being used.
+ * <br>
+ * Calls over the limit are rejected immediately (ConcurrencyLimitExceededException, i.e. 503),
+ *  instead of waiting in line until the deadline of the gateway fires for every call.
+ */
+@Component
+public class AdaptiveConcurrencyLimiter {
+
+    // Weights of a new latency sample in the short and the long moving average
+    private static final double SHORT_RTT_WEIGHT = 1.0 / 10;
+    private static final double LONG_RTT_WEIGHT = 1.0 / 500;
+
+    // How fast the limit moves towards the newly computed limit
+    private static final double SMOOTHING = 0.2;
+
+    // The factor by which the limit shrinks when a call is dropped (e.g. timed out)
+    private static final double BACKOFF_RATIO = 0.9;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final double tolerance;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final Counter rejected;
+
+    private volatile double limit;
+
+    private double shortRttNanos = 0;
+
+    private double longRttNanos = 0;
+
+    /**
+     * Creates an AdaptiveConcurrencyLimiter object.
+     *
+     * @param initialLimit  the limit to start with
+     * @param minLimit      the lowest limit (also when the peer is very slow)
+     * @param maxLimit      the highest limit
+     * @param tolerance     how much slower than usual calls may become before the limit shrinks
+     * @param meterRegistry the registry of the metrics (limit, in-flight and rejected calls)
+     */
+    public AdaptiveConcurrencyLimiter(
+            @Value("${gateway.concurrency.initial-limit}") int initialLimit,
+            @Value("${gateway.concurrency.min-limit}") int minLimit,
+            @Value("${gateway.concurrency.max-limit}") int maxLimit,
+            @Value("${gateway.concurrency.tolerance}") double tolerance,
+            MeterRegistry meterRegistry) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        Gauge.builder("gateway.concurrency.limit", this, AdaptiveConcurrencyLimiter::getLimit)
+                .description("The current limit of concurrent calls to the Fabric Gateway")
+                .register(meterRegistry);
+        Gauge.builder("gateway.concurrency.in.flight", this.inFlight, AtomicInteger::get)
+                .description("The number of calls to the Fabric Gateway that are in flight")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("gateway.concurrency.rejected")
+                .description("The number of calls rejected because the limit was reached")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Gets the current limit of concurrent calls.
+     *
+     * @return the maximum number of calls that may be in flight at the same time
+     */
+    public int getLimit() {
+        return (int) this.limit;
+    }
+
+    /**
+     * Gets the number of calls that are currently in flight.
+     *
+     * @return the number of acquired permits that have not been closed yet
+     */
+    public int getInFlight() {
+        return this.inFlight.get();
+    }
+
+    /**
+     * Acquires a permit for a call. The permit has to be closed when the call has finished
+     *  (try-with-resources), so that the latency of the call is taken into account.
+     *
+     * @return the permit for the call
+     * @throws ConcurrencyLimitExceededException if the limit has been reached
+     */
+    public Permit acquire() {
+        int current;
+        do {
+            current = this.inFlight.get();
+            if (current >= this.getLimit()) {
+                this.rejected.increment();
+                throw new ConcurrencyLimitExceededException(
+                        "Too many concurrent calls to the blockchain", this.getRetryAfterSeconds());
+            }
+        } while (!this.inFlight.compareAndSet(current, current + 1));
+        return new Permit(current + 1);
+    }
+
+    /**
+     * Estimates after how many seconds a rejected call can be retried: by then, the calls that
+     *  are in flight now have (on average) finished.
+     *
+     * @return the number of seconds (at least 1)
+     */
+    private synchronized long getRetryAfterSeconds() {
+        return Math.max(1, (long) Math.ceil(this.shortRttNanos / TimeUnit.SECONDS.toNanos(1)));
+    }
+
+    /**
+     * Updates the limit, based on the latency of a call that has finished.
+     *
+     * @param rttNanos          the latency of the call
+     * @param inFlightAtStart   the number of calls in flight when the call started (including it)
+     * @param dropped           true if the call timed out or was rejected by the peer
+     */
+    synchronized void onSample(long rttNanos, int inFlightAtStart, boolean dropped) {
+        if (dropped) {
+            this.limit = Math.max(this.minLimit, this.limit * BACKOFF_RATIO);
+            return;
+        }
+
+        if (this.longRttNanos == 0) {
+            this.shortRttNanos = rttNanos;
+            this.longRttNanos = rttNanos;
+        } else {
+            this.shortRttNanos += (rttNanos - this.shortRttNanos) * SHORT_RTT_WEIGHT;
+            this.longRttNanos += (rttNanos - this.longRttNanos) * LONG_RTT_WEIGHT;
+        }
+        // The latency has dropped for good (e.g. the peer has recovered),
+        //  so the long average should catch up faster
+        if (this.longRttNanos / this.shortRttNanos > 2) {
+            this.longRttNanos *= 0.95;
+        }
+
+        double gradient = Math.max(0.5,
+                Math.min(1.0, this.tolerance * this.longRttNanos / this.shortRttNanos));
+        double newLimit = this.limit * gradient + Math.sqrt(this.limit);
+        // Only grow if the limit is being used: with only a few calls in flight,
+        //  the latency says nothing about how many calls the peer can handle
+        if (newLimit > this.limit && inFlightAtStart < this.limit / 2) {
+            return;
+        }
+        newLimit = this.limit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+        this.limit = Math.max(this.minLimit, Math.min(this.maxLimit, newLimit));
+    }
+
+    /**
+     * A permit for one call, which has to be closed when the call has finished.
+     */
+    public final class Permit implements AutoCloseable {
+
+        private final long startNanos = System.nanoTime();
+
+        private final int inFlightAtStart;
+
+        private boolean dropped = false;
+
+        private boolean closed = false;
+
+        /**
+         * Creates a Permit object.
+         *
+         * @param inFlightAtStart   the number of calls in flight (including this one)
+         */
+        private Permit(int inFlightAtStart) {
+            this.inFlightAtStart = inFlightAtStart;
+        }
+
+        /**
+         * Marks the call as dropped (e.g. timed out), so that the limit shrinks.
+         */
+        public void dropped() {
+            this.dropped = true;
+        }
+
+        /**
+         * Releases the permit and updates the limit with the latency of the call.
+         */
+        @Override
+        public void close() {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            inFlight.decrementAndGet();
+            onSample(System.nanoTime() - this.startNanos, this.inFlightAtStart, this.dropped);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package nl.medtechchain.concurrency;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * A bulkhead for one group of endpoints: at most `maxConcurrent` requests of the group are
+ *  handled at the same time, and at most `maxQueued` more requests wait (for at most `maxWaitMs`)
+ *  until one of them finishes. Requests that do not fit are rejected.
+ * This way, a flood of requests to one group (e.g. queries that wait for the chain) cannot take
+ *  all threads of the server, and the other groups (e.g. log in) keep working.
+ */
+public class Bulkhead {
+
+    private final String name;
+
+    private final Semaphore permits;
+
+    private final int maxConcurrent;
+
+    private final int maxQueued;
+
+    private final long maxWaitMs;
+
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final Counter rejected;
+
+    /**
+     * Creates a Bulkhead object and registers its metrics (tagged with its name).
+     *
+     * @param name          the name of the group of endpoints
+     * @param maxConcurrent the maximum number of requests handled at the same time
+     * @param maxQueued     the maximum number of requests that wait for a permit
+     * @param maxWaitMs     the maximum time that a request waits for a permit
+     * @param meterRegistry the registry of the metrics (active, queued and rejected requests)
+     */
+    public Bulkhead(String name, int maxConcurrent, int maxQueued, long maxWaitMs,
+                    MeterRegistry meterRegistry) {
+        this.name = name;
+        this.permits = new Semaphore(maxConcurrent, true);
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = maxQueued;
+        this.maxWaitMs = maxWaitMs;
+        Gauge.builder("bulkhead.active", this, Bulkhead::getActive)
+                .tag("bulkhead", name)
+                .description("The number of requests that are being handled")
+                .register(meterRegistry);
+        Gauge.builder("bulkhead.queued", this.queued, AtomicInteger::get)
+                .tag("bulkhead", name)
+                .description("The number of requests that wait to be handled")
+                .register(meterRegistry);
+        Gauge.builder("bulkhead.max.concurrent", this, bulkhead -> bulkhead.maxConcurrent)
+                .tag("bulkhead", name)
+                .description("The maximum number of requests that are handled at the same time")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("bulkhead.rejected")
+                .tag("bulkhead", name)
+                .description("The number of requests rejected because the bulkhead was full")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Gets the name of the group of endpoints.
+     *
+     * @return the name of the bulkhead
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Gets the number of requests that are currently being handled.
+     *
+     * @return the number of taken permits
+     */
+    public int getActive() {
+        return this.maxConcurrent - this.permits.availablePermits();
+    }
+
+    /**
+     * Gets the number of requests that currently wait for a permit.
+     *
+     * @return the number of queued requests
+     */
+    public int getQueued() {
+        return this.queued.get();
+    }
+
+    /**
+     * Tries to take a permit to handle a request, waiting in the queue if there is room.
+     * If a permit is returned, exit() has to be called when the request has been handled.
+     *
+     * @return true if a permit has been taken, false if the request has been rejected
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public boolean tryEnter() throws InterruptedException {
+        if (this.permits.tryAcquire()) {
+            return true;
+        }
+        if (this.queued.incrementAndGet() > this.maxQueued) {
+            this.queued.decrementAndGet();
+            this.rejected.increment();
+            return false;
+        }
+        try {
+            if (this.permits.tryAcquire(this.maxWaitMs, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+            this.rejected.increment();
+            return false;
+        } finally {
+            this.queued.decrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the permit that has been taken with tryEnter().
+     */
+    public void exit() {
+        this.permits.release();
+    }
+}
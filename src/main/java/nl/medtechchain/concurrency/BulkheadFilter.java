@@ -0,0 +1,117 @@
+package nl.medtechchain.concurrency;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Map;
+import javax.annotation.Nonnull;
+import nl.medtechchain.controllers.ApiEndpoints;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+
+/**
+ * A filter that handles every request in the bulkhead of its group of endpoints
+ *  (see ApiEndpoints): authentication (/api/users/...), running queries, reading the query
+ *  history and the configs. If the bulkhead is full, 503 Service Unavailable is returned
+ *  with a Retry-After header. Requests to other endpoints (e.g. actuator, and the event streams,
+ *  which do not hold a server thread while they are open) are not limited.
+ * The filter runs before Spring Security, so that the JWT check (which loads the user) is
+ *  also limited.
+ */
+public class BulkheadFilter extends OncePerRequestFilter {
+
+    // Names of the groups of endpoints (and of the bulkheads)
+    public static final String AUTH = "auth";
+    public static final String QUERY = "query";
+    public static final String QUERY_HISTORY = "query-history";
+    public static final String CONFIG = "config";
+
+    private final Map<String, Bulkhead> bulkheads;
+
+    private final long retryAfterSeconds;
+
+    /**
+     * Creates a BulkheadFilter object.
+     *
+     * @param bulkheads         the bulkheads, by the name of their group of endpoints
+     * @param retryAfterSeconds the value of the Retry-After header when a request is rejected
+     */
+    public BulkheadFilter(Map<String, Bulkhead> bulkheads, long retryAfterSeconds) {
+        this.bulkheads = bulkheads;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * Finds the group of endpoints that the request belongs to.
+     *
+     * @param request   the received HTTP request
+     * @return          the name of the group, or null if the endpoint is not in any group
+     */
+    static String groupOf(HttpServletRequest request) {
+        String uri = request.getRequestURI();
+        if (uri.startsWith(ApiEndpoints.USERS_API_PREFIX + "/")) {
+            return AUTH;
+        }
+        if (uri.equals(ApiEndpoints.QUERIES_API) || uri.equals(ApiEndpoints.TIME_SERIES_API)
+                || uri.equals(ApiEndpoints.HISTOGRAM_API) || uri.equals(ApiEndpoints.TEMPLATES_API)
+                || uri.startsWith(ApiEndpoints.TEMPLATES_API + "/")) {
+            return QUERY;
+        }
+        if (uri.equals(ApiEndpoints.READ_QUERIES_API) || uri.equals(ApiEndpoints.MY_QUERIES_API)
+                || uri.equals(ApiEndpoints.SCHEDULED_QUERIES_API)
+                || uri.startsWith(ApiEndpoints.SCHEDULED_QUERIES_API + "/")) {
+            return QUERY_HISTORY;
+        }
+        if (uri.startsWith(ApiEndpoints.CONFIGS_API_PREFIX + "/")
+                && !uri.equals(ApiEndpoints.CONFIG_EVENTS_API)) {
+            return CONFIG;
+        }
+        return null;
+    }
+
+    /**
+     * Handles the request in the bulkhead of its group of endpoints,
+     *  or rejects it with 503 Service Unavailable if the bulkhead is full.
+     *
+     * @param request               the received HTTP request
+     * @param response              the HTTP response to be sent back
+     * @param filterChain           filter chain which intercepts and processes incoming requests
+     * @throws ServletException     if something goes wrong in the filter chain
+     * @throws IOException          if something goes wrong in the filter chain
+     */
+    @Override
+    protected void doFilterInternal(@Nonnull HttpServletRequest request,
+                                    @Nonnull HttpServletResponse response,
+                                    @Nonnull FilterChain filterChain)
+            throws ServletException, IOException {
+        String group = groupOf(request);
+        Bulkhead bulkhead = group == null ? null : this.bulkheads.get(group);
+        if (bulkhead == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        boolean entered;
+        try {
+            entered = bulkhead.tryEnter();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            entered = false;
+        }
+        if (!entered) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(this.retryAfterSeconds));
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(),
+                    "Too many concurrent requests to " + bulkhead.getName() + " endpoints");
+            return;
+        }
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            bulkhead.exit();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package nl.medtechchain.concurrency;
+
+
+/**
+ * An exception that is thrown when a call is rejected because too many calls are in flight
+ *  (see AdaptiveConcurrencyLimiter). It is converted into 503 Service Unavailable,
+ *  with the Retry-After header set to the number of seconds after which the client can retry.
+ */
+public class ConcurrencyLimitExceededException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    /**
+     * Creates a ConcurrencyLimitExceededException object.
+     *
+     * @param message           the error message
+     * @param retryAfterSeconds the number of seconds after which the call can be retried
+     */
+    public ConcurrencyLimitExceededException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * Gets the number of seconds after which the call can be retried.
+     *
+     * @return the number of seconds for the Retry-After header
+     */
+    public long getRetryAfterSeconds() {
+        return this.retryAfterSeconds;
+    }
+}
@@ -0,0 +1,333 @@
+package nl.medtechchain.concurrency;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+
+/**
+ * A component that decides in which order the queries of different researchers are run on the
+ *  chain, so that one researcher running a script cannot take all slots while the others wait.
+ * <br>
+ * At most `maxConcurrent` queries run at the same time, and at most `maxConcurrentPerUser` of
+ *  them belong to the same researcher. Waiting queries are queued per researcher, and the queues
+ *  are served with deficit round robin: every round, each researcher gets credit equal to the
+ *  weight of their affiliation (1 by default), and one query is started per full credit.
+ *  Within the queue of a researcher, the queries are started in arrival order.
+ * A query that has waited for `maxWaitMs` is rejected (ConcurrencyLimitExceededException).
+ */
+@Component
+public class FairQueryScheduler {
+
+    private final int maxConcurrent;
+
+    private final int maxConcurrentPerUser;
+
+    private final long maxWaitNanos;
+
+    private final Map<String, Double> affiliationWeights;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // The flows (queues per researcher) that are waiting or running
+    private final Map<String, Flow> flows = new HashMap<>();
+
+    // The flows that have waiting queries, in round robin order
+    private final Deque<Flow> activeFlows = new ArrayDeque<>();
+
+    private final Timer waitTimer;
+
+    private int running = 0;
+
+    private int waiting = 0;
+
+    /**
+     * Creates a FairQueryScheduler object.
+     *
+     * @param maxConcurrent         the maximum number of queries that run at the same time
+     * @param maxConcurrentPerUser  the maximum number of queries of one researcher that run
+     * @param maxWaitMs             the maximum time that a query waits for its turn
+     * @param affiliationWeights    the weights of the affiliations, e.g. `TU Delft:2,Erasmus MC:1`
+     * @param meterRegistry         the registry of the metrics (waiting and running queries)
+     */
+    public FairQueryScheduler(
+            @Value("${queries.scheduler.max-concurrent}") int maxConcurrent,
+            @Value("${queries.scheduler.max-concurrent-per-user}") int maxConcurrentPerUser,
+            @Value("${queries.scheduler.max-wait-ms}") long maxWaitMs,
+            @Value("${queries.scheduler.affiliation-weights}") String affiliationWeights,
+            MeterRegistry meterRegistry) {
+        this.maxConcurrent = maxConcurrent;
+        this.maxConcurrentPerUser = maxConcurrentPerUser;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+        this.affiliationWeights = parseWeights(affiliationWeights);
+        Gauge.builder("queries.scheduler.waiting", this, FairQueryScheduler::getWaiting)
+                .description("The number of queries that wait for their turn")
+                .register(meterRegistry);
+        Gauge.builder("queries.scheduler.running", this, FairQueryScheduler::getRunning)
+                .description("The number of queries that are running on the chain")
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("queries.scheduler.wait")
+                .description("The time that queries waited for their turn")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Parses the weights of the affiliations.
+     *
+     * @param weights   comma-separated `affiliation:weight` pairs (can be empty)
+     * @return          the weight per affiliation
+     */
+    private static Map<String, Double> parseWeights(String weights) {
+        Map<String, Double> result = new HashMap<>();
+        for (String pair : weights.split(",")) {
+            if (pair.isBlank()) {
+                continue;
+            }
+            int separator = pair.lastIndexOf(':');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Invalid affiliation weight: " + pair);
+            }
+            double weight = Double.parseDouble(pair.substring(separator + 1).trim());
+            if (weight <= 0) {
+                throw new IllegalArgumentException("Invalid affiliation weight: " + pair);
+            }
+            result.put(pair.substring(0, separator).trim(), weight);
+        }
+        return result;
+    }
+
+    /**
+     * Gets the number of queries that wait for their turn.
+     *
+     * @return the number of waiting queries
+     */
+    public int getWaiting() {
+        this.lock.lock();
+        try {
+            return this.waiting;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of queries that are running.
+     *
+     * @return the number of turns that have been granted and not closed yet
+     */
+    public int getRunning() {
+        this.lock.lock();
+        try {
+            return this.running;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until the researcher may run a query. The turn has to be closed when the query
+     *  has finished (try-with-resources), so that the next query can start.
+     *
+     * @param submitter     the username of the researcher
+     * @param affiliation   the affiliation of the researcher (determines the weight)
+     * @return the turn of the query
+     * @throws ConcurrencyLimitExceededException if the query has waited for too long
+     */
+    public Turn awaitTurn(String submitter, String affiliation) {
+        long start = System.nanoTime();
+        Turn turn;
+        this.lock.lock();
+        try {
+            Flow flow = this.flows.computeIfAbsent(submitter, Flow::new);
+            flow.weight = this.affiliationWeights.getOrDefault(affiliation, 1.0);
+            turn = new Turn(flow);
+            if (flow.waiting.isEmpty()) {
+                this.activeFlows.addLast(flow);
+            }
+            flow.waiting.addLast(turn);
+            this.waiting++;
+            this.dispatch();
+
+            long remaining = this.maxWaitNanos;
+            try {
+                while (!turn.granted && remaining > 0) {
+                    remaining = turn.condition.awaitNanos(remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (!turn.granted) {
+                this.cancel(turn);
+                throw new ConcurrencyLimitExceededException("Too many queries are waiting to run",
+                        Math.max(1, TimeUnit.NANOSECONDS.toSeconds(this.maxWaitNanos)));
+            }
+        } finally {
+            this.lock.unlock();
+        }
+        this.waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return turn;
+    }
+
+    /**
+     * Starts waiting queries while there are free slots (deficit round robin).
+     * Must be called while holding the lock.
+     */
+    private void dispatch() {
+        while (this.running < this.maxConcurrent && this.hasEligibleFlow()) {
+            Flow flow = this.activeFlows.pollFirst();
+            if (flow.running < this.maxConcurrentPerUser) {
+                // The credit is only given once per round, also if the turn of the flow
+                //  was interrupted because all slots were taken
+                if (!flow.inRound) {
+                    flow.deficit += flow.weight;
+                }
+                while (flow.deficit >= 1 && !flow.waiting.isEmpty()
+                        && flow.running < this.maxConcurrentPerUser
+                        && this.running < this.maxConcurrent) {
+                    this.grant(flow.waiting.pollFirst());
+                    flow.deficit -= 1;
+                }
+            }
+            flow.inRound = false;
+            if (flow.waiting.isEmpty()) {
+                // An idle flow does not save up credit
+                flow.deficit = 0;
+            } else if (flow.deficit >= 1 && flow.running < this.maxConcurrentPerUser) {
+                // All slots are taken: the flow continues its turn when the next slot is free
+                flow.inRound = true;
+                this.activeFlows.addFirst(flow);
+            } else {
+                this.activeFlows.addLast(flow);
+            }
+        }
+    }
+
+    /**
+     * Checks whether there is a flow with a waiting query that is below the per-user limit.
+     *
+     * @return true if a query can be started once there is a free slot
+     */
+    private boolean hasEligibleFlow() {
+        for (Flow flow : this.activeFlows) {
+            if (flow.running < this.maxConcurrentPerUser) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Lets the waiting query run. Must be called while holding the lock.
+     *
+     * @param turn  the turn of the query
+     */
+    private void grant(Turn turn) {
+        turn.granted = true;
+        turn.flow.running++;
+        this.running++;
+        this.waiting--;
+        turn.condition.signal();
+    }
+
+    /**
+     * Removes a query that has not been started from its queue. Must be called holding the lock.
+     *
+     * @param turn  the turn of the query
+     */
+    private void cancel(Turn turn) {
+        Flow flow = turn.flow;
+        flow.waiting.remove(turn);
+        this.waiting--;
+        if (flow.waiting.isEmpty()) {
+            this.activeFlows.remove(flow);
+            flow.deficit = 0;
+            flow.inRound = false;
+        }
+        this.removeIfIdle(flow);
+    }
+
+    /**
+     * Forgets a flow that has no waiting or running queries. Must be called holding the lock.
+     *
+     * @param flow  the flow of a researcher
+     */
+    private void removeIfIdle(Flow flow) {
+        if (flow.waiting.isEmpty() && flow.running == 0) {
+            this.flows.remove(flow.submitter);
+        }
+    }
+
+    /**
+     * The queue of waiting queries of one researcher.
+     */
+    private static final class Flow {
+
+        private final String submitter;
+
+        private final Deque<Turn> waiting = new ArrayDeque<>();
+
+        private double weight = 1.0;
+
+        private double deficit = 0;
+
+        private boolean inRound = false;
+
+        private int running = 0;
+
+        private Flow(String submitter) {
+            this.submitter = submitter;
+        }
+    }
+
+    /**
+     * The turn of one query, which has to be closed when the query has finished.
+     */
+    public final class Turn implements AutoCloseable {
+
+        private final Flow flow;
+
+        private final Condition condition = lock.newCondition();
+
+        private boolean granted = false;
+
+        private boolean closed = false;
+
+        /**
+         * Creates a Turn object.
+         *
+         * @param flow  the flow of the researcher that submitted the query
+         */
+        private Turn(Flow flow) {
+            this.flow = flow;
+        }
+
+        /**
+         * Frees the slot of the query, so that the next waiting query can start.
+         */
+        @Override
+        public void close() {
+            lock.lock();
+            try {
+                if (this.closed) {
+                    return;
+                }
+                this.closed = true;
+                this.flow.running--;
+                running--;
+                removeIfIdle(this.flow);
+                dispatch();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
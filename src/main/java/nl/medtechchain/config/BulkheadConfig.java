@@ -0,0 +1,53 @@
+package nl.medtechchain.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import nl.medtechchain.concurrency.Bulkhead;
+import nl.medtechchain.concurrency.BulkheadFilter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+/**
+ * A configuration class for the bulkheads of the endpoint groups (see BulkheadFilter).
+ * Every group has its own limit of concurrent requests and its own queue, which are set with
+ *  `bulkhead.<group>.max-concurrent`, `bulkhead.<group>.max-queued` and
+ *  `bulkhead.<group>.max-wait-ms` in the application.properties file.
+ */
+@Configuration
+@ConditionalOnProperty(name = "bulkhead.enabled", havingValue = "true")
+public class BulkheadConfig {
+
+    /**
+     * Creates the bulkheads and registers the BulkheadFilter before the Spring Security filters.
+     *
+     * @param env           the Spring environment (to access the defined properties)
+     * @param meterRegistry the registry of the bulkhead metrics
+     * @return the registration of the BulkheadFilter
+     */
+    @Bean
+    public FilterRegistrationBean<BulkheadFilter> bulkheadFilter(Environment env,
+                                                                MeterRegistry meterRegistry) {
+        Map<String, Bulkhead> bulkheads = new HashMap<>();
+        for (String group : List.of(BulkheadFilter.AUTH, BulkheadFilter.QUERY,
+                BulkheadFilter.QUERY_HISTORY, BulkheadFilter.CONFIG)) {
+            String prefix = "bulkhead." + group + ".";
+            bulkheads.put(group, new Bulkhead(group,
+                    env.getRequiredProperty(prefix + "max-concurrent", Integer.class),
+                    env.getRequiredProperty(prefix + "max-queued", Integer.class),
+                    env.getRequiredProperty(prefix + "max-wait-ms", Long.class),
+                    meterRegistry));
+        }
+
+        FilterRegistrationBean<BulkheadFilter> registration = new FilterRegistrationBean<>(
+                new BulkheadFilter(bulkheads,
+                        env.getRequiredProperty("bulkhead.retry-after-seconds", Long.class)));
+        registration.setOrder(SecurityProperties.DEFAULT_FILTER_ORDER - 1);
+        return registration;
+    }
+}
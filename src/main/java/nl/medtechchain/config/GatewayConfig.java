@@ -1,7 +1,5 @@
 package nl.medtechchain.config;
 
-import static org.mockito.ArgumentMatchers.anyString;
-
 import io.grpc.ChannelCredentials;
 import io.grpc.Grpc;
 import io.grpc.ManagedChannel;
@@ -17,15 +15,13 @@ import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
-import org.hyperledger.fabric.client.Contract;
 import org.hyperledger.fabric.client.Gateway;
-import org.hyperledger.fabric.client.Network;
 import org.hyperledger.fabric.client.identity.Identities;
 import org.hyperledger.fabric.client.identity.Identity;
 import org.hyperledger.fabric.client.identity.Signer;
 import org.hyperledger.fabric.client.identity.Signers;
 import org.hyperledger.fabric.client.identity.X509Identity;
-import org.mockito.Mockito;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -41,6 +37,21 @@ import org.springframework.core.env.Environment;
 @Configuration
 public class GatewayConfig {
 
+    /**
+     * Creates the lazy connection to the Fabric Gateway. The gateway is only connected on the
+     *  first call to the chain (or by the warm-up), see GatewayConnection.
+     *
+     * @param env                       the Spring environment (to access the defined properties)
+     * @return                          the (not yet connected) GatewayConnection bean
+     */
+    @Bean
+    @ConditionalOnProperty(name = "gateway.mock", havingValue = "false")
+    public GatewayConnection gatewayConnection(Environment env) {
+        return new GatewayConnection(() -> this.connect(env),
+                env.getProperty("gateway.channel-name", ""),
+                env.getProperty("gateway.reconnect-delay-ms", Long.class, 5000L));
+    }
+
     /**
      * Creates a Gateway connection to access any of the Networks (analogous to channels) accessible
      *   to the Fabric Gateway, and subsequently smart Contracts deployed to those networks.
@@ -52,7 +63,7 @@ public class GatewayConfig {
      * The configuration properties are taken from the application.properties file.
      *
      * @param env                       the Spring environment (to access the defined properties)
-     * @return                          the created Gateway bean, based on the configuration
+     * @return                          the connected Gateway and its gRPC channel
      * @throws IOException              if something goes wrong during the creation of the gateway,
      *                                   (methods `newGrpcConnection`, `newIdentity`, `newSigner`)
      * @throws CertificateException     if something goes wrong during identity creation
@@ -60,9 +71,7 @@ public class GatewayConfig {
      * @throws InvalidKeyException      if something goes wrong during the signing process
      *                                    (generating digital signatures for the client identity)
      */
-    @Bean
-    @ConditionalOnProperty(name = "gateway.mock", havingValue = "false")
-    public Gateway gateway(Environment env)
+    private GatewayConnection.Connection connect(Environment env)
             throws IOException, CertificateException, InvalidKeyException {
         Path cryptoPath = Paths.get(env.getProperty("gateway.crypto-path", ""));
         Path certDirPath = cryptoPath
@@ -75,36 +84,47 @@ public class GatewayConfig {
         String peerEndpoint = env.getProperty("gateway.peer-endpoint", "");
         String overrideAuth = env.getProperty("gateway.override-auth", "");
 
+        Identity identity = newIdentity(certDirPath, mspId);
+        Signer signer = newSigner(keyDirPath);
         // The gRPC client connection should be shared by all Gateway connections to this endpoint
         ManagedChannel channel = newGrpcConnection(tlsCertPath, peerEndpoint, overrideAuth);
 
-        return Gateway
-                .newInstance()
-                .identity(newIdentity(certDirPath, mspId))
-                .signer(newSigner(keyDirPath))
-                .connection(channel)
-                .evaluateOptions(options -> options.withDeadlineAfter(5, TimeUnit.SECONDS))
-                .connect();
+        try {
+            Gateway gateway = Gateway
+                    .newInstance()
+                    .identity(identity)
+                    .signer(signer)
+                    .connection(channel)
+                    .evaluateOptions(options -> options.withDeadlineAfter(5, TimeUnit.SECONDS))
+                    .connect();
+            return new GatewayConnection.Connection(gateway, channel);
+        } catch (RuntimeException e) {
+            // The next attempt opens a new channel
+            channel.shutdownNow();
+            throw e;
+        }
     }
 
     /**
-     * Creates a test mock for the Gateway object.
+     * Creates the connection that is used when the gateway is mocked (`gateway.mock`), i.e. when
+     *  the backend runs without the blockchain. It uses the Gateway bean if there is one (the
+     *  tests register a Mockito mock, see TestConfig); otherwise, all calls to the chain fail.
      *
-     * @return      the created mock of the Gateway object
+     * @param gatewayMock   the mock of the Gateway object (if any)
+     * @param env           the Spring environment (to access the defined properties)
+     * @return              the GatewayConnection bean that uses the mock
      */
     @Bean
     @ConditionalOnProperty(name = "gateway.mock", havingValue = "true")
-    public Gateway getGateway() {
-        Gateway gatewayMock = Mockito.mock(Gateway.class);
-        Network networkMock = Mockito.mock(Network.class);
-        Contract contractMock = Mockito.mock(Contract.class);
-
-        Mockito.when(gatewayMock.getNetwork(anyString())).thenReturn(networkMock);
-        Mockito.when(networkMock.getContract(anyString())).thenReturn(contractMock);
-        Mockito.when(networkMock.getContract(anyString(), anyString())).thenReturn(contractMock);
-        Mockito.when(networkMock.getName()).thenReturn("GatewayMock");
-
-        return gatewayMock;
+    public GatewayConnection mockGatewayConnection(ObjectProvider<Gateway> gatewayMock,
+                                                  Environment env) {
+        return new GatewayConnection(() -> {
+            Gateway gateway = gatewayMock.getIfAvailable();
+            if (gateway == null) {
+                throw new IllegalStateException("The gateway is mocked (gateway.mock is true)");
+            }
+            return new GatewayConnection.Connection(gateway, null);
+        }, env.getProperty("gateway.channel-name", ""), 0);
     }
 
     /**
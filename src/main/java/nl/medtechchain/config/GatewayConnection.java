@@ -0,0 +1,200 @@
+package nl.medtechchain.config;
+
+import io.grpc.ManagedChannel;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+import org.hyperledger.fabric.client.Gateway;
+import org.hyperledger.fabric.client.Network;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A lazy, reconnectable connection to the Fabric Gateway.
+ * <br>
+ * The crypto material is read and the gRPC channel is opened on the first call to the chain
+ *  (or by the warm-up, see WarmUp), not while the Spring context is being created, so that an
+ *  unreachable peer or missing crypto material does not slow down or break the startup.
+ * If connecting fails, whatever has been opened already is closed again, and the next call tries
+ *  again (at most once per `reconnectDelayMs`, the calls in between fail immediately with an
+ *  error caused by the last failure). The connection can be closed at any time (e.g. on
+ *  shutdown); the next call then opens a new one.
+ */
+public class GatewayConnection implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(GatewayConnection.class);
+
+    private final Connector connector;
+
+    private final String channelName;
+
+    private final long reconnectDelayNanos;
+
+    private volatile Connection connection;
+
+    private IllegalStateException lastFailure;
+
+    private long lastFailureNanos;
+
+    /**
+     * Creates a GatewayConnection object. It does not connect yet.
+     *
+     * @param connector         the function that opens the connection to the Fabric Gateway
+     * @param channelName       the name of the channel (network) that is used
+     * @param reconnectDelayMs  the minimum time between two attempts to connect
+     */
+    public GatewayConnection(Connector connector, String channelName, long reconnectDelayMs) {
+        this.connector = connector;
+        this.channelName = channelName;
+        this.reconnectDelayNanos = TimeUnit.MILLISECONDS.toNanos(reconnectDelayMs);
+    }
+
+    /**
+     * Gets the gateway, connecting first if there is no open connection.
+     *
+     * @return                          the connected gateway
+     * @throws IllegalStateException    if the gateway cannot be connected
+     */
+    public Gateway getGateway() {
+        Connection current = this.connection;
+        if (current != null) {
+            return current.gateway();
+        }
+        return this.connect().gateway();
+    }
+
+    /**
+     * Gets the network (channel) that is used by the backend, connecting first if needed.
+     *
+     * @return                          the network of the channel from `gateway.channel-name`
+     * @throws IllegalStateException    if the gateway cannot be connected
+     */
+    public Network getNetwork() {
+        Connection current = this.connection;
+        if (current != null) {
+            return current.network();
+        }
+        return this.connect().network();
+    }
+
+    /**
+     * Checks whether the gateway is connected (without connecting).
+     *
+     * @return true if there is an open connection
+     */
+    public boolean isConnected() {
+        return this.connection != null;
+    }
+
+    /**
+     * Opens the connection, unless another thread has just done so.
+     *
+     * @return                          the open connection
+     * @throws IllegalStateException    if the gateway cannot be connected
+     */
+    private synchronized Connection connect() {
+        if (this.connection != null) {
+            return this.connection;
+        }
+        if (this.lastFailure != null
+                && System.nanoTime() - this.lastFailureNanos < this.reconnectDelayNanos) {
+            // A new exception, so that the stack trace shows the caller that did not connect
+            throw new IllegalStateException(this.lastFailure.getMessage(), this.lastFailure);
+        }
+        Connection opened = null;
+        try {
+            opened = this.connector.connect();
+            this.connection = new Connection(opened.gateway(), opened.channel(),
+                    opened.gateway().getNetwork(this.channelName));
+            this.lastFailure = null;
+            logger.info("Connected to the Fabric Gateway");
+            return this.connection;
+        } catch (IOException | GeneralSecurityException | RuntimeException e) {
+            if (opened != null) {
+                // The gateway is connected, but the channel (network) cannot be used
+                shutdown(opened);
+            }
+            this.lastFailure = new IllegalStateException("Cannot connect to the Fabric Gateway", e);
+            this.lastFailureNanos = System.nanoTime();
+            logger.warn("Cannot connect to the Fabric Gateway: {}", e.toString());
+            throw this.lastFailure;
+        }
+    }
+
+    /**
+     * Closes the gateway and shuts down the gRPC channel. The calls that are still on the channel
+     *  get 5 seconds to finish before they are cancelled. The next call connects again.
+     */
+    @Override
+    public synchronized void close() {
+        Connection current = this.connection;
+        if (current == null) {
+            return;
+        }
+        this.connection = null;
+        shutdown(current);
+        logger.info("Closed the connection to the Fabric Gateway");
+    }
+
+    /**
+     * Closes the gateway of a connection and shuts down its gRPC channel. The calls that are
+     *  still on the channel get 5 seconds to finish before they are cancelled.
+     *
+     * @param connection    the connection
+     */
+    private static void shutdown(Connection connection) {
+        connection.gateway().close();
+        ManagedChannel channel = connection.channel();
+        if (channel == null) {
+            return;
+        }
+        channel.shutdown();
+        try {
+            if (!channel.awaitTermination(5, TimeUnit.SECONDS)) {
+                channel.shutdownNow();
+                channel.awaitTermination(5, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException e) {
+            channel.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * An open connection to the Fabric Gateway.
+     *
+     * @param gateway   the connected gateway
+     * @param channel   the gRPC channel of the gateway (null if the gateway is mocked)
+     * @param network   the network of the channel that is used (null until it has been resolved)
+     */
+    public record Connection(Gateway gateway, ManagedChannel channel, Network network) {
+
+        /**
+         * Creates a Connection object whose network has not been resolved yet.
+         *
+         * @param gateway   the connected gateway
+         * @param channel   the gRPC channel of the gateway (null if the gateway is mocked)
+         */
+        public Connection(Gateway gateway, ManagedChannel channel) {
+            this(gateway, channel, null);
+        }
+    }
+
+    /**
+     * A function that opens the connection to the Fabric Gateway.
+     */
+    @FunctionalInterface
+    public interface Connector {
+
+        /**
+         * Reads the crypto material, opens the gRPC channel and connects the gateway.
+         * If connecting the gateway fails, the channel has to be shut down before throwing.
+         *
+         * @return                          the open connection
+         * @throws IOException              if the crypto material cannot be read
+         * @throws GeneralSecurityException if the certificate or the private key is invalid
+         */
+        Connection connect() throws IOException, GeneralSecurityException;
+    }
+}
@@ -0,0 +1,109 @@
+package nl.medtechchain.config;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import nl.medtechchain.controllers.error.ErrorResponse;
+import nl.medtechchain.dto.InterfaceConfigurationDTO;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.TypeReference;
+import org.springframework.aot.hint.annotation.RegisterReflectionForBinding;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.ImportRuntimeHints;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+
+
+/**
+ * A configuration class with the hints for the GraalVM native image (see the `native` build
+ *  profile in build.gradle). They are only used by Spring AOT and have no effect on the JVM.
+ * <br>
+ * The native image only contains the classes, methods and resources that are reachable without
+ *  reflection, so everything that the libraries access reflectively has to be registered: the
+ *  generated protobuf classes (ours and those of the Fabric Gateway), the implementation classes
+ *  of jjwt, the providers of gRPC, the migrations and the DTOs that are written with Jackson.
+ *  Netty (in grpc-netty-shaded) and Caffeine bring their own metadata, or get it from the GraalVM
+ *  reachability metadata repository.
+ */
+@Configuration
+@ImportRuntimeHints(NativeConfig.Hints.class)
+@RegisterReflectionForBinding({InterfaceConfigurationDTO.class, ErrorResponse.class})
+public class NativeConfig {
+
+    /**
+     * The hints of the libraries that use reflection, resources or service loading.
+     */
+    static class Hints implements RuntimeHintsRegistrar {
+
+        // gRPC loads these providers by name (next to the service loader)
+        private static final List<String> GRPC_PROVIDERS = List.of(
+                "io.grpc.netty.shaded.io.grpc.netty.NettyChannelProvider",
+                "io.grpc.netty.shaded.io.grpc.netty.UdsNettyChannelProvider",
+                "io.grpc.netty.shaded.io.grpc.netty.UdsNameResolverProvider",
+                "io.grpc.internal.DnsNameResolverProvider",
+                "io.grpc.internal.PickFirstLoadBalancerProvider",
+                "io.grpc.util.SecretRoundRobinLoadBalancerProvider$Provider",
+                "io.grpc.util.OutlierDetectionLoadBalancerProvider");
+
+        /**
+         * Registers the hints.
+         *
+         * @param hints         the hints of the native image
+         * @param classLoader   the class loader of the application
+         */
+        @Override
+        public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+            // The field accessors of the generated messages and JsonFormat use reflection
+            registerPackage(hints, classLoader, "nl/medtechchain/proto",
+                    MemberCategory.INVOKE_PUBLIC_METHODS, MemberCategory.INVOKE_DECLARED_METHODS,
+                    MemberCategory.DECLARED_FIELDS);
+            registerPackage(hints, classLoader, "org/hyperledger/fabric/protos",
+                    MemberCategory.INVOKE_PUBLIC_METHODS, MemberCategory.INVOKE_DECLARED_METHODS,
+                    MemberCategory.DECLARED_FIELDS);
+
+            // jjwt instantiates its implementation (and the Jackson serializer) by class name
+            registerPackage(hints, classLoader, "io/jsonwebtoken/impl",
+                    MemberCategory.INVOKE_DECLARED_CONSTRUCTORS,
+                    MemberCategory.INVOKE_PUBLIC_METHODS);
+            registerPackage(hints, classLoader, "io/jsonwebtoken/jackson",
+                    MemberCategory.INVOKE_DECLARED_CONSTRUCTORS);
+            hints.resources().registerPattern("META-INF/services/io.jsonwebtoken.*");
+
+            GRPC_PROVIDERS.forEach(provider -> hints.reflection().registerType(
+                    TypeReference.of(provider), MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS));
+            hints.resources().registerPattern("META-INF/services/io.grpc.*");
+
+            // The migrations are in one directory per database vendor
+            hints.resources().registerPattern("db/migration/*/*.sql");
+        }
+
+        /**
+         * Registers all classes of a package (and its subpackages) for reflection.
+         *
+         * @param hints         the hints of the native image
+         * @param classLoader   the class loader of the application
+         * @param packagePath   the path of the package, e.g. `nl/medtechchain/proto`
+         * @param categories    the members of the classes that are accessed reflectively
+         */
+        private static void registerPackage(RuntimeHints hints, ClassLoader classLoader,
+                                            String packagePath, MemberCategory... categories) {
+            PathMatchingResourcePatternResolver resolver =
+                    new PathMatchingResourcePatternResolver(classLoader);
+            try {
+                for (Resource resource : resolver.getResources(
+                        "classpath*:" + packagePath + "/**/*.class")) {
+                    String path = resource.getURL().toString();
+                    String className = path
+                            .substring(path.lastIndexOf(packagePath),
+                                    path.length() - ".class".length())
+                            .replace('/', '.');
+                    hints.reflection().registerType(TypeReference.of(className), categories);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package nl.medtechchain.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import javax.sql.DataSource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.HikariCheckpointRestoreLifecycle;
+import org.springframework.context.Lifecycle;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+/**
+ * A configuration class for the read replicas of the database.
+ * When `datasource.replicas.enabled` is true, read-only transactions are sent to the replicas
+ *  (see ReplicaRoutingDataSource), and all other work (including the migrations) to the primary.
+ * Otherwise, the DataSource is auto-configured by Spring Boot from `spring.datasource.*`.
+ * The configuration properties are taken from the application.properties file.
+ */
+@Configuration
+@ConditionalOnProperty(name = "datasource.replicas.enabled", havingValue = "true")
+public class ReadReplicaConfig {
+
+    /**
+     * Creates the connection pool of the primary. As for the auto-configured DataSource, the
+     *  pool settings are bound from `spring.datasource.hikari.*` (e.g. `maximum-pool-size`).
+     *
+     * @param properties    the properties of the primary database (`spring.datasource.*`)
+     * @return the created HikariDataSource bean
+     */
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource primary = properties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class).build();
+        primary.setPoolName(ReplicaRoutingDataSource.PRIMARY);
+        return primary;
+    }
+
+    /**
+     * Creates the connection pools of the replicas, and the DataSource that routes between the
+     *  primary and the replicas. Every pool has its own name, so that its metrics can be told
+     *  apart (e.g. `hikaricp_connections_active{pool="replica-0"}`).
+     *
+     * @param primary       the connection pool of the primary
+     * @param properties    the properties of the primary database (`spring.datasource.*`)
+     * @param env           the Spring environment (to access the defined properties)
+     * @param meterRegistry the registry of the connection pool metrics (if metrics are enabled)
+     * @return the created ReplicaRoutingDataSource bean
+     */
+    @Bean
+    public ReplicaRoutingDataSource replicaRoutingDataSource(
+            HikariDataSource primary, DataSourceProperties properties, Environment env,
+            ObjectProvider<MeterRegistry> meterRegistry) {
+        String[] urls = env.getProperty("datasource.replicas.urls", String[].class,
+                new String[]{});
+        if (urls.length == 0) {
+            throw new IllegalStateException("Read replicas are enabled, but no URLs are given");
+        }
+
+        List<HikariDataSource> replicas = new ArrayList<>();
+        for (int i = 0; i < urls.length; i++) {
+            HikariDataSource replica = new HikariDataSource();
+            replica.setPoolName("replica-" + i);
+            replica.setJdbcUrl(urls[i].trim());
+            replica.setDriverClassName(properties.determineDriverClassName());
+            replica.setUsername(env.getProperty("datasource.replicas.username",
+                    properties.determineUsername()));
+            replica.setPassword(env.getProperty("datasource.replicas.password",
+                    properties.determinePassword()));
+            replica.setMaximumPoolSize(env.getProperty("datasource.replicas.maximum-pool-size",
+                    Integer.class, 10));
+            replica.setReadOnly(true);
+            replicas.add(replica);
+        }
+
+        meterRegistry.ifAvailable(registry -> {
+            MicrometerMetricsTrackerFactory factory = new MicrometerMetricsTrackerFactory(registry);
+            primary.setMetricsTrackerFactory(factory);
+            replicas.forEach(replica -> replica.setMetricsTrackerFactory(factory));
+        });
+
+        Duration maxLag = Duration.ofMillis((long) (1000 * env.getProperty(
+                "datasource.replicas.max-lag-seconds", Double.class, 5.0)));
+        return new ReplicaRoutingDataSource(primary, replicas,
+                env.getProperty("datasource.replicas.lag-query", ""), maxLag);
+    }
+
+    /**
+     * Creates the DataSource that is used by JPA and the migrations. The actual connection is
+     *  only obtained on the first statement, when it is known whether the transaction is
+     *  read-only (which is needed for the routing).
+     *
+     * @param replicaRoutingDataSource the DataSource that routes between primary and replicas
+     * @return the created DataSource bean
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+    }
+
+    /**
+     * Creates the lifecycle that suspends the connection pools (and closes their connections)
+     *  before a CRaC checkpoint, and resumes them after the restore. Spring Boot only does this
+     *  for the auto-configured DataSource, which is not used when read replicas are enabled.
+     *
+     * @param replicaRoutingDataSource the DataSource that routes between primary and replicas
+     * @return the created Lifecycle bean
+     */
+    @Bean
+    public Lifecycle replicaPoolsCheckpointRestoreLifecycle(
+            ReplicaRoutingDataSource replicaRoutingDataSource) {
+        List<HikariCheckpointRestoreLifecycle> lifecycles = replicaRoutingDataSource.getPools()
+                .stream().map(HikariCheckpointRestoreLifecycle::new).toList();
+        return new Lifecycle() {
+            @Override
+            public void start() {
+                lifecycles.forEach(Lifecycle::start);
+            }
+
+            @Override
+            public void stop() {
+                lifecycles.forEach(Lifecycle::stop);
+            }
+
+            @Override
+            public boolean isRunning() {
+                return lifecycles.stream().anyMatch(Lifecycle::isRunning);
+            }
+        };
+    }
+}
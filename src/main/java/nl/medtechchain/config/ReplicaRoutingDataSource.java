@@ -0,0 +1,192 @@
+package nl.medtechchain.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * A DataSource that sends the work of read-only transactions
+ *  (i.e. `@Transactional(readOnly = true)`) to the read replicas, and everything else to the
+ *  primary database. The replicas are used round-robin.
+ * <br>
+ * The replication lag of every replica is checked periodically (with a configurable query).
+ * A replica that lags more than the allowed maximum, or that cannot be reached, is not used until
+ *  it has caught up; if no replica can be used, read-only transactions go to the primary.
+ * <br>
+ * The routing decision is taken when the connection is obtained, so this DataSource has to be
+ *  wrapped in a LazyConnectionDataSourceProxy (see ReadReplicaConfig): the transaction manager
+ *  obtains the connection before the transaction is marked as read-only.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource
+        implements MeterBinder, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    static final String PRIMARY = "primary";
+
+    private final HikariDataSource primary;
+
+    private final List<Replica> replicas = new ArrayList<>();
+
+    private final String lagQuery;
+
+    private final double maxLagSeconds;
+
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    /**
+     * A read replica together with the result of its last lag check.
+     * Replicas are not used until their lag has been checked for the first time.
+     */
+    private static final class Replica {
+        private final HikariDataSource dataSource;
+        private volatile boolean usable = false;
+        private volatile double lagSeconds = Double.NaN;
+
+        private Replica(HikariDataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+    }
+
+    /**
+     * Creates a ReplicaRoutingDataSource object. The pool names of the data sources are used as
+     *  routing keys (and as the `pool` tag of the connection pool metrics), so they must be unique.
+     *
+     * @param primary       the connection pool of the primary database
+     * @param replicas      the connection pools of the read replicas
+     * @param lagQuery      the query that returns the replication lag of a replica (in seconds)
+     * @param maxLag        the maximum lag of a replica that is still used
+     */
+    public ReplicaRoutingDataSource(HikariDataSource primary, List<HikariDataSource> replicas,
+                                    String lagQuery, Duration maxLag) {
+        this.primary = primary;
+        this.lagQuery = lagQuery;
+        this.maxLagSeconds = maxLag.toMillis() / 1000.0;
+
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        for (HikariDataSource replica : replicas) {
+            targets.put(replica.getPoolName(), replica);
+            this.replicas.add(new Replica(replica));
+        }
+        this.setTargetDataSources(targets);
+        this.setDefaultTargetDataSource(primary);
+        this.setLenientFallback(false);
+        this.afterPropertiesSet();
+    }
+
+    /**
+     * Determines to which database the connection is sent: a usable replica for read-only
+     *  transactions, the primary otherwise.
+     *
+     * @return the routing key of the chosen database
+     */
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return PRIMARY;
+        }
+        int size = this.replicas.size();
+        int start = this.nextReplica.getAndIncrement();
+        for (int i = 0; i < size; i++) {
+            Replica replica = this.replicas.get(Math.floorMod(start + i, size));
+            if (replica.usable) {
+                return replica.dataSource.getPoolName();
+            }
+        }
+        return PRIMARY;
+    }
+
+    /**
+     * Checks the replication lag of every replica, and marks the replicas that lag too much
+     *  (or cannot be reached) as not usable.
+     */
+    @Scheduled(fixedDelayString = "${datasource.replicas.lag-check-interval-ms}")
+    public void checkReplicaLag() {
+        for (Replica replica : this.replicas) {
+            double lag;
+            try (Connection connection = replica.dataSource.getConnection();
+                 Statement statement = connection.createStatement();
+                 ResultSet resultSet = statement.executeQuery(this.lagQuery)) {
+                // NULL means that the replica has not replayed anything (yet)
+                lag = resultSet.next() ? resultSet.getDouble(1) : Double.NaN;
+                if (resultSet.wasNull()) {
+                    lag = Double.NaN;
+                }
+            } catch (SQLException e) {
+                lag = Double.NaN;
+                if (replica.usable) {
+                    logger.warn("Could not check the lag of replica {}: {}",
+                            replica.dataSource.getPoolName(), e.getMessage());
+                }
+            }
+
+            boolean usable = lag <= this.maxLagSeconds;
+            if (usable != replica.usable) {
+                logger.info("Replica {} is {} (lag: {} seconds)",
+                        replica.dataSource.getPoolName(), usable ? "used" : "no longer used", lag);
+            }
+            replica.lagSeconds = lag;
+            replica.usable = usable;
+        }
+    }
+
+    /**
+     * Registers the lag and the usability of every replica as metrics.
+     * The connection pool metrics are registered on the pools themselves (see ReadReplicaConfig).
+     *
+     * @param registry the registry of the metrics
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (Replica replica : this.replicas) {
+            String pool = replica.dataSource.getPoolName();
+            Gauge.builder("datasource.replica.lag", replica, r -> r.lagSeconds)
+                    .description("Replication lag of the replica at the last check")
+                    .baseUnit("seconds")
+                    .tag("pool", pool)
+                    .register(registry);
+            Gauge.builder("datasource.replica.usable", replica, r -> r.usable ? 1 : 0)
+                    .description("Whether read-only transactions are sent to the replica")
+                    .tag("pool", pool)
+                    .register(registry);
+        }
+    }
+
+    /**
+     * Gets the connection pools of the primary and the replicas.
+     *
+     * @return the connection pools (the primary first)
+     */
+    public List<HikariDataSource> getPools() {
+        List<HikariDataSource> pools = new ArrayList<>();
+        pools.add(this.primary);
+        this.replicas.forEach(replica -> pools.add(replica.dataSource));
+        return pools;
+    }
+
+    /**
+     * Closes the connection pools of the primary and the replicas.
+     */
+    @Override
+    public void close() {
+        this.replicas.forEach(replica -> replica.dataSource.close());
+        this.primary.close();
+    }
+}
@@ -0,0 +1,19 @@
+package nl.medtechchain.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * A configuration class that enables the scheduled (background) tasks,
+ * such as the dispatching of the emails from the email outbox.
+ * <br>
+ * The tasks share a pool of `spring.task.scheduling.pool.size` threads (4 by default), so that
+ * one slow task does not delay the others: the email outbox, the replica lag check, the cleanup
+ * of the idempotency keys, the poll for due scheduled queries and the heartbeats of the event
+ * streams. A task that waits for the chain must not run on these threads: the scheduled queries
+ * run on their own virtual threads (see ScheduledQueryRunner).
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
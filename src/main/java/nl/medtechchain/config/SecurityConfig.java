@@ -69,6 +69,9 @@ public class SecurityConfig {
                 .authorizeHttpRequests(auth -> auth
                         // Allow custom status error codes to be sent back (instead of just 403)
                         .dispatcherTypeMatchers(DispatcherType.ERROR).permitAll()
+                        // The event streams are completed with an async dispatch, after the
+                        //  request itself has been authorized
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                         // For all endpoints except LOGIN and CHANGE_PASSWORD, 401 will be returned
                         //  if the JWT token is missing (see JwtAuthenticationProvider for details)
                         .requestMatchers(HttpMethod.POST, ApiEndpoints.LOGIN_API)
@@ -87,6 +90,25 @@ public class SecurityConfig {
                         .hasAuthority(UserRole.RESEARCHER.name())
                         .requestMatchers(HttpMethod.GET, ApiEndpoints.READ_QUERIES_API)
                         .hasAuthority(UserRole.ADMIN.name())
+                        .requestMatchers(HttpMethod.GET, ApiEndpoints.MY_QUERIES_API)
+                        .hasAuthority(UserRole.RESEARCHER.name())
+                        .requestMatchers(HttpMethod.POST, ApiEndpoints.TIME_SERIES_API)
+                        .hasAuthority(UserRole.RESEARCHER.name())
+                        .requestMatchers(HttpMethod.POST, ApiEndpoints.HISTOGRAM_API)
+                        .hasAuthority(UserRole.RESEARCHER.name())
+                        .requestMatchers(HttpMethod.POST, ApiEndpoints.TEMPLATES_API,
+                                ApiEndpoints.TEMPLATES_API + "/*")
+                        .hasAuthority(UserRole.RESEARCHER.name())
+                        .requestMatchers(HttpMethod.GET, ApiEndpoints.TEMPLATES_API)
+                        .hasAuthority(UserRole.RESEARCHER.name())
+                        .requestMatchers(HttpMethod.GET, ApiEndpoints.SCHEDULED_QUERIES_API)
+                        .hasAnyAuthority(UserRole.RESEARCHER.name(), UserRole.ADMIN.name())
+                        .requestMatchers(HttpMethod.POST, ApiEndpoints.SCHEDULED_QUERIES_API)
+                        .hasAuthority(UserRole.ADMIN.name())
+                        .requestMatchers(HttpMethod.DELETE, ApiEndpoints.SCHEDULED_QUERIES_API + "/*")
+                        .hasAuthority(UserRole.ADMIN.name())
+                        .requestMatchers(HttpMethod.GET, ApiEndpoints.QUERY_EVENTS_API)
+                        .hasAuthority(UserRole.RESEARCHER.name())
                         .requestMatchers(HttpMethod.GET, ApiEndpoints.CONFIGS_INTERFACE_API)
                         .hasAuthority(UserRole.RESEARCHER.name())
                         .requestMatchers(HttpMethod.GET, ApiEndpoints.CONFIGS_PLATFORM_API)
@@ -97,6 +119,15 @@ public class SecurityConfig {
                         .hasAuthority(UserRole.ADMIN.name())
                         .requestMatchers(HttpMethod.POST, ApiEndpoints.CONFIGS_NETWORK_API)
                         .hasAuthority(UserRole.ADMIN.name())
+                        .requestMatchers(HttpMethod.GET, ApiEndpoints.CONFIG_EVENTS_API)
+                        .hasAnyAuthority(UserRole.RESEARCHER.name(), UserRole.ADMIN.name())
+                        // Health checks (for the orchestrator)
+                        .requestMatchers(HttpMethod.GET, ApiEndpoints.ACTUATOR_HEALTH_API,
+                                ApiEndpoints.ACTUATOR_HEALTH_API + "/**")
+                        .permitAll()
+                        // The metrics reveal the load and the traffic of the platform
+                        .requestMatchers(HttpMethod.GET, ApiEndpoints.ACTUATOR_PROMETHEUS_API)
+                        .hasAuthority(UserRole.ADMIN.name())
                         .anyRequest().denyAll()
                 )
                 .sessionManagement(session -> session
@@ -16,9 +16,18 @@ public class ApiEndpoints {
     public static final String CHANGE_PASSWORD_API = "/api/users/change_password";
     public static final String QUERIES_API = "/api/queries";
     public static final String READ_QUERIES_API = "/api/queries/read";
+    public static final String MY_QUERIES_API = "/api/queries/mine";
+    public static final String TIME_SERIES_API = "/api/queries/timeseries";
+    public static final String HISTOGRAM_API = "/api/queries/histogram";
+    public static final String TEMPLATES_API = "/api/queries/templates";
+    public static final String SCHEDULED_QUERIES_API = "/api/queries/scheduled";
+    public static final String QUERY_EVENTS_API = "/api/queries/events";
     public static final String CONFIGS_INTERFACE_API = "/api/configs/interface";
     public static final String CONFIGS_PLATFORM_API = "/api/configs/platform";
     public static final String CONFIGS_NETWORK_API = "/api/configs/network";
+    public static final String CONFIG_EVENTS_API = "/api/configs/events";
+    public static final String ACTUATOR_HEALTH_API = "/actuator/health";
+    public static final String ACTUATOR_PROMETHEUS_API = "/actuator/prometheus";
 
     // Prefixes for paths
     public static final String USERS_API_PREFIX = "/api/users";
@@ -34,6 +43,14 @@ public class ApiEndpoints {
     public static final String CHANGE_PASSWORD = "/change_password";
     public static final String QUERIES = "";
     public static final String READ = "/read";
+    public static final String MINE = "/mine";
+    public static final String TIME_SERIES = "/timeseries";
+    public static final String HISTOGRAM = "/histogram";
+    public static final String TEMPLATES = "/templates";
+    public static final String TEMPLATE = "/templates/{id}";
+    public static final String SCHEDULED_QUERIES = "/scheduled";
+    public static final String SCHEDULED_QUERY = "/scheduled/{id}";
+    public static final String EVENTS = "/events";
     public static final String INTERFACE = "/interface";
     public static final String PLATFORM = "/platform";
     public static final String NETWORK = "/network";
@@ -41,7 +58,11 @@ public class ApiEndpoints {
 
     // Paths that do not require JWT. For parts that are not in this list,
     //  401 Unauthorized will be returned if the JWT is missing.
-    public static Set<String> NO_JWT_PATHS = Set.of(LOGIN_API, CHANGE_PASSWORD_API);
+    public static Set<String> NO_JWT_PATHS = Set.of(LOGIN_API, CHANGE_PASSWORD_API,
+            ACTUATOR_HEALTH_API);
+
+    // Prefixes of paths that do not require JWT (e.g. the health groups /actuator/health/...)
+    public static Set<String> NO_JWT_PATH_PREFIXES = Set.of(ACTUATOR_HEALTH_API + "/");
 
     /**
      * This class should not be instantiated.
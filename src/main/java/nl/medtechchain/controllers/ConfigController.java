@@ -5,29 +5,31 @@ import com.google.protobuf.InvalidProtocolBufferException;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import nl.medtechchain.dto.InterfaceConfigurationDTO;
+import nl.medtechchain.logging.PayloadLogSampler;
 import nl.medtechchain.proto.common.ChaincodeResponse;
 import nl.medtechchain.proto.config.PlatformConfig;
 import nl.medtechchain.proto.config.UpdateNetworkConfig;
 import nl.medtechchain.proto.config.UpdatePlatformConfig;
-import nl.medtechchain.proto.devicedata.DeviceCategory;
 import nl.medtechchain.proto.devicedata.DeviceDataAsset;
 import nl.medtechchain.proto.devicedata.DeviceDataFieldType;
-import nl.medtechchain.proto.devicedata.MedicalSpeciality;
-import nl.medtechchain.proto.query.Filter;
 import nl.medtechchain.proto.query.Query;
 import nl.medtechchain.protoutils.DeviceDataFieldTypeMapper;
+import nl.medtechchain.protoutils.QueryValidator;
+import nl.medtechchain.services.AuthenticationService;
 import nl.medtechchain.services.ChaincodeService;
+import nl.medtechchain.streaming.ConfigEventService;
 import org.hyperledger.fabric.client.CommitException;
 import org.hyperledger.fabric.client.GatewayException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.io.IOException;
-import java.util.List;
-import java.util.Map;
-import java.util.logging.Logger;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static nl.medtechchain.protoutils.Base64EncodingOps.decode64;
@@ -40,41 +42,48 @@ import static nl.medtechchain.protoutils.JsonEncodingOps.printJson;
 @RequiredArgsConstructor
 public class ConfigController {
 
-    private static final Logger logger = Logger.getLogger(QueryController.class.getName());
+    private static final Logger logger = LoggerFactory.getLogger(ConfigController.class);
 
     private final ObjectMapper objectMapper;
 
     private final ChaincodeService chaincodeService;
 
+    private final PayloadLogSampler payloadLogSampler;
+
+    private final AuthenticationService authenticationService;
+
+    private final ConfigEventService configEventService;
+
     @GetMapping(ApiEndpoints.INTERFACE)
     @ResponseStatus(HttpStatus.OK)
     @ResponseBody
     public void queryInterfaceConfiguration(HttpServletResponse response) throws IOException {
         var platformConfig = chaincodeService.getPlatformConfig();
 
-        var validCountTargetFields = platformConfig.get(PlatformConfig.Config.CONFIG_FEATURE_QUERY_INTERFACE_COUNT_FIELDS);
-        var validGroupedCountTargetFields = platformConfig.get(PlatformConfig.Config.CONFIG_FEATURE_QUERY_INTERFACE_GROUPED_COUNT_FIELDS);
-        var validAverageTargetFields = platformConfig.get(PlatformConfig.Config.CONFIG_FEATURE_QUERY_INTERFACE_AVERAGE_FIELDS);
-
+        // The same rules are checked for the submitted queries (see QueryValidator)
         var result = new InterfaceConfigurationDTO(
-                validCountTargetFields.map(s -> List.of(s.split(","))).orElse(List.of()),
-                validGroupedCountTargetFields.map(s -> List.of(s.split(","))).orElse(List.of()),
-                validAverageTargetFields.map(s -> List.of(s.split(","))).orElse(List.of()),
+                QueryValidator.targetFields(platformConfig, Query.QueryType.COUNT),
+                QueryValidator.targetFields(platformConfig, Query.QueryType.GROUPED_COUNT),
+                QueryValidator.targetFields(platformConfig, Query.QueryType.AVERAGE),
                 DeviceDataAsset.DeviceData.getDescriptor().getFields().stream().map(fd -> new InterfaceConfigurationDTO.Field(DeviceDataFieldTypeMapper.fromFieldName(fd.getName()), fd.getName())).toList(),
-                Map.of(
-                        DeviceDataFieldType.STRING, Stream.of(Filter.StringFilter.StringOperator.values()).filter(s -> s != Filter.StringFilter.StringOperator.UNRECOGNIZED && s != Filter.StringFilter.StringOperator.STRING_OPERATOR_UNSPECIFIED).map(Enum::name).toList(),
-                        DeviceDataFieldType.INTEGER, Stream.of(Filter.IntegerFilter.IntOperator.values()).filter(s -> s != Filter.IntegerFilter.IntOperator.UNRECOGNIZED && s != Filter.IntegerFilter.IntOperator.INT_OPERATOR_UNSPECIFIED).map(Enum::name).toList(),
-                        DeviceDataFieldType.BOOL, Stream.of(Filter.BoolFilter.BoolOperator.values()).filter(s -> s != Filter.BoolFilter.BoolOperator.UNRECOGNIZED && s != Filter.BoolFilter.BoolOperator.BOOL_OPERATOR_UNSPECIFIED).map(Enum::name).toList(),
-                        DeviceDataFieldType.TIMESTAMP, Stream.of(Filter.TimestampFilter.TimestampOperator.values()).filter(s -> s != Filter.TimestampFilter.TimestampOperator.UNRECOGNIZED && s != Filter.TimestampFilter.TimestampOperator.TIMESTAMP_OPERATOR_UNSPECIFIED).map(Enum::name).toList(),
-                        DeviceDataFieldType.DEVICE_CATEGORY, Stream.of(DeviceCategory.values()).filter(s -> s != DeviceCategory.UNRECOGNIZED && s != DeviceCategory.DEVICE_CATEGORY_UNSPECIFIED).map(Enum::name).toList(),
-                        DeviceDataFieldType.MEDICAL_SPECIALITY, Stream.of(MedicalSpeciality.values()).filter(s -> s != MedicalSpeciality.UNRECOGNIZED && s != MedicalSpeciality.MEDICAL_SPECIALITY_UNSPECIFIED).map(Enum::name).toList()
-                )
+                Stream.of(DeviceDataFieldType.STRING, DeviceDataFieldType.INTEGER, DeviceDataFieldType.BOOL, DeviceDataFieldType.TIMESTAMP, DeviceDataFieldType.DEVICE_CATEGORY, DeviceDataFieldType.MEDICAL_SPECIALITY)
+                        .collect(Collectors.toMap(type -> type, QueryValidator::operators))
         );
 
         response.setHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
         response.getWriter().write(objectMapper.writeValueAsString(result));
     }
 
+    @GetMapping(value = ApiEndpoints.EVENTS, produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamConfigEvents(HttpServletResponse response) throws IOException {
+        try {
+            return configEventService.subscribe(authenticationService.currentUserName());
+        } catch (IllegalStateException e) {
+            response.sendError(HttpStatus.TOO_MANY_REQUESTS.value(), e.getMessage());
+            return null;
+        }
+    }
+
     @GetMapping(ApiEndpoints.PLATFORM)
     @ResponseStatus(HttpStatus.OK)
     @ResponseBody
@@ -103,11 +112,17 @@ public class ConfigController {
     }
 
     private String runUpdatePlatformConfig(UpdatePlatformConfig update) throws GatewayException, InvalidProtocolBufferException, CommitException {
-        logger.info(String.format("\n--> Run Update config transaction:%n%s%n", update.toString()));
         var result = chaincodeService.submitUpdatePlatformConfig(update);
 
+        logger.atInfo()
+                .addKeyValue("config", "platform")
+                .addKeyValue("status", result.getChaincodeResponseCase())
+                .log("Submitted a config update");
+        if (payloadLogSampler.shouldLog(logger)) {
+            logger.debug("Config update {} returned {}", update, result);
+        }
+
         if (result.getChaincodeResponseCase() == ChaincodeResponse.ChaincodeResponseCase.SUCCESS) {
-            logger.info("*** Result:\n" + result);
             return printJson(decode64(result.getSuccess().getMessage(), UpdatePlatformConfig::parseFrom));
         }
         return printJson(result);
@@ -132,11 +147,17 @@ public class ConfigController {
     }
 
     private String runUpdateNetworkConfig(UpdateNetworkConfig update) throws GatewayException, InvalidProtocolBufferException, CommitException {
-        logger.info(String.format("\n--> Run Update config transaction:%n%s%n", update.toString()));
         var result = chaincodeService.submitUpdateNetworkConfig(update);
 
+        logger.atInfo()
+                .addKeyValue("config", "network")
+                .addKeyValue("status", result.getChaincodeResponseCase())
+                .log("Submitted a config update");
+        if (payloadLogSampler.shouldLog(logger)) {
+            logger.debug("Config update {} returned {}", update, result);
+        }
+
         if (result.getChaincodeResponseCase() == ChaincodeResponse.ChaincodeResponseCase.SUCCESS) {
-            logger.info("*** Result:\n" + result);
             return printJson(decode64(result.getSuccess().getMessage(), UpdateNetworkConfig::parseFrom));
         }
         return printJson(result);
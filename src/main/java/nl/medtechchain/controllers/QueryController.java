@@ -1,23 +1,54 @@
 package nl.medtechchain.controllers;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.protobuf.InvalidProtocolBufferException;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
+import nl.medtechchain.concurrency.FairQueryScheduler;
+import nl.medtechchain.fanout.HistogramService;
+import nl.medtechchain.fanout.TimeBucketedQueryService;
+import nl.medtechchain.fanout.TimeSeriesService;
+import nl.medtechchain.idempotency.IdempotencyService;
+import nl.medtechchain.logging.PayloadLogSampler;
+import nl.medtechchain.models.ScheduledQuery;
 import nl.medtechchain.proto.common.ChaincodeResponse;
+import nl.medtechchain.proto.query.Filter;
 import nl.medtechchain.proto.query.Query;
 import nl.medtechchain.proto.query.QueryResult;
+import nl.medtechchain.protoutils.QueryValidator;
 import nl.medtechchain.services.AuthenticationService;
 import nl.medtechchain.services.ChaincodeService;
+import nl.medtechchain.services.QueryHistoryService;
+import nl.medtechchain.services.ScheduledQueryService;
+import nl.medtechchain.streaming.QueryEventService;
+import nl.medtechchain.templates.CompiledQueryTemplate;
+import nl.medtechchain.templates.QueryTemplateService;
 import org.hyperledger.fabric.client.CommitException;
 import org.hyperledger.fabric.client.GatewayException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.io.IOException;
-import java.util.logging.Logger;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 import static nl.medtechchain.protoutils.Base64EncodingOps.decode64;
 import static nl.medtechchain.protoutils.JsonEncodingOps.parseJson;
@@ -28,7 +59,24 @@ import static nl.medtechchain.protoutils.JsonEncodingOps.printJson;
 @RequiredArgsConstructor
 public class QueryController {
 
-    private static final Logger logger = Logger.getLogger(QueryController.class.getName());
+    private static final Logger logger = LoggerFactory.getLogger(QueryController.class);
+
+    // A retry of a query with the same key (and the same query) gets the response of the first one
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+    // Set on the response of a retry that did not run the query again
+    public static final String IDEMPOTENT_REPLAYED_HEADER = "Idempotent-Replayed";
+
+    // If set (an ISO-8601 duration, e.g. P30D), a COUNT or GROUPED_COUNT query is run as one query per time bucket
+    public static final String BUCKET_PARAM = "bucket";
+
+    // The ID of a query, which is sent with all its events (see QueryEventService)
+    public static final String QUERY_ID_HEADER = "Query-Id";
+
+    // With `Prefer: respond-async`, a query is answered with 202 Accepted at once, and its result is only sent as an event
+    public static final String PREFER_HEADER = "Prefer";
+    public static final String PREFERENCE_APPLIED_HEADER = "Preference-Applied";
+    public static final String RESPOND_ASYNC = "respond-async";
 
     private final ObjectMapper objectMapper;
 
@@ -36,28 +84,522 @@ public class QueryController {
 
     private final ChaincodeService chaincodeService;
 
+    private final QueryHistoryService queryHistoryService;
+
+    private final FairQueryScheduler fairQueryScheduler;
+
+    private final IdempotencyService idempotencyService;
+
+    private final TimeBucketedQueryService timeBucketedQueryService;
+
+    private final TimeSeriesService timeSeriesService;
+
+    private final HistogramService histogramService;
+
+    private final QueryTemplateService queryTemplateService;
+
+    private final ScheduledQueryService scheduledQueryService;
+
+    private final QueryEventService queryEventService;
+
+    private final PayloadLogSampler payloadLogSampler;
+
+    @Value("${queries.history.page-size.default}")
+    private int defaultHistoryPageSize;
+
+    @Value("${queries.history.page-size.max}")
+    private int maxHistoryPageSize;
+
     @PostMapping(ApiEndpoints.QUERIES)
-    @ResponseStatus(HttpStatus.OK)
     @ResponseBody
-    public void queryChain(@RequestBody String body, HttpServletResponse response) throws IOException, GatewayException, CommitException {
-        String queryResult = this.runQuery(parseJson(body, Query.newBuilder()));
+    public void queryChain(@RequestBody String body, @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+                           @RequestHeader(value = PREFER_HEADER, required = false) String prefer,
+                           @RequestParam(value = BUCKET_PARAM, required = false) String bucketParam,
+                           HttpServletResponse response) throws IOException, GatewayException, CommitException {
+        Query query = parseJson(body, Query.newBuilder());
+        try {
+            QueryValidator.validate(query, chaincodeService.getPlatformConfig(), Set.of());
+        } catch (IllegalArgumentException e) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), e.getMessage());
+            return;
+        }
+        Duration bucket = null;
+        if (bucketParam != null) {
+            try {
+                bucket = Duration.parse(bucketParam);
+            } catch (DateTimeParseException e) {
+                response.sendError(HttpStatus.BAD_REQUEST.value(), "Invalid bucket width");
+                return;
+            }
+            if (!timeBucketedQueryService.supports(query)) {
+                response.sendError(HttpStatus.BAD_REQUEST.value(), "Only COUNT and GROUPED_COUNT queries with a start and end time can be split into buckets");
+                return;
+            }
+        }
+
+        var queryId = UUID.randomUUID().toString();
+        response.setHeader(QUERY_ID_HEADER, queryId);
+        if (prefer != null && Arrays.stream(prefer.split(",")).anyMatch(p -> p.trim().equalsIgnoreCase(RESPOND_ASYNC))) {
+            // A retry would not get the result of the first query (which is only sent as an event)
+            if (idempotencyKey != null) {
+                response.sendError(HttpStatus.BAD_REQUEST.value(), "An Idempotency-Key cannot be combined with " + PREFER_HEADER + ": " + RESPOND_ASYNC);
+                return;
+            }
+            var asyncBucket = bucket;
+            try {
+                queryEventService.runAsync(authenticationService.currentUserName(), () -> {
+                    try {
+                        this.runQuery(query, asyncBucket, queryId);
+                    } catch (Exception e) {
+                        // The failure has been sent to the event streams of the researcher
+                        logger.warn("Asynchronous query {} failed", queryId, e);
+                    }
+                });
+            } catch (IllegalStateException e) {
+                response.sendError(HttpStatus.TOO_MANY_REQUESTS.value(), e.getMessage());
+                return;
+            }
+            response.setStatus(HttpStatus.ACCEPTED.value());
+            response.setHeader(PREFERENCE_APPLIED_HEADER, RESPOND_ASYNC);
+            response.setHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+            response.getWriter().write(objectMapper.createObjectNode().put("query_id", queryId).toString());
+            return;
+        }
+
+        String queryResult;
+        try {
+            queryResult = this.runQueryIdempotently(query, bucket, queryId, idempotencyKey, response);
+        } catch (IllegalArgumentException e) {
+            // Only thrown before anything has been run, e.g. if the range would be split into too many buckets
+            response.sendError(HttpStatus.BAD_REQUEST.value(), e.getMessage());
+            return;
+        }
         response.setHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
         response.getWriter().write(queryResult);
     }
 
-    private String runQuery(Query query) throws GatewayException, InvalidProtocolBufferException, CommitException {
-        logger.info(String.format("\n--> Evaluate Transaction:%n%s%n", query.toString()));
+    private String runQueryIdempotently(Query query, Duration bucket, String queryId, String idempotencyKey, HttpServletResponse response) throws GatewayException, InvalidProtocolBufferException, CommitException {
+        String queryResult;
+        if (idempotencyKey == null) {
+            queryResult = this.runQuery(query, bucket, queryId);
+        } else {
+            var submitter = authenticationService.currentUserName();
+            // The same query split into other (or no) buckets has another response
+            var claim = idempotencyService.claim(submitter, idempotencyKey, query.toBuilder().setSubmitter(submitter).build(), bucket == null ? "" : "bucket=" + bucket);
+            if (claim.isReplay()) {
+                queryResult = claim.getResponse();
+                response.setHeader(IDEMPOTENT_REPLAYED_HEADER, "true");
+            } else {
+                try {
+                    queryResult = this.runQuery(query, bucket, queryId);
+                } catch (Exception e) {
+                    claim.fail(e);
+                    throw e;
+                }
+                claim.complete(queryResult);
+            }
+        }
+        return queryResult;
+    }
+
+    private String runQuery(Query query, Duration bucket, String queryId) throws GatewayException, InvalidProtocolBufferException, CommitException {
         query = query.toBuilder().setSubmitter(authenticationService.currentUserName()).build();
-        var result = chaincodeService.submitQuery(query);
+        long start = System.nanoTime();
+        ChaincodeResponse result;
+        try {
+            if (bucket != null) {
+                // The bucket queries share one turn in the scheduler (see QueryFanOut)
+                result = timeBucketedQueryService.submitQuery(query, bucket, authenticationService.currentUserAffiliation());
+            } else {
+                // Queries of different researchers take turns, instead of running in arrival order
+                try (var turn = fairQueryScheduler.awaitTurn(query.getSubmitter(), authenticationService.currentUserAffiliation())) {
+                    result = chaincodeService.submitQuery(query, queryEventService.progressOf(query.getSubmitter(), queryId));
+                }
+            }
+        } catch (Exception e) {
+            queryEventService.failure(query.getSubmitter(), queryId, e);
+            throw e;
+        }
+
+        logger.atInfo()
+                .addKeyValue("submitter", query.getSubmitter())
+                .addKeyValue("queryType", query.getQueryType())
+                .addKeyValue("bucket", bucket)
+                .addKeyValue("status", result.getChaincodeResponseCase())
+                .addKeyValue("durationMs", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start))
+                .log("Evaluated a query");
+        // The payloads are large, so they are only logged for a sample of the queries
+        if (payloadLogSampler.shouldLog(logger)) {
+            logger.debug("Query {} returned {}", query, result);
+        }
 
         if (result.getChaincodeResponseCase() == ChaincodeResponse.ChaincodeResponseCase.SUCCESS) {
-            logger.info("*** Result:\n" + result);
-            return printJson(decode64(result.getSuccess().getMessage(), QueryResult::parseFrom));
+            var queryResult = decode64(result.getSuccess().getMessage(), QueryResult::parseFrom);
+            queryEventService.result(query.getSubmitter(), queryId, queryResult);
+            try {
+                queryHistoryService.record(query, queryResult);
+            } catch (DataAccessException e) {
+                // The query has already been run (and paid for) on the chain, so the result is still returned
+                logger.warn("Could not store the query in the history of {}", query.getSubmitter(), e);
+            }
+            return printJson(queryResult);
         }
-        System.out.println(printJson(result));
+        queryEventService.error(query.getSubmitter(), queryId, result.getError());
         return printJson(result);
     }
 
+    @PostMapping(ApiEndpoints.TIME_SERIES)
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public void queryTimeSeries(@RequestBody String body, HttpServletResponse response) throws IOException, GatewayException, CommitException {
+        Query query;
+        Instant start;
+        Instant end;
+        Duration bucket;
+        String field;
+        try {
+            var request = objectMapper.readTree(body);
+            query = parseJson(request.path("query").toString(), Query.newBuilder());
+            start = Instant.parse(request.path("start").asText());
+            end = Instant.parse(request.path("end").asText());
+            bucket = Duration.parse(request.path("bucket").asText());
+            field = request.hasNonNull("field") ? request.get("field").asText() : null;
+        } catch (IOException | DateTimeParseException e) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), "Invalid time series request");
+            return;
+        }
+        try {
+            QueryValidator.validate(query, chaincodeService.getPlatformConfig(), Set.of());
+            if (field != null) {
+                // The same filters as the bucket queries (see TimeSeriesService)
+                QueryValidator.validate(TimeSeriesService.timestampFilter(field, Filter.TimestampFilter.TimestampOperator.AFTER, start), false);
+                QueryValidator.validate(TimeSeriesService.timestampFilter(field, Filter.TimestampFilter.TimestampOperator.BEFORE, end), false);
+            }
+        } catch (IllegalArgumentException e) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), e.getMessage());
+            return;
+        }
+
+        query = query.toBuilder().setSubmitter(authenticationService.currentUserName()).build();
+        long startNanos = System.nanoTime();
+        TimeSeriesService.TimeSeries series;
+        try {
+            // The bucket queries share one turn in the scheduler (see QueryFanOut)
+            series = timeSeriesService.compute(query, start, end, bucket, field, authenticationService.currentUserAffiliation());
+        } catch (IllegalArgumentException e) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), e.getMessage());
+            return;
+        }
+
+        logger.atInfo()
+                .addKeyValue("submitter", query.getSubmitter())
+                .addKeyValue("bucket", bucket)
+                .addKeyValue("points", series.isFailed() ? 0 : series.points().size())
+                .addKeyValue("failed", series.isFailed())
+                .addKeyValue("durationMs", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos))
+                .log("Evaluated a time series");
+
+        response.setHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+        if (series.isFailed()) {
+            response.getWriter().write(printFailure(series.failure()));
+            return;
+        }
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+            generator.writeStartObject();
+            generator.writeStringField("bucket", bucket.toString());
+            if (field != null)
+                generator.writeStringField("field", field);
+            generator.writeArrayFieldStart("points");
+            for (var point : series.points()) {
+                generator.writeStartObject();
+                generator.writeStringField("start", point.start().toString());
+                generator.writeStringField("end", point.end().toString());
+                generator.writeNumberField("count", point.count());
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+    }
+
+    @PostMapping(ApiEndpoints.HISTOGRAM)
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public void queryHistogram(@RequestBody String body, HttpServletResponse response) throws IOException, GatewayException, CommitException {
+        Query query;
+        String field;
+        var boundaries = new ArrayList<Long>();
+        try {
+            var request = objectMapper.readTree(body);
+            query = parseJson(request.path("query").toString(), Query.newBuilder());
+            field = request.path("field").asText();
+            for (var boundary : request.path("boundaries")) {
+                // asLong would silently wrap a boundary outside the range of a long
+                if (!boundary.canConvertToExactIntegral() || !boundary.canConvertToLong())
+                    throw new IllegalArgumentException();
+                boundaries.add(boundary.asLong());
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), "Invalid histogram request");
+            return;
+        }
+        try {
+            QueryValidator.validate(query, chaincodeService.getPlatformConfig(), Set.of());
+            // The same filters as the bin queries (see HistogramService)
+            QueryValidator.validate(HistogramService.integerFilter(field, Filter.IntegerFilter.IntOperator.GREATER_THAN_OR_EQUAL, 0), false);
+            QueryValidator.validate(HistogramService.integerFilter(field, Filter.IntegerFilter.IntOperator.LESS_THAN, 0), false);
+        } catch (IllegalArgumentException e) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), e.getMessage());
+            return;
+        }
+
+        query = query.toBuilder().setSubmitter(authenticationService.currentUserName()).build();
+        long start = System.nanoTime();
+        HistogramService.Histogram histogram;
+        try {
+            // The bin queries share one turn in the scheduler (see QueryFanOut)
+            histogram = histogramService.compute(query, field, boundaries, authenticationService.currentUserAffiliation());
+        } catch (IllegalArgumentException e) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), e.getMessage());
+            return;
+        }
+
+        logger.atInfo()
+                .addKeyValue("submitter", query.getSubmitter())
+                .addKeyValue("field", field)
+                .addKeyValue("bins", boundaries.size() - 1)
+                .addKeyValue("failed", histogram.isFailed())
+                .addKeyValue("durationMs", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start))
+                .log("Evaluated a histogram");
+
+        response.setHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+        if (histogram.isFailed()) {
+            response.getWriter().write(printFailure(histogram.failure()));
+            return;
+        }
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+            generator.writeStartObject();
+            generator.writeStringField("field", field);
+            generator.writeArrayFieldStart("bins");
+            for (var bin : histogram.bins()) {
+                generator.writeStartObject();
+                generator.writeNumberField("lower", bin.lower());
+                generator.writeNumberField("upper", bin.upper());
+                generator.writeNumberField("count", bin.count());
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+    }
+
+    // A failed fan-out returns the error of the failed query, the same way as a single query does
+    private static String printFailure(ChaincodeResponse failure) throws InvalidProtocolBufferException {
+        if (failure.getChaincodeResponseCase() == ChaincodeResponse.ChaincodeResponseCase.SUCCESS)
+            return printJson(decode64(failure.getSuccess().getMessage(), QueryResult::parseFrom));
+        return printJson(failure);
+    }
+
+    @PostMapping(ApiEndpoints.TEMPLATES)
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public void registerTemplate(@RequestBody String body, HttpServletResponse response) throws IOException {
+        String name;
+        Query query;
+        var parameters = new LinkedHashMap<String, String>();
+        try {
+            var request = objectMapper.readTree(body);
+            name = request.path("name").asText();
+            query = parseJson(request.path("query").toString(), Query.newBuilder());
+            var fields = request.path("parameters").fields();
+            while (fields.hasNext()) {
+                var parameter = fields.next();
+                if (!parameter.getValue().isTextual())
+                    throw new IllegalArgumentException();
+                parameters.put(parameter.getKey(), parameter.getValue().asText());
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), "Invalid template request");
+            return;
+        }
+
+        CompiledQueryTemplate template;
+        try {
+            // Validated against the query interface once, instead of on every run
+            template = queryTemplateService.register(name, authenticationService.currentUserName(), query, parameters);
+        } catch (IllegalArgumentException e) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), e.getMessage());
+            return;
+        }
+
+        response.setHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+            generator.writeStartObject();
+            writeTemplateFields(generator, template.getId(), template.getName(), template.getOwner(), template.getSkeleton(), template.getParameters());
+            generator.writeEndObject();
+        }
+    }
+
+    @GetMapping(ApiEndpoints.TEMPLATES)
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public void listTemplates(HttpServletResponse response) throws IOException {
+        var templates = queryTemplateService.list();
+        response.setHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+            generator.writeStartArray();
+            for (var template : templates) {
+                generator.writeStartObject();
+                writeTemplateFields(generator, template.getId(), template.getName(), template.getOwner(), Query.parseFrom(template.getQuery()),
+                        CompiledQueryTemplate.decodeParameters(template.getParameters()));
+                generator.writeStringField("created_at", template.getCreatedAt().toString());
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        }
+    }
+
+    private static void writeTemplateFields(JsonGenerator generator, long id, String name, String owner, Query query, Map<String, String> parameters) throws IOException {
+        generator.writeNumberField("id", id);
+        generator.writeStringField("name", name);
+        generator.writeStringField("owner", owner);
+        generator.writeFieldName("query");
+        generator.writeRawValue(printJson(query));
+        generator.writeObjectFieldStart("parameters");
+        for (var parameter : parameters.entrySet())
+            generator.writeStringField(parameter.getKey(), parameter.getValue());
+        generator.writeEndObject();
+    }
+
+    @PostMapping(ApiEndpoints.TEMPLATE)
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public void runTemplate(@PathVariable("id") long id, @RequestBody(required = false) String body,
+                            @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+                            HttpServletResponse response) throws IOException, GatewayException, CommitException {
+        var values = new HashMap<String, String>();
+        try {
+            var fields = objectMapper.readTree(body == null ? "{}" : body).fields();
+            while (fields.hasNext()) {
+                var value = fields.next();
+                if (!value.getValue().isValueNode() || value.getValue().isNull())
+                    throw new IllegalArgumentException();
+                values.put(value.getKey(), value.getValue().asText());
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), "Invalid template parameters");
+            return;
+        }
+
+        CompiledQueryTemplate template;
+        Query query;
+        try {
+            var compiled = queryTemplateService.get(id);
+            if (compiled.isEmpty()) {
+                response.sendError(HttpStatus.NOT_FOUND.value(), "Unknown query template");
+                return;
+            }
+            template = compiled.get();
+            // Only the parameters are parsed, the rest of the query has been validated when the template was registered
+            query = template.bind(values);
+        } catch (IllegalArgumentException e) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), e.getMessage());
+            return;
+        }
+
+        var queryId = UUID.randomUUID().toString();
+        response.setHeader(QUERY_ID_HEADER, queryId);
+        long start = System.nanoTime();
+        String queryResult;
+        try {
+            queryResult = this.runQueryIdempotently(query, null, queryId, idempotencyKey, response);
+        } finally {
+            queryTemplateService.recordExecution(template, System.nanoTime() - start);
+        }
+        response.setHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+        response.getWriter().write(queryResult);
+    }
+
+    @PostMapping(ApiEndpoints.SCHEDULED_QUERIES)
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public void createScheduledQuery(@RequestBody String body, HttpServletResponse response) throws IOException {
+        String name;
+        Query query;
+        Duration interval;
+        try {
+            var request = objectMapper.readTree(body);
+            name = request.path("name").asText();
+            query = parseJson(request.path("query").toString(), Query.newBuilder());
+            interval = Duration.parse(request.path("interval").asText());
+        } catch (IOException | DateTimeParseException e) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), "Invalid scheduled query request");
+            return;
+        }
+
+        ScheduledQuery scheduled;
+        try {
+            scheduled = scheduledQueryService.create(name, authenticationService.currentUserName(), query, interval);
+        } catch (IllegalArgumentException e) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), e.getMessage());
+            return;
+        }
+
+        response.setHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+            writeScheduledQuery(generator, scheduled);
+        }
+    }
+
+    @GetMapping(ApiEndpoints.SCHEDULED_QUERIES)
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public void readScheduledQueries(HttpServletResponse response) throws IOException {
+        // The results are read from the database, so no query is run on the chain
+        var scheduledQueries = scheduledQueryService.list();
+        response.setHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+            generator.writeStartArray();
+            for (var scheduled : scheduledQueries)
+                writeScheduledQuery(generator, scheduled);
+            generator.writeEndArray();
+        }
+    }
+
+    private static void writeScheduledQuery(JsonGenerator generator, ScheduledQuery scheduled) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("id", scheduled.getId());
+        generator.writeStringField("name", scheduled.getName());
+        generator.writeFieldName("query");
+        generator.writeRawValue(printJson(Query.parseFrom(scheduled.getQuery())));
+        generator.writeStringField("interval", Duration.ofSeconds(scheduled.getIntervalSeconds()).toString());
+        generator.writeStringField("last_run_at", scheduled.getLastRunAt() == null ? null : scheduled.getLastRunAt().toString());
+        generator.writeFieldName("result");
+        if (scheduled.getLastResult() == null)
+            generator.writeNull();
+        else
+            generator.writeRawValue(printJson(QueryResult.parseFrom(scheduled.getLastResult())));
+        generator.writeStringField("error", scheduled.getLastError());
+        generator.writeEndObject();
+    }
+
+    @DeleteMapping(ApiEndpoints.SCHEDULED_QUERY)
+    @ResponseStatus(HttpStatus.OK)
+    public void deleteScheduledQuery(@PathVariable("id") long id, HttpServletResponse response) throws IOException {
+        if (!scheduledQueryService.delete(id))
+            response.sendError(HttpStatus.NOT_FOUND.value(), "Unknown scheduled query");
+    }
+
+    @GetMapping(value = ApiEndpoints.EVENTS, produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamQueryEvents(HttpServletResponse response) throws IOException {
+        try {
+            return queryEventService.subscribe(authenticationService.currentUserName());
+        } catch (IllegalStateException e) {
+            response.sendError(HttpStatus.TOO_MANY_REQUESTS.value(), e.getMessage());
+            return null;
+        }
+    }
+
     @GetMapping(ApiEndpoints.READ)
     @ResponseStatus(HttpStatus.OK)
     @ResponseBody
@@ -67,8 +609,49 @@ public class QueryController {
         response.getWriter().write(objectMapper.writeValueAsString(result));
     }
 
-    public static void main(String[] args) throws InvalidProtocolBufferException {
-        System.out.println(decode64("CAA=", QueryResult::parseFrom));
+    @GetMapping(ApiEndpoints.MINE)
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public void readMyQueries(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        int limit;
+        Long after;
+        try {
+            var limitParam = request.getParameter("limit");
+            limit = limitParam == null ? defaultHistoryPageSize : Integer.parseInt(limitParam);
+            var afterParam = request.getParameter("after");
+            after = afterParam == null ? null : Long.parseLong(afterParam);
+        } catch (NumberFormatException e) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), "Invalid paging parameters");
+            return;
+        }
+        if (limit <= 0) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), "Invalid paging parameters");
+            return;
+        }
+        limit = Math.min(limit, maxHistoryPageSize);
+
+        // One extra entry is fetched to find out whether there is a next page
+        var entries = queryHistoryService.getHistory(authenticationService.currentUserName(), after, limit + 1);
+        if (entries.size() > limit) {
+            entries = entries.subList(0, limit);
+            response.setHeader(UserController.NEXT_CURSOR_HEADER, entries.getLast().getId().toString());
+        }
+
+        response.setHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+            generator.writeStartArray();
+            for (var entry : entries) {
+                generator.writeStartObject();
+                generator.writeNumberField("id", entry.getId());
+                generator.writeStringField("created_at", entry.getCreatedAt().toString());
+                generator.writeFieldName("query");
+                generator.writeRawValue(printJson(Query.parseFrom(entry.getQuery())));
+                generator.writeFieldName("result");
+                generator.writeRawValue(printJson(QueryResult.parseFrom(entry.getResult())));
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        }
     }
 }
 
@@ -1,5 +1,6 @@
 package nl.medtechchain.controllers;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.persistence.EntityExistsException;
@@ -15,6 +16,7 @@ import nl.medtechchain.jwt.JwtProvider;
 import nl.medtechchain.models.Researcher;
 import nl.medtechchain.models.UserData;
 import nl.medtechchain.services.AuthenticationService;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
@@ -42,6 +44,11 @@ import org.springframework.web.bind.annotation.RestController;
 @RequestMapping(ApiEndpoints.USERS_API_PREFIX)
 @RequiredArgsConstructor
 public class UserController {
+    /**
+     * The header with the cursor (userID) of the next page of researchers, if there is one.
+     */
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     private final AuthenticationManager authenticationManager;
 
     private final AuthenticationService authenticationService;
@@ -50,6 +57,12 @@ public class UserController {
 
     private final ObjectMapper objectMapper;
 
+    @Value("${researchers.page-size.default}")
+    private int defaultPageSize;
+
+    @Value("${researchers.page-size.max}")
+    private int maxPageSize;
+
     /**
      * Checks whether the given JSON node has all the specified fields.
      * If at least one field is not present in the JSON node,
@@ -130,24 +143,62 @@ public class UserController {
     }
 
     /**
-     * Retrieves all researchers that are stored in the database.
+     * Retrieves one page of the researchers that are stored in the database, sorted by userID.
      * For each researcher, their userID, first name, last name, email and affiliation are returned.
+     * The following optional query parameters are supported:
+     *  - limit: the maximum number of researchers on the page (capped by the configured maximum)
+     *  - after: the userID of the last researcher of the previous page (keyset cursor)
+     *  - affiliation: only return researchers with exactly this affiliation
+     *  - search: only return researchers whose first name, last name or email start with it
+     * If there are more researchers, the cursor for the next page is sent back
+     *  in the NEXT_CURSOR_HEADER header. The page itself is streamed as a compact JSON array.
      * Only admin is allowed to perform this operation, which will be checked with the JWT
      *  (Spring Security performs the actual authorization check in AuthorizationFilter).
      * The JWT is assumed to be in the "Authorization" header and start with "Bearer ".
      *
+     * @param request           the HTTP request that has been received form the client
      * @param response          the HTTP response that will be sent back
      * @throws IOException      if something goes wrong with the servlets
      */
     @GetMapping(ApiEndpoints.GET_RESEARCHERS)
     @ResponseStatus(HttpStatus.OK)
     @ResponseBody
-    public void getAllResearchers(HttpServletResponse response) throws IOException {
-        List<Researcher> researchers = this.authenticationService.getAllResearchers();
-        String responseBody = this.objectMapper
-                .writerWithDefaultPrettyPrinter().writeValueAsString(researchers);
+    public void getAllResearchers(HttpServletRequest request,
+                                  HttpServletResponse response) throws IOException {
+        int limit;
+        UUID after;
+        try {
+            String limitParam = request.getParameter("limit");
+            limit = limitParam == null ? this.defaultPageSize : Integer.parseInt(limitParam);
+            String afterParam = request.getParameter("after");
+            after = afterParam == null ? null : UUID.fromString(afterParam);
+        } catch (Exception e) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), "Invalid paging parameters");
+            return;
+        }
+        if (limit <= 0) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), "Invalid paging parameters");
+            return;
+        }
+        limit = Math.min(limit, this.maxPageSize);
+
+        // One extra researcher is fetched to find out whether there is a next page
+        List<Researcher> researchers = this.authenticationService.getResearchers(after,
+                request.getParameter("affiliation"), request.getParameter("search"), limit + 1);
+        if (researchers.size() > limit) {
+            researchers = researchers.subList(0, limit);
+            response.setHeader(NEXT_CURSOR_HEADER, researchers.getLast().getUserId().toString());
+        }
+
         response.setHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON.toString());
-        response.getWriter().write(responseBody);
+        try (JsonGenerator generator = this.objectMapper.getFactory()
+                .createGenerator(response.getOutputStream())) {
+            generator.writeStartArray();
+            for (Researcher researcher : researchers) {
+                generator.writeObject(researcher);
+            }
+            generator.writeEndArray();
+        }
     }
 
     /**
@@ -1,6 +1,12 @@
 package nl.medtechchain.controllers.error;
 
 import jakarta.servlet.http.HttpServletRequest;
+import nl.medtechchain.concurrency.ConcurrencyLimitExceededException;
+import nl.medtechchain.idempotency.IdempotencyException;
+import nl.medtechchain.lifecycle.ServiceShuttingDownException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -9,11 +15,85 @@ import org.springframework.web.bind.annotation.ExceptionHandler;
 
 /**
  * A class for global exception handling.
- * All exceptions are converted into 500 INTERNAL SERVER ERROR.
+ * All exceptions are converted into 500 INTERNAL SERVER ERROR, except for calls that are rejected
+ *  because the blockchain is overloaded or the backend is shutting down, which are converted
+ *  into 503 SERVICE UNAVAILABLE, and requests with an invalid or conflicting Idempotency-Key (400, 409 or 422).
  */
 @ControllerAdvice
 public class GlobalExceptionHandler {
 
+    private static final Logger logger = LoggerFactory.getLogger(GlobalExceptionHandler.class);
+
+    // Another instance (or this one, after a restart) can take the request almost at once
+    private static final long SHUTTING_DOWN_RETRY_AFTER_SECONDS = 1;
+
+    /**
+     * Converts a call that has been rejected by the concurrency limiter (the blockchain is slow
+     *  and already has as many calls in flight as it can handle) into 503 SERVICE UNAVAILABLE.
+     * The Retry-After header tells the client after how many seconds it can try again.
+     *
+     * @param ex            the thrown exception that is being handled
+     * @param request       the HTTP request that is being handled
+     * @return              the response entity with status code 503 and the Retry-After header
+     */
+    @ExceptionHandler(ConcurrencyLimitExceededException.class)
+    public ResponseEntity<ErrorResponse> handleConcurrencyLimitExceeded(
+            ConcurrencyLimitExceededException ex, HttpServletRequest request) {
+        ErrorResponse errorResponse = new ErrorResponse(
+                HttpStatus.SERVICE_UNAVAILABLE.value(),
+                "Service Unavailable",
+                ex.getMessage(),
+                request.getRequestURI()
+        );
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(errorResponse);
+    }
+
+    /**
+     * Converts a call that has been rejected because the backend is shutting down (see
+     *  GatewayLifecycle) into 503 SERVICE UNAVAILABLE, with a Retry-After header, so that the
+     *  client retries the request on another instance.
+     *
+     * @param ex            the thrown exception that is being handled
+     * @param request       the HTTP request that is being handled
+     * @return              the response entity with status code 503 and the Retry-After header
+     */
+    @ExceptionHandler(ServiceShuttingDownException.class)
+    public ResponseEntity<ErrorResponse> handleServiceShuttingDown(
+            ServiceShuttingDownException ex, HttpServletRequest request) {
+        ErrorResponse errorResponse = new ErrorResponse(
+                HttpStatus.SERVICE_UNAVAILABLE.value(),
+                "Service Unavailable",
+                ex.getMessage(),
+                request.getRequestURI()
+        );
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(SHUTTING_DOWN_RETRY_AFTER_SECONDS))
+                .body(errorResponse);
+    }
+
+    /**
+     * Converts a request whose Idempotency-Key cannot be used into the corresponding status:
+     *  400 BAD REQUEST (invalid key), 409 CONFLICT (the first request with the key is still
+     *  running) or 422 UNPROCESSABLE ENTITY (the key has been used for a different request).
+     *
+     * @param ex            the thrown exception that is being handled
+     * @param request       the HTTP request that is being handled
+     * @return              the response entity with the corresponding status code and error message
+     */
+    @ExceptionHandler(IdempotencyException.class)
+    public ResponseEntity<ErrorResponse> handleIdempotencyException(IdempotencyException ex,
+                                                                    HttpServletRequest request) {
+        ErrorResponse errorResponse = new ErrorResponse(
+                ex.getStatus().value(),
+                ex.getStatus().getReasonPhrase(),
+                ex.getMessage(),
+                request.getRequestURI()
+        );
+        return new ResponseEntity<>(errorResponse, ex.getStatus());
+    }
+
     /**
      * Converts the thrown exception into a ResponseEntity to be sent to the client.
      *
@@ -29,7 +109,7 @@ public class GlobalExceptionHandler {
                 ex.getMessage(),
                 request.getRequestURI()
         );
-        ex.printStackTrace();
+        logger.error("Unhandled exception for {}", request.getRequestURI(), ex);
         return new ResponseEntity<>(errorResponse, HttpStatus.INTERNAL_SERVER_ERROR);
     }
 }
\ No newline at end of file
@@ -0,0 +1,184 @@
+package nl.medtechchain.events;
+
+import java.io.IOException;
+import java.util.Set;
+import nl.medtechchain.cache.InvalidationBus;
+import nl.medtechchain.cache.InvalidationMessage;
+import nl.medtechchain.config.GatewayConnection;
+import nl.medtechchain.repositories.EventCheckpointRepository;
+import org.hyperledger.fabric.client.ChaincodeEvent;
+import org.hyperledger.fabric.client.CloseableIterator;
+import org.hyperledger.fabric.client.Network;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+
+/**
+ * A subscription to the chaincode events of the chain, which only runs on the leader
+ *  (see LeaderElection). Its progress is stored with a JpaCheckpointer, so that the next leader
+ *  resumes after the last processed event.
+ * <br>
+ * Every received event is published as a Spring application event (ChaincodeEvent), so that other
+ *  components can process it exactly once across all instances. Events that change the platform or
+ *  network config (e.g. an update by another organization) are also sent to all instances as
+ *  invalidation messages (see InvalidationBus), which also tell the clients that follow the config
+ *  event stream to fetch the configs again (see ConfigEventService).
+ */
+@Component
+@ConditionalOnProperty(name = "events.enabled", havingValue = "true")
+public class ChaincodeEventListener implements LeadershipListener, Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChaincodeEventListener.class);
+
+    private final GatewayConnection gatewayConnection;
+
+    private final EventCheckpointRepository eventCheckpointRepository;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final InvalidationBus invalidationBus;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final String chaincodeName;
+
+    private final Set<String> platformConfigEvents;
+
+    private final Set<String> networkConfigEvents;
+
+    private final long retryDelayMs;
+
+    private volatile boolean active = false;
+
+    private volatile CloseableIterator<ChaincodeEvent> events;
+
+    private Thread thread;
+
+    /**
+     * Creates a ChaincodeEventListener object.
+     * The configuration properties are taken from the application.properties file.
+     *
+     * @param env                       the Spring environment (to access the defined properties)
+     * @param gatewayConnection         the (lazy) connection to the chain
+     * @param eventCheckpointRepository the repository with the checkpoints
+     * @param transactionTemplate       the transaction template to claim the checkpoint
+     * @param invalidationBus           the bus that tells all instances which configs have changed
+     * @param eventPublisher            the publisher of the application events
+     */
+    public ChaincodeEventListener(Environment env, GatewayConnection gatewayConnection,
+                                  EventCheckpointRepository eventCheckpointRepository,
+                                  TransactionTemplate transactionTemplate,
+                                  InvalidationBus invalidationBus,
+                                  ApplicationEventPublisher eventPublisher) {
+        this.gatewayConnection = gatewayConnection;
+        this.eventCheckpointRepository = eventCheckpointRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.invalidationBus = invalidationBus;
+        this.eventPublisher = eventPublisher;
+        this.chaincodeName = env.getProperty("gateway.chaincode-name", "");
+        this.platformConfigEvents = Set.of(env.getProperty(
+                "events.platform-config-event-names", String[].class, new String[]{}));
+        this.networkConfigEvents = Set.of(env.getProperty(
+                "events.network-config-event-names", String[].class, new String[]{}));
+        this.retryDelayMs = env.getProperty("events.retry-delay-ms", Long.class, 5000L);
+    }
+
+    /**
+     * Starts the subscription on its own thread.
+     */
+    @Override
+    public void onLeadershipAcquired() {
+        this.active = true;
+        this.thread = Thread.ofPlatform().name("chaincode-event-listener").daemon().start(this);
+    }
+
+    /**
+     * Stops the subscription and waits (briefly) until the last event has been processed.
+     */
+    @Override
+    public void onLeadershipRevoked() {
+        this.active = false;
+        CloseableIterator<ChaincodeEvent> current = this.events;
+        if (current != null) {
+            current.close();
+        }
+        this.thread.interrupt();
+        try {
+            this.thread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Receives and processes the events until the subscription is stopped, resubscribing from
+     *  the last checkpoint when the stream fails.
+     */
+    @Override
+    public void run() {
+        String name = "chaincode:" + this.chaincodeName;
+        JpaCheckpointer checkpointer = null;
+        while (this.active) {
+            try {
+                // The checkpoint is claimed once per leadership; when resubscribing, the
+                //  checkpointer already knows the last stored checkpoint
+                if (checkpointer == null) {
+                    checkpointer = new JpaCheckpointer(name, this.eventCheckpointRepository,
+                            this.transactionTemplate);
+                }
+                Network network = this.gatewayConnection.getNetwork();
+                try (CloseableIterator<ChaincodeEvent> iterator = network
+                        .newChaincodeEventsRequest(this.chaincodeName)
+                        .checkpoint(checkpointer)
+                        .build()
+                        .getEvents()) {
+                    this.events = iterator;
+                    logger.info("Listening for chaincode events from block {}",
+                            checkpointer.getBlockNumber());
+                    while (this.active && iterator.hasNext()) {
+                        ChaincodeEvent event = iterator.next();
+                        this.handle(event);
+                        checkpointer.checkpointChaincodeEvent(event);
+                    }
+                } finally {
+                    this.events = null;
+                }
+            } catch (CheckpointFencedException e) {
+                logger.warn("Another leader has taken over the chaincode events, stopping", e);
+                this.active = false;
+            } catch (IOException | RuntimeException e) {
+                if (!this.active) {
+                    break;
+                }
+                logger.warn("The chaincode event stream has failed, resubscribing", e);
+                try {
+                    Thread.sleep(this.retryDelayMs);
+                } catch (InterruptedException interrupted) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Processes one chaincode event.
+     *
+     * @param event the received event
+     */
+    private void handle(ChaincodeEvent event) {
+        if (this.platformConfigEvents.contains(event.getEventName())) {
+            this.invalidationBus.publish(
+                    InvalidationMessage.of(InvalidationMessage.Type.PLATFORM_CONFIG));
+        }
+        if (this.networkConfigEvents.contains(event.getEventName())) {
+            this.invalidationBus.publish(
+                    InvalidationMessage.of(InvalidationMessage.Type.NETWORK_CONFIG));
+        }
+        this.eventPublisher.publishEvent(event);
+    }
+}
@@ -0,0 +1,21 @@
+package nl.medtechchain.events;
+
+import java.io.IOException;
+
+
+/**
+ * An exception that is thrown when a checkpoint cannot be stored because another leader has
+ *  claimed the subscription since (see JpaCheckpointer). The subscription has to stop, instead
+ *  of resubscribing like after other failures.
+ */
+public class CheckpointFencedException extends IOException {
+
+    /**
+     * Creates a CheckpointFencedException object.
+     *
+     * @param message   the error message
+     */
+    public CheckpointFencedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,193 @@
+package nl.medtechchain.events;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.OptionalLong;
+import nl.medtechchain.models.EventCheckpoint;
+import nl.medtechchain.repositories.EventCheckpointRepository;
+import org.hyperledger.fabric.client.ChaincodeEvent;
+import org.hyperledger.fabric.client.Checkpointer;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+
+/**
+ * A Fabric Checkpointer that stores the progress of an event subscription in the database
+ *  (see EventCheckpoint), so that it is shared by all instances of the backend: when the leader
+ *  dies, the next leader resumes from the last checkpoint instead of from the start (or the end)
+ *  of the chain.
+ * <br>
+ * Every JpaCheckpointer claims the checkpoint when it is created, by increasing its epoch. It only
+ *  stores its progress while the checkpoint is still claimed in its epoch, so that a leader that
+ *  has been replaced (but has not noticed it yet) cannot move the checkpoint of the next leader
+ *  back; it gets a CheckpointFencedException instead, and has to stop.
+ */
+public class JpaCheckpointer implements Checkpointer {
+
+    // Attempts to claim the checkpoint (when two instances create it at the same time), and the
+    //  delay before the next attempt (multiplied by the number of the failed attempt)
+    private static final int MAX_CLAIM_ATTEMPTS = 5;
+
+    private static final long CLAIM_BACKOFF_MS = 100;
+
+    private final String name;
+
+    private final EventCheckpointRepository eventCheckpointRepository;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final long epoch;
+
+    private volatile OptionalLong blockNumber = OptionalLong.empty();
+
+    private volatile Optional<String> transactionId = Optional.empty();
+
+    /**
+     * Creates a JpaCheckpointer object, which claims the checkpoint and starts from the stored
+     *  checkpoint (if any).
+     *
+     * @param name                      the name of the subscription
+     * @param eventCheckpointRepository the repository with the checkpoints
+     * @param transactionTemplate       the transaction template to read and claim the checkpoint
+     *                                  (read-write, so that it is sent to the primary)
+     */
+    public JpaCheckpointer(String name, EventCheckpointRepository eventCheckpointRepository,
+                           TransactionTemplate transactionTemplate) {
+        this.name = name;
+        this.eventCheckpointRepository = eventCheckpointRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.epoch = this.claim();
+    }
+
+    /**
+     * Claims the checkpoint, retrying (after a short delay) when another instance creates it at
+     *  the same time.
+     *
+     * @return the epoch in which the checkpoint has been claimed
+     * @throws DataIntegrityViolationException if the checkpoint cannot be claimed after
+     *                                         MAX_CLAIM_ATTEMPTS attempts
+     * @throws IllegalStateException if the thread is interrupted while waiting to retry
+     */
+    private long claim() {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return this.transactionTemplate.execute(status -> this.claimOnce());
+            } catch (DataIntegrityViolationException e) {
+                // Created by another instance meanwhile
+                if (attempt == MAX_CLAIM_ATTEMPTS) {
+                    throw e;
+                }
+            }
+            try {
+                Thread.sleep(CLAIM_BACKOFF_MS * attempt);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while claiming the checkpoint of "
+                        + this.name, e);
+            }
+        }
+    }
+
+    /**
+     * Claims the checkpoint in the current transaction. The checkpoint is locked while it is
+     *  read, so that the epoch cannot change before it is increased.
+     *
+     * @return the epoch in which the checkpoint has been claimed
+     * @throws DataIntegrityViolationException if another instance has created the checkpoint
+     *                                         since it was read
+     */
+    private long claimOnce() {
+        Optional<EventCheckpoint> stored = this.eventCheckpointRepository.findForUpdate(this.name);
+        if (stored.isEmpty()) {
+            this.eventCheckpointRepository.insertClaimed(this.name, Instant.now());
+            return 1;
+        }
+        EventCheckpoint checkpoint = stored.get();
+        this.eventCheckpointRepository.claim(this.name, checkpoint.getEpoch(), Instant.now());
+        if (checkpoint.getBlockNumber() != null) {
+            this.blockNumber = OptionalLong.of(checkpoint.getBlockNumber());
+            this.transactionId = Optional.ofNullable(checkpoint.getTransactionId());
+        }
+        return checkpoint.getEpoch() + 1;
+    }
+
+    /**
+     * Records that the given block has been processed completely.
+     *
+     * @param blockNumber   the number of the processed block
+     * @throws IOException  if the checkpoint cannot be stored
+     */
+    @Override
+    public void checkpointBlock(long blockNumber) throws IOException {
+        this.store(blockNumber + 1, null);
+    }
+
+    /**
+     * Records that the given transaction (and all transactions before it) have been processed.
+     *
+     * @param blockNumber   the number of the block that contains the transaction
+     * @param transactionId the ID of the processed transaction
+     * @throws IOException  if the checkpoint cannot be stored
+     */
+    @Override
+    public void checkpointTransaction(long blockNumber, String transactionId) throws IOException {
+        this.store(blockNumber, transactionId);
+    }
+
+    /**
+     * Records that the given chaincode event has been processed.
+     *
+     * @param event         the processed event
+     * @throws IOException  if the checkpoint cannot be stored
+     */
+    @Override
+    public void checkpointChaincodeEvent(ChaincodeEvent event) throws IOException {
+        this.checkpointTransaction(event.getBlockNumber(), event.getTransactionId());
+    }
+
+    /**
+     * Gets the block number to resume from.
+     *
+     * @return the block number, or empty if nothing has been processed yet
+     */
+    @Override
+    public OptionalLong getBlockNumber() {
+        return this.blockNumber;
+    }
+
+    /**
+     * Gets the last processed transaction in the block to resume from.
+     *
+     * @return the transaction ID, or empty if the block has not been processed at all
+     */
+    @Override
+    public Optional<String> getTransactionId() {
+        return this.transactionId;
+    }
+
+    /**
+     * Stores the checkpoint in the database and in memory.
+     *
+     * @param blockNumber   the block number to resume from
+     * @param transactionId the last processed transaction in that block (or null)
+     * @throws CheckpointFencedException if another leader has claimed the checkpoint
+     * @throws IOException  if the checkpoint cannot be stored
+     */
+    private void store(long blockNumber, String transactionId) throws IOException {
+        int updated;
+        try {
+            updated = this.eventCheckpointRepository.store(this.name, this.epoch, blockNumber,
+                    transactionId, Instant.now());
+        } catch (DataAccessException e) {
+            throw new IOException("Could not store the checkpoint of " + this.name, e);
+        }
+        if (updated == 0) {
+            throw new CheckpointFencedException("The checkpoint of " + this.name
+                    + " has been claimed by another leader since epoch " + this.epoch);
+        }
+        this.blockNumber = OptionalLong.of(blockNumber);
+        this.transactionId = Optional.ofNullable(transactionId);
+    }
+}
@@ -0,0 +1,210 @@
+package nl.medtechchain.events;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Properties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+
+/**
+ * A component that elects one instance of the backend as the leader, using a Postgres advisory
+ *  lock. Only the leader runs the LeadershipListeners (e.g. the ChaincodeEventListener), so that
+ *  their work (and database writes) are not duplicated by every instance.
+ * <br>
+ * Every instance tries to take the session-level lock `events.leader.lock-key` on its own
+ *  connection (not one from the pool, since the lock lives as long as the session). The instance
+ *  that gets it is the leader until its session ends: when the instance dies, Postgres releases
+ *  the lock and another instance takes it at its next attempt (within the poll interval).
+ * The leader checks its connection every poll interval, and steps down as soon as the connection
+ *  is lost (since the lock has been released then as well).
+ */
+@Component
+@ConditionalOnProperty(name = "events.enabled", havingValue = "true")
+public class LeaderElection implements SmartLifecycle, Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(LeaderElection.class);
+
+    private final DataSourceProperties dataSourceProperties;
+
+    private final List<LeadershipListener> listeners;
+
+    @Value("${events.leader.lock-key}")
+    private long lockKey;
+
+    @Value("${events.leader.poll-interval-ms}")
+    private long pollIntervalMs;
+
+    private volatile boolean running = false;
+
+    private volatile boolean leader = false;
+
+    private Thread thread;
+
+    private Connection connection;
+
+    /**
+     * Creates a LeaderElection object.
+     *
+     * @param dataSourceProperties  the properties of the primary database (`spring.datasource.*`)
+     * @param listeners             the components that only run on the leader
+     * @param meterRegistry         the registry of the metrics (whether this instance is leader)
+     */
+    public LeaderElection(DataSourceProperties dataSourceProperties,
+                          List<LeadershipListener> listeners, MeterRegistry meterRegistry) {
+        this.dataSourceProperties = dataSourceProperties;
+        this.listeners = listeners;
+        Gauge.builder("events.leader", this, election -> election.isLeader() ? 1 : 0)
+                .description("Whether this instance runs the chain event listeners")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Checks whether this instance is currently the leader.
+     *
+     * @return true if this instance holds the leader lock, false otherwise
+     */
+    public boolean isLeader() {
+        return this.leader;
+    }
+
+    /**
+     * Starts the election thread.
+     */
+    @Override
+    public void start() {
+        this.running = true;
+        this.thread = Thread.ofPlatform().name("leader-election").daemon().start(this);
+    }
+
+    /**
+     * Stops the election thread; if this instance is the leader, it steps down and releases the
+     *  lock, so that another instance can take over immediately.
+     */
+    @Override
+    public void stop() {
+        this.running = false;
+        this.thread.interrupt();
+        try {
+            this.thread.join(this.pollIntervalMs + 5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Checks whether the election thread is running.
+     *
+     * @return true if the election thread has been started and not stopped, false otherwise
+     */
+    @Override
+    public boolean isRunning() {
+        return this.running;
+    }
+
+    /**
+     * Tries to become the leader (or checks that this instance still is) every poll interval,
+     *  until the election is stopped.
+     */
+    @Override
+    public void run() {
+        while (this.running) {
+            try {
+                if (this.connection == null) {
+                    this.connection = this.connect();
+                }
+                if (this.leader) {
+                    try (Statement statement = this.connection.createStatement()) {
+                        statement.execute("SELECT 1");
+                    }
+                } else if (this.tryLock()) {
+                    logger.info("This instance is now the leader");
+                    this.leader = true;
+                    this.listeners.forEach(LeadershipListener::onLeadershipAcquired);
+                }
+            } catch (SQLException e) {
+                logger.warn("Lost the connection of the leader election", e);
+                this.closeConnection();
+                this.stepDown();
+            }
+
+            try {
+                Thread.sleep(this.pollIntervalMs);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+
+        this.stepDown();
+        this.closeConnection();
+    }
+
+    /**
+     * Opens the connection that holds the lock. TCP keep-alive is enabled, so that a connection
+     *  that has silently been dropped is detected (by both sides).
+     *
+     * @return the opened connection
+     * @throws SQLException if the connection cannot be opened
+     */
+    private Connection connect() throws SQLException {
+        Properties properties = new Properties();
+        properties.setProperty("user", this.dataSourceProperties.determineUsername());
+        properties.setProperty("password", this.dataSourceProperties.determinePassword());
+        properties.setProperty("tcpKeepAlive", "true");
+        properties.setProperty("ApplicationName", "medtechchain-leader-election");
+        return DriverManager.getConnection(this.dataSourceProperties.determineUrl(), properties);
+    }
+
+    /**
+     * Tries to take the leader lock (without waiting).
+     *
+     * @return true if the lock has been taken, false if another instance holds it
+     * @throws SQLException if the connection has been lost
+     */
+    private boolean tryLock() throws SQLException {
+        try (PreparedStatement statement =
+                     this.connection.prepareStatement("SELECT pg_try_advisory_lock(?)")) {
+            statement.setLong(1, this.lockKey);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() && resultSet.getBoolean(1);
+            }
+        }
+    }
+
+    /**
+     * Stops the leader-only components, if this instance is the leader.
+     */
+    private void stepDown() {
+        if (this.leader) {
+            logger.info("This instance is no longer the leader");
+            this.leader = false;
+            this.listeners.forEach(LeadershipListener::onLeadershipRevoked);
+        }
+    }
+
+    /**
+     * Closes the connection, which also releases the lock (if held).
+     */
+    private void closeConnection() {
+        if (this.connection != null) {
+            try {
+                this.connection.close();
+            } catch (SQLException e) {
+                logger.debug("Could not close the connection of the leader election", e);
+            }
+            this.connection = null;
+        }
+    }
+}
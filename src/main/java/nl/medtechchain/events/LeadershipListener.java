@@ -0,0 +1,22 @@
+package nl.medtechchain.events;
+
+/**
+ * A component that should only run on one instance of the backend at a time (the leader),
+ *  e.g. a subscription to the events of the chain. See LeaderElection.
+ * Both methods are called on the thread of the leader election, so they should return quickly;
+ *  onLeadershipRevoked may wait briefly for the work to stop, so that it does not overlap with
+ *  the work of the next leader.
+ */
+public interface LeadershipListener {
+
+    /**
+     * Called when this instance has become the leader: the component should start its work.
+     */
+    void onLeadershipAcquired();
+
+    /**
+     * Called when this instance is no longer the leader (e.g. its connection to the database has
+     *  been lost, or it is shutting down): the component should stop its work.
+     */
+    void onLeadershipRevoked();
+}
@@ -0,0 +1,53 @@
+package nl.medtechchain.fanout;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import java.util.ArrayList;
+import java.util.List;
+import nl.medtechchain.proto.common.ChaincodeResponse;
+import nl.medtechchain.proto.query.QueryResult;
+import nl.medtechchain.protoutils.Base64EncodingOps;
+
+
+/**
+ * The decoded results of the queries of a fan-out: either the results of all queries, or the
+ *  first response that is an error (of the chaincode, or of the query itself).
+ *
+ * @param results   the results of the queries, in the order of the queries (null if failed)
+ * @param failure   the first failed response of the chaincode (null if all were successful)
+ */
+public record FanOutResult(List<QueryResult> results, ChaincodeResponse failure) {
+
+    /**
+     * Decodes the responses of the chaincode.
+     *
+     * @param responses     the responses of the chaincode, in the order of the queries
+     * @return              the decoded results, or the first failed response
+     * @throws InvalidProtocolBufferException if a result cannot be decoded
+     */
+    public static FanOutResult of(List<ChaincodeResponse> responses)
+            throws InvalidProtocolBufferException {
+        List<QueryResult> results = new ArrayList<>(responses.size());
+        for (ChaincodeResponse response : responses) {
+            if (response.getChaincodeResponseCase()
+                    != ChaincodeResponse.ChaincodeResponseCase.SUCCESS) {
+                return new FanOutResult(null, response);
+            }
+            QueryResult result = Base64EncodingOps.decode64(response.getSuccess().getMessage(),
+                    QueryResult::parseFrom);
+            if (result.hasError()) {
+                return new FanOutResult(null, response);
+            }
+            results.add(result);
+        }
+        return new FanOutResult(results, null);
+    }
+
+    /**
+     * Checks whether a query has failed.
+     *
+     * @return true if a query has failed, false otherwise
+     */
+    public boolean isFailed() {
+        return this.failure != null;
+    }
+}
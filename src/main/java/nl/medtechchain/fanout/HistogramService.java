@@ -0,0 +1,151 @@
+package nl.medtechchain.fanout;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import java.util.ArrayList;
+import java.util.List;
+import nl.medtechchain.proto.common.ChaincodeResponse;
+import nl.medtechchain.proto.devicedata.DeviceDataFieldType;
+import nl.medtechchain.proto.query.Filter;
+import nl.medtechchain.proto.query.Query;
+import nl.medtechchain.protoutils.DeviceDataFieldTypeMapper;
+import org.hyperledger.fabric.client.CommitException;
+import org.hyperledger.fabric.client.GatewayException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+
+/**
+ * A service class that computes the histogram of an integer field of the device data
+ *  (e.g. `battery_level`): the COUNT of a base query per bin, with one query per bin that run in
+ *  parallel (see QueryFanOut), instead of one request per bin from the client.
+ * <br>
+ * The bins are given by their boundaries: n boundaries give n - 1 bins, and every bin contains
+ *  the values from its lower boundary (inclusive, GREATER_THAN_OR_EQUAL) up to its upper
+ *  boundary (exclusive, LESS_THAN), so the bins do not overlap.
+ */
+@Service
+public class HistogramService {
+
+    private final QueryFanOut queryFanOut;
+
+    private final int maxBins;
+
+    /**
+     * A bin of the histogram.
+     *
+     * @param lower     the lower boundary of the bin (inclusive)
+     * @param upper     the upper boundary of the bin (exclusive)
+     * @param count     the count of the base query in the bin
+     */
+    public record Bin(long lower, long upper, long count) {
+    }
+
+    /**
+     * The outcome of a histogram: either the bins, or the first failed response of a bin.
+     *
+     * @param bins      the bins of the histogram, in ascending order (null if failed)
+     * @param failure   the failed response of the chaincode (null if successful)
+     */
+    public record Histogram(List<Bin> bins, ChaincodeResponse failure) {
+
+        /**
+         * Checks whether a bin has failed.
+         *
+         * @return true if the histogram has failed, false otherwise
+         */
+        public boolean isFailed() {
+            return this.failure != null;
+        }
+    }
+
+    /**
+     * Creates a HistogramService object.
+     *
+     * @param queryFanOut   the service that runs the bin queries in parallel
+     * @param maxBins       the maximum number of bins of one histogram
+     */
+    public HistogramService(QueryFanOut queryFanOut,
+                            @Value("${queries.fanout.max-buckets}") int maxBins) {
+        this.queryFanOut = queryFanOut;
+        this.maxBins = maxBins;
+    }
+
+    /**
+     * Computes the histogram of an integer field.
+     *
+     * @param baseQuery     the query that is counted per bin (with the submitter set);
+     *                       its type has to be COUNT (or unspecified)
+     * @param field         the integer field of the device data
+     * @param boundaries    the boundaries of the bins, in strictly ascending order
+     * @param affiliation   the affiliation of the submitter
+     * @return              the histogram
+     * @throws IllegalArgumentException         if the query, the field or the boundaries are
+     *                                           invalid, or there would be too many bins
+     * @throws GatewayException                 if a query cannot be run on the chain
+     * @throws CommitException                  if a query cannot be committed
+     * @throws InvalidProtocolBufferException   if a response cannot be decoded
+     */
+    public Histogram compute(Query baseQuery, String field, List<Long> boundaries,
+                             String affiliation)
+            throws GatewayException, CommitException, InvalidProtocolBufferException {
+        if (baseQuery.getQueryType() != Query.QueryType.COUNT
+                && baseQuery.getQueryType() != Query.QueryType.QUERY_TYPE_UNSPECIFIED) {
+            throw new IllegalArgumentException("Only COUNT queries can be used for a histogram");
+        }
+        if (DeviceDataFieldTypeMapper.fromFieldName(field) != DeviceDataFieldType.INTEGER) {
+            throw new IllegalArgumentException("Unknown integer field: " + field);
+        }
+        if (boundaries.size() < 2 || boundaries.size() - 1 > this.maxBins) {
+            throw new IllegalArgumentException("A histogram needs between 2 and "
+                    + (this.maxBins + 1) + " boundaries");
+        }
+        for (int i = 1; i < boundaries.size(); i++) {
+            if (boundaries.get(i) <= boundaries.get(i - 1)) {
+                throw new IllegalArgumentException(
+                        "The boundaries have to be in strictly ascending order");
+            }
+        }
+
+        Query base = baseQuery.toBuilder().setQueryType(Query.QueryType.COUNT).build();
+        List<Query> binQueries = new ArrayList<>(boundaries.size() - 1);
+        for (int i = 1; i < boundaries.size(); i++) {
+            binQueries.add(base.toBuilder()
+                    .addFilters(integerFilter(field,
+                            Filter.IntegerFilter.IntOperator.GREATER_THAN_OR_EQUAL,
+                            boundaries.get(i - 1)))
+                    .addFilters(integerFilter(field, Filter.IntegerFilter.IntOperator.LESS_THAN,
+                            boundaries.get(i)))
+                    .build());
+        }
+
+        FanOutResult results = FanOutResult.of(this.queryFanOut.runAll(binQueries, affiliation));
+        if (results.isFailed()) {
+            return new Histogram(null, results.failure());
+        }
+        List<Bin> bins = new ArrayList<>(binQueries.size());
+        for (int i = 1; i < boundaries.size(); i++) {
+            bins.add(new Bin(boundaries.get(i - 1), boundaries.get(i),
+                    results.results().get(i - 1).getCountResult()));
+        }
+        return new Histogram(bins, null);
+    }
+
+    /**
+     * Creates a filter on an integer field (also used to check the field against the query
+     *  interface before the histogram is computed).
+     *
+     * @param field     the name of the integer field
+     * @param operator  the operator
+     * @param value     the boundary
+     * @return          the filter
+     */
+    public static Filter integerFilter(String field, Filter.IntegerFilter.IntOperator operator,
+                                       long value) {
+        return Filter.newBuilder()
+                .setField(field)
+                .setIntegerFilter(Filter.IntegerFilter.newBuilder()
+                        .setOperator(operator)
+                        .setValue(value))
+                .build();
+    }
+}
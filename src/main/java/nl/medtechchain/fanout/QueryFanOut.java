@@ -0,0 +1,245 @@
+package nl.medtechchain.fanout;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.protobuf.InvalidProtocolBufferException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Predicate;
+import nl.medtechchain.cache.InvalidationMessage;
+import nl.medtechchain.concurrency.FairQueryScheduler;
+import nl.medtechchain.idempotency.IdempotencyService;
+import nl.medtechchain.proto.common.ChaincodeResponse;
+import nl.medtechchain.proto.query.Query;
+import nl.medtechchain.proto.query.QueryResult;
+import nl.medtechchain.protoutils.Base64EncodingOps;
+import nl.medtechchain.services.ChaincodeService;
+import org.hyperledger.fabric.client.CommitException;
+import org.hyperledger.fabric.client.GatewayException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+
+/**
+ * A service class that runs many small queries (e.g. one per time bucket) on the chain in
+ *  parallel, instead of one large query, and caches the results of the queries that cannot
+ *  change anymore.
+ * <br>
+ * A fan-out takes one turn in the FairQueryScheduler for all its queries, of which at most
+ *  `queries.fanout.max-in-flight` run at the same time. A turn per query would make the queries
+ *  of one fan-out wait behind each other (and behind a second fan-out of the same researcher)
+ *  until they time out, after some of them have already been committed on the chain.
+ * A query is settled if its time range (by default its `end_time`) ended more than
+ *  `queries.fanout.settle-seconds` ago: no data can be added to it anymore, so its (successful)
+ *  result is cached and a later fan-out over the same range only runs the new queries. The
+ *  cache is keyed by the whole query, including the submitter, so that every researcher runs
+ *  (and is accounted for) their own queries on the chain at least once. It is cleared when the
+ *  platform config changes, since that can change the results.
+ */
+@Service
+public class QueryFanOut {
+
+    private final ChaincodeService chaincodeService;
+
+    private final FairQueryScheduler fairQueryScheduler;
+
+    private final int maxInFlight;
+
+    private final Duration settleTime;
+
+    private final Cache<String, ChaincodeResponse> settledResults;
+
+    /**
+     * Creates a QueryFanOut object.
+     *
+     * @param chaincodeService      the service that runs the queries on the chain
+     * @param fairQueryScheduler    the scheduler that decides when a query may run
+     * @param maxInFlight           the maximum number of queries of one fan-out that run at once
+     * @param settleSeconds         how long after its end a time range cannot change anymore
+     * @param maxCachedResults      the maximum number of settled results that are cached
+     * @param cacheTtlMinutes       how long a settled result is cached
+     */
+    public QueryFanOut(ChaincodeService chaincodeService, FairQueryScheduler fairQueryScheduler,
+                       @Value("${queries.fanout.max-in-flight}") int maxInFlight,
+                       @Value("${queries.fanout.settle-seconds}") long settleSeconds,
+                       @Value("${queries.fanout.cache.max-entries}") long maxCachedResults,
+                       @Value("${queries.fanout.cache.ttl-minutes}") long cacheTtlMinutes) {
+        this.chaincodeService = chaincodeService;
+        this.fairQueryScheduler = fairQueryScheduler;
+        this.maxInFlight = maxInFlight;
+        this.settleTime = Duration.ofSeconds(settleSeconds);
+        this.settledResults = Caffeine.newBuilder()
+                .maximumSize(maxCachedResults)
+                .expireAfterWrite(Duration.ofMinutes(cacheTtlMinutes))
+                .build();
+    }
+
+    /**
+     * Runs the queries in parallel (or takes their settled results from the cache). A query is
+     *  settled if its `end_time` is settled (see `isSettled`).
+     *
+     * @param queries       the queries to run (with the submitter set)
+     * @param affiliation   the affiliation of the submitter (for the FairQueryScheduler)
+     * @return              the responses of the chaincode, in the order of the queries
+     * @throws GatewayException                 if a query cannot be run on the chain
+     * @throws CommitException                  if a query cannot be committed
+     * @throws InvalidProtocolBufferException   if a response cannot be decoded
+     */
+    public List<ChaincodeResponse> runAll(List<Query> queries, String affiliation)
+            throws GatewayException, CommitException, InvalidProtocolBufferException {
+        return this.runAll(queries, query -> query.hasEndTime()
+                && this.isSettled(TimeBuckets.toInstant(query.getEndTime())), affiliation);
+    }
+
+    /**
+     * Runs the queries in parallel (or takes their settled results from the cache).
+     *
+     * @param queries       the queries to run (with the submitter set)
+     * @param settled       decides whether the result of a query cannot change anymore
+     * @param affiliation   the affiliation of the submitter (for the FairQueryScheduler)
+     * @return              the responses of the chaincode, in the order of the queries
+     * @throws GatewayException                 if a query cannot be run on the chain
+     * @throws CommitException                  if a query cannot be committed
+     * @throws InvalidProtocolBufferException   if a response cannot be decoded
+     */
+    public List<ChaincodeResponse> runAll(List<Query> queries, Predicate<Query> settled,
+                                          String affiliation)
+            throws GatewayException, CommitException, InvalidProtocolBufferException {
+        List<ChaincodeResponse> responses = new ArrayList<>(queries.size());
+        List<Integer> uncached = new ArrayList<>();
+        List<String> keys = new ArrayList<>(queries.size());
+        for (int i = 0; i < queries.size(); i++) {
+            Query query = queries.get(i);
+            String key = settled.test(query) ? IdempotencyService.fingerprint(query) : null;
+            ChaincodeResponse cached = key == null ? null : this.settledResults.getIfPresent(key);
+            keys.add(key);
+            responses.add(cached);
+            if (cached == null) {
+                uncached.add(i);
+            }
+        }
+        if (uncached.isEmpty()) {
+            return responses;
+        }
+
+        Semaphore inFlight = new Semaphore(this.maxInFlight);
+        List<Future<ChaincodeResponse>> futures = new ArrayList<>(uncached.size());
+        String submitter = queries.get(uncached.getFirst()).getSubmitter();
+        try (var turn = this.fairQueryScheduler.awaitTurn(submitter, affiliation);
+             ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            // The queries mostly wait for the chain, so every query gets its own virtual thread
+            for (int i : uncached) {
+                Query query = queries.get(i);
+                String key = keys.get(i);
+                futures.add(executor.submit(() -> {
+                    inFlight.acquire();
+                    try {
+                        return this.run(query, key);
+                    } finally {
+                        inFlight.release();
+                    }
+                }));
+            }
+            for (int j = 0; j < uncached.size(); j++) {
+                responses.set(uncached.get(j), this.await(futures.get(j), futures));
+            }
+            return responses;
+        }
+    }
+
+    /**
+     * Runs one query on the chain, and caches its result if it is settled.
+     *
+     * @param query         the query to run (with the submitter set)
+     * @param key           the key of the settled result in the cache, or null if the result
+     *                      can still change
+     * @return              the response of the chaincode
+     * @throws Exception    if the query cannot be run
+     */
+    private ChaincodeResponse run(Query query, String key) throws Exception {
+        ChaincodeResponse response = this.chaincodeService.submitQuery(query);
+        if (key != null && isSuccessful(response)) {
+            this.settledResults.put(key, response);
+        }
+        return response;
+    }
+
+    /**
+     * Waits for the response of a query. If the query has failed, the other queries are
+     *  cancelled and its exception is rethrown.
+     *
+     * @param future    the future of the query
+     * @param all       the futures of all queries of the fan-out
+     * @return          the response of the chaincode
+     * @throws GatewayException                 if the query cannot be run on the chain
+     * @throws CommitException                  if the query cannot be committed
+     * @throws InvalidProtocolBufferException   if the response cannot be decoded
+     */
+    private ChaincodeResponse await(Future<ChaincodeResponse> future,
+                                    List<Future<ChaincodeResponse>> all)
+            throws GatewayException, CommitException, InvalidProtocolBufferException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            all.forEach(other -> other.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the queries", e);
+        } catch (ExecutionException e) {
+            all.forEach(other -> other.cancel(true));
+            switch (e.getCause()) {
+                case GatewayException cause -> throw cause;
+                case CommitException cause -> throw cause;
+                case InvalidProtocolBufferException cause -> throw cause;
+                case RuntimeException cause -> throw cause;
+                case Error cause -> throw cause;
+                default -> throw new IllegalStateException("Cannot run the query", e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Checks whether a time range has ended long enough ago that no data can be added to it.
+     *
+     * @param end       the end of the time range
+     * @return          true if the range ended before the settle time, false otherwise
+     */
+    public boolean isSettled(Instant end) {
+        return end.isBefore(Instant.now().minus(this.settleTime));
+    }
+
+    /**
+     * Checks whether the chaincode has returned a result (and not an error).
+     *
+     * @param response  the response of the chaincode
+     * @return          true if the response contains a result without an error
+     * @throws InvalidProtocolBufferException if the result cannot be decoded
+     */
+    private static boolean isSuccessful(ChaincodeResponse response)
+            throws InvalidProtocolBufferException {
+        return response.getChaincodeResponseCase()
+                == ChaincodeResponse.ChaincodeResponseCase.SUCCESS
+                && !Base64EncodingOps.decode64(response.getSuccess().getMessage(),
+                        QueryResult::parseFrom).hasError();
+    }
+
+    /**
+     * Clears the cached results when the platform config changes (or everything is re-synced).
+     *
+     * @param message   the invalidation message
+     */
+    @EventListener
+    public void onInvalidation(InvalidationMessage message) {
+        if (message.type() == InvalidationMessage.Type.PLATFORM_CONFIG
+                || message.type() == InvalidationMessage.Type.ALL) {
+            this.settledResults.invalidateAll();
+        }
+    }
+}
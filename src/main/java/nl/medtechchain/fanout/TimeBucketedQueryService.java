@@ -0,0 +1,127 @@
+package nl.medtechchain.fanout;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import nl.medtechchain.proto.common.ChaincodeResponse;
+import nl.medtechchain.proto.common.ChaincodeSuccess;
+import nl.medtechchain.proto.query.Query;
+import nl.medtechchain.proto.query.QueryResult;
+import nl.medtechchain.protoutils.Base64EncodingOps;
+import org.hyperledger.fabric.client.CommitException;
+import org.hyperledger.fabric.client.GatewayException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+
+/**
+ * A service class that runs a COUNT or GROUPED_COUNT query over a long time range as one query
+ *  per time bucket (see TimeBuckets), in parallel (see QueryFanOut), and adds up the counts.
+ * <br>
+ * Both query types are additive: the buckets do not overlap, so the count over the whole range
+ *  is the sum of the counts of the buckets (and the grouped count is the sum per group).
+ *  AVERAGE queries (and queries without a start and end time) cannot be split this way, so they
+ *  are not supported. Note that the chaincode may add noise to every count, so the sum of many
+ *  buckets is noisier than one count over the whole range.
+ */
+@Service
+public class TimeBucketedQueryService {
+
+    private final QueryFanOut queryFanOut;
+
+    private final int maxBuckets;
+
+    /**
+     * Creates a TimeBucketedQueryService object.
+     *
+     * @param queryFanOut   the service that runs the bucket queries in parallel
+     * @param maxBuckets    the maximum number of buckets of one query
+     */
+    public TimeBucketedQueryService(QueryFanOut queryFanOut,
+                                    @Value("${queries.fanout.max-buckets}") int maxBuckets) {
+        this.queryFanOut = queryFanOut;
+        this.maxBuckets = maxBuckets;
+    }
+
+    /**
+     * Checks whether a query can be split into time buckets.
+     *
+     * @param query     the query
+     * @return          true if the query is a (grouped) count with a start and an end time
+     */
+    public boolean supports(Query query) {
+        return (query.getQueryType() == Query.QueryType.COUNT
+                || query.getQueryType() == Query.QueryType.GROUPED_COUNT)
+                && query.hasStartTime() && query.hasEndTime();
+    }
+
+    /**
+     * Splits the query into time buckets, runs the bucket queries and merges their results.
+     *
+     * @param query         the query (with the submitter set), see `supports`
+     * @param bucketWidth   the width of the buckets
+     * @param affiliation   the affiliation of the submitter
+     * @return              the response with the merged result, or the first failed response
+     *                       of a bucket
+     * @throws IllegalArgumentException         if the query is not supported, the bucket width
+     *                                           is invalid or there would be too many buckets
+     * @throws GatewayException                 if a query cannot be run on the chain
+     * @throws CommitException                  if a query cannot be committed
+     * @throws InvalidProtocolBufferException   if a response cannot be decoded
+     */
+    public ChaincodeResponse submitQuery(Query query, Duration bucketWidth, String affiliation)
+            throws GatewayException, CommitException, InvalidProtocolBufferException {
+        if (!this.supports(query)) {
+            throw new IllegalArgumentException(
+                    "Only COUNT and GROUPED_COUNT queries with a start and end time can be split");
+        }
+        List<TimeBuckets.Bucket> buckets = TimeBuckets.split(
+                TimeBuckets.toInstant(query.getStartTime()),
+                TimeBuckets.toInstant(query.getEndTime()), bucketWidth, this.maxBuckets);
+        List<Query> bucketQueries = new ArrayList<>(buckets.size());
+        for (TimeBuckets.Bucket bucket : buckets) {
+            bucketQueries.add(query.toBuilder()
+                    .setStartTime(TimeBuckets.toTimestamp(bucket.start()))
+                    .setEndTime(TimeBuckets.toTimestamp(bucket.end()))
+                    .build());
+        }
+
+        FanOutResult results = FanOutResult.of(this.queryFanOut.runAll(bucketQueries, affiliation));
+        if (results.isFailed()) {
+            return results.failure();
+        }
+        QueryResult merged = merge(query.getQueryType(), results.results());
+        return ChaincodeResponse.newBuilder()
+                .setSuccess(ChaincodeSuccess.newBuilder()
+                        .setMessage(Base64EncodingOps.encode64(merged)))
+                .build();
+    }
+
+    /**
+     * Adds up the results of the buckets.
+     *
+     * @param queryType     the type of the query (COUNT or GROUPED_COUNT)
+     * @param results       the (successful) results of the buckets
+     * @return              the merged result
+     */
+    static QueryResult merge(Query.QueryType queryType, List<QueryResult> results) {
+        if (queryType == Query.QueryType.COUNT) {
+            long count = 0;
+            for (QueryResult result : results) {
+                count += result.getCountResult();
+            }
+            return QueryResult.newBuilder().setCountResult(count).build();
+        }
+        Map<String, Long> counts = new HashMap<>();
+        for (QueryResult result : results) {
+            result.getGroupedCountResult().getMapMap().forEach((group, count) ->
+                    counts.merge(group, count, Long::sum));
+        }
+        return QueryResult.newBuilder()
+                .setGroupedCountResult(QueryResult.GroupedCount.newBuilder().putAllMap(counts))
+                .build();
+    }
+}
@@ -0,0 +1,109 @@
+package nl.medtechchain.fanout;
+
+import com.google.protobuf.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * A helper class that splits a time range into buckets of a fixed width.
+ * <br>
+ * The buckets are aligned to multiples of the width since ORIGIN (only the first and the last
+ *  bucket can be shorter), so that the same range, a shifted range or an extended range is
+ *  split into (mostly) the same buckets, and their settled results can be reused from the cache.
+ *  Both ends of a bucket are inclusive, like the `start_time` and `end_time` of a query, so every
+ *  bucket ends one nanosecond before the next one starts.
+ */
+public final class TimeBuckets {
+
+    private static final Duration ONE_NANO = Duration.ofNanos(1);
+
+    // The first Monday after the epoch, so that hourly and daily buckets start at midnight (UTC)
+    //  and weekly buckets start on Monday
+    static final Instant ORIGIN = Instant.parse("1970-01-05T00:00:00Z");
+
+    /**
+     * A bucket of a time range.
+     *
+     * @param start     the start of the bucket (inclusive)
+     * @param end       the end of the bucket (inclusive)
+     */
+    public record Bucket(Instant start, Instant end) {
+    }
+
+    private TimeBuckets() {
+    }
+
+    /**
+     * Splits a time range into buckets.
+     *
+     * @param start         the start of the range (inclusive)
+     * @param end           the end of the range (inclusive)
+     * @param width         the width of the buckets
+     * @param maxBuckets    the maximum number of buckets
+     * @return              the buckets, in chronological order
+     * @throws IllegalArgumentException if the range or the width is invalid, or the range would
+     *                                  be split into more than `maxBuckets` buckets
+     */
+    public static List<Bucket> split(Instant start, Instant end, Duration width, int maxBuckets) {
+        if (width.isNegative() || width.isZero()) {
+            throw new IllegalArgumentException("The bucket width has to be positive");
+        }
+        if (end.isBefore(start)) {
+            throw new IllegalArgumentException("The end of the range is before its start");
+        }
+        long widthNanos;
+        long startNanos;
+        long endNanos;
+        try {
+            widthNanos = width.toNanos();
+            startNanos = Duration.between(ORIGIN, start).toNanos();
+            endNanos = Duration.between(ORIGIN, end).toNanos();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("The range or the bucket width is too large", e);
+        }
+        long buckets = Math.floorDiv(endNanos, widthNanos) - Math.floorDiv(startNanos, widthNanos)
+                + 1;
+        if (buckets > maxBuckets) {
+            throw new IllegalArgumentException("The range would be split into " + buckets
+                    + " buckets, the maximum is " + maxBuckets);
+        }
+
+        List<Bucket> result = new ArrayList<>((int) buckets);
+        Instant bucketStart = start;
+        Instant boundary = ORIGIN
+                .plusNanos((Math.floorDiv(startNanos, widthNanos) + 1) * widthNanos);
+        while (boundary.isBefore(end) || boundary.equals(end)) {
+            result.add(new Bucket(bucketStart, boundary.minus(ONE_NANO)));
+            bucketStart = boundary;
+            boundary = boundary.plus(width);
+        }
+        result.add(new Bucket(bucketStart, end));
+        return result;
+    }
+
+    /**
+     * Converts a protobuf timestamp into an instant.
+     *
+     * @param timestamp     the protobuf timestamp
+     * @return              the instant
+     */
+    public static Instant toInstant(Timestamp timestamp) {
+        return Instant.ofEpochSecond(timestamp.getSeconds(), timestamp.getNanos());
+    }
+
+    /**
+     * Converts an instant into a protobuf timestamp.
+     *
+     * @param instant       the instant
+     * @return              the protobuf timestamp
+     */
+    public static Timestamp toTimestamp(Instant instant) {
+        return Timestamp.newBuilder()
+                .setSeconds(instant.getEpochSecond())
+                .setNanos(instant.getNano())
+                .build();
+    }
+}
@@ -0,0 +1,190 @@
+package nl.medtechchain.fanout;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import nl.medtechchain.proto.common.ChaincodeResponse;
+import nl.medtechchain.proto.devicedata.DeviceDataFieldType;
+import nl.medtechchain.proto.query.Filter;
+import nl.medtechchain.proto.query.Query;
+import nl.medtechchain.protoutils.DeviceDataFieldTypeMapper;
+import org.hyperledger.fabric.client.CommitException;
+import org.hyperledger.fabric.client.GatewayException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+
+/**
+ * A service class that computes a time series: the COUNT of a base query per time bucket
+ *  (e.g. the active wearables per week), with one query per bucket that run in parallel
+ *  (see QueryFanOut), instead of one request per bucket from the client.
+ * <br>
+ * The time axis is either the time range of the query (`start_time` and `end_time`, which are
+ *  replaced by the bounds of every bucket), or a timestamp field of the device data
+ *  (e.g. `last_sync_time`), which is restricted to every bucket with an AFTER and a BEFORE filter
+ *  (both are exclusive, so the filters are moved one nanosecond outwards).
+ * The counts of settled buckets (see QueryFanOut) are cached, so that a dashboard that refreshes
+ *  the series only counts the current bucket again. For a timestamp field, this is only correct
+ *  if the field of a device never changes once it is set (e.g. `production_date`, but not
+ *  `last_sync_time`), so only the fields in `queries.timeseries.immutable-fields` are cached.
+ */
+@Service
+public class TimeSeriesService {
+
+    private static final Duration ONE_NANO = Duration.ofNanos(1);
+
+    private final QueryFanOut queryFanOut;
+
+    private final int maxBuckets;
+
+    private final Set<String> immutableFields;
+
+    /**
+     * A point of the time series.
+     *
+     * @param start     the start of the bucket (inclusive)
+     * @param end       the end of the bucket (inclusive)
+     * @param count     the count of the base query in the bucket
+     */
+    public record Point(Instant start, Instant end, long count) {
+    }
+
+    /**
+     * The outcome of a time series: either the points, or the first failed response of a bucket.
+     *
+     * @param points    the points of the series, in chronological order (null if failed)
+     * @param failure   the failed response of the chaincode (null if successful)
+     */
+    public record TimeSeries(List<Point> points, ChaincodeResponse failure) {
+
+        /**
+         * Checks whether a bucket has failed.
+         *
+         * @return true if the series has failed, false otherwise
+         */
+        public boolean isFailed() {
+            return this.failure != null;
+        }
+    }
+
+    /**
+     * Creates a TimeSeriesService object.
+     *
+     * @param queryFanOut       the service that runs the bucket queries in parallel
+     * @param maxBuckets        the maximum number of buckets of one series
+     * @param immutableFields   the (comma-separated) timestamp fields that never change
+     */
+    public TimeSeriesService(QueryFanOut queryFanOut,
+                             @Value("${queries.fanout.max-buckets}") int maxBuckets,
+                             @Value("${queries.timeseries.immutable-fields}")
+                             String immutableFields) {
+        this.queryFanOut = queryFanOut;
+        this.maxBuckets = maxBuckets;
+        this.immutableFields = Arrays.stream(immutableFields.split(","))
+                .map(String::trim)
+                .filter(field -> !field.isEmpty())
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    /**
+     * Computes the time series of a base query.
+     *
+     * @param baseQuery     the query that is counted per bucket (with the submitter set);
+     *                       its type has to be COUNT (or unspecified)
+     * @param start         the start of the series (inclusive)
+     * @param end           the end of the series (inclusive)
+     * @param bucketWidth   the width of the buckets
+     * @param field         the timestamp field of the time axis, or null for the time range
+     *                       of the query
+     * @param affiliation   the affiliation of the submitter
+     * @return              the time series
+     * @throws IllegalArgumentException         if the query, the field, the bucket width or the
+     *                                           range are invalid, or there would be too many
+     *                                           buckets
+     * @throws GatewayException                 if a query cannot be run on the chain
+     * @throws CommitException                  if a query cannot be committed
+     * @throws InvalidProtocolBufferException   if a response cannot be decoded
+     */
+    public TimeSeries compute(Query baseQuery, Instant start, Instant end, Duration bucketWidth,
+                              String field, String affiliation)
+            throws GatewayException, CommitException, InvalidProtocolBufferException {
+        if (baseQuery.getQueryType() != Query.QueryType.COUNT
+                && baseQuery.getQueryType() != Query.QueryType.QUERY_TYPE_UNSPECIFIED) {
+            throw new IllegalArgumentException("Only COUNT queries can be used for a time series");
+        }
+        if (field != null && DeviceDataFieldTypeMapper.fromFieldName(field)
+                != DeviceDataFieldType.TIMESTAMP) {
+            throw new IllegalArgumentException("Unknown timestamp field: " + field);
+        }
+        Query base = baseQuery.toBuilder().setQueryType(Query.QueryType.COUNT).build();
+        List<TimeBuckets.Bucket> buckets = TimeBuckets.split(start, end, bucketWidth,
+                this.maxBuckets);
+
+        List<Query> bucketQueries = new ArrayList<>(buckets.size());
+        for (TimeBuckets.Bucket bucket : buckets) {
+            bucketQueries.add(field == null
+                    ? base.toBuilder()
+                        .setStartTime(TimeBuckets.toTimestamp(bucket.start()))
+                        .setEndTime(TimeBuckets.toTimestamp(bucket.end()))
+                        .build()
+                    : base.toBuilder()
+                        .addFilters(timestampFilter(field,
+                                Filter.TimestampFilter.TimestampOperator.AFTER,
+                                bucket.start().minus(ONE_NANO)))
+                        .addFilters(timestampFilter(field,
+                                Filter.TimestampFilter.TimestampOperator.BEFORE,
+                                bucket.end().plus(ONE_NANO)))
+                        .build());
+        }
+
+        // Only this service knows the time axis of the bucket queries, so it decides which of
+        //  them are settled
+        Set<Query> settledQueries = new HashSet<>();
+        if (field == null || this.immutableFields.contains(field)) {
+            for (int i = 0; i < buckets.size(); i++) {
+                if (this.queryFanOut.isSettled(buckets.get(i).end())) {
+                    settledQueries.add(bucketQueries.get(i));
+                }
+            }
+        }
+
+        FanOutResult results = FanOutResult.of(
+                this.queryFanOut.runAll(bucketQueries, settledQueries::contains, affiliation));
+        if (results.isFailed()) {
+            return new TimeSeries(null, results.failure());
+        }
+        List<Point> points = new ArrayList<>(buckets.size());
+        for (int i = 0; i < buckets.size(); i++) {
+            TimeBuckets.Bucket bucket = buckets.get(i);
+            points.add(new Point(bucket.start(), bucket.end(),
+                    results.results().get(i).getCountResult()));
+        }
+        return new TimeSeries(points, null);
+    }
+
+    /**
+     * Creates a filter on a timestamp field (also used to check the field against the query
+     *  interface before the series is computed).
+     *
+     * @param field     the name of the timestamp field
+     * @param operator  the operator (AFTER or BEFORE)
+     * @param value     the (exclusive) bound
+     * @return          the filter
+     */
+    public static Filter timestampFilter(String field,
+                                         Filter.TimestampFilter.TimestampOperator operator,
+                                         Instant value) {
+        return Filter.newBuilder()
+                .setField(field)
+                .setTimestampFilter(Filter.TimestampFilter.newBuilder()
+                        .setOperator(operator)
+                        .setValue(TimeBuckets.toTimestamp(value)))
+                .build();
+    }
+}
@@ -0,0 +1,39 @@
+package nl.medtechchain.idempotency;
+
+
+/**
+ * The outcome of claiming an Idempotency-Key (see IdempotencyService.claim).
+ * Either the response of an earlier request with the same key is replayed, or the caller is the
+ *  first one with the key: then it has to run the request and call complete() with the response,
+ *  or fail() if the request has failed (so that the next request with the key runs it again).
+ */
+public interface IdempotencyClaim {
+
+    /**
+     * Checks whether the response of an earlier request is replayed.
+     *
+     * @return true if getResponse() returns the stored response, false if the request has to run
+     */
+    boolean isReplay();
+
+    /**
+     * Gets the stored response of the earlier request with the same key.
+     *
+     * @return the stored response, or null if this is not a replay
+     */
+    String getResponse();
+
+    /**
+     * Stores the response of the request, so that retries with the same key get it as well.
+     *
+     * @param response  the response that is sent back
+     */
+    void complete(String response);
+
+    /**
+     * Releases the key after the request has failed, so that it can be retried.
+     *
+     * @param cause     the reason why the request has failed
+     */
+    void fail(Throwable cause);
+}
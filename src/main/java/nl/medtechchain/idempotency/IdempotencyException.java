@@ -0,0 +1,34 @@
+package nl.medtechchain.idempotency;
+
+import org.springframework.http.HttpStatus;
+
+
+/**
+ * An exception that is thrown when a request with an Idempotency-Key cannot be handled:
+ *  the key is invalid (400), the key has been used for a different request (422),
+ *  or the first request with the key is still running on another instance (409).
+ */
+public class IdempotencyException extends RuntimeException {
+
+    private final HttpStatus status;
+
+    /**
+     * Creates an IdempotencyException object.
+     *
+     * @param status    the HTTP status code to be sent back
+     * @param message   the error message
+     */
+    public IdempotencyException(HttpStatus status, String message) {
+        super(message);
+        this.status = status;
+    }
+
+    /**
+     * Gets the HTTP status code to be sent back.
+     *
+     * @return the HTTP status code
+     */
+    public HttpStatus getStatus() {
+        return this.status;
+    }
+}
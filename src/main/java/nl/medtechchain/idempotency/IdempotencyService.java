@@ -0,0 +1,375 @@
+package nl.medtechchain.idempotency;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.Message;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import nl.medtechchain.models.IdempotencyRecord;
+import nl.medtechchain.repositories.IdempotencyRecordRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+
+/**
+ * A service class that makes requests with an Idempotency-Key header idempotent: a retry of a
+ *  request (same researcher, same key and the same request) does not run the request again, but
+ *  waits for the first one and returns its response.
+ * <br>
+ * The keys are kept in a bounded in-memory cache for `queries.idempotency.retention-minutes`.
+ *  Requests on the same instance share one execution. If `queries.idempotency.postgres.enabled`
+ *  is true, the keys are also stored in the database (the `idempotency_key` table), so that a
+ *  retry that reaches another instance gets the stored response as well (or 409 Conflict while
+ *  the first request is still running there).
+ * The request is identified by the SHA-256 hash of its canonical (deterministic) protobuf
+ *  encoding, so that e.g. the order of the JSON fields does not matter, together with the request
+ *  parameters that change its response (e.g. the bucket width of a query).
+ */
+@Service
+public class IdempotencyService {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdempotencyService.class);
+
+    // See https://datatracker.ietf.org/doc/draft-ietf-httpapi-idempotency-key-header/
+    public static final int MAX_KEY_LENGTH = 255;
+
+    // A request that runs on another instance for longer than this has been abandoned
+    //  (e.g. the instance has died), so its key can be claimed again
+    private static final Duration ABANDONED_AFTER = Duration.ofMinutes(5);
+
+    private final IdempotencyRecordRepository idempotencyRecordRepository;
+
+    private final TransactionTemplate newTransaction;
+
+    private final Cache<String, Execution> executions;
+
+    private final Duration retention;
+
+    private final long maxWaitMs;
+
+    private final boolean postgresEnabled;
+
+    /**
+     * Creates an IdempotencyService object.
+     *
+     * @param idempotencyRecordRepository   the repository with the keys (if Postgres is enabled)
+     * @param transactionManager            the transaction manager (the keys are stored in
+     *                                       their own transactions)
+     * @param retentionMinutes              how long a key (and its response) is kept
+     * @param maxKeys                       the maximum number of keys kept in memory
+     * @param maxWaitMs                     how long a retry waits for the first request
+     * @param postgresEnabled               whether the keys are shared through the database
+     */
+    public IdempotencyService(
+            IdempotencyRecordRepository idempotencyRecordRepository,
+            PlatformTransactionManager transactionManager,
+            @Value("${queries.idempotency.retention-minutes}") long retentionMinutes,
+            @Value("${queries.idempotency.max-keys}") long maxKeys,
+            @Value("${queries.idempotency.max-wait-ms}") long maxWaitMs,
+            @Value("${queries.idempotency.postgres.enabled}") boolean postgresEnabled) {
+        this.idempotencyRecordRepository = idempotencyRecordRepository;
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.retention = Duration.ofMinutes(retentionMinutes);
+        this.maxWaitMs = maxWaitMs;
+        this.postgresEnabled = postgresEnabled;
+        this.executions = Caffeine.newBuilder()
+                .maximumSize(maxKeys)
+                .expireAfterWrite(this.retention)
+                .build();
+    }
+
+    /**
+     * Computes the fingerprint of a request: the SHA-256 hash (hex) of its deterministic
+     *  protobuf encoding.
+     *
+     * @param request   the request (e.g. the query, with the submitter set)
+     * @return          the fingerprint of the request
+     */
+    public static String fingerprint(Message request) {
+        return fingerprint(request, "");
+    }
+
+    /**
+     * Computes the fingerprint of a request with parameters. Without parameters, it is the same
+     *  as `fingerprint(request)`; otherwise, it is the SHA-256 hash of the hash of the request
+     *  and the parameters.
+     *
+     * @param request       the request (e.g. the query, with the submitter set)
+     * @param parameters    the parameters that change the response (e.g. `bucket=P30D`), or ""
+     * @return              the fingerprint of the request
+     */
+    public static String fingerprint(Message request, String parameters) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            CodedOutputStream output = CodedOutputStream.newInstance(bytes);
+            output.useDeterministicSerialization();
+            request.writeTo(output);
+            output.flush();
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(bytes.toByteArray());
+            if (!parameters.isEmpty()) {
+                // The hash has a fixed length, so it cannot run into the parameters
+                digest.update(hash);
+                hash = digest.digest(parameters.getBytes(StandardCharsets.UTF_8));
+            }
+            return HexFormat.of().formatHex(hash);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    }
+
+    /**
+     * Claims the Idempotency-Key for a request. If a request with the same key has already run
+     *  (or is still running on this instance), its response is replayed. Otherwise, the caller
+     *  has to run the request and complete (or fail) the claim.
+     *
+     * @param submitter         the username of the researcher who sent the request
+     * @param idempotencyKey    the value of the Idempotency-Key header
+     * @param request           the request (e.g. the query, with the submitter set)
+     * @return                  the claim of the key
+     * @throws IdempotencyException if the key is invalid, has been used for another request,
+     *                              or the first request is still running
+     */
+    public IdempotencyClaim claim(String submitter, String idempotencyKey, Message request) {
+        return this.claim(submitter, idempotencyKey, request, "");
+    }
+
+    /**
+     * Claims the Idempotency-Key for a request with parameters, see `claim`. A retry with other
+     *  parameters (e.g. another or no bucket width) counts as a different request.
+     *
+     * @param submitter         the username of the researcher who sent the request
+     * @param idempotencyKey    the value of the Idempotency-Key header
+     * @param request           the request (e.g. the query, with the submitter set)
+     * @param parameters        the parameters that change the response (e.g. `bucket=P30D`),
+     *                           or ""
+     * @return                  the claim of the key
+     * @throws IdempotencyException if the key is invalid, has been used for another request,
+     *                              or the first request is still running
+     */
+    public IdempotencyClaim claim(String submitter, String idempotencyKey, Message request,
+                                  String parameters) {
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_KEY_LENGTH) {
+            throw new IdempotencyException(HttpStatus.BAD_REQUEST, "Invalid Idempotency-Key");
+        }
+        String fingerprint = fingerprint(request, parameters);
+        String cacheKey = submitter + '\n' + idempotencyKey;
+
+        while (true) {
+            Execution execution = new Execution(cacheKey, submitter, idempotencyKey, fingerprint);
+            Execution existing = this.executions.asMap().putIfAbsent(cacheKey, execution);
+            if (existing == null) {
+                if (this.postgresEnabled) {
+                    try {
+                        Optional<String> stored = this.claimInDatabase(execution);
+                        if (stored.isPresent()) {
+                            execution.response.complete(stored.get());
+                            return new Replay(stored.get());
+                        }
+                    } catch (RuntimeException e) {
+                        this.executions.asMap().remove(cacheKey, execution);
+                        execution.response.completeExceptionally(e);
+                        throw e;
+                    }
+                }
+                return execution;
+            }
+
+            if (!existing.fingerprint.equals(fingerprint)) {
+                throw new IdempotencyException(HttpStatus.UNPROCESSABLE_ENTITY,
+                        "The Idempotency-Key has already been used for a different query");
+            }
+            try {
+                return new Replay(existing.response.get(this.maxWaitMs, TimeUnit.MILLISECONDS));
+            } catch (ExecutionException e) {
+                // The first request has failed and released the key, so try to claim it again
+            } catch (TimeoutException e) {
+                throw new IdempotencyException(HttpStatus.CONFLICT,
+                        "A query with this Idempotency-Key is still running");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IdempotencyException(HttpStatus.CONFLICT,
+                        "A query with this Idempotency-Key is still running");
+            }
+        }
+    }
+
+    /**
+     * Claims the key in the database, so that other instances know that the request runs here.
+     *
+     * @param execution the execution of the request on this instance
+     * @return          the stored response, if the request has already run on another instance
+     */
+    private Optional<String> claimInDatabase(Execution execution) {
+        try {
+            return this.newTransaction.execute(status -> {
+                Optional<IdempotencyRecord> stored = this.idempotencyRecordRepository
+                        .findBySubmitterAndIdempotencyKey(execution.submitter,
+                                execution.idempotencyKey);
+                if (stored.isPresent()) {
+                    IdempotencyRecord record = stored.get();
+                    if (!record.getFingerprint().equals(execution.fingerprint)) {
+                        throw new IdempotencyException(HttpStatus.UNPROCESSABLE_ENTITY,
+                                "The Idempotency-Key has already been used for a different query");
+                    }
+                    if (record.getResponse() != null) {
+                        return Optional.of(record.getResponse());
+                    }
+                    if (record.getCreatedAt().isAfter(Instant.now().minus(ABANDONED_AFTER))) {
+                        throw new IdempotencyException(HttpStatus.CONFLICT,
+                                "A query with this Idempotency-Key is still running");
+                    }
+                    this.idempotencyRecordRepository.delete(record);
+                    this.idempotencyRecordRepository.flush();
+                }
+                this.idempotencyRecordRepository.saveAndFlush(new IdempotencyRecord(
+                        execution.submitter, execution.idempotencyKey, execution.fingerprint));
+                return Optional.<String>empty();
+            });
+        } catch (DataIntegrityViolationException e) {
+            // Another instance has claimed the key at the same time
+            throw new IdempotencyException(HttpStatus.CONFLICT,
+                    "A query with this Idempotency-Key is still running");
+        }
+    }
+
+    /**
+     * Deletes the keys that have expired from the database.
+     */
+    @Scheduled(fixedDelayString = "${queries.idempotency.cleanup-interval-ms}")
+    public void deleteExpiredKeys() {
+        if (!this.postgresEnabled) {
+            return;
+        }
+        this.newTransaction.executeWithoutResult(status -> this.idempotencyRecordRepository
+                .deleteCreatedBefore(Instant.now().minus(this.retention)));
+    }
+
+    /**
+     * The claim of a request whose response is replayed.
+     *
+     * @param response  the stored response
+     */
+    private record Replay(String response) implements IdempotencyClaim {
+
+        @Override
+        public boolean isReplay() {
+            return true;
+        }
+
+        @Override
+        public String getResponse() {
+            return this.response;
+        }
+
+        @Override
+        public void complete(String response) {
+            throw new IllegalStateException("The response is replayed");
+        }
+
+        @Override
+        public void fail(Throwable cause) {
+            throw new IllegalStateException("The response is replayed");
+        }
+    }
+
+    /**
+     * The (single) execution of a request on this instance, which is shared by its retries.
+     */
+    private final class Execution implements IdempotencyClaim {
+
+        private final String cacheKey;
+
+        private final String submitter;
+
+        private final String idempotencyKey;
+
+        private final String fingerprint;
+
+        private final CompletableFuture<String> response = new CompletableFuture<>();
+
+        /**
+         * Creates an Execution object.
+         *
+         * @param cacheKey          the key of the execution in the in-memory cache
+         * @param submitter         the username of the researcher who sent the request
+         * @param idempotencyKey    the value of the Idempotency-Key header
+         * @param fingerprint       the fingerprint of the request
+         */
+        private Execution(String cacheKey, String submitter, String idempotencyKey,
+                          String fingerprint) {
+            this.cacheKey = cacheKey;
+            this.submitter = submitter;
+            this.idempotencyKey = idempotencyKey;
+            this.fingerprint = fingerprint;
+        }
+
+        @Override
+        public boolean isReplay() {
+            return false;
+        }
+
+        @Override
+        public String getResponse() {
+            return null;
+        }
+
+        @Override
+        public void complete(String response) {
+            if (postgresEnabled) {
+                try {
+                    newTransaction.executeWithoutResult(status -> idempotencyRecordRepository
+                            .findBySubmitterAndIdempotencyKey(this.submitter, this.idempotencyKey)
+                            .ifPresent(record -> record.setResponse(response)));
+                } catch (DataAccessException e) {
+                    // The retries on this instance still get the response
+                    logger.warn("Could not store the response for an Idempotency-Key of {}",
+                            this.submitter, e);
+                }
+            }
+            this.response.complete(response);
+        }
+
+        @Override
+        public void fail(Throwable cause) {
+            executions.asMap().remove(this.cacheKey, this);
+            if (postgresEnabled) {
+                try {
+                    newTransaction.executeWithoutResult(status -> idempotencyRecordRepository
+                            .findBySubmitterAndIdempotencyKey(this.submitter, this.idempotencyKey)
+                            .filter(record -> record.getResponse() == null)
+                            .ifPresent(idempotencyRecordRepository::delete));
+                } catch (DataAccessException e) {
+                    // The key is claimed again once the record counts as abandoned
+                    logger.warn("Could not release an Idempotency-Key of {}", this.submitter, e);
+                }
+            }
+            this.response.completeExceptionally(cause);
+        }
+    }
+}
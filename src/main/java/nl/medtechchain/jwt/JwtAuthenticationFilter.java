@@ -51,9 +51,11 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
         Optional<String> resolvedJwt = this.jwtProvider.getJwtFromHeader(request);
         if (resolvedJwt.isEmpty()) {
-            // Only LOGIN and CHANGE_PASSWORD endpoints can be accessed without JWT
+            // Only LOGIN, CHANGE_PASSWORD and health endpoints can be accessed without JWT
             // If any other endpoint is accessed without JWT, then 401 status code is returned
-            if (ApiEndpoints.NO_JWT_PATHS.contains(request.getRequestURI())) {
+            String uri = request.getRequestURI();
+            if (ApiEndpoints.NO_JWT_PATHS.contains(uri)
+                    || ApiEndpoints.NO_JWT_PATH_PREFIXES.stream().anyMatch(uri::startsWith)) {
                 filterChain.doFilter(request, response);
             } else {
                 response.setStatus(HttpStatus.UNAUTHORIZED.value());
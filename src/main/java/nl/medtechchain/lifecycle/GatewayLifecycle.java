@@ -0,0 +1,207 @@
+package nl.medtechchain.lifecycle;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import nl.medtechchain.cache.InvalidationBus;
+import nl.medtechchain.cache.InvalidationMessage;
+import nl.medtechchain.config.GatewayConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+
+/**
+ * The lifecycle of the connection to the Fabric Gateway.
+ * <br>
+ * Every call to the chain (see ChaincodeService) is registered with `beginCall`. Stopping first
+ *  drains the calls: new calls are rejected (ServiceShuttingDownException, i.e. 503), and the
+ *  calls in flight (e.g. a submitted query that waits for its commit status) may finish for up
+ *  to `gateway.shutdown.drain-timeout-ms`. Only then the gateway is closed and its gRPC channel
+ *  is shut down.
+ * This happens when the application shuts down (Spring Boot reports not ready and stops the web
+ *  server gracefully before, see `server.shutdown`), and before a CRaC checkpoint is taken
+ *  (Spring stops all lifecycles before the checkpoint and starts them again after the restore),
+ *  since a checkpoint cannot contain open sockets. After a restore, the gateway is connected
+ *  again on the next call, with the crypto material read again from `gateway.crypto-path`.
+ *  All caches are re-synced on a restore, since they were filled before the checkpoint and have
+ *  missed the invalidation messages since then.
+ * <br>
+ * The lifecycle is stopped after the web server and the components that use the gateway
+ *  (e.g. the ChaincodeEventListener), and started before them.
+ */
+@Component
+public class GatewayLifecycle implements SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(GatewayLifecycle.class);
+
+    // Lower than the phases of the web server and of the default SmartLifecycles
+    public static final int PHASE = SmartLifecycle.DEFAULT_PHASE - 4096;
+
+    private final GatewayConnection gatewayConnection;
+
+    private final InvalidationBus invalidationBus;
+
+    private final long drainTimeoutNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition drained = this.lock.newCondition();
+
+    private int inFlight = 0;
+
+    private boolean draining = false;
+
+    private volatile boolean running = false;
+
+    private boolean started = false;
+
+    /**
+     * Creates a GatewayLifecycle object.
+     *
+     * @param gatewayConnection the (lazy) connection to the Fabric Gateway
+     * @param invalidationBus   the bus that delivers the invalidation messages to the caches
+     * @param drainTimeoutMs    how long the calls in flight may take to finish when stopping
+     */
+    public GatewayLifecycle(GatewayConnection gatewayConnection, InvalidationBus invalidationBus,
+                            @Value("${gateway.shutdown.drain-timeout-ms}") long drainTimeoutMs) {
+        this.gatewayConnection = gatewayConnection;
+        this.invalidationBus = invalidationBus;
+        this.drainTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(drainTimeoutMs);
+    }
+
+    /**
+     * Registers a call to the chain, which has to be closed when it has finished
+     *  (try-with-resources), so that stopping waits for it.
+     *
+     * @return the registered call
+     * @throws ServiceShuttingDownException if the lifecycle is stopping (or has been stopped)
+     */
+    public Call beginCall() {
+        this.lock.lock();
+        try {
+            if (this.draining) {
+                throw new ServiceShuttingDownException("The backend is shutting down");
+            }
+            this.inFlight++;
+        } finally {
+            this.lock.unlock();
+        }
+        return this::endCall;
+    }
+
+    /**
+     * Unregisters a call that has finished.
+     */
+    private void endCall() {
+        this.lock.lock();
+        try {
+            this.inFlight--;
+            if (this.inFlight == 0) {
+                this.drained.signalAll();
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of calls to the chain that are in flight.
+     *
+     * @return the number of registered calls that have not finished yet
+     */
+    public int getInFlight() {
+        this.lock.lock();
+        try {
+            return this.inFlight;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Starts the lifecycle: calls are accepted again. The gateway itself is connected lazily,
+     *  on the next call.
+     */
+    @Override
+    public void start() {
+        this.lock.lock();
+        try {
+            this.draining = false;
+        } finally {
+            this.lock.unlock();
+        }
+        if (this.started) {
+            // Started again after a stop, i.e. restored from a checkpoint
+            logger.info("Restored from a checkpoint, re-syncing all caches");
+            this.invalidationBus.deliverLocally(
+                    InvalidationMessage.of(InvalidationMessage.Type.ALL));
+        }
+        this.started = true;
+        this.running = true;
+    }
+
+    /**
+     * Rejects new calls, waits (up to the drain timeout) for the calls in flight, and then
+     *  closes the gateway and shuts down its gRPC channel.
+     */
+    @Override
+    public void stop() {
+        this.lock.lock();
+        try {
+            this.draining = true;
+            long remaining = this.drainTimeoutNanos;
+            if (this.inFlight > 0) {
+                logger.info("Waiting for {} calls to the chain to finish", this.inFlight);
+            }
+            while (this.inFlight > 0 && remaining > 0) {
+                remaining = this.drained.awaitNanos(remaining);
+            }
+            if (this.inFlight > 0) {
+                logger.warn("Closing the gateway with {} calls to the chain still in flight",
+                        this.inFlight);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            this.lock.unlock();
+        }
+        this.gatewayConnection.close();
+        this.running = false;
+    }
+
+    /**
+     * Checks whether the lifecycle has been started and not stopped.
+     *
+     * @return true if the lifecycle is running, false otherwise
+     */
+    @Override
+    public boolean isRunning() {
+        return this.running;
+    }
+
+    /**
+     * Gets the phase of the lifecycle.
+     *
+     * @return the phase (see PHASE)
+     */
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+    /**
+     * A registered call to the chain.
+     */
+    @FunctionalInterface
+    public interface Call extends AutoCloseable {
+
+        /**
+         * Unregisters the call.
+         */
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,19 @@
+package nl.medtechchain.lifecycle;
+
+
+/**
+ * An exception that is thrown when a call to the chain is started while the backend is shutting
+ *  down (see GatewayLifecycle). It is converted into 503 Service Unavailable, so that the client
+ *  retries (on another instance) after the number of seconds in the Retry-After header.
+ */
+public class ServiceShuttingDownException extends RuntimeException {
+
+    /**
+     * Creates a ServiceShuttingDownException object.
+     *
+     * @param message   the error message
+     */
+    public ServiceShuttingDownException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,184 @@
+package nl.medtechchain.lifecycle;
+
+import io.jsonwebtoken.Jwts;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.SecretKey;
+import nl.medtechchain.config.GatewayConnection;
+import nl.medtechchain.jwt.JwtProvider;
+import nl.medtechchain.models.UserRole;
+import nl.medtechchain.proto.common.ChaincodeResponse;
+import nl.medtechchain.proto.query.Query;
+import nl.medtechchain.protoutils.Base64EncodingOps;
+import nl.medtechchain.protoutils.JsonEncodingOps;
+import nl.medtechchain.services.ChaincodeService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+
+/**
+ * A warm-up phase that runs in the background after the application has started, so that the
+ *  first real requests do not pay for connecting to the gateway and for the JIT compilation of
+ *  the hot paths. It connects the gateway, reads the platform config once (which also fills its
+ *  cache), and exercises the protobuf/JSON codecs, the JWT signing and BCrypt.
+ * <br>
+ * The warm-up is part of the readiness probe (`management.endpoint.health.group.readiness`):
+ *  the instance reports OUT_OF_SERVICE until the warm-up has finished, so that it only gets
+ *  traffic once it is warm. A failing step (e.g. an unreachable peer) is logged and skipped;
+ *  it does not keep the instance out of service, since the gateway reconnects on the next call.
+ */
+@Component
+public class WarmUp implements HealthIndicator {
+
+    private static final Logger logger = LoggerFactory.getLogger(WarmUp.class);
+
+    private final GatewayConnection gatewayConnection;
+
+    private final ChaincodeService chaincodeService;
+
+    private final JwtProvider jwtProvider;
+
+    private final SecretKey jwtSecretKey;
+
+    private final PasswordEncoder passwordEncoder;
+
+    private final boolean enabled;
+
+    private final int iterations;
+
+    private volatile boolean finished = false;
+
+    /**
+     * Creates a WarmUp object.
+     *
+     * @param gatewayConnection     the (lazy) connection to the Fabric Gateway
+     * @param chaincodeService      the service that calls the chaincode
+     * @param jwtProvider           the provider of the JWTs
+     * @param jwtSecretKey          the secret key that signs the JWTs
+     * @param passwordEncoder       the (BCrypt) password encoder
+     * @param enabled               whether the warm-up runs (otherwise the instance is ready at once)
+     * @param iterations            how often the codec and JWT paths are exercised
+     */
+    public WarmUp(GatewayConnection gatewayConnection, ChaincodeService chaincodeService,
+                  JwtProvider jwtProvider, @Qualifier("secretKey") SecretKey jwtSecretKey,
+                  PasswordEncoder passwordEncoder,
+                  @Value("${warmup.enabled}") boolean enabled,
+                  @Value("${warmup.iterations}") int iterations) {
+        this.gatewayConnection = gatewayConnection;
+        this.chaincodeService = chaincodeService;
+        this.jwtProvider = jwtProvider;
+        this.jwtSecretKey = jwtSecretKey;
+        this.passwordEncoder = passwordEncoder;
+        this.enabled = enabled;
+        this.iterations = iterations;
+    }
+
+    /**
+     * Starts the warm-up on its own thread once the application has started.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!this.enabled) {
+            this.finished = true;
+            return;
+        }
+        Thread.ofPlatform().name("warm-up").daemon().start(this::run);
+    }
+
+    /**
+     * Runs all steps of the warm-up.
+     */
+    void run() {
+        long start = System.nanoTime();
+        this.step("gateway connection", this.gatewayConnection::getGateway);
+        this.step("platform config", this.chaincodeService::getPlatformConfig);
+        this.step("protobuf codecs", this::exerciseCodecs);
+        this.step("JWT", this::exerciseJwt);
+        this.step("BCrypt", () -> this.passwordEncoder.matches("warm-up",
+                this.passwordEncoder.encode("warm-up")));
+        this.finished = true;
+        logger.info("Finished the warm-up in {} ms",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /**
+     * Runs one step of the warm-up, logging (and otherwise ignoring) its failure.
+     *
+     * @param name  the name of the step
+     * @param step  the step
+     */
+    private void step(String name, WarmUpStep step) {
+        try {
+            step.run();
+        } catch (Exception e) {
+            logger.warn("The warm-up step '{}' has failed: {}", name, e.toString());
+        }
+    }
+
+    /**
+     * Encodes and decodes a query and a chaincode response the way the query path does.
+     *
+     * @throws Exception if the encoding fails
+     */
+    private void exerciseCodecs() throws Exception {
+        Query query = Query.newBuilder().setSubmitter("warm-up").build();
+        ChaincodeResponse response = ChaincodeResponse.getDefaultInstance();
+        for (int i = 0; i < this.iterations; i++) {
+            Query parsed = JsonEncodingOps.parseJson(
+                    JsonEncodingOps.printJson(query), Query.newBuilder());
+            Base64EncodingOps.decode64(Base64EncodingOps.encode64(parsed), Query::parseFrom);
+            JsonEncodingOps.printJson(Base64EncodingOps.decode64(
+                    Base64EncodingOps.encode64(response), ChaincodeResponse::parseFrom));
+        }
+    }
+
+    /**
+     * Signs and verifies JWTs the way the login and the JWT filter do (without loading a user).
+     */
+    private void exerciseJwt() {
+        for (int i = 0; i < this.iterations; i++) {
+            String token = this.jwtProvider
+                    .generateJwtToken(UUID.randomUUID(), UserRole.RESEARCHER, new Date());
+            var claims = Jwts.parser().verifyWith(this.jwtSecretKey)
+                    .build().parseSignedClaims(token);
+            this.jwtProvider.getUserId(claims);
+            this.jwtProvider.getRole(claims);
+        }
+    }
+
+    /**
+     * Reports OUT_OF_SERVICE until the warm-up has finished.
+     *
+     * @return the health of the warm-up
+     */
+    @Override
+    public Health health() {
+        if (this.finished) {
+            return Health.up().build();
+        }
+        return Health.outOfService().withDetail("reason", "warming up").build();
+    }
+
+    /**
+     * A step of the warm-up.
+     */
+    @FunctionalInterface
+    private interface WarmUpStep {
+
+        /**
+         * Runs the step.
+         *
+         * @throws Exception if the step fails
+         */
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,44 @@
+package nl.medtechchain.logging;
+
+import java.util.concurrent.ThreadLocalRandom;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+
+/**
+ * A component that decides whether the full payload of a transaction (e.g. the query and the
+ *  response of the chaincode) is logged. Every transaction is logged as one short INFO line;
+ *  the payloads are only logged at DEBUG level, and only for a sample of the transactions
+ *  (`logging.payload.sample-rate`), since printing them is expensive and floods the logs.
+ */
+@Component
+public class PayloadLogSampler {
+
+    private final double sampleRate;
+
+    /**
+     * Creates a PayloadLogSampler object.
+     *
+     * @param sampleRate    the share of the transactions whose payloads are logged (0 to 1)
+     */
+    public PayloadLogSampler(@Value("${logging.payload.sample-rate}") double sampleRate) {
+        if (sampleRate < 0 || sampleRate > 1) {
+            throw new IllegalArgumentException("Invalid payload sample rate: " + sampleRate);
+        }
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Decides whether the payload of the current transaction is logged.
+     * The level is checked first, so no random number is drawn if DEBUG is disabled.
+     *
+     * @param logger    the logger that logs the payload
+     * @return          true if the payload has to be logged (at DEBUG level)
+     */
+    public boolean shouldLog(Logger logger) {
+        return logger.isDebugEnabled()
+                && (this.sampleRate >= 1
+                    || ThreadLocalRandom.current().nextDouble() < this.sampleRate);
+    }
+}
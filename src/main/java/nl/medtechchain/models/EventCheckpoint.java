@@ -0,0 +1,43 @@
+package nl.medtechchain.models;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import java.time.Instant;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+
+/**
+ * A class that stores how far a subscription to the events of the chain has progressed,
+ *  so that the next leader (see LeaderElection) resumes where the previous one stopped.
+ * The block number is the block to resume from; if the transaction ID is set, the events of that
+ *  block up to and including this transaction have already been processed.
+ * The epoch is increased by every leader that takes over the subscription, and only the leader of
+ *  the current epoch stores its progress (see JpaCheckpointer).
+ */
+@Entity
+@Table(name = "event_checkpoint")
+@Getter
+@Setter
+@NoArgsConstructor
+public class EventCheckpoint {
+
+    @Id
+    @Column(name = "name", length = 100, nullable = false, updatable = false)
+    private String name;
+
+    @Column(name = "block_number")
+    private Long blockNumber;
+
+    @Column(name = "transaction_id", length = 128)
+    private String transactionId;
+
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+
+    @Column(name = "epoch", nullable = false)
+    private long epoch;
+}
@@ -0,0 +1,61 @@
+package nl.medtechchain.models;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import java.time.Instant;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+
+/**
+ * A class that stores a query that has been submitted with an Idempotency-Key, so that a retry
+ *  of the same request (also on another instance of the backend) returns the stored response
+ *  instead of submitting another transaction to the chain.
+ * As long as the response is not set, the query is still running.
+ */
+@Entity
+@Table(name = "idempotency_key")
+@Getter
+@Setter
+@NoArgsConstructor
+public class IdempotencyRecord {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id", nullable = false, updatable = false)
+    private Long id;
+
+    @Column(name = "submitter", length = 30, nullable = false, updatable = false)
+    private String submitter;
+
+    @Column(name = "idempotency_key", length = 255, nullable = false, updatable = false)
+    private String idempotencyKey;
+
+    @Column(name = "fingerprint", length = 64, nullable = false, updatable = false)
+    private String fingerprint;
+
+    @Column(name = "response")
+    private String response;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private Instant createdAt;
+
+    /**
+     * Creates an IdempotencyRecord object for a query that has just been started.
+     *
+     * @param submitter         the username of the researcher who submitted the query
+     * @param idempotencyKey    the value of the Idempotency-Key header
+     * @param fingerprint       the SHA-256 hash of the query (hex)
+     */
+    public IdempotencyRecord(String submitter, String idempotencyKey, String fingerprint) {
+        this.submitter = submitter;
+        this.idempotencyKey = idempotencyKey;
+        this.fingerprint = fingerprint;
+        this.createdAt = Instant.now();
+    }
+}
@@ -0,0 +1,56 @@
+package nl.medtechchain.models;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import java.time.Instant;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+
+/**
+ * A class that stores a query that has been run successfully, together with its result,
+ *  so that the researcher who submitted it can look at the result again later
+ *  without running (and paying for) another transaction on the chain.
+ * The query and the result are stored as binary protobuf messages (Query and QueryResult).
+ */
+@Entity
+@Table(name = "query_history")
+@Getter
+@NoArgsConstructor
+public class QueryHistoryEntry {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id", nullable = false, updatable = false)
+    private Long id;
+
+    @Column(name = "submitter", length = 30, nullable = false, updatable = false)
+    private String submitter;
+
+    @Column(name = "query", nullable = false, updatable = false)
+    private byte[] query;
+
+    @Column(name = "result", nullable = false, updatable = false)
+    private byte[] result;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private Instant createdAt;
+
+    /**
+     * Creates a QueryHistoryEntry object with the specified values.
+     *
+     * @param submitter     the username of the researcher who submitted the query
+     * @param query         the query (binary protobuf Query)
+     * @param result        the result of the query (binary protobuf QueryResult)
+     */
+    public QueryHistoryEntry(String submitter, byte[] query, byte[] result) {
+        this.submitter = submitter;
+        this.query = query;
+        this.result = result;
+        this.createdAt = Instant.now();
+    }
+}
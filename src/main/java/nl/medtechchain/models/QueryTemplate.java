@@ -0,0 +1,61 @@
+package nl.medtechchain.models;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import java.time.Instant;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+
+/**
+ * A class that stores a query template: a query (binary protobuf Query) of which some values
+ *  are parameters that are bound when the template is run (see CompiledQueryTemplate).
+ * The parameters are stored as comma-separated `name=slot` pairs, e.g. `from=start_time`.
+ * A template cannot be changed once it has been registered.
+ */
+@Entity
+@Table(name = "query_template")
+@Getter
+@NoArgsConstructor
+public class QueryTemplate {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id", nullable = false, updatable = false)
+    private Long id;
+
+    @Column(name = "name", length = 100, nullable = false, updatable = false)
+    private String name;
+
+    @Column(name = "owner", length = 30, nullable = false, updatable = false)
+    private String owner;
+
+    @Column(name = "query", nullable = false, updatable = false)
+    private byte[] query;
+
+    @Column(name = "parameters", length = 1000, nullable = false, updatable = false)
+    private String parameters;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private Instant createdAt;
+
+    /**
+     * Creates a QueryTemplate object with the specified values.
+     *
+     * @param name          the name of the template
+     * @param owner         the username of the researcher who registered the template
+     * @param query         the query of the template (binary protobuf Query)
+     * @param parameters    the parameters of the template (comma-separated `name=slot` pairs)
+     */
+    public QueryTemplate(String name, String owner, byte[] query, String parameters) {
+        this.name = name;
+        this.owner = owner;
+        this.query = query;
+        this.parameters = parameters;
+        this.createdAt = Instant.now();
+    }
+}
@@ -0,0 +1,80 @@
+package nl.medtechchain.models;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import java.time.Duration;
+import java.time.Instant;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+
+/**
+ * A class that stores a query that is run periodically in the background (defined by the admin),
+ *  together with its latest result, so that researchers can read standard statistics without
+ *  running a transaction on the chain.
+ * The query and the result are stored as binary protobuf messages (Query and QueryResult).
+ *  If the latest run has failed, its error is stored and the result of the last successful run
+ *  is kept.
+ */
+@Entity
+@Table(name = "scheduled_query")
+@Getter
+@Setter
+@NoArgsConstructor
+public class ScheduledQuery {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id", nullable = false, updatable = false)
+    private Long id;
+
+    @Column(name = "name", length = 100, nullable = false, updatable = false)
+    private String name;
+
+    @Column(name = "owner", length = 30, nullable = false, updatable = false)
+    private String owner;
+
+    @Column(name = "query", nullable = false, updatable = false)
+    private byte[] query;
+
+    @Column(name = "interval_seconds", nullable = false, updatable = false)
+    private long intervalSeconds;
+
+    @Column(name = "next_run_at", nullable = false)
+    private Instant nextRunAt;
+
+    @Column(name = "last_run_at")
+    private Instant lastRunAt;
+
+    @Column(name = "last_result")
+    private byte[] lastResult;
+
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private Instant createdAt;
+
+    /**
+     * Creates a ScheduledQuery object with the specified values. It is run for the first time
+     *  at the next poll of the runner.
+     *
+     * @param name      the name of the query (e.g. `Devices per speciality`)
+     * @param owner     the username of the admin who defined the query (and submits it)
+     * @param query     the query (binary protobuf Query)
+     * @param interval  the time between two runs
+     */
+    public ScheduledQuery(String name, String owner, byte[] query, Duration interval) {
+        this.name = name;
+        this.owner = owner;
+        this.query = query;
+        this.intervalSeconds = interval.toSeconds();
+        this.createdAt = Instant.now();
+        this.nextRunAt = this.createdAt;
+    }
+}
@@ -5,6 +5,7 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Table;
 import java.util.Collection;
 import java.util.Objects;
 import java.util.Set;
@@ -12,6 +13,10 @@ import java.util.UUID;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -25,8 +30,14 @@ import org.springframework.security.core.userdetails.UserDetails;
  *  it is also used as "Subject" in the JWT token used for the authentication.
  * Email should also be unique, and it is used during the registration
  *  (to check the existence of the user and to send the credentials to the registered user)
+ * The table and its indexes are created by the Flyway migrations (see resources/db/migration).
+ * Users are stored in the second-level cache (see resources/ehcache.xml), both by their userID
+ *  and by their username (natural ID), since they are read on almost every request.
  */
 @Entity
+@Table(name = "user_data")
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@NaturalIdCache
 @Getter
 @NoArgsConstructor
 public class UserData implements UserDetails {
@@ -36,6 +47,7 @@ public class UserData implements UserDetails {
     @Column(name = "user_id", unique = true, nullable = false, updatable = false)
     private UUID userId;
 
+    @NaturalId
     @Column(name = "username", length = 30, unique = true, nullable = false, updatable = false)
     private String username;
 
@@ -0,0 +1,42 @@
+package nl.medtechchain.models;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+
+/**
+ * A class that stores, for every base username (e.g. jdoe), the largest suffix handed out so far.
+ * It is used to allocate unique usernames in O(1): the counter row is incremented atomically
+ *  in the same transaction that creates the new user, which also serializes concurrent
+ *  registrations with the same base username on that row.
+ * A last suffix of 0 means that the base username itself has been handed out (e.g. jdoe),
+ *  1 means that jdoe1 has been handed out etc.
+ */
+@Entity
+@Table(name = "username_counter")
+@Getter
+@NoArgsConstructor
+public class UsernameCounter {
+
+    @Id
+    @Column(name = "base_name", length = 30, nullable = false, updatable = false)
+    private String baseName;
+
+    @Column(name = "last_suffix", nullable = false)
+    private long lastSuffix;
+
+    /**
+     * Creates a UsernameCounter object with the specified values.
+     *
+     * @param baseName      the base username (the first letter of the first name + last name)
+     * @param lastSuffix    the largest suffix handed out so far (-1 if none has been handed out)
+     */
+    public UsernameCounter(String baseName, long lastSuffix) {
+        this.baseName = baseName;
+        this.lastSuffix = lastSuffix;
+    }
+}
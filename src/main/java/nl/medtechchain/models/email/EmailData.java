@@ -1,5 +1,7 @@
 package nl.medtechchain.models.email;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
 import lombok.Getter;
 import org.thymeleaf.context.Context;
 
@@ -27,4 +29,18 @@ public abstract class EmailData {
         this.subject = subject;
         this.template = template;
     }
+
+    /**
+     * Retrieves the variables that are injected into the template (e.g. the name of the user).
+     * They are stored in the email outbox, so that the email can be rendered when it is sent.
+     *
+     * @return              a map from the variable names to their values
+     */
+    public Map<String, Object> getVariables() {
+        Map<String, Object> variables = new LinkedHashMap<>();
+        for (String name : this.context.getVariableNames()) {
+            variables.put(name, this.context.getVariable(name));
+        }
+        return variables;
+    }
 }
@@ -0,0 +1,97 @@
+package nl.medtechchain.models.email;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import java.time.Instant;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+
+/**
+ * A class that stores an email that still has to be sent (transactional outbox).
+ * The message is written in the same transaction as the change that triggers it
+ *  (e.g. the registration of a new user), and is sent afterwards by the EmailOutboxDispatcher.
+ * Only the template name and its variables are stored; the email is rendered when it is sent.
+ * Sent messages are deleted from the outbox, and the variables of a message that has FAILED are
+ *  cleared, since they can contain a generated password.
+ */
+@Entity
+@Table(name = "email_outbox")
+@Getter
+@NoArgsConstructor
+public class EmailOutboxMessage {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id", nullable = false, updatable = false)
+    private Long id;
+
+    @Column(name = "recipient", length = 50, nullable = false, updatable = false)
+    private String recipient;
+
+    @Column(name = "subject", nullable = false, updatable = false)
+    private String subject;
+
+    @Column(name = "template", length = 100, nullable = false, updatable = false)
+    private String template;
+
+    @Column(name = "variables", length = 4000, nullable = false)
+    private String variables;
+
+    @Setter
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", length = 16, nullable = false)
+    private EmailOutboxStatus status;
+
+    @Setter
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+
+    @Setter
+    @Column(name = "next_attempt_at", nullable = false)
+    private Instant nextAttemptAt;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private Instant createdAt;
+
+    @Setter
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+
+    /**
+     * Creates an EmailOutboxMessage object that is due immediately.
+     *
+     * @param recipient     the recipient of the email
+     * @param subject       the subject of the email
+     * @param template      the name of the template for the email (see resources/templates/)
+     * @param variables     the template variables, serialized as a JSON object
+     * @param createdAt     the time when the message has been created
+     */
+    public EmailOutboxMessage(String recipient, String subject, String template,
+                              String variables, Instant createdAt) {
+        this.recipient = recipient;
+        this.subject = subject;
+        this.template = template;
+        this.variables = variables;
+        this.status = EmailOutboxStatus.PENDING;
+        this.attempts = 0;
+        this.nextAttemptAt = createdAt;
+        this.createdAt = createdAt;
+    }
+
+    /**
+     * Gives up on the message: marks it as FAILED and clears its template variables (which can
+     *  contain a generated password), so that only the recipient and the error are kept.
+     */
+    public void fail() {
+        this.status = EmailOutboxStatus.FAILED;
+        this.variables = "{}";
+    }
+}
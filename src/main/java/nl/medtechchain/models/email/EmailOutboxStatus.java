@@ -0,0 +1,10 @@
+package nl.medtechchain.models.email;
+
+/**
+ * An enum class used to represent the delivery status of an email in the outbox.
+ * Delivered emails are removed from the outbox, so they do not need a status.
+ */
+public enum EmailOutboxStatus {
+    PENDING,
+    FAILED
+}
@@ -0,0 +1,138 @@
+package nl.medtechchain.protoutils;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+import nl.medtechchain.proto.config.PlatformConfig;
+import nl.medtechchain.proto.devicedata.DeviceCategory;
+import nl.medtechchain.proto.devicedata.DeviceDataFieldType;
+import nl.medtechchain.proto.devicedata.MedicalSpeciality;
+import nl.medtechchain.proto.query.Filter;
+import nl.medtechchain.proto.query.Query;
+
+
+/**
+ * A class that holds the query interface of the platform config, and checks queries against it:
+ *  the query type has to be set, the target field has to be one of the fields that are enabled
+ *  for the query type, and every filter has to use a field of the device data with an operator
+ *  (or, for an enum field, a value) of its type.
+ * It is the only place where these rules are defined: `GET /api/configs/interface` describes
+ *  them, and they are checked for the queries that researchers submit, the query templates and
+ *  the scheduled queries.
+ */
+public final class QueryValidator {
+
+    /**
+     * This class should not be instantiated.
+     */
+    private QueryValidator() {
+    }
+
+    /**
+     * Finds the fields that are enabled as the target field of a query type.
+     *
+     * @param platformConfig    the platform config
+     * @param queryType         the query type
+     * @return                  the names of the fields (empty if the query type is not supported)
+     */
+    public static List<String> targetFields(PlatformConfigWrapper platformConfig,
+                                            Query.QueryType queryType) {
+        PlatformConfig.Config config = switch (queryType) {
+            case COUNT -> PlatformConfig.Config.CONFIG_FEATURE_QUERY_INTERFACE_COUNT_FIELDS;
+            case GROUPED_COUNT ->
+                    PlatformConfig.Config.CONFIG_FEATURE_QUERY_INTERFACE_GROUPED_COUNT_FIELDS;
+            case AVERAGE -> PlatformConfig.Config.CONFIG_FEATURE_QUERY_INTERFACE_AVERAGE_FIELDS;
+            default -> null;
+        };
+        if (config == null) {
+            return List.of();
+        }
+        return platformConfig.get(config)
+                .map(fields -> Arrays.stream(fields.split(","))
+                        .map(String::trim)
+                        .filter(field -> !field.isEmpty())
+                        .toList())
+                .orElse(List.of());
+    }
+
+    /**
+     * Finds the operators of the filters on a type of field, or the values of an enum field.
+     *
+     * @param type  the type of the field
+     * @return      the names of the operators (or enum values), without the unspecified value
+     */
+    public static List<String> operators(DeviceDataFieldType type) {
+        Enum<?>[] values = switch (type) {
+            case STRING -> Filter.StringFilter.StringOperator.values();
+            case INTEGER -> Filter.IntegerFilter.IntOperator.values();
+            case BOOL -> Filter.BoolFilter.BoolOperator.values();
+            case TIMESTAMP -> Filter.TimestampFilter.TimestampOperator.values();
+            case DEVICE_CATEGORY -> DeviceCategory.values();
+            case MEDICAL_SPECIALITY -> MedicalSpeciality.values();
+            default -> new Enum<?>[0];
+        };
+        return Stream.of(values)
+                .filter(value -> !value.name().endsWith("_UNSPECIFIED")
+                        && !value.name().equals("UNRECOGNIZED"))
+                .map(Enum::name)
+                .toList();
+    }
+
+    /**
+     * Checks a query against the query interface.
+     *
+     * @param query             the query
+     * @param platformConfig    the platform config
+     * @param parameterFilters  the indexes of the filters whose value is a parameter (and is
+     *                           checked when it is bound)
+     * @throws IllegalArgumentException if the query does not match the query interface
+     */
+    public static void validate(Query query, PlatformConfigWrapper platformConfig,
+                                Set<Integer> parameterFilters) {
+        if (query.getQueryType() != Query.QueryType.COUNT
+                && query.getQueryType() != Query.QueryType.GROUPED_COUNT
+                && query.getQueryType() != Query.QueryType.AVERAGE) {
+            throw new IllegalArgumentException("The query type has to be set");
+        }
+        // A COUNT can count all devices, the other types need a target field
+        if (!query.getTargetField().isEmpty() || query.getQueryType() != Query.QueryType.COUNT) {
+            if (!targetFields(platformConfig, query.getQueryType())
+                    .contains(query.getTargetField())) {
+                throw new IllegalArgumentException("Invalid target field for "
+                        + query.getQueryType() + ": " + query.getTargetField());
+            }
+        }
+        for (int i = 0; i < query.getFiltersCount(); i++) {
+            validate(query.getFilters(i), parameterFilters.contains(i));
+        }
+    }
+
+    /**
+     * Checks that a filter uses a field of the device data with an operator of its type.
+     *
+     * @param filter        the filter
+     * @param parameter     whether the value of the filter is a parameter that is not bound yet
+     * @throws IllegalArgumentException if the filter does not match its field
+     */
+    public static void validate(Filter filter, boolean parameter) {
+        DeviceDataFieldType type = DeviceDataFieldTypeMapper.fromFieldName(filter.getField());
+        boolean valid = switch (filter.getComparatorCase()) {
+            case STRING_FILTER -> type == DeviceDataFieldType.STRING
+                    && operators(type).contains(filter.getStringFilter().getOperator().name());
+            case INTEGER_FILTER -> type == DeviceDataFieldType.INTEGER
+                    && operators(type).contains(filter.getIntegerFilter().getOperator().name());
+            case TIMESTAMP_FILTER -> type == DeviceDataFieldType.TIMESTAMP
+                    && operators(type).contains(filter.getTimestampFilter().getOperator().name());
+            case BOOL_FILTER -> type == DeviceDataFieldType.BOOL
+                    && operators(type).contains(filter.getBoolFilter().getOperator().name());
+            case ENUM_FILTER -> (type == DeviceDataFieldType.MEDICAL_SPECIALITY
+                    || type == DeviceDataFieldType.DEVICE_CATEGORY)
+                    && (parameter || operators(type).contains(filter.getEnumFilter().getValue()));
+            default -> false;
+        };
+        if (!valid) {
+            throw new IllegalArgumentException("Invalid filter on field: " + filter.getField());
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package nl.medtechchain.repositories;
+
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import java.time.Instant;
+import java.util.List;
+import nl.medtechchain.models.email.EmailOutboxMessage;
+import nl.medtechchain.models.email.EmailOutboxStatus;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.stereotype.Repository;
+
+
+/**
+ * A class for the database that stores the emails that still have to be sent.
+ */
+@Repository
+public interface EmailOutboxRepository extends JpaRepository<EmailOutboxMessage, Long> {
+
+    /**
+     * Finds and locks the messages with the given status that are due at the given time,
+     *  oldest first. Rows that are locked by another dispatcher (e.g. on another replica)
+     *  are skipped instead of waited for (lock timeout -2 means SKIP LOCKED in Hibernate).
+     *
+     * @param status    the status of the messages
+     * @param now       the current time
+     * @param pageable  the page request that limits the number of returned messages
+     * @return          a list of due messages, locked until the end of the transaction
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT m FROM EmailOutboxMessage m WHERE m.status = :status "
+            + "AND m.nextAttemptAt <= :now ORDER BY m.nextAttemptAt ASC")
+    List<EmailOutboxMessage> findDueForUpdate(EmailOutboxStatus status, Instant now,
+                                              Pageable pageable);
+
+    /**
+     * Counts the messages with the given status.
+     *
+     * @param status    the status of the messages
+     * @return          the number of messages with the given status
+     */
+    long countByStatus(EmailOutboxStatus status);
+}
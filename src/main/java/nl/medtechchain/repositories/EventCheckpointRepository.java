@@ -0,0 +1,80 @@
+package nl.medtechchain.repositories;
+
+import jakarta.persistence.LockModeType;
+import java.time.Instant;
+import java.util.Optional;
+import nl.medtechchain.models.EventCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+
+/**
+ * A class for the database that stores the progress of the chain event subscriptions.
+ * The checkpoints are only changed through the epoch-checked updates below (see JpaCheckpointer).
+ */
+@Repository
+public interface EventCheckpointRepository extends JpaRepository<EventCheckpoint, String> {
+
+    /**
+     * Finds and locks the checkpoint of a subscription. It has to be called in a read-write
+     *  transaction, so that it reads the latest epoch from the primary (and not from a replica
+     *  that lags behind), and no other instance can claim the checkpoint until it ends.
+     *
+     * @param name  the name of the subscription
+     * @return      the checkpoint, locked until the end of the transaction, or empty if the
+     *              subscription has no checkpoint yet
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT c FROM EventCheckpoint c WHERE c.name = :name")
+    Optional<EventCheckpoint> findForUpdate(String name);
+
+    /**
+     * Creates the checkpoint of a subscription that has no checkpoint yet, claimed in epoch 1.
+     *
+     * @param name      the name of the subscription
+     * @param updatedAt the current time
+     * @return          the number of inserted rows
+     * @throws org.springframework.dao.DataIntegrityViolationException if the checkpoint exists
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO event_checkpoint (name, epoch, updated_at) "
+            + "VALUES (:name, 1, :updatedAt)", nativeQuery = true)
+    int insertClaimed(String name, Instant updatedAt);
+
+    /**
+     * Claims the checkpoint of a subscription, if its epoch has not changed since it was read.
+     *
+     * @param name      the name of the subscription
+     * @param epoch     the epoch that was read
+     * @param updatedAt the current time
+     * @return          the number of updated rows (0 if another leader has claimed it meanwhile)
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE EventCheckpoint SET epoch = epoch + 1, updatedAt = :updatedAt "
+            + "WHERE name = :name AND epoch = :epoch")
+    int claim(String name, long epoch, Instant updatedAt);
+
+    /**
+     * Stores the progress of a subscription, if it is still claimed in the given epoch.
+     *
+     * @param name          the name of the subscription
+     * @param epoch         the epoch of the leader that stores its progress
+     * @param blockNumber   the block number to resume from
+     * @param transactionId the last processed transaction in that block (or null)
+     * @param updatedAt     the current time
+     * @return              the number of updated rows (0 if another leader has claimed it)
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE EventCheckpoint SET blockNumber = :blockNumber, "
+            + "transactionId = :transactionId, updatedAt = :updatedAt "
+            + "WHERE name = :name AND epoch = :epoch")
+    int store(String name, long epoch, long blockNumber, String transactionId,
+              Instant updatedAt);
+}
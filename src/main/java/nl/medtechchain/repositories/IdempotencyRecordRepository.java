@@ -0,0 +1,37 @@
+package nl.medtechchain.repositories;
+
+import java.time.Instant;
+import java.util.Optional;
+import nl.medtechchain.models.IdempotencyRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+
+/**
+ * A class for the database that stores the queries submitted with an Idempotency-Key.
+ */
+@Repository
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, Long> {
+
+    /**
+     * Finds the query that the researcher has submitted with the specified Idempotency-Key.
+     *
+     * @param submitter         the username of the researcher
+     * @param idempotencyKey    the value of the Idempotency-Key header
+     * @return                  the stored query (or empty if there is none)
+     */
+    Optional<IdempotencyRecord> findBySubmitterAndIdempotencyKey(String submitter,
+                                                                 String idempotencyKey);
+
+    /**
+     * Deletes the keys that have been created before the specified time (i.e. have expired).
+     *
+     * @param before    the time before which the keys have been created
+     * @return          the number of deleted keys
+     */
+    @Modifying
+    @Query("DELETE FROM IdempotencyRecord r WHERE r.createdAt < :before")
+    int deleteCreatedBefore(Instant before);
+}
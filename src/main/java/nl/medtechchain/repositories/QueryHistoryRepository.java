@@ -0,0 +1,38 @@
+package nl.medtechchain.repositories;
+
+import java.util.List;
+import nl.medtechchain.models.QueryHistoryEntry;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+
+/**
+ * A class for the database that stores the queries that have been run, with their results.
+ */
+@Repository
+public interface QueryHistoryRepository extends JpaRepository<QueryHistoryEntry, Long> {
+
+    /**
+     * Finds the first page of the query history of the specified researcher, newest first.
+     *
+     * @param submitter     the username of the researcher
+     * @param pageable      the page size (the offset is always 0)
+     * @return              the newest queries of the researcher
+     */
+    List<QueryHistoryEntry> findBySubmitterOrderByIdDesc(String submitter, Pageable pageable);
+
+    /**
+     * Finds the next page of the query history of the specified researcher, newest first.
+     * Keyset pagination is used, so every page is an index range scan
+     *  (see V7__create_query_history.sql).
+     *
+     * @param submitter     the username of the researcher
+     * @param before        the ID of the last query of the previous page
+     * @param pageable      the page size (the offset is always 0)
+     * @return              the queries of the researcher that are older than the given one
+     */
+    List<QueryHistoryEntry> findBySubmitterAndIdLessThanOrderByIdDesc(String submitter,
+                                                                      long before,
+                                                                      Pageable pageable);
+}
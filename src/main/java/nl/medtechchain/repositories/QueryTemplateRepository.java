@@ -0,0 +1,21 @@
+package nl.medtechchain.repositories;
+
+import java.util.List;
+import nl.medtechchain.models.QueryTemplate;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+
+/**
+ * A class for the database that stores the registered query templates.
+ */
+@Repository
+public interface QueryTemplateRepository extends JpaRepository<QueryTemplate, Long> {
+
+    /**
+     * Finds all query templates, oldest first.
+     *
+     * @return      all registered templates
+     */
+    List<QueryTemplate> findAllByOrderByIdAsc();
+}
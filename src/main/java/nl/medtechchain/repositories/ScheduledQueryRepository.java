@@ -0,0 +1,42 @@
+package nl.medtechchain.repositories;
+
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import java.time.Instant;
+import java.util.List;
+import nl.medtechchain.models.ScheduledQuery;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.stereotype.Repository;
+
+
+/**
+ * A class for the database that stores the scheduled queries with their latest results.
+ */
+@Repository
+public interface ScheduledQueryRepository extends JpaRepository<ScheduledQuery, Long> {
+
+    /**
+     * Finds and locks the queries that are due at the given time, most overdue first.
+     *  Rows that are locked by another runner (e.g. on another replica) are skipped instead of
+     *  waited for (lock timeout -2 means SKIP LOCKED in Hibernate).
+     *
+     * @param now       the current time
+     * @param pageable  the page request that limits the number of returned queries
+     * @return          a list of due queries, locked until the end of the transaction
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT q FROM ScheduledQuery q WHERE q.nextRunAt <= :now ORDER BY q.nextRunAt ASC")
+    List<ScheduledQuery> findDueForUpdate(Instant now, Pageable pageable);
+
+    /**
+     * Finds all scheduled queries, oldest first.
+     *
+     * @return      all scheduled queries
+     */
+    List<ScheduledQuery> findAllByOrderByIdAsc();
+}
@@ -1,46 +1,44 @@
 package nl.medtechchain.repositories;
 
+import jakarta.persistence.QueryHint;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 import nl.medtechchain.models.Researcher;
 import nl.medtechchain.models.UserData;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
 
 /**
  * A class for the database that stores the user data.
+ * Finding a user by their username is implemented in UserDataRepositoryCustomImpl,
+ *  so that the natural-ID cache is used.
  */
 @Repository
-public interface UserDataRepository extends JpaRepository<UserData, UUID> {
-
-    /**
-     * Finds a user by their username.
-     *
-     * @param username  the username of the user
-     * @return          the requested user (if they have been found)
-     */
-    Optional<UserData> findByUsername(String username);
-
+public interface UserDataRepository extends JpaRepository<UserData, UUID>,
+        UserDataRepositoryCustom {
 
     /**
      * Finds all usernames that start with the same prefix as the one provided.
-     * This is used for username generation, in order to append a number
-     *   in case of multiple users with the same base username.
+     * This is only used to seed the username counter of a base username the first time
+     *   it is needed (see UsernameCounterService); afterwards the counter is used instead.
      * E.g. if a new user John Doe is being registered, then 'jdoe' is the base username, and
-     *   jdoe1, jdoe2, ..., jdoe`n` will be retrieved.
+     *   jdoe, jdoe1, jdoe2, ..., jdoe`n` will be retrieved.
      *
      * @param prefix    the prefix that a username should start with
      * @return          a list of found usernames
      */
-    @Query("SELECT username FROM UserData WHERE role = 1 "
-            + "AND username ILIKE :prefix||'%' ORDER BY username ASC ")
+    @Query("SELECT username FROM UserData WHERE username LIKE :prefix||'%'")
     List<String> findAllUsernamesByPrefix(String prefix);
 
     /**
      * Finds a user by their userID.
+     * Note that this runs a query; use `findById` to load the user from the second-level cache.
      *
      * @param userId    the userID of the user
      * @return          the requested user (if they have been found)
@@ -58,15 +56,104 @@ public interface UserDataRepository extends JpaRepository<UserData, UUID> {
 
     /**
      * Finds all researchers (users with role "researcher"). Note that `UserRole.RESEARCHER = 1`.
+     * The result is stored in the query cache, which is invalidated whenever
+     *  the user_data table is changed through Hibernate (e.g. a user is registered or updated).
      *
      * @return          a list of found researchers
      *                  (their userID, first name, last name, email and affiliation)
      */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
     @Query("SELECT new nl.medtechchain.models."
             + "Researcher(userId, firstName, lastName, email, affiliation) "
             + "FROM UserData WHERE role = 1")
     List<Researcher> findAllResearchers();
 
+    /**
+     * Finds one page of researchers, ordered by their userID (a stable, unique sort key).
+     * Keyset pagination is used: instead of an offset, the userID of the last researcher of the
+     *  previous page is passed, so that each page is served from the (role, user_id) index
+     *  regardless of how deep into the listing the client is.
+     * Both filters are optional; a null value disables the corresponding filter.
+     *
+     * @param after         the userID of the last researcher of the previous page (exclusive)
+     * @param affiliation   the exact affiliation the researchers should have
+     * @param pageable      the page request that limits the number of returned researchers
+     * @return              a list of found researchers, sorted by their userID (ascending)
+     */
+    @Query("SELECT new nl.medtechchain.models."
+            + "Researcher(userId, firstName, lastName, email, affiliation) "
+            + "FROM UserData WHERE role = 1 "
+            + "AND (:after IS NULL OR userId > :after) "
+            + "AND (:affiliation IS NULL OR affiliation = :affiliation) "
+            + "ORDER BY userId ASC")
+    List<Researcher> findResearchersPage(UUID after, String affiliation, Pageable pageable);
+
+    /**
+     * Finds one page of researchers whose first name starts with a prefix, like
+     *  `findResearchersPage`.
+     * The name and email prefixes are separate queries (merged by AuthenticationService), since
+     *  a single LIKE on one column can use its LOWER(...) text_pattern_ops index, but the three
+     *  LIKEs combined with OR cannot.
+     *
+     * @param after         the userID of the last researcher of the previous page (exclusive)
+     * @param affiliation   the exact affiliation the researchers should have
+     * @param prefix        a lowercase LIKE pattern (ending with '%'); '\' is used as the
+     *                       escape character
+     * @param pageable      the page request that limits the number of returned researchers
+     * @return              a list of found researchers, sorted by their userID (ascending)
+     */
+    @Query("SELECT new nl.medtechchain.models."
+            + "Researcher(userId, firstName, lastName, email, affiliation) "
+            + "FROM UserData WHERE role = 1 "
+            + "AND LOWER(firstName) LIKE :prefix ESCAPE '\\' "
+            + "AND (:after IS NULL OR userId > :after) "
+            + "AND (:affiliation IS NULL OR affiliation = :affiliation) "
+            + "ORDER BY userId ASC")
+    List<Researcher> findResearchersPageByFirstName(UUID after, String affiliation,
+                                                    String prefix, Pageable pageable);
+
+    /**
+     * Finds one page of researchers whose last name starts with a prefix, see
+     *  `findResearchersPageByFirstName`.
+     *
+     * @param after         the userID of the last researcher of the previous page (exclusive)
+     * @param affiliation   the exact affiliation the researchers should have
+     * @param prefix        a lowercase LIKE pattern (ending with '%'); '\' is used as the
+     *                       escape character
+     * @param pageable      the page request that limits the number of returned researchers
+     * @return              a list of found researchers, sorted by their userID (ascending)
+     */
+    @Query("SELECT new nl.medtechchain.models."
+            + "Researcher(userId, firstName, lastName, email, affiliation) "
+            + "FROM UserData WHERE role = 1 "
+            + "AND LOWER(lastName) LIKE :prefix ESCAPE '\\' "
+            + "AND (:after IS NULL OR userId > :after) "
+            + "AND (:affiliation IS NULL OR affiliation = :affiliation) "
+            + "ORDER BY userId ASC")
+    List<Researcher> findResearchersPageByLastName(UUID after, String affiliation,
+                                                   String prefix, Pageable pageable);
+
+    /**
+     * Finds one page of researchers whose email starts with a prefix, see
+     *  `findResearchersPageByFirstName`.
+     *
+     * @param after         the userID of the last researcher of the previous page (exclusive)
+     * @param affiliation   the exact affiliation the researchers should have
+     * @param prefix        a lowercase LIKE pattern (ending with '%'); '\' is used as the
+     *                       escape character
+     * @param pageable      the page request that limits the number of returned researchers
+     * @return              a list of found researchers, sorted by their userID (ascending)
+     */
+    @Query("SELECT new nl.medtechchain.models."
+            + "Researcher(userId, firstName, lastName, email, affiliation) "
+            + "FROM UserData WHERE role = 1 "
+            + "AND LOWER(email) LIKE :prefix ESCAPE '\\' "
+            + "AND (:after IS NULL OR userId > :after) "
+            + "AND (:affiliation IS NULL OR affiliation = :affiliation) "
+            + "ORDER BY userId ASC")
+    List<Researcher> findResearchersPageByEmail(UUID after, String affiliation,
+                                                String prefix, Pageable pageable);
+
     /**
      * Deletes a user with the specified userID.
      *
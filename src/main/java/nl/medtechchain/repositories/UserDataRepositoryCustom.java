@@ -0,0 +1,20 @@
+package nl.medtechchain.repositories;
+
+import java.util.Optional;
+import nl.medtechchain.models.UserData;
+
+
+/**
+ * Custom methods for the database that stores the user data (see UserDataRepository),
+ *  which cannot be derived by Spring Data.
+ */
+public interface UserDataRepositoryCustom {
+
+    /**
+     * Finds a user by their username.
+     *
+     * @param username  the username of the user
+     * @return          the requested user (if they have been found)
+     */
+    Optional<UserData> findByUsername(String username);
+}
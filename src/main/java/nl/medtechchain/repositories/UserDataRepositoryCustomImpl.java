@@ -0,0 +1,35 @@
+package nl.medtechchain.repositories;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import java.util.Optional;
+import nl.medtechchain.models.UserData;
+import org.hibernate.Session;
+import org.springframework.transaction.annotation.Transactional;
+
+
+/**
+ * The implementation of the custom methods of UserDataRepository.
+ */
+@Transactional(readOnly = true)
+public class UserDataRepositoryCustomImpl implements UserDataRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * Finds a user by their username (the natural ID of UserData).
+     * Unlike a query, this resolves the username to the userID with the natural-ID cache,
+     *  and then loads the user from the second-level cache, so that the database is only
+     *  accessed if the user is not cached.
+     *
+     * @param username  the username of the user
+     * @return          the requested user (if they have been found)
+     */
+    @Override
+    public Optional<UserData> findByUsername(String username) {
+        return this.entityManager.unwrap(Session.class)
+                .bySimpleNaturalId(UserData.class)
+                .loadOptional(username);
+    }
+}
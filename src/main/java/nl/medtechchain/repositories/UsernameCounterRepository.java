@@ -0,0 +1,36 @@
+package nl.medtechchain.repositories;
+
+import nl.medtechchain.models.UsernameCounter;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+
+/**
+ * A class for the database that stores the username counters (see UsernameCounter).
+ */
+@Repository
+public interface UsernameCounterRepository extends JpaRepository<UsernameCounter, String> {
+
+    /**
+     * Atomically increments the last suffix of the specified base username.
+     * The updated row stays locked until the surrounding transaction ends, so concurrent
+     *  registrations with the same base username cannot get the same suffix.
+     *
+     * @param baseName  the base username whose counter should be incremented
+     * @return          the number of updated rows (0 if there is no counter yet)
+     */
+    @Modifying
+    @Query("UPDATE UsernameCounter SET lastSuffix = lastSuffix + 1 WHERE baseName = :baseName")
+    int incrementLastSuffix(String baseName);
+
+    /**
+     * Finds the last suffix of the specified base username.
+     *
+     * @param baseName  the base username
+     * @return          the largest suffix handed out so far
+     */
+    @Query("SELECT lastSuffix FROM UsernameCounter WHERE baseName = :baseName")
+    long findLastSuffix(String baseName);
+}
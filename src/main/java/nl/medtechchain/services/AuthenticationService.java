@@ -2,14 +2,17 @@ package nl.medtechchain.services;
 
 import jakarta.persistence.EntityExistsException;
 import jakarta.persistence.EntityNotFoundException;
-import jakarta.transaction.Transactional;
+import nl.medtechchain.cache.InvalidationBus;
+import nl.medtechchain.cache.InvalidationMessage;
 import nl.medtechchain.models.Researcher;
 import nl.medtechchain.models.UserData;
 import nl.medtechchain.models.UserRole;
 import nl.medtechchain.models.email.CredentialsEmail;
 import nl.medtechchain.repositories.UserDataRepository;
+import nl.medtechchain.repositories.UsernameCounterRepository;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -18,19 +21,25 @@ import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.security.SecureRandom;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
 import java.util.Random;
+import java.util.TreeMap;
 import java.util.UUID;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 
 /**
  * A service class that communicates with the database with the user data.
+ * Methods that only read are read-only transactions, so that they can be sent to a read replica
+ *  (if configured, see ReadReplicaConfig).
  */
 @Service
 @Transactional
@@ -42,6 +51,12 @@ public class AuthenticationService implements UserDetailsService {
 
     private final EmailService emailService;
 
+    private final UsernameCounterRepository usernameCounterRepository;
+
+    private final UsernameCounterService usernameCounterService;
+
+    private final InvalidationBus invalidationBus;
+
     @Value("${password.length}")
     private long passwordLength;
 
@@ -50,13 +65,22 @@ public class AuthenticationService implements UserDetailsService {
      *
      * @param userDataRepository the repository with the user data
      * @param passwordEncoder    the password encoder to encrypt passwords
-     * @param emailService       the email service to send emails
+     * @param emailService       the email service to enqueue emails
+     * @param usernameCounterRepository the repository with the username counters
+     * @param usernameCounterService    the service that creates the username counters
+     * @param invalidationBus           the bus that tells all instances which users have changed
      */
     public AuthenticationService(UserDataRepository userDataRepository,
-                                 PasswordEncoder passwordEncoder, EmailService emailService) {
+                                 PasswordEncoder passwordEncoder, EmailService emailService,
+                                 UsernameCounterRepository usernameCounterRepository,
+                                 UsernameCounterService usernameCounterService,
+                                 InvalidationBus invalidationBus) {
         this.userDataRepository = userDataRepository;
         this.passwordEncoder = passwordEncoder;
         this.emailService = emailService;
+        this.usernameCounterRepository = usernameCounterRepository;
+        this.usernameCounterService = usernameCounterService;
+        this.invalidationBus = invalidationBus;
     }
 
     /**
@@ -67,6 +91,7 @@ public class AuthenticationService implements UserDetailsService {
      * @throws UsernameNotFoundException when the user with the given username has not been found
      */
     @Override
+    @Transactional(readOnly = true)
     public UserData loadUserByUsername(String username) throws UsernameNotFoundException {
         Optional<UserData> user = this.userDataRepository.findByUsername(username);
         if (user.isEmpty()) {
@@ -83,8 +108,9 @@ public class AuthenticationService implements UserDetailsService {
      * @return the user (data) if they have been found in the database
      * @throws EntityNotFoundException when the user with the given userID has not been found
      */
+    @Transactional(readOnly = true)
     public UserData loadUserByUserId(UUID userId) throws EntityNotFoundException {
-        Optional<UserData> user = this.userDataRepository.findByUserId(userId);
+        Optional<UserData> user = this.userDataRepository.findById(userId);
         if (user.isEmpty()) {
             String message = String.format("Could not find user with userID %s", userId.toString());
             throw new EntityNotFoundException(message);
@@ -114,6 +140,8 @@ public class AuthenticationService implements UserDetailsService {
      * E.g. John Doe would get the username jdoe.
      * In case of ties, a number is appended to the username.
      * E.g. the second John Doe would get the username jdoe1, the third would get jdoe2 etc.
+     * The number is taken from a per-base-username counter (see UsernameCounter), which is
+     * incremented atomically, so concurrent registrations never get the same username.
      *
      * @param firstName the first name of the user
      * @param lastName  the last name of the user
@@ -126,18 +154,20 @@ public class AuthenticationService implements UserDetailsService {
         }
 
         String base = (firstName.charAt(0) + lastName).toLowerCase();
-        List<String> similarUsernames = this.userDataRepository.findAllUsernamesByPrefix(base);
-        if (similarUsernames.isEmpty()) {
-            return base;
+        if (!this.usernameCounterRepository.existsById(base)) {
+            try {
+                this.usernameCounterService.createCounterIfAbsent(base);
+            } catch (DataIntegrityViolationException e) {
+                // The counter has been created by a concurrent registration, so it can be used
+            }
         }
 
-        // The returned usernames are already sorted (ascending)
-        String largestSuffix = similarUsernames.getLast().replaceFirst("^" + base, "");
-        if (largestSuffix.isEmpty()) {
-            return base + "1";
+        // The counter row stays locked until this transaction ends (i.e. the user is saved)
+        if (this.usernameCounterRepository.incrementLastSuffix(base) == 0) {
+            throw new DataIntegrityViolationException("Could not generate a username");
         }
-        long largestSuffixNumber = Long.parseLong(largestSuffix);
-        return base + (largestSuffixNumber + 1);
+        long suffix = this.usernameCounterRepository.findLastSuffix(base);
+        return suffix == 0 ? base : base + suffix;
     }
 
 
@@ -159,7 +189,8 @@ public class AuthenticationService implements UserDetailsService {
 
     /**
      * Creates and registers a new user. By default, the user is assigned the "researcher" role.
-     * The generated username and password will be sent to the user by the provided email.
+     * The generated username and password will be sent to the user by the provided email
+     *  (the email is stored in the email outbox in the same transaction, and is sent afterwards).
      *
      * @param email       the email of the new user; must be unique
      * @param firstName   the first name of the new user
@@ -190,7 +221,7 @@ public class AuthenticationService implements UserDetailsService {
         String subject = "Welcome to MedTech Chain";
         String name = String.format("%s %s", firstName, lastName);
         CredentialsEmail emailObj = new CredentialsEmail(email, subject, name, username, password);
-        this.emailService.sendEmail(emailObj);
+        this.emailService.enqueueEmail(emailObj);
 
         return newUser;
     }
@@ -201,10 +232,54 @@ public class AuthenticationService implements UserDetailsService {
      *
      * @return a list of retrieved researchers (with the information specified above)
      */
+    @Transactional(readOnly = true)
     public List<Researcher> getAllResearchers() {
         return this.userDataRepository.findAllResearchers();
     }
 
+    /**
+     * Retrieves one page of researchers, sorted by their userID.
+     * The next page can be requested by passing the userID of the last researcher on this page.
+     * The name/email prefix is matched case-insensitively against the first name, the last name
+     *  and the email of the researcher.
+     *
+     * @param after       the userID of the last researcher of the previous page (or null)
+     * @param affiliation the exact affiliation to filter on (or null)
+     * @param prefix      the prefix of the first name, last name or email to filter on (or null)
+     * @param limit       the maximum number of researchers to return
+     * @return a list of at most `limit` researchers (with the information specified above)
+     */
+    @Transactional(readOnly = true)
+    public List<Researcher> getResearchers(UUID after, String affiliation,
+                                           String prefix, int limit) {
+        if (affiliation != null && affiliation.isBlank()) {
+            affiliation = null;
+        }
+        PageRequest page = PageRequest.ofSize(limit);
+        if (prefix == null || prefix.isBlank()) {
+            return this.userDataRepository.findResearchersPage(after, affiliation, page);
+        }
+        // Escape the LIKE wildcards, so that the prefix is matched literally
+        String pattern = prefix.toLowerCase()
+                .replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_") + "%";
+        // Every column is searched with its own index; the first `limit` researchers of the
+        //  three pages (without duplicates) are the first `limit` researchers that match any.
+        // The database orders UUIDs by their unsigned bytes, i.e. like their string representation
+        TreeMap<UUID, Researcher> merged = new TreeMap<>(Comparator.comparing(UUID::toString));
+        Stream.of(
+                this.userDataRepository.findResearchersPageByFirstName(after, affiliation,
+                        pattern, page),
+                this.userDataRepository.findResearchersPageByLastName(after, affiliation,
+                        pattern, page),
+                this.userDataRepository.findResearchersPageByEmail(after, affiliation,
+                        pattern, page))
+                .flatMap(List::stream)
+                .forEach(researcher -> merged.putIfAbsent(researcher.getUserId(), researcher));
+        return merged.values().stream().limit(limit).toList();
+    }
+
     /**
      * Updates the personal details of the user.
      * The personal details that are updated are first name, last name and affiliation.
@@ -221,7 +296,9 @@ public class AuthenticationService implements UserDetailsService {
         user.setLastName(lastName);
         user.setAffiliation(affiliation);
 
-        return this.userDataRepository.save(user);
+        UserData updatedUser = this.userDataRepository.save(user);
+        this.publishUserChanged(userId);
+        return updatedUser;
     }
 
     /**
@@ -233,6 +310,7 @@ public class AuthenticationService implements UserDetailsService {
         // Check if the user with the specified userId exists
         loadUserByUserId(userId);
         this.userDataRepository.deleteByUserId(userId);
+        this.publishUserChanged(userId);
     }
 
     /**
@@ -250,6 +328,18 @@ public class AuthenticationService implements UserDetailsService {
         }
         user.setPassword(passwordEncoder.encode(newPassword));
         this.userDataRepository.save(user);
+        this.publishUserChanged(user.getUserId());
+    }
+
+    /**
+     * Tells all instances (once the current transaction commits) that the user has changed,
+     *  so that they evict it from their caches.
+     *
+     * @param userId the userID of the user that has changed
+     */
+    private void publishUserChanged(UUID userId) {
+        this.invalidationBus.publish(
+                new InvalidationMessage(InvalidationMessage.Type.USER, userId.toString()));
     }
 
     public String currentUserName() {
@@ -266,4 +356,18 @@ public class AuthenticationService implements UserDetailsService {
         }
         return "";
     }
+
+    /**
+     * Gets the affiliation of the user that is currently authenticated (with a JWT).
+     *
+     * @return the affiliation of the current user, or an empty string if there is none
+     */
+    public String currentUserAffiliation() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.isAuthenticated()
+                && authentication.getPrincipal() instanceof UserData userData) {
+            return userData.getAffiliation();
+        }
+        return "";
+    }
 }
@@ -1,7 +1,14 @@
 package nl.medtechchain.services;
 
 import com.google.protobuf.InvalidProtocolBufferException;
-import jakarta.annotation.PreDestroy;
+import io.grpc.Status;
+import nl.medtechchain.cache.InvalidationBus;
+import nl.medtechchain.cache.InvalidationMessage;
+import nl.medtechchain.concurrency.AdaptiveConcurrencyLimiter;
+import nl.medtechchain.concurrency.ConcurrencyLimitExceededException;
+import nl.medtechchain.config.GatewayConnection;
+import nl.medtechchain.lifecycle.GatewayLifecycle;
+import nl.medtechchain.lifecycle.ServiceShuttingDownException;
 import nl.medtechchain.proto.common.ChaincodeResponse;
 import nl.medtechchain.proto.config.NetworkConfig;
 import nl.medtechchain.proto.config.PlatformConfig;
@@ -13,6 +20,9 @@ import nl.medtechchain.proto.query.QueryAssetPage;
 import nl.medtechchain.proto.query.ReadQueryAssetPage;
 import nl.medtechchain.protoutils.PlatformConfigWrapper;
 import org.hyperledger.fabric.client.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
 import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Service;
 
@@ -20,7 +30,10 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.List;
-import java.util.logging.Logger;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static nl.medtechchain.protoutils.Base64EncodingOps.decode64;
 import static nl.medtechchain.protoutils.Base64EncodingOps.encode64;
@@ -29,28 +42,120 @@ import static nl.medtechchain.protoutils.Base64EncodingOps.encode64;
 public class ChaincodeService {
 
 
-    private static final Logger logger = Logger.getLogger(ChaincodeService.class.getName());
+    private static final Logger logger = LoggerFactory.getLogger(ChaincodeService.class);
 
-    private final Gateway gateway;
-    private final Contract deviceDataContract;
-    private final Contract configContract;
+    private final GatewayConnection gatewayConnection;
+    private final GatewayLifecycle gatewayLifecycle;
+    private final String chaincodeName;
+    private final String dataContractName;
+    private final String configContractName;
+    private final InvalidationBus invalidationBus;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
 
-    public ChaincodeService(Environment env, Gateway gateway) {
-        this.gateway = gateway;
-        Network network = gateway.getNetwork(env.getProperty("gateway.channel-name"));
-        this.deviceDataContract = network.getContract(env.getProperty("gateway.chaincode-name"),
-                env.getProperty("gateway.data-contract-name"));
+    // Calls that fail with these statuses did not get an answer from an overloaded peer in time
+    private static final Set<Status.Code> DROPPED_STATUS_CODES = Set.of(Status.Code.DEADLINE_EXCEEDED, Status.Code.RESOURCE_EXHAUSTED, Status.Code.UNAVAILABLE);
 
-        this.configContract = network.getContract(env.getProperty("gateway.chaincode-name"),
-                env.getProperty("gateway.config-contract-name"));
+    // The configs are read on every query, but rarely change. They are cached until the TTL expires
+    // or an invalidation message arrives (also when another instance has updated them).
+    private record CachedConfig<T>(T config, long generation, long expiresAtNanos) {
+    }
+
+    private final long configCacheTtlNanos;
+    private final AtomicLong configGeneration = new AtomicLong();
+    private final AtomicReference<CachedConfig<PlatformConfig>> platformConfigCache = new AtomicReference<>();
+    private final AtomicReference<CachedConfig<NetworkConfig>> networkConfigCache = new AtomicReference<>();
+
+    public ChaincodeService(Environment env, GatewayConnection gatewayConnection, GatewayLifecycle gatewayLifecycle, InvalidationBus invalidationBus, AdaptiveConcurrencyLimiter concurrencyLimiter) {
+        this.gatewayConnection = gatewayConnection;
+        this.gatewayLifecycle = gatewayLifecycle;
+        this.invalidationBus = invalidationBus;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.configCacheTtlNanos = TimeUnit.SECONDS.toNanos(env.getProperty("gateway.config-cache-ttl-seconds", Long.class, 0L));
+        this.chaincodeName = env.getProperty("gateway.chaincode-name");
+        this.dataContractName = env.getProperty("gateway.data-contract-name");
+        this.configContractName = env.getProperty("gateway.config-contract-name");
+    }
+
+    // The contracts are resolved on every call (which is cheap), since the gateway is only connected
+    // on the first call and may be reconnected later
+    private Contract deviceDataContract() {
+        return gatewayConnection.getNetwork().getContract(chaincodeName, dataContractName);
+    }
+
+    private Contract configContract() {
+        return gatewayConnection.getNetwork().getContract(chaincodeName, configContractName);
+    }
+
+    // All calls to the gateway go through the concurrency limiter, so that a slow peer is not flooded,
+    // and are registered with the lifecycle, so that a shutdown waits for them before closing the gateway
+    private byte[] evaluate(Contract contract, String name, String... args) throws GatewayException {
+        try (var call = gatewayLifecycle.beginCall(); var permit = concurrencyLimiter.acquire()) {
+            try {
+                return contract.evaluateTransaction(name, args);
+            } catch (GatewayException e) {
+                if (DROPPED_STATUS_CODES.contains(e.getStatus().getCode()))
+                    permit.dropped();
+                throw e;
+            }
+        }
+    }
+
+    // The transaction is endorsed, submitted and committed step by step (as contract.submitTransaction does),
+    // so that the listener can report the progress
+    private byte[] submit(Contract contract, String name, TransactionProgressListener listener, String... args) throws EndorseException, CommitException, SubmitException, CommitStatusException {
+        try (var call = gatewayLifecycle.beginCall(); var permit = concurrencyLimiter.acquire()) {
+            try {
+                var transaction = contract.newProposal(name).addArguments(args).build().endorse();
+                listener.onEndorsed(transaction.getTransactionId());
+                var submitted = transaction.submitAsync();
+                listener.onSubmitted(submitted.getTransactionId());
+                var status = submitted.getStatus();
+                if (!status.isSuccessful())
+                    throw new CommitException(status);
+                listener.onCommitted(status.getTransactionId(), status.getBlockNumber());
+                return submitted.getResult();
+            } catch (GatewayException e) {
+                if (DROPPED_STATUS_CODES.contains(e.getStatus().getCode()))
+                    permit.dropped();
+                throw e;
+            }
+        }
+    }
+
+    private <T> T getCached(AtomicReference<CachedConfig<T>> cache) {
+        var cached = cache.get();
+        if (cached != null && cached.generation() == configGeneration.get() && System.nanoTime() - cached.expiresAtNanos() < 0)
+            return cached.config();
+        return null;
+    }
+
+    private <T> void putCached(AtomicReference<CachedConfig<T>> cache, T config, long generation) {
+        cache.set(new CachedConfig<>(config, generation, System.nanoTime() + configCacheTtlNanos));
+    }
+
+    @EventListener
+    public void onInvalidation(InvalidationMessage message) {
+        switch (message.type()) {
+            case PLATFORM_CONFIG, NETWORK_CONFIG, ALL -> configGeneration.incrementAndGet();
+            default -> {
+            }
+        }
     }
 
     public PlatformConfigWrapper getPlatformConfig() {
+        var cached = getCached(platformConfigCache);
+        if (cached != null)
+            // The wrapper can be modified by the caller, so every caller gets its own
+            return new PlatformConfigWrapper(cached);
+
         try {
-            var response = configContract.evaluateTransaction("GetPlatformConfig");
+            var generation = configGeneration.get();
+            var response = evaluate(configContract(), "GetPlatformConfig");
             var chaincodeResponse = decode64(response, ChaincodeResponse::parseFrom);
             if (chaincodeResponse.getChaincodeResponseCase() == ChaincodeResponse.ChaincodeResponseCase.SUCCESS) {
-                return new PlatformConfigWrapper(decode64(chaincodeResponse.getSuccess().getMessage(), PlatformConfig::parseFrom));
+                var platformConfig = decode64(chaincodeResponse.getSuccess().getMessage(), PlatformConfig::parseFrom);
+                putCached(platformConfigCache, platformConfig, generation);
+                return new PlatformConfigWrapper(platformConfig);
             }
 
             if (chaincodeResponse.getChaincodeResponseCase() == ChaincodeResponse.ChaincodeResponseCase.ERROR)
@@ -58,18 +163,27 @@ public class ChaincodeService {
 
             throw new IllegalStateException("Unrecognized chaincode response");
 
+        } catch (ConcurrencyLimitExceededException | ServiceShuttingDownException e) {
+            throw e;
         } catch (Throwable e) {
-            logger.severe("Cannot retrieve platform config: " + e);
+            logger.error("Cannot retrieve platform config", e);
             throw new IllegalStateException("Cannot retrieve platform config:", e);
         }
     }
 
     public NetworkConfig getNetworkConfig() {
+        var cached = getCached(networkConfigCache);
+        if (cached != null)
+            return cached;
+
         try {
-            var response = configContract.evaluateTransaction("GetNetworkConfig");
+            var generation = configGeneration.get();
+            var response = evaluate(configContract(), "GetNetworkConfig");
             var chaincodeResponse = decode64(response, ChaincodeResponse::parseFrom);
             if (chaincodeResponse.getChaincodeResponseCase() == ChaincodeResponse.ChaincodeResponseCase.SUCCESS) {
-                return decode64(chaincodeResponse.getSuccess().getMessage(), NetworkConfig::parseFrom);
+                var networkConfig = decode64(chaincodeResponse.getSuccess().getMessage(), NetworkConfig::parseFrom);
+                putCached(networkConfigCache, networkConfig, generation);
+                return networkConfig;
             }
 
             if (chaincodeResponse.getChaincodeResponseCase() == ChaincodeResponse.ChaincodeResponseCase.ERROR)
@@ -77,23 +191,35 @@ public class ChaincodeService {
 
             throw new IllegalStateException("Unrecognized chaincode response");
 
+        } catch (ConcurrencyLimitExceededException | ServiceShuttingDownException e) {
+            throw e;
         } catch (Throwable e) {
-            logger.severe("Cannot retrieve network config: " + e);
+            logger.error("Cannot retrieve network config", e);
             throw new IllegalStateException("Cannot retrieve network config:", e);
         }
     }
 
 
     public ChaincodeResponse submitQuery(Query query) throws EndorseException, CommitException, SubmitException, CommitStatusException, InvalidProtocolBufferException {
-        return decode64(this.deviceDataContract.submitTransaction("Query", encode64(query)), ChaincodeResponse::parseFrom);
+        return submitQuery(query, TransactionProgressListener.NONE);
+    }
+
+    public ChaincodeResponse submitQuery(Query query, TransactionProgressListener listener) throws EndorseException, CommitException, SubmitException, CommitStatusException, InvalidProtocolBufferException {
+        return decode64(submit(deviceDataContract(), "Query", listener, encode64(query)), ChaincodeResponse::parseFrom);
     }
 
     public ChaincodeResponse submitUpdatePlatformConfig(UpdatePlatformConfig updatePlatformConfig) throws EndorseException, CommitException, SubmitException, CommitStatusException, InvalidProtocolBufferException {
-        return decode64(this.configContract.submitTransaction("UpdatePlatformConfig", encode64(updatePlatformConfig)), ChaincodeResponse::parseFrom);
+        var response = decode64(submit(configContract(), "UpdatePlatformConfig", TransactionProgressListener.NONE, encode64(updatePlatformConfig)), ChaincodeResponse::parseFrom);
+        if (response.getChaincodeResponseCase() == ChaincodeResponse.ChaincodeResponseCase.SUCCESS)
+            invalidationBus.publish(InvalidationMessage.of(InvalidationMessage.Type.PLATFORM_CONFIG));
+        return response;
     }
 
     public ChaincodeResponse submitUpdateNetworkConfig(UpdateNetworkConfig updateNetworkConfig) throws EndorseException, CommitException, SubmitException, CommitStatusException, InvalidProtocolBufferException {
-        return decode64(this.configContract.submitTransaction("UpdateNetworkConfig", encode64(updateNetworkConfig)), ChaincodeResponse::parseFrom);
+        var response = decode64(submit(configContract(), "UpdateNetworkConfig", TransactionProgressListener.NONE, encode64(updateNetworkConfig)), ChaincodeResponse::parseFrom);
+        if (response.getChaincodeResponseCase() == ChaincodeResponse.ChaincodeResponseCase.SUCCESS)
+            invalidationBus.publish(InvalidationMessage.of(InvalidationMessage.Type.NETWORK_CONFIG));
+        return response;
     }
 
     public List<QueryAsset> readQueries() throws IOException, GatewayException {
@@ -105,18 +231,11 @@ public class ChaincodeService {
         while (true) {
             var readPage = ReadQueryAssetPage.newBuilder().setPageNumber(pageNumber).setPageSize(pageSize).build();
             pageNumber++;
-            var readPageResponse = decode64(this.deviceDataContract.evaluateTransaction("ReadQueries", encode64(readPage)), QueryAssetPage::parseFrom);
+            var readPageResponse = decode64(evaluate(deviceDataContract(), "ReadQueries", encode64(readPage)), QueryAssetPage::parseFrom);
             result.addAll(readPageResponse.getAssetsList());
             if (readPageResponse.getAssetsList().size() < pageSize)
                 break;
         }
         return result;
     }
-
-    @PreDestroy
-    public void destroy() {
-        logger.info("Running a pre-destroy hook to close the gateway...");
-        this.gateway.close();
-        logger.info("Successfully closed the gateway");
-    }
 }
@@ -0,0 +1,267 @@
+package nl.medtechchain.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.mail.internet.MimeMessage;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import nl.medtechchain.models.email.EmailOutboxMessage;
+import nl.medtechchain.models.email.EmailOutboxStatus;
+import nl.medtechchain.repositories.EmailOutboxRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * A background task that sends the emails from the email outbox (see EmailOutboxMessage).
+ * <br>
+ * Every poll, the due messages are claimed in batches: they are locked with SKIP LOCKED (so that
+ *  several instances of the backend never claim the same message) and leased for a while by
+ *  moving their next attempt time forward. The claiming transaction then commits, so that no
+ *  database connection is held while talking to the SMTP server.
+ * Each batch is sent over a single SMTP connection. Sent messages are deleted (they contain the
+ *  generated password); failed messages are retried with exponential backoff, until the maximum
+ *  number of attempts is reached, after which they are marked as FAILED and their variables are
+ *  cleared (for the same reason).
+ * If the instance dies while sending, the lease expires and another instance retries the batch.
+ */
+@Component
+@ConditionalOnProperty(name = "email.outbox.dispatcher.enabled", havingValue = "true",
+        matchIfMissing = true)
+public class EmailOutboxDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmailOutboxDispatcher.class);
+
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    private final EmailOutboxRepository emailOutboxRepository;
+
+    private final EmailService emailService;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final Counter sentCounter;
+
+    private final Counter failedAttemptsCounter;
+
+    private final AtomicLong pendingCount = new AtomicLong();
+
+    private final AtomicLong failedCount = new AtomicLong();
+
+    private final int batchSize;
+
+    private final int maxAttempts;
+
+    private final long initialBackoffSeconds;
+
+    private final long maxBackoffSeconds;
+
+    private final long leaseSeconds;
+
+    /**
+     * Creates an EmailOutboxDispatcher object and registers its metrics.
+     *
+     * @param emailOutboxRepository the repository with the emails that still have to be sent
+     * @param emailService          the email service to render and send the emails
+     * @param transactionTemplate   the transaction template to claim and complete the batches
+     * @param meterRegistry         the registry of the metrics (exposed on /actuator/prometheus)
+     * @param batchSize             the maximum number of emails sent over one SMTP connection
+     * @param maxAttempts           the number of attempts after which an email is given up on
+     * @param initialBackoffSeconds the delay before the first retry
+     * @param maxBackoffSeconds     the maximum delay between two attempts
+     * @param leaseSeconds          the time for which a claimed email is not picked up again
+     */
+    public EmailOutboxDispatcher(EmailOutboxRepository emailOutboxRepository,
+                                 EmailService emailService,
+                                 TransactionTemplate transactionTemplate,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${email.outbox.batch-size}") int batchSize,
+                                 @Value("${email.outbox.max-attempts}") int maxAttempts,
+                                 @Value("${email.outbox.initial-backoff-seconds}")
+                                 long initialBackoffSeconds,
+                                 @Value("${email.outbox.max-backoff-seconds}")
+                                 long maxBackoffSeconds,
+                                 @Value("${email.outbox.lease-seconds}") long leaseSeconds) {
+        this.emailOutboxRepository = emailOutboxRepository;
+        this.emailService = emailService;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffSeconds = initialBackoffSeconds;
+        this.maxBackoffSeconds = maxBackoffSeconds;
+        this.leaseSeconds = leaseSeconds;
+        this.sentCounter = Counter.builder("email.outbox.sent")
+                .description("Number of emails sent from the outbox")
+                .register(meterRegistry);
+        this.failedAttemptsCounter = Counter.builder("email.outbox.attempts.failed")
+                .description("Number of failed attempts to send an email from the outbox")
+                .register(meterRegistry);
+        Gauge.builder("email.outbox.depth", this.pendingCount, AtomicLong::get)
+                .description("Number of emails in the outbox that still have to be sent")
+                .tag("status", EmailOutboxStatus.PENDING.name())
+                .register(meterRegistry);
+        Gauge.builder("email.outbox.depth", this.failedCount, AtomicLong::get)
+                .description("Number of emails in the outbox that have been given up on")
+                .tag("status", EmailOutboxStatus.FAILED.name())
+                .register(meterRegistry);
+    }
+
+    /**
+     * Sends all emails that are due, batch by batch, and updates the queue depth metrics.
+     * The next poll starts the configured interval after this one has finished.
+     */
+    @Scheduled(fixedDelayString = "${email.outbox.poll-interval-ms}")
+    public void dispatch() {
+        try {
+            List<EmailOutboxMessage> batch;
+            do {
+                batch = this.claimBatch();
+                if (!batch.isEmpty()) {
+                    this.sendBatch(batch);
+                }
+            } while (batch.size() == this.batchSize);
+        } catch (RuntimeException e) {
+            // E.g. the database is unavailable; the next poll tries again
+            logger.warn("Could not dispatch the email outbox", e);
+        }
+
+        try {
+            this.pendingCount.set(this.emailOutboxRepository
+                    .countByStatus(EmailOutboxStatus.PENDING));
+            this.failedCount.set(this.emailOutboxRepository
+                    .countByStatus(EmailOutboxStatus.FAILED));
+        } catch (RuntimeException e) {
+            logger.warn("Could not count the emails in the outbox", e);
+        }
+    }
+
+    /**
+     * Claims the next batch of due messages by leasing them, so that other instances
+     *  (and the next poll of this instance) skip them while they are being sent.
+     *
+     * @return the claimed messages (detached, since the claiming transaction has committed)
+     */
+    private List<EmailOutboxMessage> claimBatch() {
+        List<EmailOutboxMessage> batch = this.transactionTemplate.execute(status -> {
+            Instant now = Instant.now();
+            List<EmailOutboxMessage> due = this.emailOutboxRepository.findDueForUpdate(
+                    EmailOutboxStatus.PENDING, now, PageRequest.ofSize(this.batchSize));
+            Instant leaseEnd = now.plusSeconds(this.leaseSeconds);
+            due.forEach(message -> message.setNextAttemptAt(leaseEnd));
+            return due;
+        });
+        return batch == null ? List.of() : batch;
+    }
+
+    /**
+     * Renders and sends the batch over a single SMTP connection, and records the outcome:
+     *  sent messages are deleted, failed messages are rescheduled (or given up on).
+     *
+     * @param batch the claimed messages
+     */
+    private void sendBatch(List<EmailOutboxMessage> batch) {
+        Map<Long, String> errors = new HashMap<>();
+        Map<MimeMessage, EmailOutboxMessage> rendered = new IdentityHashMap<>();
+        for (EmailOutboxMessage message : batch) {
+            try {
+                rendered.put(this.emailService.createMessage(message), message);
+            } catch (Exception e) {
+                errors.put(message.getId(), "Could not create the email: " + e.getMessage());
+            }
+        }
+
+        if (!rendered.isEmpty()) {
+            try {
+                this.emailService.sendMessages(rendered.keySet().toArray(new MimeMessage[0]));
+            } catch (MailSendException e) {
+                // Only the messages in the failed messages have not been sent
+                e.getFailedMessages().forEach((failed, cause) -> {
+                    EmailOutboxMessage message = rendered.get(failed);
+                    if (message != null) {
+                        errors.put(message.getId(), String.valueOf(cause.getMessage()));
+                    }
+                });
+                if (e.getFailedMessages().isEmpty()) {
+                    rendered.values().forEach(message ->
+                            errors.put(message.getId(), String.valueOf(e.getMessage())));
+                }
+            } catch (MailException e) {
+                // E.g. the SMTP server could not be reached, so none of the messages has been sent
+                rendered.values().forEach(message ->
+                        errors.put(message.getId(), String.valueOf(e.getMessage())));
+            }
+        }
+
+        this.completeBatch(batch, errors);
+    }
+
+    /**
+     * Deletes the sent messages and reschedules the failed ones with exponential backoff.
+     * A message that has failed the maximum number of times is marked as FAILED (and its
+     *  variables are cleared).
+     *
+     * @param batch  the claimed messages
+     * @param errors the error for each message that has not been sent (by the message ID)
+     */
+    private void completeBatch(List<EmailOutboxMessage> batch, Map<Long, String> errors) {
+        List<Long> sent = new ArrayList<>();
+        List<EmailOutboxMessage> failed = new ArrayList<>();
+        Instant now = Instant.now();
+        for (EmailOutboxMessage message : batch) {
+            String error = errors.get(message.getId());
+            if (error == null) {
+                sent.add(message.getId());
+                continue;
+            }
+            int attempts = message.getAttempts() + 1;
+            message.setAttempts(attempts);
+            message.setLastError(error.length() > MAX_ERROR_LENGTH
+                    ? error.substring(0, MAX_ERROR_LENGTH) : error);
+            if (attempts >= this.maxAttempts) {
+                message.fail();
+                logger.error("Giving up on email {} to {} after {} attempts: {}",
+                        message.getId(), message.getRecipient(), attempts, error);
+            } else {
+                message.setNextAttemptAt(now.plus(this.backoff(attempts)));
+                logger.warn("Could not send email {} (attempt {}): {}",
+                        message.getId(), attempts, error);
+            }
+            failed.add(message);
+        }
+
+        this.transactionTemplate.executeWithoutResult(status -> {
+            this.emailOutboxRepository.deleteAllByIdInBatch(sent);
+            this.emailOutboxRepository.saveAll(failed);
+        });
+        this.sentCounter.increment(sent.size());
+        this.failedAttemptsCounter.increment(failed.size());
+    }
+
+    /**
+     * Computes the delay before the next attempt: the initial backoff is doubled after every
+     *  failed attempt, up to the maximum backoff.
+     *
+     * @param attempts the number of failed attempts so far (at least 1)
+     * @return the delay before the next attempt
+     */
+    private Duration backoff(int attempts) {
+        long multiplier = 1L << Math.min(attempts - 1, 30);
+        long seconds = this.initialBackoffSeconds > this.maxBackoffSeconds / multiplier
+                ? this.maxBackoffSeconds : this.initialBackoffSeconds * multiplier;
+        return Duration.ofSeconds(seconds);
+    }
+}
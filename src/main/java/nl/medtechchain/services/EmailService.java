@@ -1,17 +1,30 @@
 package nl.medtechchain.services;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import java.time.Instant;
+import java.util.Map;
 import nl.medtechchain.models.email.EmailData;
+import nl.medtechchain.models.email.EmailOutboxMessage;
+import nl.medtechchain.repositories.EmailOutboxRepository;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
-import org.springframework.mail.javamail.MimeMessagePreparator;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.Context;
 
 /**
  * A service class used to send emails.
  * E.g. when registering a user, their credentials are sent to them by email.
+ * <br>
+ * Emails are not sent directly: they are stored in the email outbox (in the transaction of the
+ *  caller), and are sent in the background by the EmailOutboxDispatcher. This way, a slow or
+ *  unavailable SMTP server does not block the request, and an email is never lost (or sent for
+ *  a change that has been rolled back).
  */
 @Service
 public class EmailService {
@@ -23,33 +36,77 @@ public class EmailService {
 
     private final TemplateEngine templateEngine;
 
+    private final EmailOutboxRepository emailOutboxRepository;
+
+    private final ObjectMapper objectMapper;
+
     /**
      * Creates an EmailService object. The sender email address is defined by the `from` field.
      *
-     * @param mailSender        mail sender that is used to send emails
-     * @param templateEngine    template engine to inject fields into Thymeleaf HTML templates
+     * @param mailSender            mail sender that is used to create the email messages
+     * @param templateEngine        template engine to inject fields into Thymeleaf HTML templates
+     * @param emailOutboxRepository the repository with the emails that still have to be sent
+     * @param objectMapper          the object mapper to (de)serialize the template variables
      */
-    public EmailService(JavaMailSender mailSender, TemplateEngine templateEngine) {
+    public EmailService(JavaMailSender mailSender, TemplateEngine templateEngine,
+                        EmailOutboxRepository emailOutboxRepository, ObjectMapper objectMapper) {
         this.mailSender = mailSender;
         this.templateEngine = templateEngine;
+        this.emailOutboxRepository = emailOutboxRepository;
+        this.objectMapper = objectMapper;
     }
 
     /**
-     * Sends an email to the specified email address, with the specified subject and content
-     *  (created by Thymeleaf based on the HTML template).
+     * Stores the email in the email outbox, so that it is sent once the current transaction
+     *  commits. If the transaction rolls back, the email is discarded as well.
      *
      * @param emailData         the data relevant for the email (subject, recipient, content etc.)
+     * @throws IllegalArgumentException if the template variables cannot be serialized
+     */
+    public void enqueueEmail(EmailData emailData) {
+        String variables;
+        try {
+            variables = this.objectMapper.writeValueAsString(emailData.getVariables());
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Could not serialize the email variables", e);
+        }
+        this.emailOutboxRepository.save(new EmailOutboxMessage(emailData.getTo(),
+                emailData.getSubject(), emailData.getTemplate(), variables, Instant.now()));
+    }
+
+    /**
+     * Creates the email message for a message from the outbox, with the specified subject and
+     *  content (created by Thymeleaf based on the HTML template).
+     *
+     * @param message           the message from the email outbox
+     * @return                  the created email message, ready to be sent
+     * @throws MessagingException       if the email message cannot be created
+     * @throws JsonProcessingException  if the stored template variables cannot be parsed
+     */
+    public MimeMessage createMessage(EmailOutboxMessage message)
+            throws MessagingException, JsonProcessingException {
+        Map<String, Object> variables = this.objectMapper.readValue(message.getVariables(),
+                new TypeReference<>() {});
+        Context context = new Context();
+        context.setVariables(variables);
+
+        MimeMessage mimeMessage = this.mailSender.createMimeMessage();
+        MimeMessageHelper messageHelper = new MimeMessageHelper(mimeMessage);
+        messageHelper.setFrom(this.from);
+        messageHelper.setTo(message.getRecipient());
+        messageHelper.setSubject(message.getSubject());
+        messageHelper.setText(this.templateEngine.process(message.getTemplate(), context), true);
+        return mimeMessage;
+    }
+
+    /**
+     * Sends the given email messages over a single connection to the SMTP server.
+     * If some of the messages could not be sent, a MailSendException is thrown, whose
+     *  failed messages are the messages that have not been sent.
+     *
+     * @param mimeMessages      the email messages to send
      */
-    @Async
-    public void sendEmail(EmailData emailData) {
-        MimeMessagePreparator messagePreparation = mimeMessage -> {
-            MimeMessageHelper messageHelper = new MimeMessageHelper(mimeMessage);
-            messageHelper.setFrom(from);
-            messageHelper.setTo(emailData.getTo());
-            messageHelper.setSubject(emailData.getSubject());
-            String text = templateEngine.process(emailData.getTemplate(), emailData.getContext());
-            messageHelper.setText(text, true);
-        };
-        this.mailSender.send(messagePreparation);
+    public void sendMessages(MimeMessage... mimeMessages) {
+        this.mailSender.send(mimeMessages);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,65 @@
+package nl.medtechchain.services;
+
+import java.util.List;
+import nl.medtechchain.models.QueryHistoryEntry;
+import nl.medtechchain.proto.query.Query;
+import nl.medtechchain.proto.query.QueryResult;
+import nl.medtechchain.repositories.QueryHistoryRepository;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+
+/**
+ * A service class that stores the queries that have been run successfully (with their results),
+ *  so that every researcher can look at their own earlier results again.
+ * The history is captured when the query is run, since reading it back from the chain
+ *  (ChaincodeService.readQueries) scans all queries of all researchers and does not include
+ *  the results.
+ */
+@Service
+public class QueryHistoryService {
+
+    private final QueryHistoryRepository queryHistoryRepository;
+
+    /**
+     * Creates a QueryHistoryService object.
+     *
+     * @param queryHistoryRepository    the repository with the query history
+     */
+    public QueryHistoryService(QueryHistoryRepository queryHistoryRepository) {
+        this.queryHistoryRepository = queryHistoryRepository;
+    }
+
+    /**
+     * Stores the query and its result in the history of the submitter of the query.
+     *
+     * @param query         the query that has been run (with the submitter set)
+     * @param result        the result of the query
+     * @return              the stored history entry
+     */
+    @Transactional
+    public QueryHistoryEntry record(Query query, QueryResult result) {
+        return this.queryHistoryRepository.save(new QueryHistoryEntry(query.getSubmitter(),
+                query.toByteArray(), result.toByteArray()));
+    }
+
+    /**
+     * Retrieves one page of the query history of the specified researcher, newest first.
+     * The next page can be requested by passing the ID of the last entry on this page.
+     *
+     * @param submitter     the username of the researcher
+     * @param after         the ID of the last entry of the previous page (or null)
+     * @param limit         the maximum number of entries to return
+     * @return              a list of at most `limit` history entries
+     */
+    @Transactional(readOnly = true)
+    public List<QueryHistoryEntry> getHistory(String submitter, Long after, int limit) {
+        PageRequest page = PageRequest.ofSize(limit);
+        if (after == null) {
+            return this.queryHistoryRepository.findBySubmitterOrderByIdDesc(submitter, page);
+        }
+        return this.queryHistoryRepository
+                .findBySubmitterAndIdLessThanOrderByIdDesc(submitter, after, page);
+    }
+}
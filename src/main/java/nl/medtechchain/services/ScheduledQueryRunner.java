@@ -0,0 +1,160 @@
+package nl.medtechchain.services;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import nl.medtechchain.models.ScheduledQuery;
+import nl.medtechchain.proto.common.ChaincodeError;
+import nl.medtechchain.proto.common.ChaincodeResponse;
+import nl.medtechchain.proto.query.Query;
+import nl.medtechchain.proto.query.QueryResult;
+import nl.medtechchain.protoutils.Base64EncodingOps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+
+/**
+ * A background task that runs the scheduled queries that are due (see ScheduledQueryService),
+ *  on the chain with ChaincodeService.submitQuery, and stores their results.
+ * <br>
+ * Every poll, the due queries are claimed with SKIP LOCKED and their next run is moved forward
+ *  (the same way as the EmailOutboxDispatcher), so that every run happens on one instance only,
+ *  without a database connection being held while the query runs on the chain. If the instance
+ *  dies during a run, the query runs again after its interval.
+ * A query is submitted by the admin who defined it, so that it shows up as their query on the
+ *  chain.
+ * The claimed queries are run on their own virtual threads, at most
+ *  `queries.scheduled.max-concurrent` at a time, so that the poll returns at once and does not
+ *  hold the thread of the task scheduler (which the other background tasks share, see
+ *  SchedulingConfig) while the queries wait for the chain. A poll only claims as many queries as
+ *  can start right away.
+ */
+@Component
+@ConditionalOnProperty(name = "queries.scheduled.enabled", havingValue = "true",
+        matchIfMissing = true)
+public class ScheduledQueryRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(ScheduledQueryRunner.class);
+
+    private final ScheduledQueryService scheduledQueryService;
+
+    private final ChaincodeService chaincodeService;
+
+    private final int batchSize;
+
+    // Free slots for running queries; only taken by runDue, which never runs twice at once
+    private final Semaphore slots;
+
+    private final ExecutorService runners = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * Creates a ScheduledQueryRunner object.
+     *
+     * @param scheduledQueryService the service with the scheduled queries
+     * @param chaincodeService      the service that runs the queries on the chain
+     * @param batchSize             the maximum number of queries that are claimed at once
+     * @param maxConcurrent         the maximum number of queries that run at the same time
+     */
+    public ScheduledQueryRunner(ScheduledQueryService scheduledQueryService,
+                                ChaincodeService chaincodeService,
+                                @Value("${queries.scheduled.batch-size}") int batchSize,
+                                @Value("${queries.scheduled.max-concurrent}") int maxConcurrent) {
+        this.scheduledQueryService = scheduledQueryService;
+        this.chaincodeService = chaincodeService;
+        this.batchSize = batchSize;
+        this.slots = new Semaphore(maxConcurrent);
+    }
+
+    /**
+     * Claims the queries that are due, batch by batch, and starts them in the background, until
+     *  no more queries are due or all slots are taken (the rest is claimed by a later poll).
+     * The next poll starts the configured interval after this one has finished.
+     */
+    @Scheduled(fixedDelayString = "${queries.scheduled.poll-interval-ms}")
+    public void runDue() {
+        try {
+            int limit;
+            List<ScheduledQuery> batch;
+            do {
+                limit = Math.min(this.batchSize, this.slots.availablePermits());
+                if (limit == 0) {
+                    return;
+                }
+                batch = this.scheduledQueryService.claimDue(limit);
+                for (ScheduledQuery scheduled : batch) {
+                    // Does not block, since only this method takes the slots
+                    this.slots.acquireUninterruptibly();
+                    this.runners.execute(() -> {
+                        try {
+                            this.run(scheduled);
+                        } finally {
+                            this.slots.release();
+                        }
+                    });
+                }
+            } while (batch.size() == limit);
+        } catch (RuntimeException e) {
+            // E.g. the database is unavailable; the next poll tries again
+            logger.warn("Could not run the scheduled queries", e);
+        }
+    }
+
+    /**
+     * Runs one scheduled query and stores its outcome.
+     *
+     * @param scheduled     the claimed scheduled query
+     */
+    void run(ScheduledQuery scheduled) {
+        long start = System.nanoTime();
+        QueryResult result = null;
+        String error = null;
+        try {
+            Query query = Query.parseFrom(scheduled.getQuery()).toBuilder()
+                    .setSubmitter(scheduled.getOwner())
+                    .build();
+            ChaincodeResponse response = this.chaincodeService.submitQuery(query);
+            if (response.getChaincodeResponseCase()
+                    == ChaincodeResponse.ChaincodeResponseCase.SUCCESS) {
+                QueryResult decoded = Base64EncodingOps.decode64(
+                        response.getSuccess().getMessage(), QueryResult::parseFrom);
+                if (decoded.hasError()) {
+                    error = describe(decoded.getError());
+                } else {
+                    result = decoded;
+                }
+            } else {
+                error = describe(response.getError());
+            }
+        } catch (Exception e) {
+            // E.g. the chain cannot be reached; the query runs again after its interval
+            error = e.getClass().getSimpleName() + ": " + e.getMessage();
+        }
+
+        logger.atInfo()
+                .addKeyValue("scheduledQuery", scheduled.getId())
+                .addKeyValue("failed", error != null)
+                .addKeyValue("durationMs",
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start))
+                .log("Ran a scheduled query");
+        if (error != null) {
+            logger.warn("Scheduled query {} failed: {}", scheduled.getId(), error);
+        }
+        this.scheduledQueryService.complete(scheduled.getId(), result, error);
+    }
+
+    /**
+     * Describes an error of the chaincode.
+     *
+     * @param error     the error
+     * @return          the code and the message of the error
+     */
+    private static String describe(ChaincodeError error) {
+        return error.getCode() + ": " + error.getMessage();
+    }
+}
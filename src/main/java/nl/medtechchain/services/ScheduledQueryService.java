@@ -0,0 +1,145 @@
+package nl.medtechchain.services;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import nl.medtechchain.models.ScheduledQuery;
+import nl.medtechchain.proto.query.Query;
+import nl.medtechchain.proto.query.QueryResult;
+import nl.medtechchain.protoutils.QueryValidator;
+import nl.medtechchain.repositories.ScheduledQueryRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+
+/**
+ * A service class that manages the scheduled queries: standard statistics (e.g. the number of
+ *  devices per speciality) that the admin defines once, that are run periodically in the
+ *  background (see ScheduledQueryRunner), and whose latest results researchers read from the
+ *  database instead of running the same query on the chain again.
+ */
+@Service
+public class ScheduledQueryService {
+
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    private final ScheduledQueryRepository scheduledQueryRepository;
+
+    private final ChaincodeService chaincodeService;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final Duration minInterval;
+
+    /**
+     * Creates a ScheduledQueryService object.
+     *
+     * @param scheduledQueryRepository  the repository with the scheduled queries
+     * @param chaincodeService          the service that reads the platform config
+     * @param transactionTemplate       the transaction template to store the scheduled queries
+     * @param minIntervalSeconds        the minimum time between two runs of a query
+     */
+    public ScheduledQueryService(ScheduledQueryRepository scheduledQueryRepository,
+                                 ChaincodeService chaincodeService,
+                                 TransactionTemplate transactionTemplate,
+                                 @Value("${queries.scheduled.min-interval-seconds}")
+                                 long minIntervalSeconds) {
+        this.scheduledQueryRepository = scheduledQueryRepository;
+        this.chaincodeService = chaincodeService;
+        this.transactionTemplate = transactionTemplate;
+        this.minInterval = Duration.ofSeconds(minIntervalSeconds);
+    }
+
+    /**
+     * Validates and stores a new scheduled query. It is run for the first time at the next poll
+     *  of the runner.
+     *
+     * @param name      the name of the query
+     * @param owner     the username of the admin who defines the query
+     * @param query     the query
+     * @param interval  the time between two runs
+     * @return          the stored scheduled query
+     * @throws IllegalArgumentException if the name, the query or the interval are invalid
+     */
+    public ScheduledQuery create(String name, String owner, Query query, Duration interval) {
+        if (name.isBlank() || name.length() > 100) {
+            throw new IllegalArgumentException("The name has to have 1 to 100 characters");
+        }
+        if (interval.compareTo(this.minInterval) < 0) {
+            throw new IllegalArgumentException("The interval has to be at least "
+                    + this.minInterval);
+        }
+        // The platform config is read from the chain, so outside of the transaction
+        QueryValidator.validate(query, this.chaincodeService.getPlatformConfig(), Set.of());
+        byte[] stored = query.toBuilder().clearSubmitter().build().toByteArray();
+        return this.transactionTemplate.execute(status -> this.scheduledQueryRepository.save(
+                new ScheduledQuery(name, owner, stored, interval)));
+    }
+
+    /**
+     * Deletes a scheduled query (and its result).
+     *
+     * @param id    the ID of the scheduled query
+     * @return      true if the query has been deleted, false if there is no query with the ID
+     */
+    @Transactional
+    public boolean delete(long id) {
+        if (!this.scheduledQueryRepository.existsById(id)) {
+            return false;
+        }
+        this.scheduledQueryRepository.deleteById(id);
+        return true;
+    }
+
+    /**
+     * Retrieves all scheduled queries with their latest results, oldest first.
+     *
+     * @return      the scheduled queries
+     */
+    @Transactional(readOnly = true)
+    public List<ScheduledQuery> list() {
+        return this.scheduledQueryRepository.findAllByOrderByIdAsc();
+    }
+
+    /**
+     * Claims the queries that are due, by moving their next run one interval forward, so that
+     *  other instances (and the next poll of this instance) skip them.
+     *
+     * @param limit     the maximum number of queries to claim
+     * @return          the claimed queries (detached, since the claiming transaction commits)
+     */
+    @Transactional
+    public List<ScheduledQuery> claimDue(int limit) {
+        Instant now = Instant.now();
+        List<ScheduledQuery> due = this.scheduledQueryRepository.findDueForUpdate(now,
+                PageRequest.ofSize(limit));
+        due.forEach(query -> query.setNextRunAt(now.plusSeconds(query.getIntervalSeconds())));
+        return due;
+    }
+
+    /**
+     * Stores the outcome of a run. A failed run keeps the result of the last successful run.
+     *
+     * @param id        the ID of the scheduled query
+     * @param result    the result of the run, or null if it has failed
+     * @param error     the error of the run, or null if it has succeeded
+     */
+    @Transactional
+    public void complete(long id, QueryResult result, String error) {
+        // The query may have been deleted while it was running
+        this.scheduledQueryRepository.findById(id).ifPresent(query -> {
+            query.setLastRunAt(Instant.now());
+            if (result != null) {
+                query.setLastResult(result.toByteArray());
+                query.setLastError(null);
+            } else {
+                query.setLastError(error.length() > MAX_ERROR_LENGTH
+                        ? error.substring(0, MAX_ERROR_LENGTH) : error);
+            }
+        });
+    }
+}
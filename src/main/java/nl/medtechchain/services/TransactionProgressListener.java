@@ -0,0 +1,41 @@
+package nl.medtechchain.services;
+
+
+/**
+ * A listener that is told about the progress of a transaction that is submitted to the chain
+ *  (see ChaincodeService.submitQuery): it is endorsed by the peers, then submitted to the
+ *  orderer, and finally committed in a block.
+ * The methods are called on the thread that submits the transaction, so they should return
+ *  quickly.
+ */
+public interface TransactionProgressListener {
+
+    // A listener that ignores the progress
+    TransactionProgressListener NONE = new TransactionProgressListener() {
+    };
+
+    /**
+     * Called when the peers have endorsed the transaction.
+     *
+     * @param transactionId the ID of the transaction
+     */
+    default void onEndorsed(String transactionId) {
+    }
+
+    /**
+     * Called when the endorsed transaction has been submitted to the orderer.
+     *
+     * @param transactionId the ID of the transaction
+     */
+    default void onSubmitted(String transactionId) {
+    }
+
+    /**
+     * Called when the transaction has been committed (successfully) in a block.
+     *
+     * @param transactionId the ID of the transaction
+     * @param blockNumber   the number of the block that contains the transaction
+     */
+    default void onCommitted(String transactionId, long blockNumber) {
+    }
+}
@@ -0,0 +1,65 @@
+package nl.medtechchain.services;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import nl.medtechchain.models.UsernameCounter;
+import nl.medtechchain.repositories.UserDataRepository;
+import nl.medtechchain.repositories.UsernameCounterRepository;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+
+/**
+ * A service class that creates the username counters (see UsernameCounter).
+ * Counters are created in their own transaction, so that a registration that loses
+ *  the race to create the counter for a new base username can still use it afterwards.
+ */
+@Service
+public class UsernameCounterService {
+
+    private final UsernameCounterRepository usernameCounterRepository;
+
+    private final UserDataRepository userDataRepository;
+
+    /**
+     * Creates a UsernameCounterService object.
+     *
+     * @param usernameCounterRepository the repository with the username counters
+     * @param userDataRepository        the repository with the user data
+     */
+    public UsernameCounterService(UsernameCounterRepository usernameCounterRepository,
+                                  UserDataRepository userDataRepository) {
+        this.usernameCounterRepository = usernameCounterRepository;
+        this.userDataRepository = userDataRepository;
+    }
+
+    /**
+     * Creates the counter for the specified base username, if it does not exist yet.
+     * The counter is seeded from the usernames that already exist (e.g. users that were
+     *  registered before the counters were introduced), so this prefix lookup is only
+     *  executed once per base username.
+     *
+     * @param baseName  the base username
+     * @throws DataIntegrityViolationException if the counter has been created concurrently
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void createCounterIfAbsent(String baseName) {
+        if (this.usernameCounterRepository.existsById(baseName)) {
+            return;
+        }
+
+        Pattern suffixPattern = Pattern.compile("^" + Pattern.quote(baseName) + "(\\d*)$");
+        long lastSuffix = -1;
+        for (String username : this.userDataRepository.findAllUsernamesByPrefix(baseName)) {
+            Matcher matcher = suffixPattern.matcher(username);
+            // Suffixes that do not fit into a long cannot have been generated by the counter
+            if (matcher.matches() && matcher.group(1).length() < 19) {
+                String suffix = matcher.group(1);
+                lastSuffix = Math.max(lastSuffix, suffix.isEmpty() ? 0 : Long.parseLong(suffix));
+            }
+        }
+        this.usernameCounterRepository.saveAndFlush(new UsernameCounter(baseName, lastSuffix));
+    }
+}
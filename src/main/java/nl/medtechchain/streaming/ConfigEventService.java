@@ -0,0 +1,141 @@
+package nl.medtechchain.streaming;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Instant;
+import nl.medtechchain.cache.InvalidationMessage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+
+/**
+ * A service class that tells clients when the platform or network config has changed, as
+ *  server-sent events (GET /api/configs/events), so that they can keep a local copy of the
+ *  configs and only fetch them again after a change.
+ * <br>
+ * The events are sent for the invalidation messages of the configs (see InvalidationBus), which
+ *  every instance receives: for the config events of the chaincode (see ChaincodeEventListener,
+ *  e.g. an update by another organization), and for the updates that are submitted by any
+ *  instance of the backend. An update can therefore produce more than one event. An `all` event
+ *  means that changes may have been missed (e.g. after the connection to the database has been
+ *  restored), so both configs have to be fetched again; the same holds after a reconnect of the
+ *  stream itself.
+ * The number of open streams is exposed as the `configs_events_streams` metric.
+ */
+@Service
+public class ConfigEventService implements SmartLifecycle {
+
+    // Names of the events
+    public static final String PLATFORM_CONFIG_EVENT = "platform_config";
+    public static final String NETWORK_CONFIG_EVENT = "network_config";
+    public static final String ALL_EVENT = "all";
+
+    // Config changes are rare, so a client that has this many events queued has stalled
+    private static final int QUEUE_CAPACITY = 16;
+
+    private final ObjectMapper objectMapper;
+
+    private final SseHub hub;
+
+    private volatile boolean running = false;
+
+    /**
+     * Creates a ConfigEventService object.
+     *
+     * @param objectMapper      the mapper that builds the data of the events
+     * @param meterRegistry     the registry of the metrics (number of open streams)
+     * @param timeoutMs         the time after which a stream is closed (the client reconnects)
+     * @param maxStreamsPerUser the maximum number of open streams per user
+     */
+    public ConfigEventService(ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                              @Value("${configs.events.timeout-ms}") long timeoutMs,
+                              @Value("${configs.events.max-streams-per-user}")
+                              int maxStreamsPerUser) {
+        this.objectMapper = objectMapper;
+        this.hub = new SseHub("config event", timeoutMs, maxStreamsPerUser, QUEUE_CAPACITY);
+        Gauge.builder("configs.events.streams", this.hub, SseHub::size)
+                .description("Number of open config event streams")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Opens a new stream for the user.
+     *
+     * @param username  the username of the user
+     * @return          the stream, to be returned by the controller
+     * @throws IllegalStateException if the user already has the maximum number of streams
+     */
+    public SseEmitter subscribe(String username) {
+        return this.hub.subscribe(username);
+    }
+
+    /**
+     * Sends an event to all open streams when a config has changed.
+     *
+     * @param message   the invalidation message
+     */
+    @EventListener
+    public void onInvalidation(InvalidationMessage message) {
+        String event = eventOf(message.type());
+        if (event != null) {
+            this.hub.publishToAll(event, this.objectMapper.createObjectNode()
+                    .put("changed_at", Instant.now().toString()));
+        }
+    }
+
+    /**
+     * Finds the event that is sent for an invalidation message.
+     *
+     * @param type  the type of the invalidation message
+     * @return      the name of the event, or null if the message is not about the configs
+     */
+    static String eventOf(InvalidationMessage.Type type) {
+        return switch (type) {
+            case PLATFORM_CONFIG -> PLATFORM_CONFIG_EVENT;
+            case NETWORK_CONFIG -> NETWORK_CONFIG_EVENT;
+            case ALL -> ALL_EVENT;
+            default -> null;
+        };
+    }
+
+    /**
+     * Sends a heartbeat on all open streams.
+     */
+    @Scheduled(fixedDelayString = "${configs.events.heartbeat-interval-ms}")
+    public void heartbeat() {
+        this.hub.heartbeat();
+    }
+
+    /**
+     * Marks the service as running.
+     */
+    @Override
+    public void start() {
+        this.running = true;
+    }
+
+    /**
+     * Closes all open streams on shutdown, before the web server waits for the requests in
+     *  flight (which include the open streams); the clients reconnect to another instance.
+     */
+    @Override
+    public void stop() {
+        this.running = false;
+        this.hub.close();
+    }
+
+    /**
+     * Checks whether the service is running.
+     *
+     * @return true if the service is running, false otherwise
+     */
+    @Override
+    public boolean isRunning() {
+        return this.running;
+    }
+}
@@ -0,0 +1,348 @@
+package nl.medtechchain.streaming;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.protobuf.InvalidProtocolBufferException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import nl.medtechchain.concurrency.ConcurrencyLimitExceededException;
+import nl.medtechchain.lifecycle.ServiceShuttingDownException;
+import nl.medtechchain.proto.common.ChaincodeError;
+import nl.medtechchain.proto.query.QueryResult;
+import nl.medtechchain.protoutils.JsonEncodingOps;
+import nl.medtechchain.services.TransactionProgressListener;
+import org.hyperledger.fabric.client.CommitException;
+import org.hyperledger.fabric.client.CommitStatusException;
+import org.hyperledger.fabric.client.GatewayException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.concurrent.DelegatingSecurityContextRunnable;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+
+/**
+ * A service class that streams the progress and the results of the queries of every researcher
+ *  as server-sent events (GET /api/queries/events), so that a client does not have to wait for
+ *  the response of a query (or poll for it).
+ * <br>
+ * A query that is run on the chain produces the events `endorsed`, `submitted` and `committed`
+ *  (see TransactionProgressListener), followed by either `result` (the QueryResult) or `error`
+ *  (with the code of the ChaincodeError). A query that is split into time buckets only produces
+ *  the last event. Every event carries the ID of the query, which is returned when the query is
+ *  submitted. Events are only sent to the streams that are open on the instance that runs the
+ *  query, and events that are missed while a client reconnects are not sent again (the result
+ *  is still in the query history).
+ * The number of open streams is exposed as the `queries_events_streams` metric.
+ * <br>
+ * A query that is submitted with `Prefer: respond-async` has already been answered (and has left
+ *  the `query` bulkhead) when it runs, so the number of these queries is limited separately: per
+ *  researcher (`queries.events.async.max-per-user`, 429 Too Many Requests) and in total
+ *  (`queries.events.async.max-running`, 503 Service Unavailable).
+ */
+@Service
+public class QueryEventService implements SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueryEventService.class);
+
+    // Names of the events
+    public static final String ENDORSED = "endorsed";
+    public static final String SUBMITTED = "submitted";
+    public static final String COMMITTED = "committed";
+    public static final String RESULT = "result";
+    public static final String ERROR = "error";
+
+    private final ObjectMapper objectMapper;
+
+    private final SseHub hub;
+
+    // The time that the asynchronous queries get to finish on shutdown
+    private static final long ASYNC_DRAIN_SECONDS = 10;
+
+    // Queries that are submitted with `Prefer: respond-async` run on their own virtual thread;
+    //  they still take their turn in the FairQueryScheduler
+    private final ExecutorService asyncQueries = Executors.newVirtualThreadPerTaskExecutor();
+
+    // Free slots for asynchronous queries (of all researchers)
+    private final Semaphore asyncSlots;
+
+    private final int maxAsyncPerUser;
+
+    // The number of asynchronous queries of every researcher that has any
+    private final Map<String, Integer> asyncPerUser = new ConcurrentHashMap<>();
+
+    private volatile boolean running = false;
+
+    /**
+     * Creates a QueryEventService object.
+     *
+     * @param objectMapper      the mapper that builds the data of the events
+     * @param meterRegistry     the registry of the metrics (number of open streams)
+     * @param timeoutMs         the time after which a stream is closed (the client reconnects)
+     * @param maxStreamsPerUser the maximum number of open streams per researcher
+     * @param queueCapacity     the maximum number of events that wait to be sent to one stream
+     * @param maxAsync          the maximum number of asynchronous queries (of all researchers)
+     * @param maxAsyncPerUser   the maximum number of asynchronous queries per researcher
+     */
+    public QueryEventService(ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                             @Value("${queries.events.timeout-ms}") long timeoutMs,
+                             @Value("${queries.events.max-streams-per-user}")
+                             int maxStreamsPerUser,
+                             @Value("${queries.events.queue-capacity}") int queueCapacity,
+                             @Value("${queries.events.async.max-running}") int maxAsync,
+                             @Value("${queries.events.async.max-per-user}")
+                             int maxAsyncPerUser) {
+        this.objectMapper = objectMapper;
+        this.asyncSlots = new Semaphore(maxAsync);
+        this.maxAsyncPerUser = maxAsyncPerUser;
+        this.hub = new SseHub("query event", timeoutMs, maxStreamsPerUser, queueCapacity);
+        Gauge.builder("queries.events.streams", this.hub, SseHub::size)
+                .description("Number of open query event streams")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Opens a new stream for the researcher.
+     *
+     * @param username  the username of the researcher
+     * @return          the stream, to be returned by the controller
+     * @throws IllegalStateException if the researcher already has the maximum number of streams
+     */
+    public SseEmitter subscribe(String username) {
+        return this.hub.subscribe(username);
+    }
+
+    /**
+     * Creates a listener that sends the progress of the transaction of a query to the streams
+     *  of the researcher.
+     *
+     * @param username  the username of the researcher
+     * @param queryId   the ID of the query
+     * @return          the listener, to be passed to ChaincodeService.submitQuery
+     */
+    public TransactionProgressListener progressOf(String username, String queryId) {
+        return new TransactionProgressListener() {
+            @Override
+            public void onEndorsed(String transactionId) {
+                publish(username, ENDORSED, event(queryId).put("transaction_id", transactionId));
+            }
+
+            @Override
+            public void onSubmitted(String transactionId) {
+                publish(username, SUBMITTED, event(queryId).put("transaction_id", transactionId));
+            }
+
+            @Override
+            public void onCommitted(String transactionId, long blockNumber) {
+                publish(username, COMMITTED, event(queryId).put("transaction_id", transactionId)
+                        .put("block_number", blockNumber));
+            }
+        };
+    }
+
+    /**
+     * Sends the result of a query to the streams of the researcher.
+     *
+     * @param username  the username of the researcher
+     * @param queryId   the ID of the query
+     * @param result    the result of the query
+     */
+    public void result(String username, String queryId, QueryResult result) {
+        if (result.hasError()) {
+            this.error(username, queryId, result.getError());
+            return;
+        }
+        try {
+            ObjectNode data = event(queryId);
+            data.set("result", this.objectMapper.readTree(JsonEncodingOps.printJson(result)));
+            this.publish(username, RESULT, data);
+        } catch (IOException e) {
+            logger.warn("Could not send the result of query {} to {}", queryId, username, e);
+        }
+    }
+
+    /**
+     * Sends an error that the chaincode has returned for a query to the streams of the
+     *  researcher.
+     *
+     * @param username  the username of the researcher
+     * @param queryId   the ID of the query
+     * @param error     the error
+     */
+    public void error(String username, String queryId, ChaincodeError error) {
+        this.publish(username, ERROR, event(queryId)
+                .put("code", error.getCode().name())
+                .put("message", error.getMessage()));
+    }
+
+    /**
+     * Sends the failure of a query (e.g. the chain could not be reached) to the streams of the
+     *  researcher, as an error with the code that fits the failure best.
+     *
+     * @param username  the username of the researcher
+     * @param queryId   the ID of the query
+     * @param failure   the exception that the query has failed with
+     */
+    public void failure(String username, String queryId, Exception failure) {
+        this.error(username, queryId, ChaincodeError.newBuilder()
+                .setCode(codeOf(failure))
+                .setMessage(String.valueOf(failure.getMessage()))
+                .build());
+    }
+
+    /**
+     * Finds the error code for a query that has failed with an exception.
+     *
+     * @param failure   the exception
+     * @return          the error code
+     */
+    static ChaincodeError.ErrorCode codeOf(Exception failure) {
+        if (failure instanceof CommitException || failure instanceof CommitStatusException) {
+            return ChaincodeError.ErrorCode.COMMIT_FAILURE;
+        }
+        if (failure instanceof GatewayException gatewayException) {
+            return switch (gatewayException.getStatus().getCode()) {
+                case DEADLINE_EXCEEDED -> ChaincodeError.ErrorCode.TIMEOUT;
+                case UNAVAILABLE, RESOURCE_EXHAUSTED -> ChaincodeError.ErrorCode.PEER_UNAVAILABLE;
+                default -> ChaincodeError.ErrorCode.TRANSACTION_FAILURE;
+            };
+        }
+        if (failure instanceof ConcurrencyLimitExceededException) {
+            // The query has not got its turn in time
+            return ChaincodeError.ErrorCode.TIMEOUT;
+        }
+        if (failure instanceof IllegalArgumentException
+                || failure instanceof InvalidProtocolBufferException) {
+            return ChaincodeError.ErrorCode.INVALID_ARGUMENT;
+        }
+        return ChaincodeError.ErrorCode.INTERNAL_ERROR;
+    }
+
+    /**
+     * Runs a query that has been submitted with `Prefer: respond-async` in the background,
+     *  as the researcher that has submitted it.
+     *
+     * @param username  the username of the researcher
+     * @param query     the query, which sends its own result and error events
+     * @throws IllegalStateException                if the researcher already has the maximum
+     *                                               number of asynchronous queries
+     * @throws ConcurrencyLimitExceededException    if there are too many asynchronous queries
+     * @throws ServiceShuttingDownException         if the service has been stopped
+     */
+    public void runAsync(String username, Runnable query) {
+        if (!this.asyncSlots.tryAcquire()) {
+            throw new ConcurrencyLimitExceededException("Too many asynchronous queries", 1);
+        }
+        if (this.asyncPerUser.merge(username, 1, Integer::sum) > this.maxAsyncPerUser) {
+            this.releaseAsync(username);
+            throw new IllegalStateException("Too many asynchronous queries of " + username);
+        }
+        Runnable withContext = DelegatingSecurityContextRunnable.create(query,
+                SecurityContextHolder.getContext());
+        try {
+            this.asyncQueries.execute(() -> {
+                try {
+                    withContext.run();
+                } finally {
+                    this.releaseAsync(username);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The service has been stopped
+            this.releaseAsync(username);
+            throw new ServiceShuttingDownException("The backend is shutting down");
+        }
+    }
+
+    /**
+     * Frees the slot of an asynchronous query.
+     *
+     * @param username  the username of the researcher
+     */
+    private void releaseAsync(String username) {
+        this.asyncPerUser.computeIfPresent(username,
+                (user, count) -> count == 1 ? null : count - 1);
+        this.asyncSlots.release();
+    }
+
+    /**
+     * Sends a heartbeat on all open streams.
+     */
+    @Scheduled(fixedDelayString = "${queries.events.heartbeat-interval-ms}")
+    public void heartbeat() {
+        this.hub.heartbeat();
+    }
+
+    /**
+     * Creates the data of an event of a query.
+     *
+     * @param queryId   the ID of the query
+     * @return          the data, to which the fields of the event can be added
+     */
+    private ObjectNode event(String queryId) {
+        return this.objectMapper.createObjectNode().put("query_id", queryId);
+    }
+
+    /**
+     * Sends an event to the streams of the researcher (if any are open on this instance).
+     *
+     * @param username  the username of the researcher
+     * @param event     the name of the event
+     * @param data      the data of the event
+     */
+    private void publish(String username, String event, ObjectNode data) {
+        this.hub.publish(username, event, data);
+    }
+
+    /**
+     * Marks the service as running.
+     */
+    @Override
+    public void start() {
+        this.running = true;
+    }
+
+    /**
+     * Closes all open streams on shutdown, before the web server waits for the requests in
+     *  flight (which include the open streams); the clients reconnect to another instance.
+     * No more asynchronous queries are accepted, and the running ones get a few seconds to
+     *  finish before they are interrupted.
+     */
+    @Override
+    public void stop() {
+        this.running = false;
+        this.asyncQueries.shutdown();
+        this.hub.close();
+        try {
+            if (!this.asyncQueries.awaitTermination(ASYNC_DRAIN_SECONDS, TimeUnit.SECONDS)) {
+                logger.warn("Interrupting the asynchronous queries that are still running");
+                this.asyncQueries.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            this.asyncQueries.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Checks whether the service is running.
+     *
+     * @return true if the service is running, false otherwise
+     */
+    @Override
+    public boolean isRunning() {
+        return this.running;
+    }
+}
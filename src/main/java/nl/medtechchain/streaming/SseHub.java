@@ -0,0 +1,252 @@
+package nl.medtechchain.streaming;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+
+/**
+ * A set of open server-sent event streams (SseEmitter), by key (e.g. the username of the
+ *  researcher that has opened them).
+ * <br>
+ * A stream is an asynchronous request, so an open stream does not hold a server thread. Events
+ *  are not written on the thread that publishes them either: every stream has a bounded queue,
+ *  which is drained by a virtual thread, so that a slow or stalled client never blocks a query
+ *  (or the other clients). A client that falls too far behind is disconnected, and can reconnect.
+ */
+public class SseHub {
+
+    private static final Logger logger = LoggerFactory.getLogger(SseHub.class);
+
+    /**
+     * An event that waits to be sent.
+     *
+     * @param name  the name of the event, or null for a comment (e.g. a heartbeat)
+     * @param data  the data of the event (serialized as JSON), or the text of the comment
+     */
+    private record Event(String name, Object data) {
+
+        /**
+         * Builds the event to be sent. A builder cannot be shared between streams, since it is
+         *  changed when the event is sent.
+         *
+         * @return  the builder of the event
+         */
+        SseEmitter.SseEventBuilder toBuilder() {
+            if (this.name == null) {
+                return SseEmitter.event().comment(String.valueOf(this.data));
+            }
+            return SseEmitter.event().name(this.name).data(this.data, MediaType.APPLICATION_JSON);
+        }
+    }
+
+    private final String name;
+
+    private final long timeoutMs;
+
+    private final int maxStreamsPerKey;
+
+    private final int queueCapacity;
+
+    private final Map<String, Set<Stream>> streams = new ConcurrentHashMap<>();
+
+    private final ExecutorService senders = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * Creates an SseHub object.
+     *
+     * @param name              the name of the streams (for the logs)
+     * @param timeoutMs         the time after which a stream is closed (the client reconnects)
+     * @param maxStreamsPerKey  the maximum number of open streams per key
+     * @param queueCapacity     the maximum number of events that wait to be sent to one stream
+     */
+    public SseHub(String name, long timeoutMs, int maxStreamsPerKey, int queueCapacity) {
+        this.name = name;
+        this.timeoutMs = timeoutMs;
+        this.maxStreamsPerKey = maxStreamsPerKey;
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Opens a new stream.
+     *
+     * @param key   the key of the stream
+     * @return      the stream, to be returned by the controller
+     * @throws IllegalStateException if the key already has the maximum number of open streams
+     */
+    public SseEmitter subscribe(String key) {
+        Stream stream = new Stream(key, this.newEmitter());
+        AtomicBoolean added = new AtomicBoolean();
+        this.streams.compute(key, (k, set) -> {
+            Set<Stream> current = set == null ? ConcurrentHashMap.newKeySet() : set;
+            if (current.size() < this.maxStreamsPerKey) {
+                added.set(current.add(stream));
+            }
+            return current;
+        });
+        if (!added.get()) {
+            throw new IllegalStateException("Too many open " + this.name + " streams");
+        }
+
+        stream.emitter.onCompletion(stream::close);
+        stream.emitter.onTimeout(stream::close);
+        stream.emitter.onError(e -> stream.close());
+        // Sent at once, so that the client (and any proxy) sees that the stream is open
+        stream.enqueue(new Event(null, "connected"));
+        return stream.emitter;
+    }
+
+    /**
+     * Creates the emitter of a new stream.
+     *
+     * @return  the emitter, which writes the events to the response once the controller returns it
+     */
+    SseEmitter newEmitter() {
+        return new SseEmitter(this.timeoutMs);
+    }
+
+    /**
+     * Sends an event to all open streams with the given key.
+     *
+     * @param key   the key of the streams
+     * @param event the name of the event
+     * @param data  the data of the event (serialized as JSON)
+     */
+    public void publish(String key, String event, Object data) {
+        Set<Stream> set = this.streams.get(key);
+        if (set != null) {
+            set.forEach(stream -> stream.enqueue(new Event(event, data)));
+        }
+    }
+
+    /**
+     * Sends an event to all open streams.
+     *
+     * @param event the name of the event
+     * @param data  the data of the event (serialized as JSON)
+     */
+    public void publishToAll(String event, Object data) {
+        this.streams.values().forEach(set ->
+                set.forEach(stream -> stream.enqueue(new Event(event, data))));
+    }
+
+    /**
+     * Sends a comment to all open streams, which keeps proxies from closing idle streams, and
+     *  detects the clients that have disconnected.
+     */
+    public void heartbeat() {
+        this.streams.values().forEach(set ->
+                set.forEach(stream -> stream.enqueue(new Event(null, "heartbeat"))));
+    }
+
+    /**
+     * Returns the number of open streams.
+     *
+     * @return  the number of open streams
+     */
+    public int size() {
+        return this.streams.values().stream().mapToInt(Set::size).sum();
+    }
+
+    /**
+     * Closes all open streams (e.g. on shutdown); the clients reconnect to another instance.
+     */
+    public void close() {
+        this.streams.values().forEach(set -> set.forEach(stream -> stream.emitter.complete()));
+    }
+
+    /**
+     * An open stream with the events that wait to be sent to it.
+     */
+    private final class Stream {
+
+        private final String key;
+
+        private final SseEmitter emitter;
+
+        private final BlockingQueue<Event> queue;
+
+        // Set while a virtual thread is sending the queued events
+        private final AtomicBoolean sending = new AtomicBoolean();
+
+        private volatile boolean closed = false;
+
+        /**
+         * Creates a Stream object.
+         *
+         * @param key       the key of the stream
+         * @param emitter   the emitter that writes the events to the response
+         */
+        Stream(String key, SseEmitter emitter) {
+            this.key = key;
+            this.emitter = emitter;
+            this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        }
+
+        /**
+         * Queues an event to be sent, without waiting for it.
+         *
+         * @param event the event
+         */
+        void enqueue(Event event) {
+            if (this.closed) {
+                return;
+            }
+            if (!this.queue.offer(event)) {
+                logger.warn("Closing a {} stream of {}, which does not keep up", name, this.key);
+                this.close();
+                this.emitter.complete();
+                return;
+            }
+            if (this.sending.compareAndSet(false, true)) {
+                senders.execute(this::send);
+            }
+        }
+
+        /**
+         * Sends the queued events, in order, until the queue is empty.
+         */
+        private void send() {
+            try {
+                while (true) {
+                    Event event;
+                    while ((event = this.queue.poll()) != null && !this.closed) {
+                        this.emitter.send(event.toBuilder());
+                    }
+                    this.sending.set(false);
+                    // An event may have been queued after the last poll, but before the flag
+                    //  was reset, in which case its enqueue did not start a sender
+                    if (this.closed || this.queue.isEmpty()
+                            || !this.sending.compareAndSet(false, true)) {
+                        return;
+                    }
+                }
+            } catch (IOException | IllegalStateException e) {
+                // The client has disconnected, or the stream has timed out
+                this.close();
+            }
+        }
+
+        /**
+         * Removes the stream from the hub. Events that are still queued are dropped.
+         */
+        void close() {
+            this.closed = true;
+            this.queue.clear();
+            streams.computeIfPresent(this.key, (k, set) -> {
+                set.remove(this);
+                return set.isEmpty() ? null : set;
+            });
+        }
+    }
+}
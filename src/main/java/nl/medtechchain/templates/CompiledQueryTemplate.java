@@ -0,0 +1,239 @@
+package nl.medtechchain.templates;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import lombok.AccessLevel;
+import lombok.Getter;
+import nl.medtechchain.fanout.TimeBuckets;
+import nl.medtechchain.proto.query.Filter;
+import nl.medtechchain.proto.query.Query;
+import nl.medtechchain.protoutils.PlatformConfigWrapper;
+import nl.medtechchain.protoutils.QueryValidator;
+
+
+/**
+ * A query template that has been validated against the query interface, ready to be run.
+ * <br>
+ * A parameter of a template is bound to a slot of its query: `start_time`, `end_time`, or
+ *  `filters[i]` (the value of the i-th filter, e.g. the value of an integer filter). The query
+ *  itself (the skeleton) is parsed and validated once, so running the template only copies the
+ *  skeleton and sets the values of the parameters, instead of parsing and validating the JSON of
+ *  the whole query again.
+ */
+@Getter
+public final class CompiledQueryTemplate {
+
+    private static final Pattern PARAMETER_NAME = Pattern.compile("[a-zA-Z][a-zA-Z0-9_]{0,49}");
+
+    private static final Pattern FILTER_SLOT = Pattern.compile("filters\\[(\\d{1,3})]");
+
+    private static final String START_TIME = "start_time";
+
+    private static final String END_TIME = "end_time";
+
+    // The maximum length of the encoded parameters (see the `parameters` column of QueryTemplate)
+    private static final int MAX_ENCODED_PARAMETERS = 1000;
+
+    private final long id;
+
+    private final String name;
+
+    private final String owner;
+
+    private final Query skeleton;
+
+    // The slot of every parameter (name -> slot), in the order in which they were registered
+    private final Map<String, String> parameters;
+
+    // The index of the filter of every parameter that is bound to a filter (parsed once)
+    @Getter(AccessLevel.NONE)
+    private final Map<String, Integer> filterIndexes;
+
+    /**
+     * Creates a CompiledQueryTemplate object (see `compile`).
+     *
+     * @param id            the ID of the template
+     * @param name          the name of the template
+     * @param owner         the username of the researcher who registered the template
+     * @param skeleton      the validated query, without a submitter
+     * @param parameters    the validated slot of every parameter
+     * @param filterIndexes the index of the filter of every parameter that is bound to a filter
+     */
+    private CompiledQueryTemplate(long id, String name, String owner, Query skeleton,
+                                  Map<String, String> parameters,
+                                  Map<String, Integer> filterIndexes) {
+        this.id = id;
+        this.name = name;
+        this.owner = owner;
+        this.skeleton = skeleton;
+        this.parameters = Collections.unmodifiableMap(parameters);
+        this.filterIndexes = Map.copyOf(filterIndexes);
+    }
+
+    /**
+     * Validates a query template against the query interface.
+     *
+     * @param id                the ID of the template
+     * @param name              the name of the template
+     * @param owner             the username of the researcher who registered the template
+     * @param query             the query of the template
+     * @param parameters        the slot of every parameter (name -> slot)
+     * @param platformConfig    the platform config with the query interface
+     * @return                  the compiled template
+     * @throws IllegalArgumentException if the query or the parameters are invalid
+     */
+    public static CompiledQueryTemplate compile(long id, String name, String owner, Query query,
+                                                Map<String, String> parameters,
+                                                PlatformConfigWrapper platformConfig) {
+        Set<String> slots = new HashSet<>();
+        Map<String, Integer> filterIndexes = new HashMap<>();
+        for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+            if (!PARAMETER_NAME.matcher(parameter.getKey()).matches()) {
+                throw new IllegalArgumentException("Invalid parameter name: " + parameter.getKey());
+            }
+            String slot = parameter.getValue();
+            if (!slots.add(slot)) {
+                throw new IllegalArgumentException("Slot used by more than one parameter: " + slot);
+            }
+            if (slot.equals(START_TIME) || slot.equals(END_TIME)) {
+                continue;
+            }
+            Matcher matcher = FILTER_SLOT.matcher(slot);
+            int index = matcher.matches() ? Integer.parseInt(matcher.group(1)) : -1;
+            if (index < 0 || index >= query.getFiltersCount()) {
+                throw new IllegalArgumentException("Invalid slot: " + slot);
+            }
+            filterIndexes.put(parameter.getKey(), index);
+        }
+        QueryValidator.validate(query, platformConfig, new HashSet<>(filterIndexes.values()));
+
+        Map<String, String> ordered = new LinkedHashMap<>(parameters);
+        if (encodeParameters(ordered).length() > MAX_ENCODED_PARAMETERS) {
+            throw new IllegalArgumentException("Too many parameters");
+        }
+        return new CompiledQueryTemplate(id, name, owner,
+                query.toBuilder().clearSubmitter().build(), ordered, filterIndexes);
+    }
+
+    /**
+     * Creates a copy of the template with another ID, e.g. a template that has been compiled
+     *  before it was stored.
+     *
+     * @param id    the ID of the template
+     * @return      the compiled template with the ID
+     */
+    public CompiledQueryTemplate withId(long id) {
+        return new CompiledQueryTemplate(id, this.name, this.owner, this.skeleton,
+                this.parameters, this.filterIndexes);
+    }
+
+    /**
+     * Binds the values of the parameters into (a copy of) the skeleton.
+     *
+     * @param values    the value of every parameter (timestamps as ISO-8601 instants, enums by
+     *                   the name of their value)
+     * @return          the query to run (without a submitter)
+     * @throws IllegalArgumentException if a parameter is missing, unknown or has an invalid value
+     */
+    public Query bind(Map<String, String> values) {
+        for (String parameter : values.keySet()) {
+            if (!this.parameters.containsKey(parameter)) {
+                throw new IllegalArgumentException("Unknown parameter: " + parameter);
+            }
+        }
+
+        Query.Builder query = this.skeleton.toBuilder();
+        for (Map.Entry<String, String> parameter : this.parameters.entrySet()) {
+            String value = values.get(parameter.getKey());
+            if (value == null) {
+                throw new IllegalArgumentException("Missing parameter: " + parameter.getKey());
+            }
+            try {
+                switch (parameter.getValue()) {
+                    case START_TIME -> query.setStartTime(
+                            TimeBuckets.toTimestamp(Instant.parse(value)));
+                    case END_TIME -> query.setEndTime(
+                            TimeBuckets.toTimestamp(Instant.parse(value)));
+                    default -> bindFilter(
+                            query.getFiltersBuilder(this.filterIndexes.get(parameter.getKey())),
+                            value);
+                }
+            } catch (DateTimeParseException | IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid value of parameter: "
+                        + parameter.getKey(), e);
+            }
+        }
+        return query.build();
+    }
+
+    /**
+     * Sets the value of a filter, parsed according to the type of the filter.
+     *
+     * @param filter    the filter
+     * @param value     the value
+     * @throws IllegalArgumentException if the value cannot be parsed
+     */
+    private static void bindFilter(Filter.Builder filter, String value) {
+        switch (filter.getComparatorCase()) {
+            case STRING_FILTER -> filter.getStringFilterBuilder().setValue(value);
+            case INTEGER_FILTER -> filter.getIntegerFilterBuilder()
+                    .setValue(Long.parseLong(value));
+            case TIMESTAMP_FILTER -> filter.getTimestampFilterBuilder()
+                    .setValue(TimeBuckets.toTimestamp(Instant.parse(value)));
+            case BOOL_FILTER -> {
+                if (!value.equals("true") && !value.equals("false")) {
+                    throw new IllegalArgumentException("Not a boolean: " + value);
+                }
+                filter.getBoolFilterBuilder().setValue(Boolean.parseBoolean(value));
+            }
+            case ENUM_FILTER -> {
+                filter.getEnumFilterBuilder().setValue(value);
+                QueryValidator.validate(filter.build(), false);
+            }
+            default -> throw new IllegalStateException("The filter has been validated");
+        }
+    }
+
+    /**
+     * Encodes the parameters of a template as comma-separated `name=slot` pairs.
+     *
+     * @param parameters    the slot of every parameter
+     * @return              the encoded parameters
+     */
+    public static String encodeParameters(Map<String, String> parameters) {
+        StringBuilder encoded = new StringBuilder();
+        for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+            if (!encoded.isEmpty()) {
+                encoded.append(',');
+            }
+            encoded.append(parameter.getKey()).append('=').append(parameter.getValue());
+        }
+        return encoded.toString();
+    }
+
+    /**
+     * Decodes the parameters of a template (see `encodeParameters`).
+     *
+     * @param encoded       the encoded parameters
+     * @return              the slot of every parameter, in the encoded order
+     */
+    public static Map<String, String> decodeParameters(String encoded) {
+        Map<String, String> parameters = new LinkedHashMap<>();
+        for (String pair : encoded.split(",")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int separator = pair.indexOf('=');
+            parameters.put(pair.substring(0, separator), pair.substring(separator + 1));
+        }
+        return parameters;
+    }
+}
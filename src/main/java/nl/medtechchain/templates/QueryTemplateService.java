@@ -0,0 +1,195 @@
+package nl.medtechchain.templates;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.protobuf.InvalidProtocolBufferException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import nl.medtechchain.cache.InvalidationMessage;
+import nl.medtechchain.models.QueryTemplate;
+import nl.medtechchain.proto.query.Query;
+import nl.medtechchain.repositories.QueryTemplateRepository;
+import nl.medtechchain.services.ChaincodeService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+
+/**
+ * A service class that registers query templates and keeps their compiled form
+ *  (see CompiledQueryTemplate) in memory, so that a dashboard that runs the same query with
+ *  different values only sends the values.
+ * <br>
+ * A template is validated against the query interface of the platform config when it is
+ *  registered (before it is stored, so that no database connection is held while the platform
+ *  config is read from the chain), and again when it is first used on an instance. A registered
+ *  template is only cached once it has been committed. The compiled templates are dropped when
+ *  the platform config changes, so that a template that no longer matches the query interface is
+ *  rejected on its next run. The run time of the templates is exposed as the
+ *  `queries_templates_executions` metric, tagged with the query type (and not with the ID of
+ *  the template, since every registered template would add a time series).
+ */
+@Service
+public class QueryTemplateService {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueryTemplateService.class);
+
+    private final QueryTemplateRepository queryTemplateRepository;
+
+    private final ChaincodeService chaincodeService;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Cache<Long, CompiledQueryTemplate> compiledTemplates;
+
+    /**
+     * Creates a QueryTemplateService object.
+     *
+     * @param queryTemplateRepository   the repository with the templates
+     * @param chaincodeService          the service that reads the platform config
+     * @param transactionTemplate       the transaction template to store the templates
+     * @param meterRegistry             the registry of the metrics (run time per query type)
+     * @param maxCompiledTemplates      the maximum number of compiled templates kept in memory
+     */
+    public QueryTemplateService(QueryTemplateRepository queryTemplateRepository,
+                                ChaincodeService chaincodeService,
+                                TransactionTemplate transactionTemplate,
+                                MeterRegistry meterRegistry,
+                                @Value("${queries.templates.cache.max-entries}")
+                                long maxCompiledTemplates) {
+        this.queryTemplateRepository = queryTemplateRepository;
+        this.chaincodeService = chaincodeService;
+        this.transactionTemplate = transactionTemplate;
+        this.meterRegistry = meterRegistry;
+        this.compiledTemplates = Caffeine.newBuilder()
+                .maximumSize(maxCompiledTemplates)
+                .build();
+    }
+
+    /**
+     * Validates and stores a new query template.
+     *
+     * @param name          the name of the template
+     * @param owner         the username of the researcher who registers the template
+     * @param query         the query of the template
+     * @param parameters    the slot of every parameter (name -> slot, see CompiledQueryTemplate)
+     * @return              the compiled template
+     * @throws IllegalArgumentException if the name, the query or the parameters are invalid
+     */
+    public CompiledQueryTemplate register(String name, String owner, Query query,
+                                          Map<String, String> parameters) {
+        if (name.isBlank() || name.length() > 100) {
+            throw new IllegalArgumentException("The name has to have 1 to 100 characters");
+        }
+        // The ID is only known once the template has been stored
+        CompiledQueryTemplate validated = CompiledQueryTemplate.compile(0, name, owner, query,
+                parameters, this.chaincodeService.getPlatformConfig());
+
+        CompiledQueryTemplate compiled = this.transactionTemplate.execute(status -> {
+            QueryTemplate template = this.queryTemplateRepository.save(new QueryTemplate(name,
+                    owner, validated.getSkeleton().toByteArray(),
+                    CompiledQueryTemplate.encodeParameters(validated.getParameters())));
+            CompiledQueryTemplate stored = validated.withId(template.getId());
+            // Other requests only find the template in the cache once it can be read from the
+            //  database as well
+            TransactionSynchronizationManager.registerSynchronization(
+                    new TransactionSynchronization() {
+                        @Override
+                        public void afterCommit() {
+                            compiledTemplates.put(stored.getId(), stored);
+                        }
+                    });
+            return stored;
+        });
+
+        logger.atInfo()
+                .addKeyValue("template", compiled.getId())
+                .addKeyValue("owner", owner)
+                .addKeyValue("parameters", parameters.size())
+                .log("Registered a query template");
+        return compiled;
+    }
+
+    /**
+     * Retrieves the compiled form of a template (compiled on the first use on this instance).
+     *
+     * @param id    the ID of the template
+     * @return      the compiled template, or empty if there is no template with the ID
+     * @throws IllegalArgumentException if the template does not match the query interface
+     *                                   (anymore)
+     */
+    public Optional<CompiledQueryTemplate> get(long id) {
+        return Optional.ofNullable(this.compiledTemplates.get(id, key ->
+                this.queryTemplateRepository.findById(key).map(this::compile).orElse(null)));
+    }
+
+    /**
+     * Retrieves all registered templates, oldest first.
+     *
+     * @return      the templates
+     */
+    @Transactional(readOnly = true)
+    public List<QueryTemplate> list() {
+        return this.queryTemplateRepository.findAllByOrderByIdAsc();
+    }
+
+    /**
+     * Records the run time of a template.
+     *
+     * @param template      the template that has been run
+     * @param durationNanos the run time (including the time on the chain)
+     */
+    public void recordExecution(CompiledQueryTemplate template, long durationNanos) {
+        Timer.builder("queries.templates.executions")
+                .description("The run time of the query templates")
+                .tag("query_type", template.getSkeleton().getQueryType().name())
+                .register(this.meterRegistry)
+                .record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Validates a stored template against the current query interface.
+     *
+     * @param template  the stored template
+     * @return          the compiled template
+     * @throws IllegalArgumentException if the template does not match the query interface
+     */
+    private CompiledQueryTemplate compile(QueryTemplate template) {
+        Query query;
+        try {
+            query = Query.parseFrom(template.getQuery());
+        } catch (InvalidProtocolBufferException e) {
+            throw new IllegalStateException("Cannot decode query template " + template.getId(), e);
+        }
+        return CompiledQueryTemplate.compile(template.getId(), template.getName(),
+                template.getOwner(), query,
+                CompiledQueryTemplate.decodeParameters(template.getParameters()),
+                this.chaincodeService.getPlatformConfig());
+    }
+
+    /**
+     * Drops the compiled templates when the platform config changes (or everything is
+     *  re-synced), so that they are validated against the new query interface.
+     *
+     * @param message   the invalidation message
+     */
+    @EventListener
+    public void onInvalidation(InvalidationMessage message) {
+        if (message.type() == InvalidationMessage.Type.PLATFORM_CONFIG
+                || message.type() == InvalidationMessage.Type.ALL) {
+            this.compiledTemplates.invalidateAll();
+        }
+    }
+}
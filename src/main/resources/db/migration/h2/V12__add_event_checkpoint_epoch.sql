@@ -0,0 +1,7 @@
+-- Every leader claims the checkpoint by increasing its epoch, and only stores its progress while
+-- the epoch is still its own (see JpaCheckpointer), so that a leader that has been replaced
+-- cannot overwrite the progress of the next one.
+-- A claimed checkpoint has no block number until the first event has been processed.
+ALTER TABLE event_checkpoint ADD COLUMN epoch BIGINT DEFAULT 0 NOT NULL;
+
+ALTER TABLE event_checkpoint ALTER COLUMN block_number DROP NOT NULL;
@@ -0,0 +1,18 @@
+-- The user data (see UserData.java).
+-- IF NOT EXISTS keeps this migration compatible with databases whose schema
+-- has previously been generated by Hibernate.
+CREATE TABLE IF NOT EXISTS user_data
+(
+    user_id                 UUID         NOT NULL PRIMARY KEY,
+    username                VARCHAR(30)  NOT NULL UNIQUE,
+    password                VARCHAR(128) NOT NULL,
+    email                   VARCHAR(50)  NOT NULL UNIQUE,
+    first_name              VARCHAR(50)  NOT NULL,
+    last_name               VARCHAR(50)  NOT NULL,
+    affiliation             VARCHAR(50)  NOT NULL,
+    role                    SMALLINT     NOT NULL,
+    account_non_expired     BOOLEAN      NOT NULL,
+    account_non_locked      BOOLEAN      NOT NULL,
+    credentials_non_expired BOOLEAN      NOT NULL,
+    enabled                 BOOLEAN      NOT NULL
+);
@@ -0,0 +1,6 @@
+-- The largest username suffix handed out per base username (see UsernameCounter.java).
+CREATE TABLE IF NOT EXISTS username_counter
+(
+    base_name   VARCHAR(30) NOT NULL PRIMARY KEY,
+    last_suffix BIGINT      NOT NULL
+);
@@ -0,0 +1,11 @@
+-- Indexes matching the queries in UserDataRepository.
+-- H2 does not support functional indexes, so only the plain indexes are created here
+-- (see the PostgreSQL migration for the full set).
+
+-- Keyset-paginated researcher listing (WHERE role = 1 AND user_id > ? ORDER BY user_id)
+CREATE INDEX IF NOT EXISTS idx_user_data_role_user_id
+    ON user_data (role, user_id);
+
+-- Researcher listing filtered by affiliation
+CREATE INDEX IF NOT EXISTS idx_user_data_role_affiliation_user_id
+    ON user_data (role, affiliation, user_id);
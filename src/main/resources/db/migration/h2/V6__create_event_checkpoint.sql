@@ -0,0 +1,8 @@
+-- The progress of the chain event subscriptions (see EventCheckpoint.java).
+CREATE TABLE IF NOT EXISTS event_checkpoint
+(
+    name           VARCHAR(100)             NOT NULL PRIMARY KEY,
+    block_number   BIGINT                   NOT NULL,
+    transaction_id VARCHAR(128),
+    updated_at     TIMESTAMP WITH TIME ZONE NOT NULL
+);
@@ -0,0 +1,14 @@
+-- The queries that have been run successfully, with their results (see QueryHistoryEntry.java).
+CREATE TABLE IF NOT EXISTS query_history
+(
+    id         BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    submitter  VARCHAR(30)              NOT NULL,
+    query      VARBINARY                NOT NULL,
+    result     VARBINARY                NOT NULL,
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL
+);
+
+-- The history of a researcher is read newest first, one page at a time
+--  (WHERE submitter = ? AND id < ? ORDER BY id DESC)
+CREATE INDEX IF NOT EXISTS idx_query_history_submitter_id
+    ON query_history (submitter, id DESC);
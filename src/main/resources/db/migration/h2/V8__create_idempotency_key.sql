@@ -0,0 +1,15 @@
+-- The results of the queries that were submitted with an Idempotency-Key (see IdempotencyRecord.java).
+CREATE TABLE IF NOT EXISTS idempotency_key
+(
+    id              BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    submitter       VARCHAR(30)              NOT NULL,
+    idempotency_key VARCHAR(255)             NOT NULL,
+    fingerprint     VARCHAR(64)              NOT NULL,
+    response        VARCHAR,
+    created_at      TIMESTAMP WITH TIME ZONE NOT NULL,
+    CONSTRAINT uq_idempotency_key_submitter_key UNIQUE (submitter, idempotency_key)
+);
+
+-- Expired keys are deleted periodically (WHERE created_at < ?)
+CREATE INDEX IF NOT EXISTS idx_idempotency_key_created_at
+    ON idempotency_key (created_at);
@@ -0,0 +1,11 @@
+-- The registered query templates (see QueryTemplate.java). A template cannot be changed once it
+--  has been registered, so every instance can cache its compiled form.
+CREATE TABLE IF NOT EXISTS query_template
+(
+    id         BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    name       VARCHAR(100)             NOT NULL,
+    owner      VARCHAR(30)              NOT NULL,
+    query      VARBINARY                NOT NULL,
+    parameters VARCHAR(1000)            NOT NULL,
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL
+);
@@ -0,0 +1,18 @@
+-- The queries that are run periodically, with their latest result (see ScheduledQuery.java).
+CREATE TABLE IF NOT EXISTS scheduled_query
+(
+    id               BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    name             VARCHAR(100)             NOT NULL,
+    owner            VARCHAR(30)              NOT NULL,
+    query            BYTEA                    NOT NULL,
+    interval_seconds BIGINT                   NOT NULL,
+    next_run_at      TIMESTAMP WITH TIME ZONE NOT NULL,
+    last_run_at      TIMESTAMP WITH TIME ZONE,
+    last_result      BYTEA,
+    last_error       VARCHAR(1000),
+    created_at       TIMESTAMP WITH TIME ZONE NOT NULL
+);
+
+-- The runner polls for due queries (WHERE next_run_at <= now)
+CREATE INDEX IF NOT EXISTS idx_scheduled_query_next_run_at
+    ON scheduled_query (next_run_at);
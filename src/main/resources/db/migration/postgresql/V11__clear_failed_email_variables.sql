@@ -0,0 +1,5 @@
+-- The variables of an email can contain a generated password, so they are not kept once the
+-- email has been given up on (see EmailOutboxMessage.fail).
+UPDATE email_outbox
+SET variables = '{}'
+WHERE status = 'FAILED';
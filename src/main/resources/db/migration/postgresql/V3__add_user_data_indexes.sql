@@ -0,0 +1,25 @@
+-- Indexes matching the queries in UserDataRepository.
+-- The unique constraints already cover the exact lookups by user_id, username and email.
+
+-- Keyset-paginated researcher listing (WHERE role = 1 AND user_id > ? ORDER BY user_id)
+CREATE INDEX IF NOT EXISTS idx_user_data_role_user_id
+    ON user_data (role, user_id);
+
+-- Researcher listing filtered by affiliation
+CREATE INDEX IF NOT EXISTS idx_user_data_role_affiliation_user_id
+    ON user_data (role, affiliation, user_id);
+
+-- Username prefix search (LIKE 'jdoe%'), used to seed the username counters.
+-- text_pattern_ops makes the index usable for LIKE regardless of the database collation.
+CREATE INDEX IF NOT EXISTS idx_user_data_username_pattern
+    ON user_data (username text_pattern_ops);
+
+-- Case-insensitive name/email prefix search in the researcher listing (LOWER(x) LIKE 'abc%')
+CREATE INDEX IF NOT EXISTS idx_user_data_lower_email_pattern
+    ON user_data (LOWER(email) text_pattern_ops);
+
+CREATE INDEX IF NOT EXISTS idx_user_data_lower_first_name_pattern
+    ON user_data (LOWER(first_name) text_pattern_ops);
+
+CREATE INDEX IF NOT EXISTS idx_user_data_lower_last_name_pattern
+    ON user_data (LOWER(last_name) text_pattern_ops);
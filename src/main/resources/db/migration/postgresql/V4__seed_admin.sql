@@ -1,3 +1,4 @@
+-- The initial admin account.
 INSERT INTO user_data
     (user_id,
     account_non_expired,
@@ -24,6 +25,4 @@ VALUES
     '$2a$12$6eC3khhEr21kFmKQrUWl.Opl6/ol.0pdVlnOe/0ehlDqZZe/9rE5i',
     0,
     'iandrews')
-ON CONFLICT (user_id) DO NOTHING;
-
-
+ON CONFLICT DO NOTHING;
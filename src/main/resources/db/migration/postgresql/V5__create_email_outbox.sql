@@ -0,0 +1,18 @@
+-- Emails that still have to be sent (see EmailOutboxMessage.java).
+CREATE TABLE IF NOT EXISTS email_outbox
+(
+    id              BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    recipient       VARCHAR(50)              NOT NULL,
+    subject         VARCHAR(255)             NOT NULL,
+    template        VARCHAR(100)             NOT NULL,
+    variables       VARCHAR(4000)            NOT NULL,
+    status          VARCHAR(16)              NOT NULL,
+    attempts        INTEGER                  NOT NULL,
+    next_attempt_at TIMESTAMP WITH TIME ZONE NOT NULL,
+    created_at      TIMESTAMP WITH TIME ZONE NOT NULL,
+    last_error      VARCHAR(1000)
+);
+
+-- The dispatcher polls for due messages (WHERE status = 'PENDING' AND next_attempt_at <= now)
+CREATE INDEX IF NOT EXISTS idx_email_outbox_status_next_attempt_at
+    ON email_outbox (status, next_attempt_at);
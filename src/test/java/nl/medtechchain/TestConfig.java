@@ -1,5 +1,10 @@
 package nl.medtechchain;
 
+import static org.mockito.ArgumentMatchers.anyString;
+
+import org.hyperledger.fabric.client.Contract;
+import org.hyperledger.fabric.client.Gateway;
+import org.hyperledger.fabric.client.Network;
 import org.mockito.Mockito;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -19,4 +24,23 @@ public class TestConfig {
         return Mockito.mock(JavaMailSender.class);
     }
 
-}
\ No newline at end of file
+    /**
+     * Creates a test mock for the Gateway object (used when `gateway.mock` is true).
+     *
+     * @return      the created mock of the Gateway object
+     */
+    @Bean
+    public Gateway getGateway() {
+        Gateway gatewayMock = Mockito.mock(Gateway.class);
+        Network networkMock = Mockito.mock(Network.class);
+        Contract contractMock = Mockito.mock(Contract.class);
+
+        Mockito.when(gatewayMock.getNetwork(anyString())).thenReturn(networkMock);
+        Mockito.when(networkMock.getContract(anyString())).thenReturn(contractMock);
+        Mockito.when(networkMock.getContract(anyString(), anyString())).thenReturn(contractMock);
+        Mockito.when(networkMock.getName()).thenReturn("GatewayMock");
+
+        return gatewayMock;
+    }
+
+}
@@ -0,0 +1,100 @@
+package nl.medtechchain.cache;
+
+import java.util.List;
+import java.util.UUID;
+import nl.medtechchain.models.UserData;
+import nl.medtechchain.models.UserRole;
+import nl.medtechchain.repositories.UserDataRepository;
+import nl.medtechchain.services.AuthenticationService;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.event.ApplicationEvents;
+import org.springframework.test.context.event.RecordApplicationEvents;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@SpringBootTest
+@ActiveProfiles({"test"})
+@Sql("/data.sql")
+@RecordApplicationEvents
+public class InvalidationBusTest {
+    @Autowired
+    private AuthenticationService authenticationService;
+
+    @Autowired
+    private UserDataRepository userDataRepository;
+
+    @Autowired
+    private InvalidationBus invalidationBus;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ApplicationEvents applicationEvents;
+
+    private UserData user;
+
+    @BeforeEach
+    void setup() {
+        this.user = this.userDataRepository.save(new UserData("jdoe", "somepassword",
+                "J.Doe@tudelft.nl", "John", "Doe", "TU Delft", UserRole.RESEARCHER));
+    }
+
+    private List<InvalidationMessage> messages() {
+        return this.applicationEvents.stream(InvalidationMessage.class).toList();
+    }
+
+    @Test
+    public void testUpdateUserPublishesInvalidation() {
+        this.authenticationService.updateUser(this.user.getUserId(), "Jane", "Doe", "TU Delft");
+
+        Assertions.assertThat(this.messages()).containsExactly(new InvalidationMessage(
+                InvalidationMessage.Type.USER, this.user.getUserId().toString()));
+    }
+
+    @Test
+    public void testDeleteUserPublishesInvalidation() {
+        this.authenticationService.deleteUser(this.user.getUserId());
+
+        Assertions.assertThat(this.messages()).containsExactly(new InvalidationMessage(
+                InvalidationMessage.Type.USER, this.user.getUserId().toString()));
+    }
+
+    @Test
+    public void testInvalidationDeliveredAfterCommit() {
+        InvalidationMessage message = InvalidationMessage.of(InvalidationMessage.Type.ALL);
+        this.transactionTemplate.executeWithoutResult(status -> {
+            this.invalidationBus.publish(message);
+            Assertions.assertThat(this.messages()).isEmpty();
+        });
+
+        Assertions.assertThat(this.messages()).containsExactly(message);
+    }
+
+    @Test
+    public void testInvalidationNotDeliveredOnRollback() {
+        this.transactionTemplate.executeWithoutResult(status -> {
+            this.invalidationBus.publish(new InvalidationMessage(
+                    InvalidationMessage.Type.USER, UUID.randomUUID().toString()));
+            status.setRollbackOnly();
+        });
+
+        Assertions.assertThat(this.messages()).isEmpty();
+    }
+
+    @Test
+    public void testEncodeDecode() {
+        InvalidationMessage message = new InvalidationMessage(
+                InvalidationMessage.Type.USER, this.user.getUserId().toString());
+
+        Assertions.assertThat(InvalidationMessage.originOf(message.encode("instance")))
+                .isEqualTo("instance");
+        Assertions.assertThat(InvalidationMessage.decode(message.encode("instance")))
+                .isEqualTo(message);
+    }
+}
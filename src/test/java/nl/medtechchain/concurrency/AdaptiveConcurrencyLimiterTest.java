@@ -0,0 +1,94 @@
+package nl.medtechchain.concurrency;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.TimeUnit;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class AdaptiveConcurrencyLimiterTest {
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private AdaptiveConcurrencyLimiter limiter;
+
+    @BeforeEach
+    void setup() {
+        this.meterRegistry = new SimpleMeterRegistry();
+        this.limiter = new AdaptiveConcurrencyLimiter(20, 2, 100, 1.5, this.meterRegistry);
+    }
+
+    @Test
+    public void testCallsOverTheLimitAreRejected() {
+        AdaptiveConcurrencyLimiter small =
+                new AdaptiveConcurrencyLimiter(2, 2, 100, 1.5, this.meterRegistry);
+        AdaptiveConcurrencyLimiter.Permit first = small.acquire();
+        small.acquire();
+
+        Assertions.assertThatThrownBy(small::acquire)
+                .isInstanceOf(ConcurrencyLimitExceededException.class)
+                .satisfies(e -> Assertions.assertThat(((ConcurrencyLimitExceededException) e)
+                        .getRetryAfterSeconds()).isGreaterThanOrEqualTo(1));
+        Assertions.assertThat(this.meterRegistry.get("gateway.concurrency.rejected")
+                .counter().count()).isEqualTo(1);
+
+        first.close();
+        Assertions.assertThat(small.getInFlight()).isEqualTo(1);
+        Assertions.assertThatCode(small::acquire).doesNotThrowAnyException();
+    }
+
+    @Test
+    public void testClosingTwiceReleasesOnce() {
+        AdaptiveConcurrencyLimiter.Permit permit = this.limiter.acquire();
+        permit.close();
+        permit.close();
+
+        Assertions.assertThat(this.limiter.getInFlight()).isZero();
+    }
+
+    @Test
+    public void testLimitGrowsWhileLatencyIsStable() {
+        for (int i = 0; i < 20; i++) {
+            this.limiter.onSample(FAST, this.limiter.getLimit(), false);
+        }
+
+        Assertions.assertThat(this.limiter.getLimit()).isGreaterThan(20);
+    }
+
+    @Test
+    public void testLimitDoesNotGrowWhenUnused() {
+        for (int i = 0; i < 20; i++) {
+            this.limiter.onSample(FAST, 1, false);
+        }
+
+        Assertions.assertThat(this.limiter.getLimit()).isEqualTo(20);
+    }
+
+    @Test
+    public void testLimitShrinksWhenLatencyGrows() {
+        for (int i = 0; i < 100; i++) {
+            this.limiter.onSample(FAST, 1, false);
+        }
+        for (int i = 0; i < 50; i++) {
+            this.limiter.onSample(SLOW, this.limiter.getLimit(), false);
+        }
+
+        Assertions.assertThat(this.limiter.getLimit()).isLessThan(20);
+        Assertions.assertThat(this.meterRegistry.get("gateway.concurrency.limit")
+                .gauge().value()).isEqualTo(this.limiter.getLimit());
+    }
+
+    @Test
+    public void testLimitShrinksWhenCallsAreDroppedButNotBelowMinimum() {
+        this.limiter.onSample(FAST, 1, true);
+        Assertions.assertThat(this.limiter.getLimit()).isEqualTo(18);
+
+        for (int i = 0; i < 100; i++) {
+            this.limiter.onSample(FAST, 1, true);
+        }
+        Assertions.assertThat(this.limiter.getLimit()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,104 @@
+package nl.medtechchain.concurrency;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import nl.medtechchain.controllers.ApiEndpoints;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+public class BulkheadTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    public void testRequestsOverTheLimitAndQueueAreRejected() throws Exception {
+        Bulkhead bulkhead = new Bulkhead("test", 1, 0, 1000, this.meterRegistry);
+
+        Assertions.assertThat(bulkhead.tryEnter()).isTrue();
+        Assertions.assertThat(bulkhead.tryEnter()).isFalse();
+        Assertions.assertThat(this.meterRegistry.get("bulkhead.rejected").tag("bulkhead", "test")
+                .counter().count()).isEqualTo(1);
+        Assertions.assertThat(this.meterRegistry.get("bulkhead.active").tag("bulkhead", "test")
+                .gauge().value()).isEqualTo(1);
+
+        bulkhead.exit();
+        Assertions.assertThat(bulkhead.tryEnter()).isTrue();
+    }
+
+    @Test
+    public void testQueuedRequestGetsPermitWhenOneIsReturned() throws Exception {
+        Bulkhead bulkhead = new Bulkhead("test", 1, 1, 5000, this.meterRegistry);
+        Assertions.assertThat(bulkhead.tryEnter()).isTrue();
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CountDownLatch started = new CountDownLatch(1);
+            Future<Boolean> queued = executor.submit(() -> {
+                started.countDown();
+                return bulkhead.tryEnter();
+            });
+            started.await();
+            while (bulkhead.getQueued() == 0) {
+                Thread.sleep(10);
+            }
+
+            // The queue is full
+            Assertions.assertThat(bulkhead.tryEnter()).isFalse();
+
+            bulkhead.exit();
+            Assertions.assertThat(queued.get(5, TimeUnit.SECONDS)).isTrue();
+            Assertions.assertThat(bulkhead.getQueued()).isZero();
+            Assertions.assertThat(bulkhead.getActive()).isEqualTo(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testQueuedRequestIsRejectedAfterMaxWait() throws Exception {
+        Bulkhead bulkhead = new Bulkhead("test", 1, 1, 50, this.meterRegistry);
+        Assertions.assertThat(bulkhead.tryEnter()).isTrue();
+
+        Assertions.assertThat(bulkhead.tryEnter()).isFalse();
+        Assertions.assertThat(bulkhead.getQueued()).isZero();
+    }
+
+    @Test
+    public void testEndpointGroups() {
+        Assertions.assertThat(BulkheadFilter.groupOf(
+                new MockHttpServletRequest("POST", ApiEndpoints.LOGIN_API)))
+                .isEqualTo(BulkheadFilter.AUTH);
+        Assertions.assertThat(BulkheadFilter.groupOf(
+                new MockHttpServletRequest("POST", ApiEndpoints.QUERIES_API)))
+                .isEqualTo(BulkheadFilter.QUERY);
+        Assertions.assertThat(BulkheadFilter.groupOf(
+                new MockHttpServletRequest("POST", ApiEndpoints.TIME_SERIES_API)))
+                .isEqualTo(BulkheadFilter.QUERY);
+        Assertions.assertThat(BulkheadFilter.groupOf(
+                new MockHttpServletRequest("POST", ApiEndpoints.HISTOGRAM_API)))
+                .isEqualTo(BulkheadFilter.QUERY);
+        Assertions.assertThat(BulkheadFilter.groupOf(
+                new MockHttpServletRequest("POST", ApiEndpoints.TEMPLATES_API + "/42")))
+                .isEqualTo(BulkheadFilter.QUERY);
+        Assertions.assertThat(BulkheadFilter.groupOf(
+                new MockHttpServletRequest("GET", ApiEndpoints.MY_QUERIES_API)))
+                .isEqualTo(BulkheadFilter.QUERY_HISTORY);
+        Assertions.assertThat(BulkheadFilter.groupOf(
+                new MockHttpServletRequest("GET", ApiEndpoints.SCHEDULED_QUERIES_API)))
+                .isEqualTo(BulkheadFilter.QUERY_HISTORY);
+        Assertions.assertThat(BulkheadFilter.groupOf(
+                new MockHttpServletRequest("POST", ApiEndpoints.CONFIGS_PLATFORM_API)))
+                .isEqualTo(BulkheadFilter.CONFIG);
+        Assertions.assertThat(BulkheadFilter.groupOf(
+                new MockHttpServletRequest("GET", ApiEndpoints.ACTUATOR_HEALTH_API))).isNull();
+        // An open event stream does not hold a server thread, so it does not take a permit
+        Assertions.assertThat(BulkheadFilter.groupOf(
+                new MockHttpServletRequest("GET", ApiEndpoints.QUERY_EVENTS_API))).isNull();
+        Assertions.assertThat(BulkheadFilter.groupOf(
+                new MockHttpServletRequest("GET", ApiEndpoints.CONFIG_EVENTS_API))).isNull();
+    }
+}
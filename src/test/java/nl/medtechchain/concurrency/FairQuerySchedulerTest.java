@@ -0,0 +1,104 @@
+package nl.medtechchain.concurrency;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class FairQuerySchedulerTest {
+    private final List<String> order = Collections.synchronizedList(new ArrayList<>());
+
+    private final List<Thread> threads = new ArrayList<>();
+
+    private static FairQueryScheduler newScheduler(int maxConcurrent, int maxConcurrentPerUser,
+                                                   long maxWaitMs, String weights) {
+        return new FairQueryScheduler(maxConcurrent, maxConcurrentPerUser, maxWaitMs, weights,
+                new SimpleMeterRegistry());
+    }
+
+    /**
+     * Starts a query in the background, which records its name once it runs,
+     *  and waits until it is queued (so that the arrival order is known).
+     */
+    private void enqueue(FairQueryScheduler scheduler, String submitter, String affiliation,
+                         String name) throws InterruptedException {
+        int waiting = scheduler.getWaiting();
+        Thread thread = new Thread(() -> {
+            try (FairQueryScheduler.Turn ignored = scheduler.awaitTurn(submitter, affiliation)) {
+                this.order.add(name);
+            }
+        });
+        this.threads.add(thread);
+        thread.start();
+        while (scheduler.getWaiting() == waiting) {
+            Thread.sleep(5);
+        }
+    }
+
+    private void awaitAll() throws InterruptedException {
+        for (Thread thread : this.threads) {
+            thread.join(5000);
+        }
+    }
+
+    @Test
+    public void testResearchersTakeTurns() throws Exception {
+        FairQueryScheduler scheduler = newScheduler(1, 10, 5000, "");
+        FairQueryScheduler.Turn first = scheduler.awaitTurn("script", "TU Delft");
+
+        this.enqueue(scheduler, "script", "TU Delft", "script-1");
+        this.enqueue(scheduler, "script", "TU Delft", "script-2");
+        this.enqueue(scheduler, "script", "TU Delft", "script-3");
+        this.enqueue(scheduler, "jdoe", "TU Delft", "jdoe-1");
+        first.close();
+        this.awaitAll();
+
+        Assertions.assertThat(this.order)
+                .containsExactly("script-1", "jdoe-1", "script-2", "script-3");
+        Assertions.assertThat(scheduler.getRunning()).isZero();
+        Assertions.assertThat(scheduler.getWaiting()).isZero();
+    }
+
+    @Test
+    public void testAffiliationWeights() throws Exception {
+        FairQueryScheduler scheduler = newScheduler(1, 10, 5000, "TU Delft:2, Erasmus MC:1");
+        FairQueryScheduler.Turn first = scheduler.awaitTurn("admin", "");
+
+        for (int i = 1; i <= 3; i++) {
+            this.enqueue(scheduler, "jdoe", "TU Delft", "delft-" + i);
+        }
+        for (int i = 1; i <= 3; i++) {
+            this.enqueue(scheduler, "asmith", "Erasmus MC", "erasmus-" + i);
+        }
+        first.close();
+        this.awaitAll();
+
+        Assertions.assertThat(this.order).containsExactly("delft-1", "delft-2", "erasmus-1",
+                "delft-3", "erasmus-2", "erasmus-3");
+    }
+
+    @Test
+    public void testPerUserCap() {
+        FairQueryScheduler scheduler = newScheduler(2, 1, 50, "");
+        scheduler.awaitTurn("script", "TU Delft");
+
+        Assertions.assertThatThrownBy(() -> scheduler.awaitTurn("script", "TU Delft"))
+                .isInstanceOf(ConcurrencyLimitExceededException.class);
+        Assertions.assertThat(scheduler.getWaiting()).isZero();
+
+        // Another researcher can still use the free slot
+        Assertions.assertThatCode(() -> scheduler.awaitTurn("jdoe", "TU Delft"))
+                .doesNotThrowAnyException();
+        Assertions.assertThat(scheduler.getRunning()).isEqualTo(2);
+    }
+
+    @Test
+    public void testInvalidWeights() {
+        Assertions.assertThatThrownBy(() -> newScheduler(1, 1, 50, "TU Delft"))
+                .isInstanceOf(IllegalArgumentException.class);
+        Assertions.assertThatThrownBy(() -> newScheduler(1, 1, 50, "TU Delft:0"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
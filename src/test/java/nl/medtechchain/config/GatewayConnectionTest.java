@@ -0,0 +1,98 @@
+package nl.medtechchain.config;
+
+import io.grpc.ManagedChannel;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.assertj.core.api.Assertions;
+import org.hyperledger.fabric.client.Gateway;
+import org.hyperledger.fabric.client.Network;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+public class GatewayConnectionTest {
+    private final AtomicInteger connects = new AtomicInteger();
+
+    private Gateway newGatewayMock() {
+        Gateway gateway = Mockito.mock(Gateway.class);
+        Mockito.when(gateway.getNetwork("channel")).thenReturn(Mockito.mock(Network.class));
+        return gateway;
+    }
+
+    @Test
+    public void testConnectsOnFirstUseOnly() {
+        Gateway gateway = this.newGatewayMock();
+        GatewayConnection connection = new GatewayConnection(() -> {
+            this.connects.incrementAndGet();
+            return new GatewayConnection.Connection(gateway, null);
+        }, "channel", 0);
+
+        Assertions.assertThat(connection.isConnected()).isFalse();
+        Assertions.assertThat(this.connects.get()).isZero();
+
+        Assertions.assertThat(connection.getGateway()).isSameAs(gateway);
+        Assertions.assertThat(connection.getNetwork()).isNotNull();
+        Assertions.assertThat(connection.isConnected()).isTrue();
+        Assertions.assertThat(this.connects.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void testReconnectsAfterFailureOnceTheDelayHasPassed() throws Exception {
+        Gateway gateway = this.newGatewayMock();
+        GatewayConnection connection = new GatewayConnection(() -> {
+            if (this.connects.incrementAndGet() == 1) {
+                throw new IOException("No crypto material");
+            }
+            return new GatewayConnection.Connection(gateway, null);
+        }, "channel", 200);
+
+        Throwable failure = Assertions.catchThrowable(connection::getGateway);
+        Assertions.assertThat(failure).isInstanceOf(IllegalStateException.class)
+                .hasRootCauseInstanceOf(IOException.class);
+        // Within the delay, the call fails without connecting again
+        Assertions.assertThatThrownBy(connection::getGateway)
+                .isInstanceOf(IllegalStateException.class)
+                .isNotSameAs(failure)
+                .hasCause(failure);
+        Assertions.assertThat(this.connects.get()).isEqualTo(1);
+
+        Thread.sleep(250);
+        Assertions.assertThat(connection.getGateway()).isSameAs(gateway);
+        Assertions.assertThat(this.connects.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void testConnectsAgainAfterClose() {
+        Gateway gateway = this.newGatewayMock();
+        GatewayConnection connection = new GatewayConnection(() -> {
+            this.connects.incrementAndGet();
+            return new GatewayConnection.Connection(gateway, null);
+        }, "channel", 0);
+
+        connection.getGateway();
+        connection.close();
+        Mockito.verify(gateway).close();
+        Assertions.assertThat(connection.isConnected()).isFalse();
+
+        connection.getGateway();
+        Assertions.assertThat(this.connects.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void testClosesTheConnectionIfTheNetworkCannotBeUsed() throws Exception {
+        Gateway gateway = Mockito.mock(Gateway.class);
+        Mockito.when(gateway.getNetwork("channel"))
+                .thenThrow(new IllegalArgumentException("No such channel"));
+        ManagedChannel channel = Mockito.mock(ManagedChannel.class);
+        Mockito.when(channel.awaitTermination(Mockito.anyLong(), Mockito.any())).thenReturn(true);
+        GatewayConnection connection = new GatewayConnection(
+                () -> new GatewayConnection.Connection(gateway, channel), "channel", 0);
+
+        Assertions.assertThatThrownBy(connection::getNetwork)
+                .isInstanceOf(IllegalStateException.class)
+                .hasRootCauseInstanceOf(IllegalArgumentException.class);
+
+        Mockito.verify(gateway).close();
+        Mockito.verify(channel).shutdown();
+        Assertions.assertThat(connection.isConnected()).isFalse();
+    }
+}
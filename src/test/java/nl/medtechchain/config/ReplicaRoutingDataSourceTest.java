@@ -0,0 +1,122 @@
+package nl.medtechchain.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import java.time.Duration;
+import java.util.List;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+public class ReplicaRoutingDataSourceTest {
+    private HikariDataSource primary;
+
+    private HikariDataSource replica;
+
+    private ReplicaRoutingDataSource routingDataSource;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private TransactionTemplate readOnlyTransaction;
+
+    private TransactionTemplate readWriteTransaction;
+
+    private static HikariDataSource newPool(String name) {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setPoolName(name);
+        dataSource.setJdbcUrl("jdbc:h2:mem:" + name + "-routing-test");
+        dataSource.setUsername("test");
+        dataSource.setPassword("test");
+        return dataSource;
+    }
+
+    @BeforeEach
+    void setup() {
+        // Two separate in-memory databases, each of which knows its own name
+        this.primary = newPool("primary");
+        this.replica = newPool("replica-0");
+        new JdbcTemplate(this.primary).execute("CREATE TABLE node (name VARCHAR(16))");
+        new JdbcTemplate(this.primary).update("INSERT INTO node VALUES ('primary')");
+        new JdbcTemplate(this.replica).execute("CREATE TABLE node (name VARCHAR(16))");
+        new JdbcTemplate(this.replica).update("INSERT INTO node VALUES ('replica')");
+        new JdbcTemplate(this.replica).execute("CREATE TABLE replica_lag (seconds DOUBLE)");
+        new JdbcTemplate(this.replica).update("INSERT INTO replica_lag VALUES (0)");
+
+        this.routingDataSource = new ReplicaRoutingDataSource(this.primary, List.of(this.replica),
+                "SELECT seconds FROM replica_lag", Duration.ofSeconds(5));
+        LazyConnectionDataSourceProxy dataSource =
+                new LazyConnectionDataSourceProxy(this.routingDataSource);
+        DataSourceTransactionManager transactionManager =
+                new DataSourceTransactionManager(dataSource);
+
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.readWriteTransaction = new TransactionTemplate(transactionManager);
+    }
+
+    @AfterEach
+    void teardown() {
+        // Closing the pools also drops the in-memory databases
+        this.routingDataSource.close();
+    }
+
+    private String currentNode(TransactionTemplate transaction) {
+        return transaction.execute(status ->
+                this.jdbcTemplate.queryForObject("SELECT name FROM node", String.class));
+    }
+
+    @Test
+    public void testReadOnlyTransactionUsesReplica() {
+        this.routingDataSource.checkReplicaLag();
+
+        Assertions.assertThat(this.currentNode(this.readOnlyTransaction)).isEqualTo("replica");
+    }
+
+    @Test
+    public void testReadWriteTransactionUsesPrimary() {
+        this.routingDataSource.checkReplicaLag();
+
+        Assertions.assertThat(this.currentNode(this.readWriteTransaction)).isEqualTo("primary");
+    }
+
+    @Test
+    public void testNoTransactionUsesPrimary() {
+        this.routingDataSource.checkReplicaLag();
+
+        Assertions.assertThat(this.jdbcTemplate.queryForObject("SELECT name FROM node",
+                String.class)).isEqualTo("primary");
+    }
+
+    @Test
+    public void testReplicaNotUsedBeforeLagCheck() {
+        Assertions.assertThat(this.currentNode(this.readOnlyTransaction)).isEqualTo("primary");
+    }
+
+    @Test
+    public void testLaggingReplicaFallsBackToPrimary() {
+        new JdbcTemplate(this.replica).update("UPDATE replica_lag SET seconds = 10");
+        this.routingDataSource.checkReplicaLag();
+
+        Assertions.assertThat(this.currentNode(this.readOnlyTransaction)).isEqualTo("primary");
+
+        // The replica is used again once it has caught up
+        new JdbcTemplate(this.replica).update("UPDATE replica_lag SET seconds = 1");
+        this.routingDataSource.checkReplicaLag();
+
+        Assertions.assertThat(this.currentNode(this.readOnlyTransaction)).isEqualTo("replica");
+    }
+
+    @Test
+    public void testUnreachableReplicaFallsBackToPrimary() {
+        this.routingDataSource.checkReplicaLag();
+        this.replica.close();
+        this.routingDataSource.checkReplicaLag();
+
+        Assertions.assertThat(this.currentNode(this.readOnlyTransaction)).isEqualTo("primary");
+    }
+}
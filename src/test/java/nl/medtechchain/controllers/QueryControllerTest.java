@@ -0,0 +1,347 @@
+package nl.medtechchain.controllers;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+import nl.medtechchain.jwt.JwtProvider;
+import nl.medtechchain.models.Researcher;
+import nl.medtechchain.models.UserData;
+import nl.medtechchain.models.UserRole;
+import nl.medtechchain.proto.common.ChaincodeResponse;
+import nl.medtechchain.proto.common.ChaincodeSuccess;
+import nl.medtechchain.proto.config.PlatformConfig;
+import nl.medtechchain.proto.query.Query;
+import nl.medtechchain.proto.query.QueryResult;
+import nl.medtechchain.protoutils.Base64EncodingOps;
+import nl.medtechchain.repositories.QueryHistoryRepository;
+import nl.medtechchain.repositories.UserDataRepository;
+import nl.medtechchain.services.QueryHistoryService;
+import org.assertj.core.api.Assertions;
+import org.hyperledger.fabric.client.Gateway;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles({"test"})
+@Sql("/data.sql")
+public class QueryControllerTest {
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserDataRepository userDataRepository;
+
+    @Autowired
+    private JwtProvider jwtProvider;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private Gateway gateway;
+
+    @Autowired
+    private QueryHistoryService queryHistoryService;
+
+    @Autowired
+    private QueryHistoryRepository queryHistoryRepository;
+
+    @Value("${server.ssl.enabled}")
+    private boolean https;
+
+    @Value("${queries.events.max-streams-per-user}")
+    private int maxStreamsPerUser;
+
+    @Value("${queries.history.page-size.default}")
+    private int defaultHistoryPageSize;
+
+    @Value("${queries.history.page-size.max}")
+    private int maxHistoryPageSize;
+
+    private static final String COUNT_QUERY = "{\"query_type\":\"COUNT\",\"target_field\":\"udi\"}";
+
+    private static final String TIME_RANGE = "\"start\":\"2024-01-01T00:00:00Z\","
+            + "\"end\":\"2024-03-01T00:00:00Z\",\"bucket\":\"P30D\"";
+
+    private final UserData testResearcher = new UserData("jdoe", "password1",
+            "J.Doe@tudelft.nl", "John", "Doe", "TU Delft", UserRole.RESEARCHER);
+
+    private String jwt;
+
+    /**
+     * Replaces the researchers in the repository by the test researcher, creates a JWT for the
+     *  test researcher, and lets the (mock) chain return a platform config in which `udi` can
+     *  be counted.
+     */
+    @BeforeEach
+    public void setup() throws Exception {
+        List<UUID> researcherUserIds = this.userDataRepository
+                .findAllResearchers().stream().map(Researcher::getUserId).toList();
+        this.userDataRepository.deleteAllById(researcherUserIds);
+        UUID userId = this.userDataRepository.save(this.testResearcher).getUserId();
+        this.jwt = this.jwtProvider.generateJwtToken(userId, UserRole.RESEARCHER, new Date());
+        this.queryHistoryRepository.deleteAll();
+
+        PlatformConfig platformConfig = PlatformConfig.newBuilder()
+                .addMap(PlatformConfig.Entry.newBuilder()
+                        .setKey(PlatformConfig.Config.CONFIG_FEATURE_QUERY_INTERFACE_COUNT_FIELDS)
+                        .setValue("udi"))
+                .build();
+        ChaincodeResponse response = ChaincodeResponse.newBuilder()
+                .setSuccess(ChaincodeSuccess.newBuilder()
+                        .setMessage(Base64EncodingOps.encode64(platformConfig)))
+                .build();
+        Mockito.when(this.gateway.getNetwork(Mockito.anyString())
+                        .getContract(Mockito.anyString(), Mockito.anyString())
+                        .evaluateTransaction(Mockito.eq("GetPlatformConfig"),
+                                Mockito.any(String[].class)))
+                .thenReturn(Base64EncodingOps.encode64(response).getBytes());
+    }
+
+    @Test
+    public void testRunsAQueryAsynchronously() throws Exception {
+        MockHttpServletResponse response = this.mockMvc
+                .perform(post(ApiEndpoints.QUERIES_API).secure(https)
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + this.jwt)
+                        .header(QueryController.PREFER_HEADER, "respond-async, wait=10")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(COUNT_QUERY).characterEncoding("utf-8"))
+                .andExpect(status().isAccepted())
+                .andReturn().getResponse();
+
+        String queryId = response.getHeader(QueryController.QUERY_ID_HEADER);
+        Assertions.assertThat(queryId).isNotBlank();
+        Assertions.assertThat(response.getHeader(QueryController.PREFERENCE_APPLIED_HEADER))
+                .isEqualTo(QueryController.RESPOND_ASYNC);
+        // The result is sent as an event with the same ID
+        Assertions.assertThat(this.objectMapper.readTree(response.getContentAsString())
+                .get("query_id").asText()).isEqualTo(queryId);
+    }
+
+    @Test
+    public void testRejectsAQueryThatDoesNotMatchTheInterface() throws Exception {
+        // `model` is not enabled as the target field of a COUNT
+        this.mockMvc
+                .perform(post(ApiEndpoints.QUERIES_API).secure(https)
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + this.jwt)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"query_type\":\"COUNT\",\"target_field\":\"model\"}")
+                        .characterEncoding("utf-8"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testTimeSeriesRejectsABaseQueryThatDoesNotMatchTheInterface() throws Exception {
+        // `model` is not enabled as the target field of a COUNT
+        this.mockMvc
+                .perform(post(ApiEndpoints.TIME_SERIES_API).secure(https)
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + this.jwt)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"query\":{\"query_type\":\"COUNT\","
+                                + "\"target_field\":\"model\"}," + TIME_RANGE + "}")
+                        .characterEncoding("utf-8"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testTimeSeriesRejectsAFieldThatIsNotATimestamp() throws Exception {
+        this.mockMvc
+                .perform(post(ApiEndpoints.TIME_SERIES_API).secure(https)
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + this.jwt)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"query\":" + COUNT_QUERY + ",\"field\":\"udi\","
+                                + TIME_RANGE + "}")
+                        .characterEncoding("utf-8"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testHistogramRejectsABaseQueryThatDoesNotMatchTheInterface() throws Exception {
+        this.mockMvc
+                .perform(post(ApiEndpoints.HISTOGRAM_API).secure(https)
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + this.jwt)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"query\":{\"query_type\":\"COUNT\","
+                                + "\"target_field\":\"model\"},\"field\":\"udi\","
+                                + "\"boundaries\":[0,10]}")
+                        .characterEncoding("utf-8"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testHistogramRejectsAFieldThatCannotBeFilteredAsInteger() throws Exception {
+        // `udi` is a string field, so it has no integer operators
+        this.mockMvc
+                .perform(post(ApiEndpoints.HISTOGRAM_API).secure(https)
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + this.jwt)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"query\":" + COUNT_QUERY + ",\"field\":\"udi\","
+                                + "\"boundaries\":[0,10]}")
+                        .characterEncoding("utf-8"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testHistogramBoundaryOutOfRange() throws Exception {
+        // The second boundary does not fit in a long
+        this.mockMvc
+                .perform(post(ApiEndpoints.HISTOGRAM_API).secure(https)
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + this.jwt)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"query\":" + COUNT_QUERY + ",\"field\":\"udi\","
+                                + "\"boundaries\":[0,100000000000000000000]}")
+                        .characterEncoding("utf-8"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testRunAsynchronouslyWithIdempotencyKey() throws Exception {
+        this.mockMvc
+                .perform(post(ApiEndpoints.QUERIES_API).secure(https)
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + this.jwt)
+                        .header(QueryController.PREFER_HEADER, QueryController.RESPOND_ASYNC)
+                        .header(QueryController.IDEMPOTENCY_KEY_HEADER, UUID.randomUUID())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(COUNT_QUERY).characterEncoding("utf-8"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testStreamQueryEventsTooManyStreams() throws Exception {
+        for (int i = 0; i < this.maxStreamsPerUser; i++) {
+            this.mockMvc
+                    .perform(get(ApiEndpoints.QUERY_EVENTS_API).secure(https)
+                            .header(HttpHeaders.AUTHORIZATION, "Bearer " + this.jwt)
+                            .accept(MediaType.TEXT_EVENT_STREAM))
+                    .andExpect(request().asyncStarted());
+        }
+
+        this.mockMvc
+                .perform(get(ApiEndpoints.QUERY_EVENTS_API).secure(https)
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + this.jwt)
+                        .accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(status().isTooManyRequests());
+    }
+
+    /**
+     * Stores the specified number of queries in the query history of a researcher.
+     *
+     * @param submitter     the username of the researcher
+     * @param count         the number of queries
+     * @return              the IDs of the stored queries, newest first
+     */
+    private List<Long> recordHistory(String submitter, int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> this.queryHistoryService.record(Query.newBuilder()
+                        .setQueryType(Query.QueryType.COUNT).setTargetField("udi")
+                        .setSubmitter(submitter).build(), QueryResult.getDefaultInstance()).getId())
+                .sorted(Comparator.reverseOrder())
+                .toList();
+    }
+
+    /**
+     * Requests a page of the query history of the test researcher.
+     *
+     * @param params        the query parameters (name, value, name, value, ...)
+     * @return              the response
+     */
+    private MockHttpServletResponse readMyQueries(String... params) throws Exception {
+        MockHttpServletRequestBuilder request = get(ApiEndpoints.MY_QUERIES_API).secure(https)
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + this.jwt);
+        for (int i = 0; i < params.length; i += 2) {
+            request.queryParam(params[i], params[i + 1]);
+        }
+        return this.mockMvc.perform(request).andReturn().getResponse();
+    }
+
+    /**
+     * Finds the IDs of the queries on a page of the query history.
+     *
+     * @param response      the response with the page
+     * @return              the IDs of the queries, in the order of the page
+     */
+    private List<Long> ids(MockHttpServletResponse response) throws Exception {
+        List<Long> ids = new ArrayList<>();
+        for (JsonNode entry : this.objectMapper.readTree(response.getContentAsString())) {
+            ids.add(entry.get("id").asLong());
+        }
+        return ids;
+    }
+
+    @Test
+    public void testReadMyQueriesPageSize() throws Exception {
+        List<Long> history = this.recordHistory("jdoe", this.maxHistoryPageSize + 1);
+
+        MockHttpServletResponse defaultPage = this.readMyQueries();
+        Assertions.assertThat(defaultPage.getStatus()).isEqualTo(200);
+        Assertions.assertThat(this.ids(defaultPage))
+                .isEqualTo(history.subList(0, this.defaultHistoryPageSize));
+
+        // A larger page than the maximum is cut to the maximum
+        MockHttpServletResponse largePage = this.readMyQueries("limit",
+                String.valueOf(this.maxHistoryPageSize * 10));
+        Assertions.assertThat(largePage.getStatus()).isEqualTo(200);
+        Assertions.assertThat(this.ids(largePage))
+                .isEqualTo(history.subList(0, this.maxHistoryPageSize));
+        Assertions.assertThat(largePage.getHeader(UserController.NEXT_CURSOR_HEADER))
+                .isEqualTo(history.get(this.maxHistoryPageSize - 1).toString());
+    }
+
+    @Test
+    public void testReadMyQueriesPaginated() throws Exception {
+        List<Long> history = this.recordHistory("jdoe", 3);
+
+        MockHttpServletResponse firstPage = this.readMyQueries("limit", "2");
+        Assertions.assertThat(firstPage.getStatus()).isEqualTo(200);
+        Assertions.assertThat(this.ids(firstPage)).isEqualTo(history.subList(0, 2));
+        String cursor = firstPage.getHeader(UserController.NEXT_CURSOR_HEADER);
+        Assertions.assertThat(cursor).isEqualTo(history.get(1).toString());
+
+        MockHttpServletResponse secondPage = this.readMyQueries("limit", "2", "after", cursor);
+        Assertions.assertThat(secondPage.getStatus()).isEqualTo(200);
+        Assertions.assertThat(this.ids(secondPage)).isEqualTo(history.subList(2, 3));
+        Assertions.assertThat(secondPage.getHeader(UserController.NEXT_CURSOR_HEADER)).isNull();
+    }
+
+    @Test
+    public void testReadMyQueriesInvalidParameters() throws Exception {
+        Assertions.assertThat(this.readMyQueries("after", "abc").getStatus()).isEqualTo(400);
+        Assertions.assertThat(this.readMyQueries("limit", "abc").getStatus()).isEqualTo(400);
+        Assertions.assertThat(this.readMyQueries("limit", "0").getStatus()).isEqualTo(400);
+        Assertions.assertThat(this.readMyQueries("limit", "-1").getStatus()).isEqualTo(400);
+    }
+
+    @Test
+    public void testReadMyQueriesOnlyOwnQueries() throws Exception {
+        List<Long> own = this.recordHistory("jdoe", 2);
+        this.recordHistory("asmith", 2);
+
+        MockHttpServletResponse response = this.readMyQueries();
+        Assertions.assertThat(response.getStatus()).isEqualTo(200);
+        Assertions.assertThat(this.ids(response)).isEqualTo(own);
+        Assertions.assertThat(response.getHeader(UserController.NEXT_CURSOR_HEADER)).isNull();
+    }
+}
@@ -12,6 +12,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.Jws;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
@@ -381,7 +382,94 @@ public class UserControllerTest {
 
         String jsonResult = response.getContentAsString();
         List<Researcher> actual = new ObjectMapper().readValue(jsonResult, new TypeReference<>(){});
-        Assertions.assertThat(actual).containsExactlyElementsOf(expected);
+        // Researchers are sorted by their userID, which is random
+        Assertions.assertThat(actual).containsExactlyInAnyOrderElementsOf(expected);
+        Assertions.assertThat(response.getHeader(UserController.NEXT_CURSOR_HEADER)).isNull();
+    }
+
+    @Test
+    public void testGetAllResearchersPaginated() throws Exception {
+        UserData user1 = this.userDataRepository.save(this.testResearcher1);
+        UserData user2 = this.userDataRepository.save(this.testResearcher2);
+        // The database orders UUIDs by their unsigned bytes, i.e. like their string representation
+        List<UUID> expected = List.of(user1.getUserId(), user2.getUserId())
+                .stream().sorted(Comparator.comparing(UUID::toString)).toList();
+
+        String jwt = this.createAdminJwt();
+
+        MockHttpServletResponse firstPage = this.mockMvc
+                .perform(get(ApiEndpoints.GET_RESEARCHERS_API).secure(https)
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + jwt)
+                        .queryParam("limit", "1"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse();
+        List<Researcher> firstResult = new ObjectMapper()
+                .readValue(firstPage.getContentAsString(), new TypeReference<>(){});
+        Assertions.assertThat(firstResult).extracting(Researcher::getUserId)
+                .containsExactly(expected.get(0));
+        String cursor = firstPage.getHeader(UserController.NEXT_CURSOR_HEADER);
+        Assertions.assertThat(cursor).isEqualTo(expected.get(0).toString());
+
+        MockHttpServletResponse secondPage = this.mockMvc
+                .perform(get(ApiEndpoints.GET_RESEARCHERS_API).secure(https)
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + jwt)
+                        .queryParam("limit", "1")
+                        .queryParam("after", cursor))
+                .andExpect(status().isOk())
+                .andReturn().getResponse();
+        List<Researcher> secondResult = new ObjectMapper()
+                .readValue(secondPage.getContentAsString(), new TypeReference<>(){});
+        Assertions.assertThat(secondResult).extracting(Researcher::getUserId)
+                .containsExactly(expected.get(1));
+        Assertions.assertThat(secondPage.getHeader(UserController.NEXT_CURSOR_HEADER)).isNull();
+    }
+
+    @Test
+    public void testGetAllResearchersFiltered() throws Exception {
+        UserData user1 = this.userDataRepository.save(this.testResearcher1);
+        this.userDataRepository.save(new UserData("asmith", "password3",
+                "A.Smith@uva.nl", "Alice", "Smith", "UvA", UserRole.RESEARCHER));
+
+        String jwt = this.createAdminJwt();
+
+        MockHttpServletResponse byAffiliation = this.mockMvc
+                .perform(get(ApiEndpoints.GET_RESEARCHERS_API).secure(https)
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + jwt)
+                        .queryParam("affiliation", "TU Delft"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse();
+        List<Researcher> affiliationResult = new ObjectMapper()
+                .readValue(byAffiliation.getContentAsString(), new TypeReference<>(){});
+        Assertions.assertThat(affiliationResult).extracting(Researcher::getUserId)
+                .containsExactly(user1.getUserId());
+
+        MockHttpServletResponse bySearch = this.mockMvc
+                .perform(get(ApiEndpoints.GET_RESEARCHERS_API).secure(https)
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + jwt)
+                        .queryParam("search", "j.DOE"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse();
+        List<Researcher> searchResult = new ObjectMapper()
+                .readValue(bySearch.getContentAsString(), new TypeReference<>(){});
+        Assertions.assertThat(searchResult).extracting(Researcher::getUserId)
+                .containsExactly(user1.getUserId());
+    }
+
+    @Test
+    public void testGetAllResearchersBadPagingParameters() throws Exception {
+        String jwt = this.createAdminJwt();
+
+        this.mockMvc
+                .perform(get(ApiEndpoints.GET_RESEARCHERS_API).secure(https)
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + jwt)
+                        .queryParam("limit", "0"))
+                .andExpect(status().isBadRequest());
+
+        this.mockMvc
+                .perform(get(ApiEndpoints.GET_RESEARCHERS_API).secure(https)
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + jwt)
+                        .queryParam("after", "placeholder"))
+                .andExpect(status().isBadRequest());
     }
 
     @Test
@@ -642,4 +730,23 @@ public class UserControllerTest {
                 .andReturn().getResponse().getContentAsString();
         Assertions.assertThat(responseString).isEqualTo("JWT is invalid");
     }
+
+    @Test
+    public void testPrometheusMetricsNoJwt() throws Exception {
+        this.mockMvc
+                .perform(get(ApiEndpoints.ACTUATOR_PROMETHEUS_API).secure(https))
+                .andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    public void testPrometheusMetricsNotAllowed() throws Exception {
+        UUID userId = this.userDataRepository.save(this.testResearcher2).getUserId();
+
+        String jwt = this.jwtProvider.generateJwtToken(userId, UserRole.RESEARCHER, new Date());
+
+        this.mockMvc
+                .perform(get(ApiEndpoints.ACTUATOR_PROMETHEUS_API).secure(https)
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + jwt))
+                .andExpect(status().isForbidden());
+    }
 }
@@ -0,0 +1,116 @@
+package nl.medtechchain.events;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import nl.medtechchain.repositories.EventCheckpointRepository;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@SpringBootTest
+@ActiveProfiles({"test"})
+@Sql("/data.sql")
+public class JpaCheckpointerTest {
+    @Autowired
+    private EventCheckpointRepository eventCheckpointRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private JpaCheckpointer checkpointer(String name) {
+        return new JpaCheckpointer(name, this.eventCheckpointRepository, this.transactionTemplate);
+    }
+
+    @Test
+    public void testNoCheckpoint() {
+        JpaCheckpointer checkpointer = this.checkpointer("test");
+
+        Assertions.assertThat(checkpointer.getBlockNumber()).isEmpty();
+        Assertions.assertThat(checkpointer.getTransactionId()).isEmpty();
+    }
+
+    @Test
+    public void testCheckpointTransactionIsShared() throws Exception {
+        this.checkpointer("test")
+                .checkpointTransaction(7, "tx1");
+
+        // E.g. the next leader
+        JpaCheckpointer checkpointer = this.checkpointer("test");
+        Assertions.assertThat(checkpointer.getBlockNumber()).isEqualTo(OptionalLong.of(7));
+        Assertions.assertThat(checkpointer.getTransactionId()).isEqualTo(Optional.of("tx1"));
+    }
+
+    @Test
+    public void testCheckpointBlockResumesFromNextBlock() throws Exception {
+        JpaCheckpointer checkpointer = this.checkpointer("test");
+        checkpointer.checkpointTransaction(7, "tx1");
+        checkpointer.checkpointBlock(7);
+
+        Assertions.assertThat(checkpointer.getBlockNumber()).isEqualTo(OptionalLong.of(8));
+        Assertions.assertThat(checkpointer.getTransactionId()).isEmpty();
+        Assertions.assertThat(this.checkpointer("test")
+                .getBlockNumber()).isEqualTo(OptionalLong.of(8));
+    }
+
+    @Test
+    public void testCheckpointsAreSeparatedByName() throws Exception {
+        this.checkpointer("test").checkpointBlock(3);
+
+        Assertions.assertThat(this.checkpointer("other")
+                .getBlockNumber()).isEmpty();
+    }
+
+    @Test
+    public void testReplacedLeaderCannotCheckpoint() throws Exception {
+        JpaCheckpointer replaced = this.checkpointer("test");
+        replaced.checkpointBlock(3);
+        // E.g. the next leader, while the first one has not noticed yet that it is replaced
+        JpaCheckpointer leader = this.checkpointer("test");
+        Assertions.assertThat(leader.getBlockNumber()).isEqualTo(OptionalLong.of(4));
+        leader.checkpointBlock(9);
+
+        Assertions.assertThatThrownBy(() -> replaced.checkpointBlock(5))
+                .isInstanceOf(CheckpointFencedException.class);
+        Assertions.assertThat(replaced.getBlockNumber()).isEqualTo(OptionalLong.of(4));
+        Assertions.assertThat(this.checkpointer("test")
+                .getBlockNumber()).isEqualTo(OptionalLong.of(10));
+    }
+
+    @Test
+    public void testConcurrentLeadersClaimDifferentEpochs() throws Exception {
+        this.checkpointer("test").checkpointBlock(3);
+
+        // E.g. two instances that both think they have just become the leader
+        List<Future<JpaCheckpointer>> claims = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(2)) {
+            for (int i = 0; i < 2; i++) {
+                claims.add(executor.submit(() -> this.checkpointer("test")));
+            }
+        }
+        JpaCheckpointer first = claims.get(0).get();
+        JpaCheckpointer second = claims.get(1).get();
+        Assertions.assertThat(first.getBlockNumber()).isEqualTo(OptionalLong.of(4));
+        Assertions.assertThat(second.getBlockNumber()).isEqualTo(OptionalLong.of(4));
+
+        // Only the one that has claimed the checkpoint last can store its progress
+        int stored = 0;
+        for (JpaCheckpointer checkpointer : List.of(first, second)) {
+            try {
+                checkpointer.checkpointBlock(5);
+                stored++;
+            } catch (CheckpointFencedException e) {
+                // Replaced by the other one
+            }
+        }
+        Assertions.assertThat(stored).isEqualTo(1);
+    }
+}
@@ -0,0 +1,80 @@
+package nl.medtechchain.fanout;
+
+import java.util.List;
+import nl.medtechchain.proto.common.ChaincodeError;
+import nl.medtechchain.proto.common.ChaincodeResponse;
+import nl.medtechchain.proto.common.ChaincodeSuccess;
+import nl.medtechchain.proto.query.Filter;
+import nl.medtechchain.proto.query.Query;
+import nl.medtechchain.proto.query.QueryResult;
+import nl.medtechchain.protoutils.Base64EncodingOps;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+public class HistogramServiceTest {
+    private final QueryFanOut queryFanOut = Mockito.mock(QueryFanOut.class);
+
+    private final HistogramService service = new HistogramService(this.queryFanOut, 10);
+
+    private static ChaincodeResponse count(long count) {
+        return ChaincodeResponse.newBuilder()
+                .setSuccess(ChaincodeSuccess.newBuilder().setMessage(Base64EncodingOps.encode64(
+                        QueryResult.newBuilder().setCountResult(count).build())))
+                .build();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCountsPerBin() throws Exception {
+        Mockito.when(this.queryFanOut.runAll(Mockito.anyList(), Mockito.anyString()))
+                .thenReturn(List.of(count(4), count(7)));
+
+        HistogramService.Histogram histogram = this.service.compute(Query.getDefaultInstance(),
+                "battery_level", List.of(0L, 50L, 101L), "TU Delft");
+
+        Assertions.assertThat(histogram.bins()).containsExactly(
+                new HistogramService.Bin(0, 50, 4), new HistogramService.Bin(50, 101, 7));
+
+        ArgumentCaptor<List<Query>> queries = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(this.queryFanOut).runAll(queries.capture(), Mockito.eq("TU Delft"));
+        Query second = queries.getValue().get(1);
+        Assertions.assertThat(second.getQueryType()).isEqualTo(Query.QueryType.COUNT);
+        Assertions.assertThat(second.getFiltersList()).extracting(Filter::getIntegerFilter)
+                .containsExactly(
+                        Filter.IntegerFilter.newBuilder().setValue(50)
+                                .setOperator(Filter.IntegerFilter.IntOperator.GREATER_THAN_OR_EQUAL)
+                                .build(),
+                        Filter.IntegerFilter.newBuilder().setValue(101)
+                                .setOperator(Filter.IntegerFilter.IntOperator.LESS_THAN).build());
+    }
+
+    @Test
+    public void testReturnsTheFailedBin() throws Exception {
+        ChaincodeResponse error = ChaincodeResponse.newBuilder()
+                .setError(ChaincodeError.newBuilder().setMessage("Invalid filter"))
+                .build();
+        Mockito.when(this.queryFanOut.runAll(Mockito.anyList(), Mockito.anyString()))
+                .thenReturn(List.of(count(4), error));
+
+        HistogramService.Histogram histogram = this.service.compute(Query.getDefaultInstance(),
+                "usage_hours", List.of(0L, 10L, 20L), "");
+
+        Assertions.assertThat(histogram.isFailed()).isTrue();
+        Assertions.assertThat(histogram.failure()).isEqualTo(error);
+    }
+
+    @Test
+    public void testRejectsInvalidFieldsAndBoundaries() {
+        Assertions.assertThatThrownBy(() -> this.service.compute(Query.getDefaultInstance(),
+                        "last_sync_time", List.of(0L, 10L), ""))
+                .isInstanceOf(IllegalArgumentException.class);
+        Assertions.assertThatThrownBy(() -> this.service.compute(Query.getDefaultInstance(),
+                        "battery_level", List.of(10L, 10L), ""))
+                .isInstanceOf(IllegalArgumentException.class);
+        Assertions.assertThatThrownBy(() -> this.service.compute(Query.getDefaultInstance(),
+                        "battery_level", List.of(10L), ""))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
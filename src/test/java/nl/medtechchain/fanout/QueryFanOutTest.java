@@ -0,0 +1,77 @@
+package nl.medtechchain.fanout;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import nl.medtechchain.concurrency.FairQueryScheduler;
+import nl.medtechchain.proto.common.ChaincodeResponse;
+import nl.medtechchain.proto.common.ChaincodeSuccess;
+import nl.medtechchain.proto.query.Query;
+import nl.medtechchain.proto.query.QueryResult;
+import nl.medtechchain.protoutils.Base64EncodingOps;
+import nl.medtechchain.services.ChaincodeService;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+public class QueryFanOutTest {
+    private static final ChaincodeResponse COUNT = ChaincodeResponse.newBuilder()
+            .setSuccess(ChaincodeSuccess.newBuilder().setMessage(Base64EncodingOps.encode64(
+                    QueryResult.newBuilder().setCountResult(1).build())))
+            .build();
+
+    private final ChaincodeService chaincodeService = Mockito.mock(ChaincodeService.class);
+
+    // Two queries of one researcher may run at once, and a query waits at most 200 ms for its turn
+    private final FairQueryScheduler fairQueryScheduler =
+            new FairQueryScheduler(32, 2, 200, "", new SimpleMeterRegistry());
+
+    private final QueryFanOut queryFanOut =
+            new QueryFanOut(this.chaincodeService, this.fairQueryScheduler, 2, 3600, 100, 10);
+
+    @Test
+    public void testConcurrentFanOutsOfOneResearcher() throws Exception {
+        // Every query takes longer than the maximum wait for a turn
+        Mockito.when(this.chaincodeService.submitQuery(Mockito.any(Query.class)))
+                .thenAnswer(invocation -> {
+                    Thread.sleep(300);
+                    return COUNT;
+                });
+        List<Query> queries = Collections.nCopies(4,
+                Query.newBuilder().setSubmitter("researcher1").build());
+
+        CompletableFuture<List<ChaincodeResponse>> first = CompletableFuture.supplyAsync(
+                () -> this.runAll(queries));
+        CompletableFuture<List<ChaincodeResponse>> second = CompletableFuture.supplyAsync(
+                () -> this.runAll(queries));
+
+        // Both fan-outs get their turn, instead of their queries timing out behind each other
+        Assertions.assertThat(first.get()).hasSize(4).containsOnly(COUNT);
+        Assertions.assertThat(second.get()).hasSize(4).containsOnly(COUNT);
+        Mockito.verify(this.chaincodeService, Mockito.times(8))
+                .submitQuery(Mockito.any(Query.class));
+    }
+
+    @Test
+    public void testSettledResultsAreCached() throws Exception {
+        Mockito.when(this.chaincodeService.submitQuery(Mockito.any(Query.class)))
+                .thenReturn(COUNT);
+        List<Query> queries = List.of(Query.newBuilder().setSubmitter("researcher1").build());
+
+        this.queryFanOut.runAll(queries, query -> true, "TU Delft");
+        Assertions.assertThat(this.queryFanOut.runAll(queries, query -> true, "TU Delft"))
+                .containsExactly(COUNT);
+
+        Mockito.verify(this.chaincodeService, Mockito.times(1))
+                .submitQuery(Mockito.any(Query.class));
+    }
+
+    private List<ChaincodeResponse> runAll(List<Query> queries) {
+        try {
+            return this.queryFanOut.runAll(queries, query -> false, "TU Delft");
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
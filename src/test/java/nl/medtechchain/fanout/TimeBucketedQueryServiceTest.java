@@ -0,0 +1,50 @@
+package nl.medtechchain.fanout;
+
+import java.time.Instant;
+import java.util.List;
+import nl.medtechchain.proto.query.Query;
+import nl.medtechchain.proto.query.QueryResult;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class TimeBucketedQueryServiceTest {
+
+    private static QueryResult groupedCount(String group, long count) {
+        return QueryResult.newBuilder()
+                .setGroupedCountResult(QueryResult.GroupedCount.newBuilder().putMap(group, count))
+                .build();
+    }
+
+    @Test
+    public void testMergesCounts() {
+        QueryResult merged = TimeBucketedQueryService.merge(Query.QueryType.COUNT, List.of(
+                QueryResult.newBuilder().setCountResult(3).build(),
+                QueryResult.newBuilder().setCountResult(4).build()));
+
+        Assertions.assertThat(merged.getCountResult()).isEqualTo(7);
+    }
+
+    @Test
+    public void testMergesGroupedCounts() {
+        QueryResult merged = TimeBucketedQueryService.merge(Query.QueryType.GROUPED_COUNT, List.of(
+                groupedCount("LIFECARE", 2), groupedCount("HEALPOINT", 1),
+                groupedCount("LIFECARE", 5)));
+
+        Assertions.assertThat(merged.getGroupedCountResult().getMapMap())
+                .containsOnly(Assertions.entry("LIFECARE", 7L), Assertions.entry("HEALPOINT", 1L));
+    }
+
+    @Test
+    public void testSupportsOnlyAdditiveQueriesWithTimeRange() {
+        TimeBucketedQueryService service = new TimeBucketedQueryService(null, 10);
+        Query count = Query.newBuilder().setQueryType(Query.QueryType.COUNT)
+                .setStartTime(TimeBuckets.toTimestamp(Instant.EPOCH))
+                .setEndTime(TimeBuckets.toTimestamp(Instant.now()))
+                .build();
+
+        Assertions.assertThat(service.supports(count)).isTrue();
+        Assertions.assertThat(service.supports(count.toBuilder().clearEndTime().build())).isFalse();
+        Assertions.assertThat(service.supports(
+                count.toBuilder().setQueryType(Query.QueryType.AVERAGE).build())).isFalse();
+    }
+}
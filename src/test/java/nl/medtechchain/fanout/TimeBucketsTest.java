@@ -0,0 +1,73 @@
+package nl.medtechchain.fanout;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class TimeBucketsTest {
+    private static final Duration DAY = Duration.ofDays(1);
+
+    @Test
+    public void testSplitsIntoAlignedBucketsWithoutOverlap() {
+        Instant start = Instant.parse("2024-01-01T12:00:00Z");
+        Instant end = Instant.parse("2024-01-03T06:00:00Z");
+
+        List<TimeBuckets.Bucket> buckets = TimeBuckets.split(start, end, DAY, 10);
+
+        Assertions.assertThat(buckets).containsExactly(
+                new TimeBuckets.Bucket(start, Instant.parse("2024-01-01T23:59:59.999999999Z")),
+                new TimeBuckets.Bucket(Instant.parse("2024-01-02T00:00:00Z"),
+                        Instant.parse("2024-01-02T23:59:59.999999999Z")),
+                new TimeBuckets.Bucket(Instant.parse("2024-01-03T00:00:00Z"), end));
+    }
+
+    @Test
+    public void testWeeklyBucketsStartOnMonday() {
+        // 2024-01-03 is a Wednesday
+        List<TimeBuckets.Bucket> buckets = TimeBuckets.split(Instant.parse("2024-01-03T00:00:00Z"),
+                Instant.parse("2024-01-20T00:00:00Z"), Duration.ofDays(7), 10);
+
+        Assertions.assertThat(buckets).extracting(TimeBuckets.Bucket::start).containsExactly(
+                Instant.parse("2024-01-03T00:00:00Z"), Instant.parse("2024-01-08T00:00:00Z"),
+                Instant.parse("2024-01-15T00:00:00Z"));
+    }
+
+    @Test
+    public void testExtendedRangeReusesTheSameBuckets() {
+        Instant start = Instant.parse("2024-01-01T00:00:00Z");
+
+        List<TimeBuckets.Bucket> buckets = TimeBuckets.split(start,
+                Instant.parse("2024-01-03T06:00:00Z"), DAY, 10);
+        List<TimeBuckets.Bucket> extended = TimeBuckets.split(start,
+                Instant.parse("2024-01-05T06:00:00Z"), DAY, 10);
+
+        Assertions.assertThat(extended).startsWith(buckets.get(0), buckets.get(1));
+    }
+
+    @Test
+    public void testRangeWithinOneBucket() {
+        Instant start = Instant.parse("2024-01-01T01:00:00Z");
+        Instant end = Instant.parse("2024-01-01T02:00:00Z");
+
+        Assertions.assertThat(TimeBuckets.split(start, end, DAY, 1))
+                .containsExactly(new TimeBuckets.Bucket(start, end));
+    }
+
+    @Test
+    public void testRejectsTooManyBuckets() {
+        Assertions.assertThatThrownBy(() -> TimeBuckets.split(Instant.parse("2020-01-01T00:00:00Z"),
+                        Instant.parse("2024-01-01T00:00:00Z"), DAY, 100))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testRejectsInvalidWidthAndRange() {
+        Instant now = Instant.now();
+        Assertions.assertThatThrownBy(() -> TimeBuckets.split(now, now, Duration.ZERO, 10))
+                .isInstanceOf(IllegalArgumentException.class);
+        Assertions.assertThatThrownBy(() -> TimeBuckets.split(now, now.minusSeconds(1), DAY, 10))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,74 @@
+package nl.medtechchain.fanout;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.function.Predicate;
+import nl.medtechchain.proto.common.ChaincodeResponse;
+import nl.medtechchain.proto.common.ChaincodeSuccess;
+import nl.medtechchain.proto.query.Filter;
+import nl.medtechchain.proto.query.Query;
+import nl.medtechchain.proto.query.QueryResult;
+import nl.medtechchain.protoutils.Base64EncodingOps;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+public class TimeSeriesServiceTest {
+    private static final Instant START = Instant.parse("2024-01-01T00:00:00Z");
+
+    private static final Instant END = Instant.parse("2024-01-14T23:59:59Z");
+
+    private final QueryFanOut queryFanOut = Mockito.mock(QueryFanOut.class);
+
+    private final TimeSeriesService service =
+            new TimeSeriesService(this.queryFanOut, 100, "production_date");
+
+    private static ChaincodeResponse count(long count) {
+        return ChaincodeResponse.newBuilder()
+                .setSuccess(ChaincodeSuccess.newBuilder().setMessage(Base64EncodingOps.encode64(
+                        QueryResult.newBuilder().setCountResult(count).build())))
+                .build();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCountsPerBucketOfATimestampField() throws Exception {
+        Mockito.when(this.queryFanOut.runAll(Mockito.anyList(), Mockito.any(Predicate.class),
+                Mockito.anyString())).thenReturn(List.of(count(3), count(5)));
+        Mockito.when(this.queryFanOut.isSettled(Mockito.any())).thenReturn(true);
+
+        TimeSeriesService.TimeSeries series = this.service.compute(
+                Query.newBuilder().setSubmitter("researcher").build(), START, END,
+                Duration.ofDays(7), "last_sync_time", "TU Delft");
+
+        Assertions.assertThat(series.isFailed()).isFalse();
+        Assertions.assertThat(series.points()).extracting(TimeSeriesService.Point::count)
+                .containsExactly(3L, 5L);
+
+        ArgumentCaptor<List<Query>> queries = ArgumentCaptor.forClass(List.class);
+        ArgumentCaptor<Predicate<Query>> settled = ArgumentCaptor.forClass(Predicate.class);
+        Mockito.verify(this.queryFanOut).runAll(queries.capture(), settled.capture(),
+                Mockito.eq("TU Delft"));
+        Query first = queries.getValue().get(0);
+        Assertions.assertThat(first.getQueryType()).isEqualTo(Query.QueryType.COUNT);
+        Assertions.assertThat(first.getFiltersList()).extracting(Filter::getField)
+                .containsExactly("last_sync_time", "last_sync_time");
+        Assertions.assertThat(first.getFilters(0).getTimestampFilter().getOperator())
+                .isEqualTo(Filter.TimestampFilter.TimestampOperator.AFTER);
+        // last_sync_time changes, so its buckets are never cached
+        Assertions.assertThat(settled.getValue().test(first)).isFalse();
+    }
+
+    @Test
+    public void testRejectsInvalidQueriesAndFields() {
+        Assertions.assertThatThrownBy(() -> this.service.compute(
+                        Query.newBuilder().setQueryType(Query.QueryType.AVERAGE).build(),
+                        START, END, Duration.ofDays(7), null, ""))
+                .isInstanceOf(IllegalArgumentException.class);
+        Assertions.assertThatThrownBy(() -> this.service.compute(Query.getDefaultInstance(),
+                        START, END, Duration.ofDays(7), "usage_hours", ""))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
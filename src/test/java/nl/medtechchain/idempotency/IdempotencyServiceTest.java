@@ -0,0 +1,152 @@
+package nl.medtechchain.idempotency;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import nl.medtechchain.proto.query.Query;
+import nl.medtechchain.repositories.IdempotencyRecordRepository;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.transaction.PlatformTransactionManager;
+
+@SpringBootTest(properties = "queries.idempotency.postgres.enabled=true")
+@ActiveProfiles({"test"})
+@Sql("/data.sql")
+public class IdempotencyServiceTest {
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @Autowired
+    private IdempotencyRecordRepository idempotencyRecordRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // The keys stay in the in-memory cache of the service, so every test uses its own key
+    private final String key = UUID.randomUUID().toString();
+
+    private final Query query = Query.newBuilder().setSubmitter("jdoe").build();
+
+    private final Query otherQuery = Query.newBuilder().setSubmitter("jdoe-1").build();
+
+    /**
+     * Creates the IdempotencyService of another instance, which shares the database.
+     */
+    private IdempotencyService otherInstance() {
+        return new IdempotencyService(this.idempotencyRecordRepository, this.transactionManager,
+                60, 100, 100, true);
+    }
+
+    private static HttpStatus statusOf(Throwable e) {
+        return ((IdempotencyException) e).getStatus();
+    }
+
+    @Test
+    public void testRetryReplaysResponse() {
+        IdempotencyClaim first = this.idempotencyService.claim("jdoe", this.key, this.query);
+        Assertions.assertThat(first.isReplay()).isFalse();
+        first.complete("{\"result\":1}");
+
+        IdempotencyClaim retry = this.idempotencyService.claim("jdoe", this.key, this.query);
+        Assertions.assertThat(retry.isReplay()).isTrue();
+        Assertions.assertThat(retry.getResponse()).isEqualTo("{\"result\":1}");
+    }
+
+    @Test
+    public void testKeysAreScopedBySubmitter() {
+        this.idempotencyService.claim("jdoe", this.key, this.query).complete("{}");
+
+        Assertions.assertThat(this.idempotencyService.claim("jdoe-1", this.key, this.otherQuery)
+                .isReplay()).isFalse();
+    }
+
+    @Test
+    public void testKeyReusedForDifferentQuery() {
+        this.idempotencyService.claim("jdoe", this.key, this.query).complete("{}");
+
+        Assertions.assertThatThrownBy(() -> this.idempotencyService
+                        .claim("jdoe", this.key, this.otherQuery))
+                .isInstanceOf(IdempotencyException.class)
+                .satisfies(e -> Assertions.assertThat(statusOf(e))
+                        .isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY));
+    }
+
+    @Test
+    public void testKeyReusedWithDifferentParameters() {
+        this.idempotencyService.claim("jdoe", this.key, this.query, "bucket=PT720H").complete("{}");
+
+        // E.g. a retry without the bucket width, or with another one
+        for (String parameters : new String[]{"", "bucket=PT24H"}) {
+            Assertions.assertThatThrownBy(() -> this.idempotencyService
+                            .claim("jdoe", this.key, this.query, parameters))
+                    .isInstanceOf(IdempotencyException.class)
+                    .satisfies(e -> Assertions.assertThat(statusOf(e))
+                            .isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY));
+        }
+        Assertions.assertThat(this.idempotencyService
+                .claim("jdoe", this.key, this.query, "bucket=PT720H").isReplay()).isTrue();
+    }
+
+    @Test
+    public void testInvalidKey() {
+        String tooLong = "x".repeat(IdempotencyService.MAX_KEY_LENGTH + 1);
+        Assertions.assertThatThrownBy(() -> this.idempotencyService
+                        .claim("jdoe", tooLong, this.query))
+                .isInstanceOf(IdempotencyException.class)
+                .satisfies(e -> Assertions.assertThat(statusOf(e))
+                        .isEqualTo(HttpStatus.BAD_REQUEST));
+    }
+
+    @Test
+    public void testConcurrentRetryWaitsForFirstExecution() throws Exception {
+        IdempotencyClaim first = this.idempotencyService.claim("jdoe", this.key, this.query);
+
+        CompletableFuture<IdempotencyClaim> retry = CompletableFuture.supplyAsync(
+                () -> this.idempotencyService.claim("jdoe", this.key, this.query));
+        Thread.sleep(100);
+        Assertions.assertThat(retry).isNotDone();
+
+        first.complete("{\"result\":2}");
+        Assertions.assertThat(retry.get(5, TimeUnit.SECONDS).getResponse())
+                .isEqualTo("{\"result\":2}");
+    }
+
+    @Test
+    public void testFailedExecutionReleasesKey() {
+        this.idempotencyService.claim("jdoe", this.key, this.query)
+                .fail(new IllegalStateException("Gateway is down"));
+
+        Assertions.assertThat(this.idempotencyService.claim("jdoe", this.key, this.query)
+                .isReplay()).isFalse();
+    }
+
+    @Test
+    public void testResponseIsSharedWithOtherInstances() {
+        IdempotencyClaim first = this.idempotencyService.claim("jdoe", this.key, this.query);
+
+        // The query is still running on the first instance
+        IdempotencyService otherInstance = this.otherInstance();
+        Assertions.assertThatThrownBy(() -> otherInstance.claim("jdoe", this.key, this.query))
+                .isInstanceOf(IdempotencyException.class)
+                .satisfies(e -> Assertions.assertThat(statusOf(e)).isEqualTo(HttpStatus.CONFLICT));
+
+        first.complete("{\"result\":3}");
+        IdempotencyClaim retry = this.otherInstance().claim("jdoe", this.key, this.query);
+        Assertions.assertThat(retry.isReplay()).isTrue();
+        Assertions.assertThat(retry.getResponse()).isEqualTo("{\"result\":3}");
+    }
+
+    @Test
+    public void testFingerprintIsDeterministic() {
+        Assertions.assertThat(IdempotencyService.fingerprint(this.query))
+                .isEqualTo(IdempotencyService.fingerprint(Query.newBuilder()
+                        .setSubmitter("jdoe").build()))
+                .isNotEqualTo(IdempotencyService.fingerprint(this.otherQuery))
+                .hasSize(64);
+    }
+}
@@ -0,0 +1,66 @@
+package nl.medtechchain.lifecycle;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import nl.medtechchain.cache.InvalidationBus;
+import nl.medtechchain.config.GatewayConnection;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+public class GatewayLifecycleTest {
+    private final GatewayConnection gatewayConnection = Mockito.mock(GatewayConnection.class);
+
+    private final InvalidationBus invalidationBus = Mockito.mock(InvalidationBus.class);
+
+    @Test
+    public void testStopWaitsForCallsInFlight() throws Exception {
+        GatewayLifecycle lifecycle =
+                new GatewayLifecycle(this.gatewayConnection, this.invalidationBus, 5000);
+        lifecycle.start();
+
+        GatewayLifecycle.Call call = lifecycle.beginCall();
+        Assertions.assertThat(lifecycle.getInFlight()).isEqualTo(1);
+
+        CompletableFuture<Void> stopped = CompletableFuture.runAsync(lifecycle::stop);
+        Thread.sleep(100);
+        Assertions.assertThat(stopped).isNotDone();
+        Mockito.verify(this.gatewayConnection, Mockito.never()).close();
+
+        // New calls are rejected while draining
+        Assertions.assertThatThrownBy(lifecycle::beginCall)
+                .isInstanceOf(ServiceShuttingDownException.class);
+
+        call.close();
+        stopped.get(1, TimeUnit.SECONDS);
+        Mockito.verify(this.gatewayConnection).close();
+        Assertions.assertThat(lifecycle.isRunning()).isFalse();
+    }
+
+    @Test
+    public void testStopClosesTheGatewayAfterTheDrainTimeout() throws Exception {
+        GatewayLifecycle lifecycle =
+                new GatewayLifecycle(this.gatewayConnection, this.invalidationBus, 100);
+        lifecycle.start();
+        lifecycle.beginCall();
+
+        CompletableFuture.runAsync(lifecycle::stop).get(1, TimeUnit.SECONDS);
+        Mockito.verify(this.gatewayConnection).close();
+        Assertions.assertThat(lifecycle.getInFlight()).isEqualTo(1);
+    }
+
+    @Test
+    public void testAcceptsCallsAgainAfterRestart() {
+        GatewayLifecycle lifecycle =
+                new GatewayLifecycle(this.gatewayConnection, this.invalidationBus, 100);
+        lifecycle.start();
+        lifecycle.stop();
+        lifecycle.start();
+
+        try (GatewayLifecycle.Call call = lifecycle.beginCall()) {
+            Assertions.assertThat(lifecycle.getInFlight()).isEqualTo(1);
+        }
+        Assertions.assertThat(lifecycle.getInFlight()).isZero();
+        Mockito.verify(this.invalidationBus).deliverLocally(Mockito.any());
+    }
+}
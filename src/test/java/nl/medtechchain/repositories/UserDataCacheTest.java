@@ -0,0 +1,109 @@
+package nl.medtechchain.repositories;
+
+import jakarta.persistence.EntityManagerFactory;
+import java.util.UUID;
+import nl.medtechchain.models.Researcher;
+import nl.medtechchain.models.UserData;
+import nl.medtechchain.models.UserRole;
+import nl.medtechchain.services.AuthenticationService;
+import org.assertj.core.api.Assertions;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.jdbc.Sql;
+
+@SpringBootTest(properties = {
+    "spring.jpa.properties.hibernate.cache.use_second_level_cache=true",
+    "spring.jpa.properties.hibernate.cache.use_query_cache=true",
+    "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@ActiveProfiles({"test"})
+@Sql("/data.sql")
+public class UserDataCacheTest {
+    @Autowired
+    private AuthenticationService authenticationService;
+
+    @Autowired
+    private UserDataRepository userDataRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    private UserData user;
+
+    @BeforeEach
+    void setup() {
+        this.user = this.userDataRepository.save(new UserData("jdoe", "somepassword",
+                "J.Doe@tudelft.nl", "John", "Doe", "TU Delft", UserRole.RESEARCHER));
+
+        // The test data is changed with SQL scripts, so the caches have to start empty
+        this.entityManagerFactory.getCache().evictAll();
+        this.statistics = this.entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        this.statistics.clear();
+    }
+
+    @Test
+    public void testLoadUserByUserIdIsCached() {
+        UUID userId = this.user.getUserId();
+        this.authenticationService.loadUserByUserId(userId);
+        long statements = this.statistics.getPrepareStatementCount();
+
+        UserData loaded = this.authenticationService.loadUserByUserId(userId);
+        Assertions.assertThat(loaded).isEqualTo(this.user);
+        Assertions.assertThat(this.statistics.getPrepareStatementCount()).isEqualTo(statements);
+        Assertions.assertThat(this.statistics.getSecondLevelCacheHitCount()).isPositive();
+    }
+
+    @Test
+    public void testLoadUserByUsernameIsCached() {
+        this.authenticationService.loadUserByUsername("jdoe");
+        long statements = this.statistics.getPrepareStatementCount();
+
+        UserData loaded = this.authenticationService.loadUserByUsername("jdoe");
+        Assertions.assertThat(loaded).isEqualTo(this.user);
+        Assertions.assertThat(this.statistics.getPrepareStatementCount()).isEqualTo(statements);
+        Assertions.assertThat(this.statistics.getNaturalIdCacheHitCount()).isPositive();
+    }
+
+    @Test
+    public void testUpdateUserUpdatesCache() {
+        this.authenticationService.loadUserByUserId(this.user.getUserId());
+        this.authenticationService.updateUser(this.user.getUserId(),
+                "Jane", "Doe", "Erasmus MC");
+
+        UserData loaded = this.authenticationService.loadUserByUsername("jdoe");
+        Assertions.assertThat(loaded.getFirstName()).isEqualTo("Jane");
+        Assertions.assertThat(loaded.getAffiliation()).isEqualTo("Erasmus MC");
+    }
+
+    @Test
+    public void testDeleteUserEvictsCache() {
+        this.authenticationService.loadUserByUsername("jdoe");
+        this.authenticationService.deleteUser(this.user.getUserId());
+
+        Assertions.assertThatThrownBy(() -> this.authenticationService.loadUserByUsername("jdoe"))
+                .isInstanceOf(UsernameNotFoundException.class);
+        Assertions.assertThat(this.userDataRepository.findById(this.user.getUserId())).isEmpty();
+    }
+
+    @Test
+    public void testGetAllResearchersIsCachedUntilUsersChange() {
+        this.authenticationService.getAllResearchers();
+        Assertions.assertThat(this.authenticationService.getAllResearchers()).hasSize(1);
+        Assertions.assertThat(this.statistics.getQueryCacheHitCount()).isEqualTo(1);
+
+        this.authenticationService.registerNewUser("J.Doe-1@tudelft.nl",
+                "John", "Doe", "TU Delft");
+
+        Assertions.assertThat(this.authenticationService.getAllResearchers())
+                .extracting(Researcher::getEmail)
+                .containsExactlyInAnyOrder("J.Doe@tudelft.nl", "J.Doe-1@tudelft.nl");
+    }
+}
@@ -7,6 +7,9 @@ import java.util.UUID;
 import nl.medtechchain.models.Researcher;
 import nl.medtechchain.models.UserData;
 import nl.medtechchain.models.UserRole;
+import nl.medtechchain.models.email.EmailOutboxMessage;
+import nl.medtechchain.models.email.EmailOutboxStatus;
+import nl.medtechchain.repositories.EmailOutboxRepository;
 import nl.medtechchain.repositories.UserDataRepository;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
@@ -33,6 +36,9 @@ public class AuthenticationServiceTest {
     @Autowired
     private PasswordEncoder passwordEncoder;
 
+    @Autowired
+    private EmailOutboxRepository emailOutboxRepository;
+
     @BeforeEach
     void setup() {
         List<UUID> researcherUserIds = this.userDataRepository
@@ -104,6 +110,34 @@ public class AuthenticationServiceTest {
         Assertions.assertThat(this.userDataRepository.findByUsername("jdoe2")).isPresent();
     }
 
+    @Test
+    public void testRegisterNewUserEnqueuesCredentialsEmail() {
+        this.authenticationService.registerNewUser("J.Doe@tudelft.nl", "John", "Doe", "TU Delft");
+
+        List<EmailOutboxMessage> messages = this.emailOutboxRepository.findAll();
+        Assertions.assertThat(messages).hasSize(1);
+        EmailOutboxMessage message = messages.getFirst();
+        Assertions.assertThat(message.getRecipient()).isEqualTo("J.Doe@tudelft.nl");
+        Assertions.assertThat(message.getTemplate()).isEqualTo("credentials-email");
+        Assertions.assertThat(message.getStatus()).isEqualTo(EmailOutboxStatus.PENDING);
+        Assertions.assertThat(message.getVariables()).contains("\"username\":\"jdoe\"");
+    }
+
+    @Test
+    public void testRegisterNewUserUsernameGenerationExistingUsers() {
+        // Users that have been created without going through the username counter
+        this.userDataRepository.save(new UserData("jdoe", "somepassword",
+                "J.Doe@tudelft.nl", "John", "Doe", "TU Delft", UserRole.RESEARCHER));
+        this.userDataRepository.save(new UserData("jdoe3", "somepassword",
+                "J.Doe-3@tudelft.nl", "John", "Doe", "TU Delft", UserRole.RESEARCHER));
+        this.userDataRepository.save(new UserData("jdoexyz", "somepassword",
+                "J.Doexyz@tudelft.nl", "John", "Doexyz", "TU Delft", UserRole.RESEARCHER));
+
+        UserData user = this.authenticationService
+                .registerNewUser("J.Doe-4@tudelft.nl", "John", "Doe", "TU Delft");
+        Assertions.assertThat(user.getUsername()).isEqualTo("jdoe4");
+    }
+
     @Test
     public void testRegisterNewUserFirstNameIsEmpty() {
         Assertions.assertThatThrownBy(() -> this.authenticationService
@@ -0,0 +1,120 @@
+package nl.medtechchain.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import nl.medtechchain.cache.InvalidationBus;
+import nl.medtechchain.concurrency.AdaptiveConcurrencyLimiter;
+import nl.medtechchain.config.GatewayConnection;
+import nl.medtechchain.lifecycle.GatewayLifecycle;
+import nl.medtechchain.proto.common.ChaincodeResponse;
+import nl.medtechchain.proto.common.ChaincodeSuccess;
+import nl.medtechchain.proto.query.Query;
+import nl.medtechchain.protoutils.Base64EncodingOps;
+import org.assertj.core.api.Assertions;
+import org.hyperledger.fabric.client.CommitException;
+import org.hyperledger.fabric.client.Contract;
+import org.hyperledger.fabric.client.Network;
+import org.hyperledger.fabric.client.Proposal;
+import org.hyperledger.fabric.client.Status;
+import org.hyperledger.fabric.client.SubmittedTransaction;
+import org.hyperledger.fabric.client.Transaction;
+import org.hyperledger.fabric.protos.peer.TxValidationCode;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.mock.env.MockEnvironment;
+
+public class ChaincodeServiceTest {
+    private final Contract contract = Mockito.mock(Contract.class);
+
+    private final SubmittedTransaction submitted = Mockito.mock(SubmittedTransaction.class);
+
+    private final Status status = Mockito.mock(Status.class);
+
+    private final List<String> events = new CopyOnWriteArrayList<>();
+
+    private final TransactionProgressListener recorder = new TransactionProgressListener() {
+        @Override
+        public void onEndorsed(String transactionId) {
+            events.add("endorsed " + transactionId);
+        }
+
+        @Override
+        public void onSubmitted(String transactionId) {
+            events.add("submitted " + transactionId);
+        }
+
+        @Override
+        public void onCommitted(String transactionId, long blockNumber) {
+            events.add("committed " + transactionId + " in " + blockNumber);
+        }
+    };
+
+    private ChaincodeService chaincodeService;
+
+    /**
+     * Mocks the steps of a transaction on the chain, and creates the service that submits it.
+     */
+    @BeforeEach
+    public void setup() throws Exception {
+        GatewayConnection gatewayConnection = Mockito.mock(GatewayConnection.class);
+        Network network = Mockito.mock(Network.class);
+        Mockito.when(gatewayConnection.getNetwork()).thenReturn(network);
+        Mockito.when(network.getContract("medtechchain", "devicedata")).thenReturn(this.contract);
+
+        Proposal.Builder builder = Mockito.mock(Proposal.Builder.class);
+        Proposal proposal = Mockito.mock(Proposal.class);
+        Transaction transaction = Mockito.mock(Transaction.class);
+        Mockito.when(this.contract.newProposal("Query")).thenReturn(builder);
+        Mockito.when(builder.addArguments(Mockito.any(String[].class))).thenReturn(builder);
+        Mockito.when(builder.build()).thenReturn(proposal);
+        Mockito.when(proposal.endorse()).thenReturn(transaction);
+        Mockito.when(transaction.getTransactionId()).thenReturn("tx1");
+        Mockito.when(transaction.submitAsync()).thenReturn(this.submitted);
+        Mockito.when(this.submitted.getTransactionId()).thenReturn("tx1");
+        Mockito.when(this.submitted.getStatus()).thenReturn(this.status);
+        Mockito.when(this.status.getTransactionId()).thenReturn("tx1");
+        Mockito.when(this.status.getBlockNumber()).thenReturn(42L);
+
+        MockEnvironment env = new MockEnvironment()
+                .withProperty("gateway.chaincode-name", "medtechchain")
+                .withProperty("gateway.data-contract-name", "devicedata")
+                .withProperty("gateway.config-contract-name", "config");
+        GatewayLifecycle gatewayLifecycle = new GatewayLifecycle(gatewayConnection,
+                Mockito.mock(InvalidationBus.class), 1000);
+        gatewayLifecycle.start();
+        this.chaincodeService = new ChaincodeService(env, gatewayConnection, gatewayLifecycle,
+                Mockito.mock(InvalidationBus.class),
+                new AdaptiveConcurrencyLimiter(8, 1, 16, 2.0, new SimpleMeterRegistry()));
+    }
+
+    @Test
+    public void testReportsTheProgressOfAQuery() throws Exception {
+        ChaincodeResponse response = ChaincodeResponse.newBuilder()
+                .setSuccess(ChaincodeSuccess.newBuilder().setMessage("result"))
+                .build();
+        Mockito.when(this.status.isSuccessful()).thenReturn(true);
+        Mockito.when(this.submitted.getResult())
+                .thenReturn(Base64EncodingOps.encode64(response).getBytes());
+
+        Assertions.assertThat(this.chaincodeService.submitQuery(Query.getDefaultInstance(),
+                this.recorder)).isEqualTo(response);
+
+        Assertions.assertThat(this.events)
+                .containsExactly("endorsed tx1", "submitted tx1", "committed tx1 in 42");
+    }
+
+    @Test
+    public void testDoesNotReportAFailedCommit() throws Exception {
+        Mockito.when(this.status.isSuccessful()).thenReturn(false);
+        Mockito.when(this.status.getCode()).thenReturn(TxValidationCode.MVCC_READ_CONFLICT);
+
+        Assertions.assertThatThrownBy(() -> this.chaincodeService.submitQuery(
+                        Query.getDefaultInstance(), this.recorder))
+                .isInstanceOf(CommitException.class);
+
+        Assertions.assertThat(this.events).containsExactly("endorsed tx1", "submitted tx1");
+        Mockito.verify(this.submitted, Mockito.never()).getResult();
+    }
+}
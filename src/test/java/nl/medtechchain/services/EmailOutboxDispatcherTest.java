@@ -0,0 +1,162 @@
+package nl.medtechchain.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import nl.medtechchain.models.email.EmailOutboxMessage;
+import nl.medtechchain.models.email.EmailOutboxStatus;
+import nl.medtechchain.repositories.EmailOutboxRepository;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.mail.MailSendException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+public class EmailOutboxDispatcherTest {
+    private final EmailOutboxRepository emailOutboxRepository =
+            Mockito.mock(EmailOutboxRepository.class);
+
+    private final EmailService emailService = Mockito.mock(EmailService.class);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    // At most 3 attempts, with a backoff of 30 s that is doubled up to 100 s
+    private final EmailOutboxDispatcher dispatcher = new EmailOutboxDispatcher(
+            this.emailOutboxRepository, this.emailService,
+            new TransactionTemplate(Mockito.mock(PlatformTransactionManager.class)),
+            this.meterRegistry, 50, 3, 30, 100, 300);
+
+    private static EmailOutboxMessage message(long id, int attempts) {
+        EmailOutboxMessage message = new EmailOutboxMessage("jdoe@medtechchain.nl",
+                "Your MedTech Chain account", "registration",
+                "{\"username\":\"jdoe\",\"password\":\"s3cret\"}", Instant.now());
+        ReflectionTestUtils.setField(message, "id", id);
+        message.setAttempts(attempts);
+        return message;
+    }
+
+    private MimeMessage rendered(EmailOutboxMessage message) throws Exception {
+        MimeMessage mimeMessage = Mockito.mock(MimeMessage.class);
+        Mockito.when(this.emailService.createMessage(message)).thenReturn(mimeMessage);
+        return mimeMessage;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<EmailOutboxMessage> saved() {
+        ArgumentCaptor<List<EmailOutboxMessage>> saved = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(this.emailOutboxRepository).saveAll(saved.capture());
+        return saved.getValue();
+    }
+
+    private void claim(EmailOutboxMessage... messages) {
+        Mockito.when(this.emailOutboxRepository.findDueForUpdate(
+                        Mockito.eq(EmailOutboxStatus.PENDING), Mockito.any(), Mockito.any()))
+                .thenReturn(List.of(messages));
+    }
+
+    @Test
+    public void testDeletesTheSentMessages() throws Exception {
+        EmailOutboxMessage message = message(1L, 0);
+        MimeMessage mimeMessage = this.rendered(message);
+        this.claim(message);
+
+        this.dispatcher.dispatch();
+
+        Mockito.verify(this.emailService).sendMessages(mimeMessage);
+        Mockito.verify(this.emailOutboxRepository).deleteAllByIdInBatch(List.of(1L));
+        Assertions.assertThat(this.saved()).isEmpty();
+        Assertions.assertThat(this.meterRegistry.get("email.outbox.sent").counter().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    public void testRetriesAFailedMessageWithBackoff() throws Exception {
+        EmailOutboxMessage first = message(1L, 0);
+        EmailOutboxMessage second = message(2L, 1);
+        this.rendered(first);
+        this.rendered(second);
+        this.claim(first, second);
+        Mockito.doThrow(new MailSendException("Connection refused"))
+                .when(this.emailService).sendMessages(Mockito.any(MimeMessage[].class));
+
+        Instant before = Instant.now();
+        this.dispatcher.dispatch();
+
+        Assertions.assertThat(this.saved()).containsExactly(first, second);
+        // The backoff is doubled after every failed attempt
+        Assertions.assertThat(first.getAttempts()).isEqualTo(1);
+        Assertions.assertThat(first.getNextAttemptAt())
+                .isBetween(before.plusSeconds(30), Instant.now().plusSeconds(30));
+        Assertions.assertThat(second.getAttempts()).isEqualTo(2);
+        Assertions.assertThat(second.getNextAttemptAt())
+                .isBetween(before.plusSeconds(60), Instant.now().plusSeconds(60));
+        Assertions.assertThat(first.getStatus()).isEqualTo(EmailOutboxStatus.PENDING);
+        Assertions.assertThat(first.getLastError()).contains("Connection refused");
+        Assertions.assertThat(first.getVariables()).contains("s3cret");
+        Mockito.verify(this.emailOutboxRepository).deleteAllByIdInBatch(List.of());
+    }
+
+    @Test
+    public void testOnlyRetriesTheMessagesThatHaveNotBeenSent() throws Exception {
+        EmailOutboxMessage sent = message(1L, 0);
+        EmailOutboxMessage failed = message(2L, 0);
+        this.rendered(sent);
+        MimeMessage failedMessage = this.rendered(failed);
+        this.claim(sent, failed);
+        Mockito.doThrow(new MailSendException(Map.<Object, Exception>of(failedMessage,
+                        new MessagingException("Mailbox unavailable"))))
+                .when(this.emailService).sendMessages(Mockito.any(MimeMessage[].class));
+
+        this.dispatcher.dispatch();
+
+        Mockito.verify(this.emailOutboxRepository).deleteAllByIdInBatch(List.of(1L));
+        Assertions.assertThat(this.saved()).containsExactly(failed);
+        Assertions.assertThat(failed.getLastError()).isEqualTo("Mailbox unavailable");
+    }
+
+    @Test
+    public void testCapsTheBackoff() throws Exception {
+        EmailOutboxMessage message = message(1L, 5);
+        Mockito.when(this.emailService.createMessage(message))
+                .thenThrow(new IllegalStateException("Unknown template"));
+        this.claim(message);
+        // With at most 3 attempts, the message would be given up on before the cap is reached
+        EmailOutboxDispatcher dispatcher = new EmailOutboxDispatcher(
+                this.emailOutboxRepository, this.emailService,
+                new TransactionTemplate(Mockito.mock(PlatformTransactionManager.class)),
+                new SimpleMeterRegistry(), 50, 10, 30, 100, 300);
+
+        Instant before = Instant.now();
+        dispatcher.dispatch();
+
+        Assertions.assertThat(message.getNextAttemptAt())
+                .isBetween(before.plusSeconds(100), Instant.now().plusSeconds(100));
+        Assertions.assertThat(message.getLastError()).contains("Unknown template");
+        Mockito.verify(this.emailService, Mockito.never())
+                .sendMessages(Mockito.any(MimeMessage[].class));
+    }
+
+    @Test
+    public void testGivesUpAfterTheMaximumNumberOfAttempts() throws Exception {
+        EmailOutboxMessage message = message(1L, 2);
+        this.rendered(message);
+        this.claim(message);
+        Mockito.doThrow(new MailSendException("Connection refused"))
+                .when(this.emailService).sendMessages(Mockito.any(MimeMessage[].class));
+
+        this.dispatcher.dispatch();
+
+        Assertions.assertThat(this.saved()).containsExactly(message);
+        Assertions.assertThat(message.getAttempts()).isEqualTo(3);
+        Assertions.assertThat(message.getStatus()).isEqualTo(EmailOutboxStatus.FAILED);
+        // The generated password is not kept
+        Assertions.assertThat(message.getVariables()).isEqualTo("{}");
+        Assertions.assertThat(message.getLastError()).contains("Connection refused");
+    }
+}
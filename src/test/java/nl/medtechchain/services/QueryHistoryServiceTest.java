@@ -0,0 +1,65 @@
+package nl.medtechchain.services;
+
+import java.util.List;
+import nl.medtechchain.models.QueryHistoryEntry;
+import nl.medtechchain.proto.query.Query;
+import nl.medtechchain.proto.query.QueryResult;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.jdbc.Sql;
+
+@SpringBootTest
+@ActiveProfiles({"test"})
+@Sql("/data.sql")
+public class QueryHistoryServiceTest {
+    @Autowired
+    private QueryHistoryService queryHistoryService;
+
+    private QueryHistoryEntry record(String submitter) {
+        return this.queryHistoryService.record(Query.newBuilder().setSubmitter(submitter).build(),
+                QueryResult.getDefaultInstance());
+    }
+
+    @Test
+    public void testRecordStoresBinaryProtobuf() throws Exception {
+        QueryHistoryEntry entry = this.record("jdoe");
+
+        List<QueryHistoryEntry> history = this.queryHistoryService.getHistory("jdoe", null, 10);
+        Assertions.assertThat(history).hasSize(1);
+        Assertions.assertThat(history.getFirst().getId()).isEqualTo(entry.getId());
+        Assertions.assertThat(Query.parseFrom(history.getFirst().getQuery()).getSubmitter())
+                .isEqualTo("jdoe");
+        Assertions.assertThat(QueryResult.parseFrom(history.getFirst().getResult()))
+                .isEqualTo(QueryResult.getDefaultInstance());
+        Assertions.assertThat(history.getFirst().getCreatedAt()).isNotNull();
+    }
+
+    @Test
+    public void testHistoryOnlyContainsOwnQueries() {
+        this.record("jdoe");
+        this.record("jdoe-1");
+
+        Assertions.assertThat(this.queryHistoryService.getHistory("jdoe", null, 10))
+                .extracting(QueryHistoryEntry::getSubmitter).containsExactly("jdoe");
+        Assertions.assertThat(this.queryHistoryService.getHistory("hjklkj", null, 10)).isEmpty();
+    }
+
+    @Test
+    public void testHistoryIsPagedNewestFirst() {
+        Long first = this.record("jdoe").getId();
+        Long second = this.record("jdoe").getId();
+        Long third = this.record("jdoe").getId();
+
+        List<QueryHistoryEntry> firstPage = this.queryHistoryService.getHistory("jdoe", null, 2);
+        Assertions.assertThat(firstPage).extracting(QueryHistoryEntry::getId)
+                .containsExactly(third, second);
+
+        List<QueryHistoryEntry> secondPage = this.queryHistoryService
+                .getHistory("jdoe", firstPage.getLast().getId(), 2);
+        Assertions.assertThat(secondPage).extracting(QueryHistoryEntry::getId)
+                .containsExactly(first);
+    }
+}
@@ -0,0 +1,107 @@
+package nl.medtechchain.services;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import nl.medtechchain.models.ScheduledQuery;
+import nl.medtechchain.proto.common.ChaincodeError;
+import nl.medtechchain.proto.common.ChaincodeResponse;
+import nl.medtechchain.proto.common.ChaincodeSuccess;
+import nl.medtechchain.proto.query.Query;
+import nl.medtechchain.proto.query.QueryResult;
+import nl.medtechchain.protoutils.Base64EncodingOps;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+public class ScheduledQueryRunnerTest {
+    private final ScheduledQueryService scheduledQueryService =
+            Mockito.mock(ScheduledQueryService.class);
+
+    private final ChaincodeService chaincodeService = Mockito.mock(ChaincodeService.class);
+
+    private final ScheduledQueryRunner runner =
+            new ScheduledQueryRunner(this.scheduledQueryService, this.chaincodeService, 10, 2);
+
+    private static ScheduledQuery scheduledQuery() {
+        ScheduledQuery scheduled = new ScheduledQuery("Devices per speciality", "admin",
+                Query.newBuilder().setQueryType(Query.QueryType.GROUPED_COUNT)
+                        .setTargetField("speciality").build().toByteArray(),
+                Duration.ofHours(1));
+        scheduled.setId(7L);
+        return scheduled;
+    }
+
+    @Test
+    public void testStoresTheResult() throws Exception {
+        QueryResult result = QueryResult.newBuilder().setCountResult(42).build();
+        Mockito.when(this.chaincodeService.submitQuery(Mockito.any()))
+                .thenReturn(ChaincodeResponse.newBuilder()
+                        .setSuccess(ChaincodeSuccess.newBuilder()
+                                .setMessage(Base64EncodingOps.encode64(result)))
+                        .build());
+        // Only as many queries are claimed as can run at the same time
+        Mockito.when(this.scheduledQueryService.claimDue(2))
+                .thenReturn(List.of(scheduledQuery()));
+
+        this.runner.runDue();
+
+        // The query runs in the background
+        Mockito.verify(this.scheduledQueryService, Mockito.timeout(5000))
+                .complete(7L, result, null);
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        Mockito.verify(this.chaincodeService).submitQuery(query.capture());
+        // The query is submitted by the admin who defined it
+        Assertions.assertThat(query.getValue().getSubmitter()).isEqualTo("admin");
+    }
+
+    @Test
+    public void testDoesNotClaimMoreQueriesThanCanRun() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Mockito.when(this.chaincodeService.submitQuery(Mockito.any())).thenAnswer(invocation -> {
+            release.await();
+            return ChaincodeResponse.newBuilder()
+                    .setError(ChaincodeError.newBuilder().setMessage("Invalid target field"))
+                    .build();
+        });
+        Mockito.when(this.scheduledQueryService.claimDue(2))
+                .thenReturn(List.of(scheduledQuery(), scheduledQuery()));
+
+        // The poll returns while both queries wait for the chain
+        this.runner.runDue();
+        this.runner.runDue();
+
+        Mockito.verify(this.scheduledQueryService, Mockito.times(1)).claimDue(Mockito.anyInt());
+        release.countDown();
+        Mockito.verify(this.scheduledQueryService, Mockito.timeout(5000).times(2))
+                .complete(Mockito.eq(7L), Mockito.isNull(), Mockito.anyString());
+    }
+
+    @Test
+    public void testStoresTheErrorOfTheChaincode() throws Exception {
+        Mockito.when(this.chaincodeService.submitQuery(Mockito.any()))
+                .thenReturn(ChaincodeResponse.newBuilder()
+                        .setError(ChaincodeError.newBuilder().setMessage("Invalid target field"))
+                        .build());
+
+        this.runner.run(scheduledQuery());
+
+        ArgumentCaptor<String> error = ArgumentCaptor.forClass(String.class);
+        Mockito.verify(this.scheduledQueryService).complete(Mockito.eq(7L), Mockito.isNull(),
+                error.capture());
+        Assertions.assertThat(error.getValue()).contains("Invalid target field");
+    }
+
+    @Test
+    public void testStoresTheErrorOfAFailedRun() throws Exception {
+        Mockito.when(this.chaincodeService.submitQuery(Mockito.any()))
+                .thenThrow(new InvalidProtocolBufferException("Truncated message"));
+
+        this.runner.run(scheduledQuery());
+
+        Mockito.verify(this.scheduledQueryService).complete(Mockito.eq(7L), Mockito.isNull(),
+                Mockito.startsWith("InvalidProtocolBufferException"));
+    }
+}
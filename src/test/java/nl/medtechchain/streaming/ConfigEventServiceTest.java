@@ -0,0 +1,39 @@
+package nl.medtechchain.streaming;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import nl.medtechchain.cache.InvalidationMessage;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ConfigEventServiceTest {
+
+    @Test
+    public void testEventsOfInvalidationMessages() {
+        Assertions.assertThat(ConfigEventService.eventOf(InvalidationMessage.Type.PLATFORM_CONFIG))
+                .isEqualTo(ConfigEventService.PLATFORM_CONFIG_EVENT);
+        Assertions.assertThat(ConfigEventService.eventOf(InvalidationMessage.Type.NETWORK_CONFIG))
+                .isEqualTo(ConfigEventService.NETWORK_CONFIG_EVENT);
+        // Changes may have been missed, so the clients fetch both configs again
+        Assertions.assertThat(ConfigEventService.eventOf(InvalidationMessage.Type.ALL))
+                .isEqualTo(ConfigEventService.ALL_EVENT);
+        Assertions.assertThat(ConfigEventService.eventOf(InvalidationMessage.Type.USER)).isNull();
+    }
+
+    @Test
+    public void testStreamsAreOpenedPerUser() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ConfigEventService configEventService =
+                new ConfigEventService(new ObjectMapper(), meterRegistry, 60000, 1);
+
+        configEventService.subscribe("researcher1");
+        configEventService.subscribe("admin");
+        Assertions.assertThatThrownBy(() -> configEventService.subscribe("admin"))
+                .isInstanceOf(IllegalStateException.class);
+        configEventService.onInvalidation(
+                InvalidationMessage.of(InvalidationMessage.Type.PLATFORM_CONFIG));
+
+        Assertions.assertThat(meterRegistry.get("configs.events.streams").gauge().value())
+                .isEqualTo(2);
+    }
+}
@@ -0,0 +1,148 @@
+package nl.medtechchain.streaming;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.grpc.Status;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import nl.medtechchain.concurrency.ConcurrencyLimitExceededException;
+import nl.medtechchain.lifecycle.ServiceShuttingDownException;
+import nl.medtechchain.proto.common.ChaincodeError;
+import org.assertj.core.api.Assertions;
+import org.hyperledger.fabric.client.EndorseException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class QueryEventServiceTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final QueryEventService queryEventService =
+            new QueryEventService(new ObjectMapper(), this.meterRegistry, 60000, 2, 10, 3, 2);
+
+    private final CountDownLatch released = new CountDownLatch(1);
+
+    /**
+     * Creates an asynchronous query that runs until it is released.
+     */
+    private Runnable blockingQuery() {
+        return () -> {
+            try {
+                this.released.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+    }
+
+    @AfterEach
+    public void release() {
+        this.released.countDown();
+    }
+
+    @Test
+    public void testLimitsTheStreamsPerResearcher() {
+        this.queryEventService.subscribe("researcher1");
+        this.queryEventService.subscribe("researcher1");
+        Assertions.assertThatThrownBy(() -> this.queryEventService.subscribe("researcher1"))
+                .isInstanceOf(IllegalStateException.class);
+
+        // The limit is per researcher
+        this.queryEventService.subscribe("researcher2");
+        Assertions.assertThat(this.meterRegistry.get("queries.events.streams").gauge().value())
+                .isEqualTo(3);
+    }
+
+    @Test
+    public void testPublishingDoesNotNeedAnOpenStream() {
+        Assertions.assertThatCode(() -> {
+            this.queryEventService.progressOf("researcher1", "query1").onEndorsed("tx1");
+            this.queryEventService.error("researcher1", "query1", ChaincodeError.newBuilder()
+                    .setCode(ChaincodeError.ErrorCode.INVALID_ARGUMENT).build());
+        }).doesNotThrowAnyException();
+        // No stream is opened for the events
+        Assertions.assertThat(this.meterRegistry.get("queries.events.streams").gauge().value())
+                .isZero();
+    }
+
+    @Test
+    public void testErrorCodesOfFailures() {
+        Assertions.assertThat(QueryEventService.codeOf(new EndorseException("tx1",
+                        Status.DEADLINE_EXCEEDED.asRuntimeException())))
+                .isEqualTo(ChaincodeError.ErrorCode.TIMEOUT);
+        Assertions.assertThat(QueryEventService.codeOf(new EndorseException("tx1",
+                        Status.UNAVAILABLE.asRuntimeException())))
+                .isEqualTo(ChaincodeError.ErrorCode.PEER_UNAVAILABLE);
+        Assertions.assertThat(QueryEventService.codeOf(new EndorseException("tx1",
+                        Status.ABORTED.asRuntimeException())))
+                .isEqualTo(ChaincodeError.ErrorCode.TRANSACTION_FAILURE);
+        Assertions.assertThat(QueryEventService.codeOf(
+                        new ConcurrencyLimitExceededException("Too many queries", 1)))
+                .isEqualTo(ChaincodeError.ErrorCode.TIMEOUT);
+        Assertions.assertThat(QueryEventService.codeOf(
+                        new IllegalArgumentException("Too many buckets")))
+                .isEqualTo(ChaincodeError.ErrorCode.INVALID_ARGUMENT);
+        Assertions.assertThat(QueryEventService.codeOf(new IllegalStateException()))
+                .isEqualTo(ChaincodeError.ErrorCode.INTERNAL_ERROR);
+    }
+
+    @Test
+    public void testLimitsTheAsynchronousQueries() {
+        this.queryEventService.runAsync("researcher1", this.blockingQuery());
+        this.queryEventService.runAsync("researcher1", this.blockingQuery());
+        Assertions.assertThatThrownBy(() -> this.queryEventService
+                        .runAsync("researcher1", this.blockingQuery()))
+                .isInstanceOf(IllegalStateException.class);
+
+        // The total limit is reached by the query of another researcher
+        this.queryEventService.runAsync("researcher2", this.blockingQuery());
+        Assertions.assertThatThrownBy(() -> this.queryEventService
+                        .runAsync("researcher3", this.blockingQuery()))
+                .isInstanceOf(ConcurrencyLimitExceededException.class);
+    }
+
+    @Test
+    public void testFinishedAsynchronousQueriesFreeTheirSlot() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            this.queryEventService.runAsync("researcher1", () -> { });
+        }
+
+        // The slots are freed (just) after the queries have run
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (true) {
+            try {
+                this.queryEventService.runAsync("researcher1", this.blockingQuery());
+                this.queryEventService.runAsync("researcher1", this.blockingQuery());
+                break;
+            } catch (IllegalStateException e) {
+                Assertions.assertThat(System.nanoTime()).isLessThan(deadline);
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    @Test
+    public void testStopWaitsForTheAsynchronousQueries() {
+        AtomicBoolean finished = new AtomicBoolean();
+        this.queryEventService.start();
+        this.queryEventService.runAsync("researcher1", () -> {
+            this.blockingQuery().run();
+            finished.set(true);
+        });
+
+        Thread.ofVirtual().start(() -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            this.released.countDown();
+        });
+        this.queryEventService.stop();
+
+        Assertions.assertThat(finished).isTrue();
+        Assertions.assertThatThrownBy(() -> this.queryEventService
+                        .runAsync("researcher1", this.blockingQuery()))
+                .isInstanceOf(ServiceShuttingDownException.class);
+    }
+}
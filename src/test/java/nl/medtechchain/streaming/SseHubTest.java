@@ -0,0 +1,129 @@
+package nl.medtechchain.streaming;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+public class SseHubTest {
+    private final CountDownLatch released = new CountDownLatch(1);
+
+    private final List<RecordingEmitter> emitters = new CopyOnWriteArrayList<>();
+
+    // Every stream can have 4 events waiting to be sent
+    private final SseHub hub = new SseHub("test", 60000, 2, 4) {
+        @Override
+        SseEmitter newEmitter() {
+            RecordingEmitter emitter = new RecordingEmitter();
+            emitters.add(emitter);
+            return emitter;
+        }
+    };
+
+    private volatile boolean blockSending = false;
+
+    /**
+     * An emitter that records the events that are sent to it, instead of writing them to a
+     *  response, and that can simulate a client that does not read its events.
+     */
+    private class RecordingEmitter extends SseEmitter {
+        private final BlockingQueue<String> sent = new LinkedBlockingQueue<>();
+
+        private volatile boolean completed = false;
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            this.sent.add(builder.build().stream()
+                    .map(data -> String.valueOf(data.getData()))
+                    .collect(Collectors.joining()));
+            if (blockSending) {
+                try {
+                    released.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+        }
+
+        @Override
+        public synchronized void complete() {
+            this.completed = true;
+            super.complete();
+        }
+
+        private String next() throws InterruptedException {
+            String event = this.sent.poll(5, TimeUnit.SECONDS);
+            Assertions.assertThat(event).isNotNull();
+            return event;
+        }
+    }
+
+    @AfterEach
+    public void release() {
+        this.released.countDown();
+    }
+
+    @Test
+    public void testSendsTheEventsInOrder() throws Exception {
+        this.hub.subscribe("researcher1");
+        this.hub.subscribe("researcher2");
+        RecordingEmitter first = this.emitters.get(0);
+        RecordingEmitter second = this.emitters.get(1);
+
+        this.hub.publish("researcher1", "endorsed", "{\"query_id\":\"q1\"}");
+        this.hub.publish("researcher1", "result", "{\"query_id\":\"q1\"}");
+        this.hub.publishToAll("platform_config", "{}");
+
+        Assertions.assertThat(first.next()).contains("connected");
+        Assertions.assertThat(first.next()).contains("event:endorsed");
+        Assertions.assertThat(first.next()).contains("event:result");
+        Assertions.assertThat(first.next()).contains("event:platform_config");
+        // The events of a researcher are only sent to their own streams
+        Assertions.assertThat(second.next()).contains("connected");
+        Assertions.assertThat(second.next()).contains("event:platform_config");
+        Assertions.assertThat(second.sent.poll(100, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    @Test
+    public void testClosesAStreamThatDoesNotKeepUp() throws Exception {
+        this.blockSending = true;
+        this.hub.subscribe("researcher1");
+        RecordingEmitter emitter = this.emitters.get(0);
+        // The client does not read the first event, so the next events wait in the queue
+        Assertions.assertThat(emitter.next()).contains("connected");
+
+        for (int i = 0; i < 4; i++) {
+            this.hub.publish("researcher1", "heartbeat", "{}");
+        }
+        Assertions.assertThat(this.hub.size()).isEqualTo(1);
+        Assertions.assertThat(emitter.completed).isFalse();
+
+        // The queue is full, so the stream is closed instead of waiting for the client
+        this.hub.publish("researcher1", "result", "{}");
+        Assertions.assertThat(this.hub.size()).isZero();
+        Assertions.assertThat(emitter.completed).isTrue();
+
+        // The dropped events are not sent anymore
+        this.released.countDown();
+        Assertions.assertThat(emitter.sent.poll(100, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    @Test
+    public void testCloseCompletesAllStreams() {
+        this.hub.subscribe("researcher1");
+        this.hub.subscribe("researcher2");
+
+        this.hub.close();
+
+        Assertions.assertThat(this.emitters).hasSize(2)
+                .allSatisfy(emitter -> Assertions.assertThat(emitter.completed).isTrue());
+    }
+}
@@ -0,0 +1,114 @@
+package nl.medtechchain.templates;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import nl.medtechchain.proto.config.PlatformConfig;
+import nl.medtechchain.proto.query.Filter;
+import nl.medtechchain.proto.query.Query;
+import nl.medtechchain.protoutils.PlatformConfigWrapper;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class CompiledQueryTemplateTest {
+    private static final PlatformConfigWrapper PLATFORM_CONFIG = new PlatformConfigWrapper(
+            PlatformConfig.newBuilder()
+                    .addMap(PlatformConfig.Entry.newBuilder()
+                            .setKey(PlatformConfig.Config
+                                    .CONFIG_FEATURE_QUERY_INTERFACE_GROUPED_COUNT_FIELDS)
+                            .setValue("speciality,category"))
+                    .build());
+
+    private static final Query QUERY = Query.newBuilder()
+            .setSubmitter("researcher")
+            .setQueryType(Query.QueryType.GROUPED_COUNT)
+            .setTargetField("speciality")
+            .addFilters(Filter.newBuilder()
+                    .setField("battery_level")
+                    .setIntegerFilter(Filter.IntegerFilter.newBuilder()
+                            .setOperator(Filter.IntegerFilter.IntOperator.GREATER_THAN)))
+            .addFilters(Filter.newBuilder()
+                    .setField("category")
+                    .setEnumFilter(Filter.EnumFilter.getDefaultInstance()))
+            .build();
+
+    private static Map<String, String> parameters() {
+        Map<String, String> parameters = new LinkedHashMap<>();
+        parameters.put("min_battery", "filters[0]");
+        parameters.put("category", "filters[1]");
+        parameters.put("from", "start_time");
+        return parameters;
+    }
+
+    @Test
+    public void testBindsTheParametersIntoTheSkeleton() {
+        CompiledQueryTemplate template = CompiledQueryTemplate.compile(1, "wearables", "jdoe",
+                QUERY, parameters(), PLATFORM_CONFIG);
+
+        Query query = template.bind(Map.of("min_battery", "20", "category",
+                "WEARABLE", "from", "2024-01-01T00:00:00Z"));
+
+        Assertions.assertThat(query.getSubmitter()).isEmpty();
+        Assertions.assertThat(query.getTargetField()).isEqualTo("speciality");
+        Assertions.assertThat(query.getFilters(0).getIntegerFilter().getValue()).isEqualTo(20);
+        Assertions.assertThat(query.getFilters(0).getIntegerFilter().getOperator())
+                .isEqualTo(Filter.IntegerFilter.IntOperator.GREATER_THAN);
+        Assertions.assertThat(query.getFilters(1).getEnumFilter().getValue())
+                .isEqualTo("WEARABLE");
+        Assertions.assertThat(query.getStartTime().getSeconds()).isEqualTo(1704067200L);
+        // The skeleton itself is not changed
+        Assertions.assertThat(template.getSkeleton().getFilters(0).getIntegerFilter().getValue())
+                .isZero();
+    }
+
+    @Test
+    public void testRejectsInvalidValues() {
+        CompiledQueryTemplate template = CompiledQueryTemplate.compile(1, "wearables", "jdoe",
+                QUERY, parameters(), PLATFORM_CONFIG);
+
+        Assertions.assertThatThrownBy(() -> template.bind(Map.of("min_battery", "20",
+                        "category", "WEARABLE")))
+                .isInstanceOf(IllegalArgumentException.class);
+        Assertions.assertThatThrownBy(() -> template.bind(Map.of("min_battery", "high",
+                        "category", "WEARABLE", "from", "2024-01-01T00:00:00Z")))
+                .isInstanceOf(IllegalArgumentException.class);
+        Assertions.assertThatThrownBy(() -> template.bind(Map.of("min_battery", "20",
+                        "category", "TOASTER", "from", "2024-01-01T00:00:00Z")))
+                .isInstanceOf(IllegalArgumentException.class);
+        Assertions.assertThatThrownBy(() -> template.bind(Map.of("min_battery", "20",
+                        "category", "WEARABLE", "from", "2024-01-01T00:00:00Z",
+                        "to", "2024-02-01T00:00:00Z")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testValidatesAgainstTheQueryInterface() {
+        // AVERAGE is not enabled for any field
+        Assertions.assertThatThrownBy(() -> CompiledQueryTemplate.compile(1, "average", "jdoe",
+                        QUERY.toBuilder().setQueryType(Query.QueryType.AVERAGE).build(),
+                        parameters(), PLATFORM_CONFIG))
+                .isInstanceOf(IllegalArgumentException.class);
+        // An integer filter on a string field
+        Assertions.assertThatThrownBy(() -> CompiledQueryTemplate.compile(1, "wrong filter",
+                        "jdoe", QUERY.toBuilder().setFilters(0, QUERY.getFilters(0).toBuilder()
+                                .setField("hospital")).build(), parameters(), PLATFORM_CONFIG))
+                .isInstanceOf(IllegalArgumentException.class);
+        // A slot that does not exist
+        Assertions.assertThatThrownBy(() -> CompiledQueryTemplate.compile(1, "wrong slot",
+                        "jdoe", QUERY, Map.of("value", "filters[2]"), PLATFORM_CONFIG))
+                .isInstanceOf(IllegalArgumentException.class);
+        // The enum value of a filter that is not a parameter has to be valid
+        Assertions.assertThatThrownBy(() -> CompiledQueryTemplate.compile(1, "no category",
+                        "jdoe", QUERY, Map.of("min_battery", "filters[0]"), PLATFORM_CONFIG))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testEncodesTheParameters() {
+        String encoded = CompiledQueryTemplate.encodeParameters(parameters());
+
+        Assertions.assertThat(encoded)
+                .isEqualTo("min_battery=filters[0],category=filters[1],from=start_time");
+        Assertions.assertThat(CompiledQueryTemplate.decodeParameters(encoded))
+                .containsExactlyEntriesOf(parameters());
+    }
+}
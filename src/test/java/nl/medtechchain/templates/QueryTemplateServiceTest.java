@@ -0,0 +1,111 @@
+package nl.medtechchain.templates;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.Map;
+import java.util.Optional;
+import nl.medtechchain.models.QueryTemplate;
+import nl.medtechchain.proto.config.PlatformConfig;
+import nl.medtechchain.proto.query.Query;
+import nl.medtechchain.protoutils.PlatformConfigWrapper;
+import nl.medtechchain.repositories.QueryTemplateRepository;
+import nl.medtechchain.services.ChaincodeService;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+public class QueryTemplateServiceTest {
+    private static final PlatformConfigWrapper PLATFORM_CONFIG = new PlatformConfigWrapper(
+            PlatformConfig.newBuilder()
+                    .addMap(PlatformConfig.Entry.newBuilder()
+                            .setKey(PlatformConfig.Config
+                                    .CONFIG_FEATURE_QUERY_INTERFACE_GROUPED_COUNT_FIELDS)
+                            .setValue("speciality,category"))
+                    .build());
+
+    private final QueryTemplateRepository queryTemplateRepository =
+            Mockito.mock(QueryTemplateRepository.class);
+
+    private final ChaincodeService chaincodeService = Mockito.mock(ChaincodeService.class);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final QueryTemplateService service = new QueryTemplateService(
+            this.queryTemplateRepository, this.chaincodeService,
+            new TransactionTemplate(new NoOpTransactionManager()), this.meterRegistry, 100);
+
+    /**
+     * A transaction manager without a database, which runs the transaction synchronizations.
+     */
+    private static class NoOpTransactionManager extends AbstractPlatformTransactionManager {
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+    }
+
+    @Test
+    public void testCachesTheTemplateAfterTheCommit() {
+        Mockito.when(this.chaincodeService.getPlatformConfig()).thenReturn(PLATFORM_CONFIG);
+        Mockito.when(this.queryTemplateRepository.findById(7L)).thenReturn(Optional.empty());
+        Mockito.when(this.queryTemplateRepository.save(Mockito.any())).thenAnswer(invocation -> {
+            QueryTemplate template = invocation.getArgument(0);
+            ReflectionTestUtils.setField(template, "id", 7L);
+            // Not visible to other requests before the commit
+            Assertions.assertThat(this.service.get(7L)).isEmpty();
+            return template;
+        });
+
+        CompiledQueryTemplate compiled = this.service.register("per speciality", "jdoe",
+                Query.newBuilder().setQueryType(Query.QueryType.GROUPED_COUNT)
+                        .setTargetField("speciality").build(), Map.of());
+
+        Assertions.assertThat(compiled.getId()).isEqualTo(7L);
+        Assertions.assertThat(this.service.get(7L)).containsSame(compiled);
+    }
+
+    @Test
+    public void testValidatesTheTemplateBeforeStoringIt() {
+        Mockito.when(this.chaincodeService.getPlatformConfig()).thenReturn(PLATFORM_CONFIG);
+
+        Assertions.assertThatThrownBy(() -> this.service.register("per model", "jdoe",
+                        Query.newBuilder().setQueryType(Query.QueryType.GROUPED_COUNT)
+                                .setTargetField("model").build(), Map.of()))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        Mockito.verify(this.queryTemplateRepository, Mockito.never()).save(Mockito.any());
+    }
+
+    @Test
+    public void testRecordsTheRunTimePerQueryType() {
+        Query query = Query.newBuilder().setQueryType(Query.QueryType.GROUPED_COUNT)
+                .setTargetField("speciality").build();
+        for (long id = 1; id <= 3; id++) {
+            this.service.recordExecution(CompiledQueryTemplate.compile(id, "template " + id,
+                    "jdoe", query, Map.of(), PLATFORM_CONFIG), 1000);
+        }
+
+        // The templates share one time series
+        Assertions.assertThat(this.meterRegistry.get("queries.templates.executions").timers())
+                .singleElement()
+                .satisfies(timer -> Assertions.assertThat(timer.count()).isEqualTo(3));
+        Assertions.assertThat(this.meterRegistry.get("queries.templates.executions")
+                .tag("query_type", "GROUPED_COUNT").timer().count()).isEqualTo(3);
+    }
+}
@@ -27,4 +27,12 @@ VALUES
     0,
     'admintest');
 
+DELETE FROM username_counter;
 
+DELETE FROM email_outbox;
+
+DELETE FROM event_checkpoint;
+
+DELETE FROM query_history;
+
+DELETE FROM idempotency_key;